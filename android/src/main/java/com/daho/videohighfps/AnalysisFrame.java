@@ -0,0 +1,128 @@
+package com.daho.videohighfps;
+
+import android.graphics.Bitmap;
+import android.media.Image;
+
+import com.google.mlkit.vision.common.InputImage;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One low-resolution frame handed to the pose and lighting checks.
+ *
+ * Backed either by a YUV_420_888 {@link Image} from the analysis ImageReader or,
+ * on constrained high-speed sessions, by a reused readback {@link Bitmap}.
+ * Frames are reference counted: whoever keeps a frame past the listener call
+ * must {@link #retain()} it and {@link #release()} it when done, the last
+ * release closes the image (or frees the readback buffer).
+ */
+public final class AnalysisFrame {
+
+    private final Image image;
+    private final Bitmap bitmap;
+    private final Runnable onRecycle;
+    private final int rotationDegrees;
+    private final long timestampNs;
+    private final AtomicInteger refCount = new AtomicInteger(1);
+    private InputImage inputImage;
+
+    private AnalysisFrame(Image image, Bitmap bitmap, int rotationDegrees, long timestampNs, Runnable onRecycle) {
+        this.image = image;
+        this.bitmap = bitmap;
+        this.rotationDegrees = rotationDegrees;
+        this.timestampNs = timestampNs;
+        this.onRecycle = onRecycle;
+    }
+
+    static AnalysisFrame fromImage(Image image, int rotationDegrees) {
+        return new AnalysisFrame(image, null, rotationDegrees, image.getTimestamp(), null);
+    }
+
+    static AnalysisFrame fromBitmap(Bitmap bitmap, long timestampNs, Runnable onRecycle) {
+        return new AnalysisFrame(null, bitmap, 0, timestampNs, onRecycle);
+    }
+
+    /**
+     * ML Kit input for this frame, created once and shared by every consumer.
+     */
+    public synchronized InputImage getInputImage() {
+        if (inputImage == null) {
+            inputImage = image != null
+                    ? InputImage.fromMediaImage(image, rotationDegrees)
+                    : InputImage.fromBitmap(bitmap, 0);
+        }
+        return inputImage;
+    }
+
+    /** Width in the upright orientation ML Kit reports landmarks in. */
+    public int getWidth() {
+        if (image == null)
+            return bitmap.getWidth();
+        return isRotatedSideways() ? image.getHeight() : image.getWidth();
+    }
+
+    /** Height in the upright orientation ML Kit reports landmarks in. */
+    public int getHeight() {
+        if (image == null)
+            return bitmap.getHeight();
+        return isRotatedSideways() ? image.getWidth() : image.getHeight();
+    }
+
+    public long getTimestampNs() {
+        return timestampNs;
+    }
+
+    public boolean hasLumaPlane() {
+        return image != null;
+    }
+
+    /** Y plane of a YUV frame; only valid while the frame is retained. */
+    public ByteBuffer getLumaBuffer() {
+        return image.getPlanes()[0].getBuffer();
+    }
+
+    public int getLumaRowStride() {
+        return image.getPlanes()[0].getRowStride();
+    }
+
+    public int getLumaPixelStride() {
+        return image.getPlanes()[0].getPixelStride();
+    }
+
+    /** Sensor-oriented (unrotated) luma width. */
+    public int getLumaWidth() {
+        return image.getWidth();
+    }
+
+    /** Sensor-oriented (unrotated) luma height. */
+    public int getLumaHeight() {
+        return image.getHeight();
+    }
+
+    /** Readback bitmap for frames that have no luma plane. */
+    public Bitmap getBitmap() {
+        return bitmap;
+    }
+
+    public AnalysisFrame retain() {
+        refCount.incrementAndGet();
+        return this;
+    }
+
+    public void release() {
+        if (refCount.decrementAndGet() != 0)
+            return;
+
+        if (image != null) {
+            image.close();
+        }
+        if (onRecycle != null) {
+            onRecycle.run();
+        }
+    }
+
+    private boolean isRotatedSideways() {
+        return rotationDegrees == 90 || rotationDegrees == 270;
+    }
+}
@@ -0,0 +1,218 @@
+package com.daho.videohighfps;
+
+import android.graphics.Bitmap;
+import android.graphics.ImageFormat;
+import android.graphics.SurfaceTexture;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Size;
+import android.view.Surface;
+import android.view.TextureView;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+
+/**
+ * Dedicated low-resolution frame source for pose and lighting analysis.
+ *
+ * Standard sessions get a YUV_420_888 {@link ImageReader} output that is added
+ * next to the preview and recorder surfaces, so ML Kit reads camera buffers
+ * directly with no GPU readback and no Bitmap allocation.
+ *
+ * Constrained high-speed sessions only accept preview and recorder outputs, so
+ * there the stream falls back to a throttled readback of the TextureView into
+ * one reused, small Bitmap, stamped with the sensor timestamp the preview's
+ * SurfaceTexture carries so it lines up with the recorded frames.
+ */
+public class AnalysisStream {
+
+    private static final String TAG = "AnalysisStream";
+
+    private static final int MAX_ANALYSIS_WIDTH = 640; // Enough for pose + lighting, cheap to process
+    private static final int MAX_IMAGES = 3; // One being filled, one in analysis, one spare
+    private static final int READBACK_WIDTH = 360;
+    private static final long READBACK_INTERVAL_MS = 100;
+
+    /**
+     * Receives frames on the analysis thread. The stream releases its own reference
+     * when the call returns, so consumers that work asynchronously must retain it.
+     */
+    public interface FrameListener {
+        void onFrame(AnalysisFrame frame);
+    }
+
+    private final FrameListener listener;
+
+    private HandlerThread analysisThread;
+    private Handler analysisHandler;
+    private ImageReader imageReader;
+    private int rotationDegrees;
+
+    private TextureView readbackView;
+    private LongSupplier readbackClock;
+    private Bitmap readbackBitmap;
+    private final AtomicBoolean readbackInUse = new AtomicBoolean(false);
+
+    public AnalysisStream(FrameListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Picks the largest YUV output no wider than {@link #MAX_ANALYSIS_WIDTH} that
+     * keeps the video aspect ratio, or the smallest YUV output if none matches.
+     */
+    public static Size chooseAnalysisSize(StreamConfigurationMap configMap, Size videoSize) {
+        Size[] sizes = configMap.getOutputSizes(ImageFormat.YUV_420_888);
+        if (sizes == null || sizes.length == 0) {
+            return null;
+        }
+
+        Size best = null;
+        Size smallest = null;
+        for (Size size : sizes) {
+            long area = (long) size.getWidth() * size.getHeight();
+            if (smallest == null || area < (long) smallest.getWidth() * smallest.getHeight()) {
+                smallest = size;
+            }
+
+            boolean sameAspect = (long) size.getWidth() * videoSize.getHeight() == (long) size.getHeight()
+                    * videoSize.getWidth();
+            if (sameAspect && size.getWidth() <= MAX_ANALYSIS_WIDTH
+                    && (best == null || size.getWidth() > best.getWidth())) {
+                best = size;
+            }
+        }
+        return best != null ? best : smallest;
+    }
+
+    /**
+     * Starts the ImageReader stream. Add {@link #getSurface()} to the session outputs
+     * and to the repeating request targets.
+     */
+    public synchronized void startYuv(Size size, int rotationDegrees) {
+        stop();
+        startThread();
+
+        this.rotationDegrees = rotationDegrees;
+        imageReader = ImageReader.newInstance(size.getWidth(), size.getHeight(), ImageFormat.YUV_420_888, MAX_IMAGES);
+        imageReader.setOnImageAvailableListener(this::onImageAvailable, analysisHandler);
+        TpaLog.d(TAG, "YUV analysis stream started: " + size + " rotation " + rotationDegrees);
+    }
+
+    /**
+     * Starts the readback fallback used when the session cannot take an extra output.
+     *
+     * @param captureClock camera clock for frames the SurfaceTexture has not stamped yet
+     */
+    public synchronized void startReadback(TextureView textureView, LongSupplier captureClock) {
+        stop();
+        startThread();
+
+        readbackView = textureView;
+        readbackClock = captureClock;
+        analysisHandler.post(readbackRunnable);
+        TpaLog.d(TAG, "Readback analysis stream started every " + READBACK_INTERVAL_MS + " ms");
+    }
+
+    /** Analysis output surface, or null when running in readback mode. */
+    public synchronized Surface getSurface() {
+        return imageReader != null ? imageReader.getSurface() : null;
+    }
+
+    public synchronized void stop() {
+        if (analysisHandler != null) {
+            analysisHandler.removeCallbacksAndMessages(null);
+        }
+        readbackView = null;
+
+        if (imageReader != null) {
+            imageReader.setOnImageAvailableListener(null, null);
+            imageReader.close();
+            imageReader = null;
+        }
+
+        if (analysisThread != null) {
+            analysisThread.quitSafely();
+            analysisThread = null;
+            analysisHandler = null;
+        }
+        // The readback bitmap is dropped, not recycled: a detector may still hold it.
+        readbackBitmap = null;
+        readbackInUse.set(false);
+    }
+
+    private void startThread() {
+        analysisThread = new HandlerThread("FrameAnalysis");
+        analysisThread.start();
+        analysisHandler = new Handler(analysisThread.getLooper());
+    }
+
+    private void onImageAvailable(ImageReader reader) {
+        Image image;
+        try {
+            image = reader.acquireLatestImage();
+        } catch (IllegalStateException e) {
+            // All buffers are held by consumers; this frame is simply skipped.
+            return;
+        }
+        if (image == null) {
+            return;
+        }
+        dispatch(AnalysisFrame.fromImage(image, rotationDegrees));
+    }
+
+    private final Runnable readbackRunnable = new Runnable() {
+        @Override
+        public void run() {
+            TextureView view = readbackView;
+            if (view == null) {
+                return;
+            }
+
+            // Skip this tick if the previous readback frame is still being analyzed
+            if (view.isAvailable() && readbackInUse.compareAndSet(false, true)) {
+                Bitmap target = obtainReadbackBitmap(view);
+                if (target != null && view.getBitmap(target) != null) {
+                    SurfaceTexture texture = view.getSurfaceTexture();
+                    long timestampNs = VideoClock.captureTimestampNs(
+                            texture != null ? texture.getTimestamp() : 0, readbackClock);
+                    dispatch(AnalysisFrame.fromBitmap(target, timestampNs, () -> readbackInUse.set(false)));
+                } else {
+                    readbackInUse.set(false);
+                }
+            }
+
+            Handler handler = analysisHandler;
+            if (handler != null) {
+                handler.postDelayed(this, READBACK_INTERVAL_MS);
+            }
+        }
+    };
+
+    private Bitmap obtainReadbackBitmap(TextureView view) {
+        int viewWidth = view.getWidth();
+        int viewHeight = view.getHeight();
+        if (viewWidth <= 0 || viewHeight <= 0) {
+            return null;
+        }
+
+        int height = Math.max(1, Math.round(READBACK_WIDTH * (float) viewHeight / viewWidth));
+        if (readbackBitmap == null || readbackBitmap.getHeight() != height) {
+            readbackBitmap = Bitmap.createBitmap(READBACK_WIDTH, height, Bitmap.Config.ARGB_8888);
+        }
+        return readbackBitmap;
+    }
+
+    private void dispatch(AnalysisFrame frame) {
+        try {
+            listener.onFrame(frame);
+        } catch (Exception e) {
+            TpaLog.e(TAG, "Frame listener failed", e);
+        } finally {
+            frame.release();
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.daho.videohighfps;
+
+/**
+ * Hands-free start and stop. With {@link Config#autoStart}, recording starts
+ * once readiness has held for {@link Config#dwellMs}, after an optional
+ * countdown that is aborted if readiness is lost. While recording, it stops
+ * when the subject has been out of frame for {@link Config#absentStopMs} or
+ * the recorded time reaches {@link Config#maxDurationMs}; these stop rules also
+ * apply to takes started by hand.
+ *
+ * There are no timers: time only advances on {@link #tick()}, which the plugin
+ * calls for every analyzed pose, so all decisions run at analysis rate on the
+ * pose thread. Actions run while the trigger is locked and must not block.
+ */
+public class AutoTrigger {
+
+    public static class Config {
+        public boolean autoStart = false;
+        public long dwellMs = 1000;
+        /** Countdown steps before an automatic start; 0 starts right after the dwell. */
+        public int countdown = 3;
+        public long countdownStepMs = 1000;
+        /** 0 disables stopping when the subject leaves. */
+        public long absentStopMs = 2000;
+        /** 0 means no limit. */
+        public long maxDurationMs = 0;
+
+        /** Whether poses are needed during a take. */
+        public boolean needsPosesWhileRecording() {
+            return absentStopMs > 0 || maxDurationMs > 0;
+        }
+    }
+
+    public enum Phase {
+        IDLE, WAITING, DWELL, COUNTDOWN, RECORDING, STOPPING
+    }
+
+    public enum StopReason {
+        SUBJECT_LEFT("subjectLeft"),
+        MAX_DURATION("maxDuration");
+
+        public final String key;
+
+        StopReason(String key) {
+            this.key = key;
+        }
+    }
+
+    public interface Actions {
+        /** Countdown step; {@code remaining} counts down to 1. */
+        void onCountdown(int remaining);
+
+        void onCountdownCancelled();
+
+        void onStart();
+
+        void onStop(StopReason reason);
+    }
+
+    private final FrameScheduler.Clock clock;
+    private final Actions actions;
+    private Config config = new Config();
+
+    private Phase phase = Phase.IDLE;
+    private long phaseNs;
+    private int remaining;
+    private long lastSeenNs;
+    private long recordedNs;
+    private long resumedNs;
+    private boolean paused;
+
+    public AutoTrigger(Actions actions) {
+        this(FrameScheduler.SYSTEM_CLOCK, actions);
+    }
+
+    public AutoTrigger(FrameScheduler.Clock clock, Actions actions) {
+        this.clock = clock;
+        this.actions = actions;
+    }
+
+    /** Starts watching for readiness with the given settings. */
+    public synchronized void arm(Config config) {
+        this.config = config;
+        phase = Phase.WAITING;
+    }
+
+    public synchronized void disarm() {
+        phase = Phase.IDLE;
+    }
+
+    public synchronized Phase getPhase() {
+        return phase;
+    }
+
+    public synchronized Config getConfig() {
+        return config;
+    }
+
+    /** Readiness changed; only READY counts as ready. */
+    public synchronized void onReady(boolean ready) {
+        if (!config.autoStart) {
+            return;
+        }
+        if (ready && phase == Phase.WAITING) {
+            enter(Phase.DWELL);
+        } else if (!ready && (phase == Phase.DWELL || phase == Phase.COUNTDOWN)) {
+            boolean counting = phase == Phase.COUNTDOWN;
+            enter(Phase.WAITING);
+            if (counting) {
+                actions.onCountdownCancelled();
+            }
+        }
+    }
+
+    /** Whether the latest pose showed anybody at all. */
+    public synchronized void onSubject(boolean present) {
+        if (present && phase == Phase.RECORDING) {
+            lastSeenNs = clock.nowNanos();
+        }
+    }
+
+    /** A take started, automatically or by hand. */
+    public synchronized void onRecordingStarted() {
+        if (phase == Phase.IDLE) {
+            return;
+        }
+        long now = clock.nowNanos();
+        enter(Phase.RECORDING);
+        lastSeenNs = now;
+        resumedNs = now;
+        recordedNs = 0;
+        paused = false;
+    }
+
+    public synchronized void onPaused(boolean paused) {
+        if (phase != Phase.RECORDING || this.paused == paused) {
+            return;
+        }
+        long now = clock.nowNanos();
+        if (paused) {
+            recordedNs += now - resumedNs;
+        } else {
+            resumedNs = now;
+            lastSeenNs = now; // leaving during a pause is allowed
+        }
+        this.paused = paused;
+    }
+
+    /** The take ended; waits for the next one. */
+    public synchronized void onRecordingStopped() {
+        if (phase == Phase.RECORDING || phase == Phase.STOPPING) {
+            enter(Phase.WAITING);
+        }
+    }
+
+    /** Advances dwell, countdown and stop rules to the current time. */
+    public synchronized void tick() {
+        long now = clock.nowNanos();
+        switch (phase) {
+            case DWELL:
+                if (now - phaseNs >= config.dwellMs * 1_000_000L) {
+                    if (config.countdown > 0) {
+                        enter(Phase.COUNTDOWN);
+                        remaining = config.countdown;
+                        actions.onCountdown(remaining);
+                    } else {
+                        fireStart();
+                    }
+                }
+                break;
+            case COUNTDOWN:
+                if (now - phaseNs >= config.countdownStepMs * 1_000_000L) {
+                    phaseNs += config.countdownStepMs * 1_000_000L;
+                    remaining--;
+                    if (remaining == 0) {
+                        fireStart();
+                    } else {
+                        actions.onCountdown(remaining);
+                    }
+                }
+                break;
+            case RECORDING:
+                if (paused) {
+                    break;
+                }
+                if (config.absentStopMs > 0 && now - lastSeenNs >= config.absentStopMs * 1_000_000L) {
+                    fireStop(StopReason.SUBJECT_LEFT);
+                } else if (config.maxDurationMs > 0
+                        && recordedNs + (now - resumedNs) >= config.maxDurationMs * 1_000_000L) {
+                    fireStop(StopReason.MAX_DURATION);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void fireStart() {
+        onRecordingStarted();
+        actions.onStart();
+    }
+
+    private void fireStop(StopReason reason) {
+        enter(Phase.STOPPING);
+        actions.onStop(reason);
+    }
+
+    private void enter(Phase next) {
+        phase = next;
+        phaseNs = clock.nowNanos();
+    }
+}
@@ -0,0 +1,148 @@
+package com.daho.videohighfps;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What one camera on one firmware build can record, plus what it actually did.
+ *
+ * The static part (high-speed size/fps ranges, MediaRecorder sizes, AE fps
+ * ranges) comes from CameraCharacteristics. The learned part records, per
+ * {@link CaptureMode}, whether a session in that mode configured or failed on
+ * this device, so later launches can skip modes that are known to fail.
+ *
+ * Platform-free so capability fixtures can be built in plain unit tests;
+ * {@link CapabilityCache} handles probing and persistence.
+ */
+public class CameraCapabilities {
+
+    /**
+     * FAILED_ONCE is a single rejected configuration: the mode stays in the running
+     * until it is rejected again, so one bad launch does not exclude it for good.
+     */
+    public enum Outcome {
+        UNKNOWN, CONFIGURED, FAILED_ONCE, FAILED
+    }
+
+    /** One entry of getHighSpeedVideoFpsRangesFor(size). */
+    public static final class HighSpeedRange {
+        public final int width;
+        public final int height;
+        public final int minFps;
+        public final int maxFps;
+
+        public HighSpeedRange(int width, int height, int minFps, int maxFps) {
+            this.width = width;
+            this.height = height;
+            this.minFps = minFps;
+            this.maxFps = maxFps;
+        }
+    }
+
+    /** A MediaRecorder output size. */
+    public static final class VideoSize {
+        public final int width;
+        public final int height;
+
+        public VideoSize(int width, int height) {
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    private final String cameraId;
+    private final String fingerprint;
+    private final List<HighSpeedRange> highSpeedRanges;
+    private final List<VideoSize> videoSizes;
+    private final List<int[]> aeFpsRanges; // {min, max}
+    private final Map<String, Outcome> outcomes = new LinkedHashMap<>();
+
+    public CameraCapabilities(String cameraId, String fingerprint, List<HighSpeedRange> highSpeedRanges,
+            List<VideoSize> videoSizes, List<int[]> aeFpsRanges) {
+        this.cameraId = cameraId;
+        this.fingerprint = fingerprint;
+        this.highSpeedRanges = Collections.unmodifiableList(new ArrayList<>(highSpeedRanges));
+        this.videoSizes = Collections.unmodifiableList(new ArrayList<>(videoSizes));
+        this.aeFpsRanges = Collections.unmodifiableList(new ArrayList<>(aeFpsRanges));
+    }
+
+    public String getCameraId() {
+        return cameraId;
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public List<HighSpeedRange> getHighSpeedRanges() {
+        return highSpeedRanges;
+    }
+
+    public List<VideoSize> getVideoSizes() {
+        return videoSizes;
+    }
+
+    public List<int[]> getAeFpsRanges() {
+        return aeFpsRanges;
+    }
+
+    public boolean hasHighSpeedSize(int width, int height) {
+        for (HighSpeedRange range : highSpeedRanges) {
+            if (range.width == width && range.height == height) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** True if a constrained high-speed session can run this size at exactly {@code fps}. */
+    public boolean supportsHighSpeed(int width, int height, int fps) {
+        for (HighSpeedRange range : highSpeedRanges) {
+            if (range.width == width && range.height == height && range.minFps <= fps && range.maxFps >= fps) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Highest fps a regular session's AE can hold constant, 30 if unknown. */
+    public int maxStandardFps() {
+        int best = 0;
+        for (int[] range : aeFpsRanges) {
+            if (range[0] == range[1]) {
+                best = Math.max(best, range[1]);
+            }
+        }
+        return best > 0 ? best : 30;
+    }
+
+    public synchronized Outcome getOutcome(CaptureMode mode) {
+        Outcome outcome = outcomes.get(mode.key());
+        return outcome != null ? outcome : Outcome.UNKNOWN;
+    }
+
+    /**
+     * Records how a session in {@code mode} went; a mode becomes FAILED on its
+     * second rejection in a row. Returns true if this changed what is known,
+     * i.e. the cache needs saving.
+     */
+    public synchronized boolean recordOutcome(CaptureMode mode, boolean configured) {
+        Outcome previous = getOutcome(mode);
+        Outcome outcome = configured ? Outcome.CONFIGURED
+                : previous == Outcome.FAILED_ONCE || previous == Outcome.FAILED ? Outcome.FAILED : Outcome.FAILED_ONCE;
+        outcomes.put(mode.key(), outcome);
+        return outcome != previous;
+    }
+
+    /** Snapshot of recorded outcomes keyed by {@link CaptureMode#key()}. */
+    public synchronized Map<String, Outcome> getOutcomes() {
+        return new LinkedHashMap<>(outcomes);
+    }
+
+    synchronized void restoreOutcome(String modeKey, Outcome outcome) {
+        outcomes.put(modeKey, outcome);
+    }
+}
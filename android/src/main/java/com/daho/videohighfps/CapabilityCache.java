@@ -0,0 +1,242 @@
+package com.daho.videohighfps;
+
+import android.content.Context;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.media.MediaRecorder;
+import android.os.Build;
+import android.util.Range;
+import android.util.Size;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persists {@link CameraCapabilities} in app storage, one file per camera ID.
+ *
+ * Entries are tied to {@code Build.FINGERPRINT}: after an OS or vendor update the
+ * camera HAL may behave differently, so the camera is probed again and the
+ * learned configure outcomes start over.
+ */
+public class CapabilityCache {
+
+    private static final String TAG = "CapabilityCache";
+    private static final String DIR_NAME = "tpa-capabilities";
+    private static final int FORMAT_VERSION = 2; // 1 excluded modes after a single, possibly transient failure
+
+    private final File dir;
+
+    public CapabilityCache(Context context) {
+        this.dir = new File(context.getFilesDir(), DIR_NAME);
+    }
+
+    /**
+     * Returns the cached capabilities for {@code cameraId}, probing and saving them
+     * first if there is no entry for this build.
+     */
+    public CameraCapabilities load(CameraManager cameraManager, String cameraId) throws CameraAccessException {
+        CameraCapabilities cached = read(cameraId);
+        if (cached != null) {
+            TpaLog.d(TAG, "Using cached capabilities for camera " + cameraId + " ("
+                    + cached.getOutcomes().size() + " known outcomes)");
+            return cached;
+        }
+
+        CameraCapabilities probed = probe(cameraManager, cameraId);
+        save(probed);
+        return probed;
+    }
+
+    /** Records a configure outcome and persists it if it is new information. */
+    public void recordOutcome(CameraCapabilities capabilities, CaptureMode mode, boolean configured) {
+        if (capabilities.recordOutcome(mode, configured)) {
+            TpaLog.d(TAG, "Learned: " + mode + " " + capabilities.getOutcome(mode) + " on this device");
+            save(capabilities);
+        }
+    }
+
+    private CameraCapabilities probe(CameraManager cameraManager, String cameraId) throws CameraAccessException {
+        CameraCharacteristics characteristics = cameraManager.getCameraCharacteristics(cameraId);
+        StreamConfigurationMap configMap = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+        if (configMap == null) {
+            throw new IllegalStateException("Cannot access camera configuration");
+        }
+
+        // Log full capability matrix, once per build
+        TpaLog.d(TAG, "Probing camera " + cameraId + ". Supported High-Speed Video Sizes and FPS Ranges:");
+        List<CameraCapabilities.HighSpeedRange> highSpeedRanges = new ArrayList<>();
+        Size[] highSpeedSizes = configMap.getHighSpeedVideoSizes();
+        if (highSpeedSizes != null) {
+            for (Size size : highSpeedSizes) {
+                try {
+                    for (Range<Integer> r : configMap.getHighSpeedVideoFpsRangesFor(size)) {
+                        TpaLog.d(TAG, size.getWidth() + "x" + size.getHeight() + " @ " + r.getLower() + "–"
+                                + r.getUpper() + " fps");
+                        highSpeedRanges.add(new CameraCapabilities.HighSpeedRange(size.getWidth(), size.getHeight(),
+                                r.getLower(), r.getUpper()));
+                    }
+                } catch (IllegalArgumentException e) {
+                    TpaLog.w(TAG, size + " (not valid for high-speed)");
+                }
+            }
+        }
+
+        List<CameraCapabilities.VideoSize> videoSizes = new ArrayList<>();
+        Size[] recorderSizes = configMap.getOutputSizes(MediaRecorder.class);
+        if (recorderSizes != null) {
+            for (Size size : recorderSizes) {
+                videoSizes.add(new CameraCapabilities.VideoSize(size.getWidth(), size.getHeight()));
+            }
+        }
+
+        List<int[]> aeFpsRanges = new ArrayList<>();
+        Range<Integer>[] aeRanges = characteristics.get(CameraCharacteristics.CONTROL_AE_AVAILABLE_TARGET_FPS_RANGES);
+        if (aeRanges != null) {
+            for (Range<Integer> r : aeRanges) {
+                aeFpsRanges.add(new int[] { r.getLower(), r.getUpper() });
+            }
+        }
+
+        return new CameraCapabilities(cameraId, Build.FINGERPRINT, highSpeedRanges, videoSizes, aeFpsRanges);
+    }
+
+    private File fileFor(String cameraId) {
+        return new File(dir, "camera-" + cameraId.replaceAll("[^A-Za-z0-9_-]", "_") + ".json");
+    }
+
+    private CameraCapabilities read(String cameraId) {
+        File file = fileFor(cameraId);
+        if (!file.exists()) {
+            return null;
+        }
+
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] data = new byte[(int) file.length()];
+            int read = 0;
+            while (read < data.length) {
+                int n = in.read(data, read, data.length - read);
+                if (n < 0)
+                    break;
+                read += n;
+            }
+
+            JSONObject json = new JSONObject(new String(data, 0, read, StandardCharsets.UTF_8));
+            if (json.optInt("version") != FORMAT_VERSION
+                    || !Build.FINGERPRINT.equals(json.optString("fingerprint"))
+                    || !cameraId.equals(json.optString("cameraId"))) {
+                TpaLog.d(TAG, "Cached capabilities for camera " + cameraId + " are stale, re-probing");
+                return null;
+            }
+            return fromJson(json);
+        } catch (IOException | JSONException e) {
+            TpaLog.w(TAG, "Unreadable capability cache " + file + ", re-probing", e);
+            return null;
+        }
+    }
+
+    private synchronized void save(CameraCapabilities capabilities) {
+        if (!dir.exists() && !dir.mkdirs()) {
+            TpaLog.w(TAG, "Cannot create " + dir);
+            return;
+        }
+
+        File file = fileFor(capabilities.getCameraId());
+        File tmp = new File(dir, file.getName() + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            out.write(toJson(capabilities).toString().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException | JSONException e) {
+            TpaLog.w(TAG, "Failed to write capability cache", e);
+            return;
+        }
+
+        if (!tmp.renameTo(file)) {
+            TpaLog.w(TAG, "Failed to replace capability cache " + file);
+        }
+    }
+
+    private static JSONObject toJson(CameraCapabilities capabilities) throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("version", FORMAT_VERSION);
+        json.put("cameraId", capabilities.getCameraId());
+        json.put("fingerprint", capabilities.getFingerprint());
+
+        JSONArray highSpeed = new JSONArray();
+        for (CameraCapabilities.HighSpeedRange r : capabilities.getHighSpeedRanges()) {
+            highSpeed.put(new JSONArray().put(r.width).put(r.height).put(r.minFps).put(r.maxFps));
+        }
+        json.put("highSpeed", highSpeed);
+
+        JSONArray sizes = new JSONArray();
+        for (CameraCapabilities.VideoSize s : capabilities.getVideoSizes()) {
+            sizes.put(new JSONArray().put(s.width).put(s.height));
+        }
+        json.put("videoSizes", sizes);
+
+        JSONArray aeRanges = new JSONArray();
+        for (int[] r : capabilities.getAeFpsRanges()) {
+            aeRanges.put(new JSONArray().put(r[0]).put(r[1]));
+        }
+        json.put("aeFpsRanges", aeRanges);
+
+        JSONObject outcomes = new JSONObject();
+        for (Map.Entry<String, CameraCapabilities.Outcome> e : capabilities.getOutcomes().entrySet()) {
+            outcomes.put(e.getKey(), e.getValue().name());
+        }
+        json.put("outcomes", outcomes);
+        return json;
+    }
+
+    private static CameraCapabilities fromJson(JSONObject json) throws JSONException {
+        List<CameraCapabilities.HighSpeedRange> highSpeedRanges = new ArrayList<>();
+        JSONArray highSpeed = json.getJSONArray("highSpeed");
+        for (int i = 0; i < highSpeed.length(); i++) {
+            JSONArray r = highSpeed.getJSONArray(i);
+            highSpeedRanges.add(new CameraCapabilities.HighSpeedRange(r.getInt(0), r.getInt(1), r.getInt(2), r.getInt(3)));
+        }
+
+        List<CameraCapabilities.VideoSize> videoSizes = new ArrayList<>();
+        JSONArray sizes = json.getJSONArray("videoSizes");
+        for (int i = 0; i < sizes.length(); i++) {
+            JSONArray s = sizes.getJSONArray(i);
+            videoSizes.add(new CameraCapabilities.VideoSize(s.getInt(0), s.getInt(1)));
+        }
+
+        List<int[]> aeFpsRanges = new ArrayList<>();
+        JSONArray aeRanges = json.getJSONArray("aeFpsRanges");
+        for (int i = 0; i < aeRanges.length(); i++) {
+            JSONArray r = aeRanges.getJSONArray(i);
+            aeFpsRanges.add(new int[] { r.getInt(0), r.getInt(1) });
+        }
+
+        CameraCapabilities capabilities = new CameraCapabilities(json.getString("cameraId"),
+                json.getString("fingerprint"), highSpeedRanges, videoSizes, aeFpsRanges);
+
+        JSONObject outcomes = json.optJSONObject("outcomes");
+        if (outcomes != null) {
+            JSONArray keys = outcomes.names();
+            for (int i = 0; keys != null && i < keys.length(); i++) {
+                String key = keys.getString(i);
+                try {
+                    capabilities.restoreOutcome(key, CameraCapabilities.Outcome.valueOf(outcomes.getString(key)));
+                } catch (IllegalArgumentException ignored) {
+                    // Unknown outcome name from a newer format; skip it
+                }
+            }
+        }
+        return capabilities;
+    }
+}
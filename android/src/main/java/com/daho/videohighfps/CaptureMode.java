@@ -0,0 +1,64 @@
+package com.daho.videohighfps;
+
+import java.util.Locale;
+
+/**
+ * One (resolution, frame rate, session type) combination the recorder can run in.
+ */
+public final class CaptureMode {
+
+    public final int width;
+    public final int height;
+    public final int fps;
+    public final boolean highSpeed;
+
+    public CaptureMode(int width, int height, int fps, boolean highSpeed) {
+        this.width = width;
+        this.height = height;
+        this.fps = fps;
+        this.highSpeed = highSpeed;
+    }
+
+    public long pixelRate() {
+        return (long) width * height * fps;
+    }
+
+    /** Stable identifier used as a cache key, e.g. "1920x1080@240hs". */
+    public String key() {
+        return width + "x" + height + "@" + fps + (highSpeed ? "hs" : "");
+    }
+
+    /** Parses {@link #key()}; returns null for malformed keys. */
+    public static CaptureMode fromKey(String key) {
+        try {
+            boolean highSpeed = key.endsWith("hs");
+            String body = highSpeed ? key.substring(0, key.length() - 2) : key;
+            int x = body.indexOf('x');
+            int at = body.indexOf('@');
+            return new CaptureMode(Integer.parseInt(body.substring(0, x)), Integer.parseInt(body.substring(x + 1, at)),
+                    Integer.parseInt(body.substring(at + 1)), highSpeed);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof CaptureMode))
+            return false;
+        CaptureMode other = (CaptureMode) o;
+        return width == other.width && height == other.height && fps == other.fps && highSpeed == other.highSpeed;
+    }
+
+    @Override
+    public int hashCode() {
+        return ((width * 31 + height) * 31 + fps) * 2 + (highSpeed ? 1 : 0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "%dx%d @%dfps%s", width, height, fps, highSpeed ? " (high-speed)" : "");
+    }
+}
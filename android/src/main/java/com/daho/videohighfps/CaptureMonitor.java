@@ -0,0 +1,159 @@
+package com.daho.videohighfps;
+
+/**
+ * Watches the sensor timestamps of the repeating request for dropped frames.
+ *
+ * A high-speed mode can configure fine and still deliver less than it was asked
+ * for: thermal limits, low light or a busy ISP make the sensor skip frames or
+ * quietly fall back to half rate. Each delta longer than 1.5 frame intervals is
+ * a gap, counted as the frames that should have filled it. Every window the
+ * monitor also measures the effective frame rate; when it stays under
+ * {@code collapseRatio} of the requested rate for {@code collapseWindows}
+ * windows in a row the rate has collapsed, and it recovers once it holds above
+ * the ratio plus {@link #RECOVERY_MARGIN} for as long.
+ *
+ * Pure Java so it can be driven by synthetic timestamp streams in unit tests;
+ * the capture callback feeds it {@code SENSOR_TIMESTAMP} on the camera thread.
+ * {@link #onFrame} does not allocate.
+ */
+public class CaptureMonitor {
+
+    public interface Listener {
+        /** Frames went missing: {@code gapNs} passed where one interval was due. */
+        void onGap(long gapNs, int missedFrames);
+
+        /** The rate collapsed, or came back, at {@code effectiveFps}. */
+        void onRateChanged(boolean collapsed, double effectiveFps);
+    }
+
+    public static final double GAP_FACTOR = 1.5; // frame intervals before a delta counts as a gap
+    public static final long DEFAULT_WINDOW_NS = 500_000_000L;
+    public static final double DEFAULT_COLLAPSE_RATIO = 0.8;
+    public static final int DEFAULT_COLLAPSE_WINDOWS = 2;
+    public static final double RECOVERY_MARGIN = 0.1;
+
+    private final int expectedFps;
+    private final long frameNs;
+    private final long gapNs;
+    private final long windowNs;
+    private final double collapseBelowFps;
+    private final double recoverAboveFps;
+    private final int collapseWindows;
+    private final Listener listener;
+
+    private long firstNs = -1;
+    private long lastNs = -1;
+    private long frameCount;
+    private long gapCount;
+    private long missedFrames;
+    private long longestGapNs;
+
+    private long windowStartNs;
+    private int windowFrames;
+    private double windowFps = Double.NaN;
+    private int streak; // consecutive windows on the other side of the verdict
+    private boolean collapsed = false;
+
+    public CaptureMonitor(int expectedFps, Listener listener) {
+        this(expectedFps, DEFAULT_WINDOW_NS, DEFAULT_COLLAPSE_RATIO, DEFAULT_COLLAPSE_WINDOWS, listener);
+    }
+
+    /**
+     * @param expectedFps     rate the repeating request asked for
+     * @param windowNs        sensor time over which the effective rate is measured
+     * @param collapseRatio   fraction of {@code expectedFps} under which a window is slow
+     * @param collapseWindows slow (or recovered) windows in a row before the verdict flips
+     */
+    public CaptureMonitor(int expectedFps, long windowNs, double collapseRatio, int collapseWindows,
+            Listener listener) {
+        this.expectedFps = Math.max(1, expectedFps);
+        this.frameNs = 1_000_000_000L / this.expectedFps;
+        this.gapNs = (long) (frameNs * GAP_FACTOR);
+        this.windowNs = Math.max(frameNs, windowNs);
+        this.collapseBelowFps = this.expectedFps * collapseRatio;
+        this.recoverAboveFps = this.expectedFps * Math.min(1, collapseRatio + RECOVERY_MARGIN);
+        this.collapseWindows = Math.max(1, collapseWindows);
+        this.listener = listener;
+    }
+
+    /** Feeds the sensor timestamp of one completed capture. Out-of-order or repeated timestamps are ignored. */
+    public void onFrame(long timestampNs) {
+        if (lastNs < 0) {
+            firstNs = lastNs = windowStartNs = timestampNs;
+            frameCount = 1;
+            return;
+        }
+        long delta = timestampNs - lastNs;
+        if (delta <= 0) {
+            return;
+        }
+        lastNs = timestampNs;
+        frameCount++;
+
+        if (delta > gapNs) {
+            int missed = (int) Math.max(1, Math.round((double) delta / frameNs) - 1);
+            gapCount++;
+            missedFrames += missed;
+            longestGapNs = Math.max(longestGapNs, delta);
+            if (listener != null) {
+                listener.onGap(delta, missed);
+            }
+        }
+
+        windowFrames++;
+        long span = timestampNs - windowStartNs;
+        if (span >= windowNs) {
+            windowFps = windowFrames * 1e9 / span;
+            windowStartNs = timestampNs;
+            windowFrames = 0;
+            judge(windowFps);
+        }
+    }
+
+    private void judge(double fps) {
+        boolean flips = collapsed ? fps >= recoverAboveFps : fps < collapseBelowFps;
+        streak = flips ? streak + 1 : 0;
+        if (streak < collapseWindows) {
+            return;
+        }
+        streak = 0;
+        collapsed = !collapsed;
+        if (listener != null) {
+            listener.onRateChanged(collapsed, fps);
+        }
+    }
+
+    public int getExpectedFps() {
+        return expectedFps;
+    }
+
+    /** Frame rate of the last complete window, or NaN before the first one. */
+    public double getEffectiveFps() {
+        return windowFps;
+    }
+
+    /** Frame rate over everything seen so far, or NaN before two frames. */
+    public double getAverageFps() {
+        return lastNs > firstNs ? (frameCount - 1) * 1e9 / (lastNs - firstNs) : Double.NaN;
+    }
+
+    public boolean isCollapsed() {
+        return collapsed;
+    }
+
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    public long getGapCount() {
+        return gapCount;
+    }
+
+    public long getMissedFrames() {
+        return missedFrames;
+    }
+
+    public long getLongestGapNs() {
+        return longestGapNs;
+    }
+}
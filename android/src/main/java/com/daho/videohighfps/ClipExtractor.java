@@ -0,0 +1,153 @@
+package com.daho.videohighfps;
+
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Cuts a time range out of consecutive segment files into one MP4, copying the
+ * encoded samples as they are.
+ *
+ * Segments start on a keyframe at {@link SegmentRing.Segment#startUs} and their
+ * sample times start at 0, so capture time = segment start + sample time. The
+ * clip opens on the last keyframe at or before {@code fromUs} (a clip can start
+ * up to one GOP early, never on a frame that cannot be decoded) and audio before
+ * that keyframe is left out.
+ */
+public final class ClipExtractor {
+
+    public static final class Result {
+        public final long durationUs;
+        public final long bytes;
+        public final long videoFrames;
+
+        Result(long durationUs, long bytes, long videoFrames) {
+            this.durationUs = durationUs;
+            this.bytes = bytes;
+            this.videoFrames = videoFrames;
+        }
+    }
+
+    private ClipExtractor() {
+    }
+
+    /** Writes [from, to) of {@code segments} (oldest first) to {@code outputPath}. */
+    public static Result extract(List<SegmentRing.Segment> segments, long fromUs, long toUs, String outputPath,
+            int orientationHint) throws IOException {
+        if (segments.isEmpty()) {
+            throw new IOException("No recorded segments cover the clip");
+        }
+        MediaMuxer muxer = new MediaMuxer(outputPath, MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+        muxer.setOrientationHint(orientationHint);
+        boolean ok = false;
+        try {
+            Result result = copy(segments, fromUs, toUs, muxer);
+            muxer.stop();
+            ok = true;
+            return result;
+        } catch (IllegalStateException | IllegalArgumentException e) {
+            throw new IOException("Clip extraction failed: " + e.getMessage(), e);
+        } finally {
+            muxer.release();
+            if (!ok) {
+                new File(outputPath).delete();
+            }
+        }
+    }
+
+    private static Result copy(List<SegmentRing.Segment> segments, long fromUs, long toUs, MediaMuxer muxer)
+            throws IOException {
+        MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+        ByteBuffer buffer = null;
+        int videoOut = -1;
+        int audioOut = -1;
+        long baseUs = -1; // capture time of the clip's first keyframe
+        long lastUs = 0;
+        long bytes = 0;
+        long frames = 0;
+        boolean done = false;
+
+        for (int s = 0; s < segments.size() && !done; s++) {
+            SegmentRing.Segment segment = segments.get(s);
+            MediaExtractor extractor = new MediaExtractor();
+            try {
+                extractor.setDataSource(segment.path);
+                int videoIn = -1;
+                int audioIn = -1;
+                for (int i = 0; i < extractor.getTrackCount(); i++) {
+                    String mime = extractor.getTrackFormat(i).getString(MediaFormat.KEY_MIME);
+                    if (mime != null && mime.startsWith("video/") && videoIn < 0) {
+                        videoIn = i;
+                    } else if (mime != null && mime.startsWith("audio/") && audioIn < 0) {
+                        audioIn = i;
+                    }
+                }
+                if (videoIn < 0) {
+                    throw new IOException("Segment has no video track: " + segment.path);
+                }
+                extractor.selectTrack(videoIn);
+                if (audioIn >= 0) {
+                    extractor.selectTrack(audioIn);
+                }
+
+                // Every segment comes from the same encoders, so the first one's formats fit all
+                if (s == 0) {
+                    MediaFormat videoFormat = extractor.getTrackFormat(videoIn);
+                    buffer = ByteBuffer.allocateDirect(maxSampleSize(videoFormat));
+                    videoOut = muxer.addTrack(videoFormat);
+                    if (audioIn >= 0) {
+                        audioOut = muxer.addTrack(extractor.getTrackFormat(audioIn));
+                    }
+                    muxer.start();
+                    if (fromUs > segment.startUs) {
+                        extractor.seekTo(fromUs - segment.startUs, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+                    }
+                }
+
+                int size;
+                while ((size = extractor.readSampleData(buffer, 0)) >= 0) {
+                    boolean video = extractor.getSampleTrackIndex() == videoIn;
+                    long ptsUs = segment.startUs + extractor.getSampleTime();
+                    boolean key = (extractor.getSampleFlags() & MediaExtractor.SAMPLE_FLAG_SYNC) != 0;
+                    if (video && ptsUs >= toUs) {
+                        done = true;
+                        break;
+                    }
+                    if (baseUs < 0 && video && key) {
+                        baseUs = ptsUs;
+                    }
+                    if (baseUs >= 0 && ptsUs >= baseUs && ptsUs < toUs && (video || audioOut >= 0)) {
+                        info.set(0, size, ptsUs - baseUs, video && key ? MediaCodec.BUFFER_FLAG_KEY_FRAME : 0);
+                        muxer.writeSampleData(video ? videoOut : audioOut, buffer, info);
+                        bytes += size;
+                        lastUs = Math.max(lastUs, ptsUs - baseUs);
+                        if (video) {
+                            frames++;
+                        }
+                    }
+                    extractor.advance();
+                }
+            } finally {
+                extractor.release();
+            }
+        }
+        if (frames == 0) {
+            throw new IOException("No video frames in the clip range");
+        }
+        return new Result(lastUs, bytes, frames);
+    }
+
+    // The encoder's declared maximum, else an uncompressed frame, which no encoded frame exceeds
+    private static int maxSampleSize(MediaFormat format) {
+        if (format.containsKey(MediaFormat.KEY_MAX_INPUT_SIZE)) {
+            return Math.max(format.getInteger(MediaFormat.KEY_MAX_INPUT_SIZE), 64 * 1024);
+        }
+        return format.getInteger(MediaFormat.KEY_WIDTH) * format.getInteger(MediaFormat.KEY_HEIGHT) * 3 / 2;
+    }
+}
@@ -0,0 +1,152 @@
+package com.daho.videohighfps;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Picks the video codec and bitrate for a take from what the device can
+ * actually sustain, instead of a fixed cap.
+ *
+ * The quality target is the recorder's usual 0.07 bits per pixel for H.264
+ * (HEVC needs about 60% of that for the same quality). It is then limited by:
+ * half the measured sequential write speed of the output directory (the rest is
+ * headroom for audio, the muxer and slower sustained writes), enough room for
+ * {@link #MIN_SECONDS_PER_SIZE_LIMIT} seconds when a size limit is set, and the
+ * encoder's own maximum. In auto mode H.264 is kept when it fits; HEVC is only
+ * chosen when H.264 would have to give up quality and an HEVC encoder exists.
+ * Every decision is written to {@link Plan#reasons} for the caller.
+ */
+public class EncoderPlanner {
+
+    static final double HEVC_EFFICIENCY = 0.6;
+    static final double STORAGE_HEADROOM = 0.5;
+    static final int MIN_SECONDS_PER_SIZE_LIMIT = 10;
+    static final int MIN_BITRATE = 1_000_000;
+
+    /** Inputs for one plan. */
+    public static final class Request {
+        public int width = 1920;
+        public int height = 1080;
+        public int fps = 240;
+        public RecordingConfig.Codec codec = null; // null = choose automatically
+        public boolean hevcAvailable = false;
+        public int h264MaxBitrate = 0; // encoder ceiling in bits/s, 0 = unknown
+        public int hevcMaxBitrate = 0;
+        public long writeBytesPerSec = 0; // measured storage throughput, 0 = unknown
+        public long sizeLimitBytes = 0; // 0 = no limit
+    }
+
+    /** The chosen codec and bitrate, with the budgets and reasoning behind them. */
+    public static final class Plan {
+        public final RecordingConfig.Codec codec;
+        public final int bitrate;
+        public final int targetBitrate; // what quality alone would ask for with this codec
+        public final long storageBudget; // bits/s, 0 = unlimited
+        public final long sizeBudget; // bits/s, 0 = unlimited
+        public final List<String> reasons;
+
+        Plan(RecordingConfig.Codec codec, int bitrate, int targetBitrate, long storageBudget, long sizeBudget,
+                List<String> reasons) {
+            this.codec = codec;
+            this.bitrate = bitrate;
+            this.targetBitrate = targetBitrate;
+            this.storageBudget = storageBudget;
+            this.sizeBudget = sizeBudget;
+            this.reasons = Collections.unmodifiableList(reasons);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%s @ %.1f Mbps (target %.1f Mbps)", codec, bitrate / 1e6,
+                    targetBitrate / 1e6);
+        }
+    }
+
+    /** Bitrate the quality heuristic wants for this codec, before any budget. */
+    public static long targetBitrate(int width, int height, int fps, RecordingConfig.Codec codec) {
+        double bits = (double) width * height * fps * ModeNegotiator.BITS_PER_PIXEL;
+        return (long) (codec == RecordingConfig.Codec.HEVC ? bits * HEVC_EFFICIENCY : bits);
+    }
+
+    public Plan plan(Request request) {
+        List<String> reasons = new ArrayList<>();
+
+        long storageBudget = 0;
+        if (request.writeBytesPerSec > 0) {
+            storageBudget = (long) (request.writeBytesPerSec * 8 * STORAGE_HEADROOM);
+            reasons.add(String.format(Locale.US, "storage writes %.1f MB/s, budget %.1f Mbps",
+                    request.writeBytesPerSec / 1e6, storageBudget / 1e6));
+        } else {
+            reasons.add("storage throughput unknown, not limiting");
+        }
+
+        long sizeBudget = 0;
+        if (request.sizeLimitBytes > 0) {
+            sizeBudget = request.sizeLimitBytes * 8 / MIN_SECONDS_PER_SIZE_LIMIT;
+            reasons.add(String.format(Locale.US, "sizeLimit %.1f MB, budget %.1f Mbps for %d s",
+                    request.sizeLimitBytes / 1e6, sizeBudget / 1e6, MIN_SECONDS_PER_SIZE_LIMIT));
+        }
+
+        RecordingConfig.Codec codec = request.codec;
+        if (codec == RecordingConfig.Codec.HEVC && !request.hevcAvailable) {
+            reasons.add("no HEVC encoder for this size, using H.264");
+            codec = RecordingConfig.Codec.H264;
+        }
+        if (codec == null) {
+            long h264Budget = budget(storageBudget, sizeBudget, request.h264MaxBitrate);
+            long h264Target = targetBitrate(request.width, request.height, request.fps, RecordingConfig.Codec.H264);
+            if (h264Budget == 0 || h264Target <= h264Budget) {
+                codec = RecordingConfig.Codec.H264;
+                reasons.add("H.264 fits the budget");
+            } else if (request.hevcAvailable) {
+                codec = RecordingConfig.Codec.HEVC;
+                reasons.add(String.format(Locale.US, "H.264 needs %.1f Mbps, over budget; HEVC keeps more quality",
+                        h264Target / 1e6));
+            } else {
+                codec = RecordingConfig.Codec.H264;
+                reasons.add("H.264 over budget and no HEVC encoder available");
+            }
+        }
+
+        int encoderMax = codec == RecordingConfig.Codec.HEVC ? request.hevcMaxBitrate : request.h264MaxBitrate;
+        long target = targetBitrate(request.width, request.height, request.fps, codec);
+        long budget = budget(storageBudget, sizeBudget, encoderMax);
+        long bitrate = target;
+        if (budget > 0 && budget < target) {
+            bitrate = budget;
+            reasons.add(String.format(Locale.US, "%s target %.1f Mbps reduced to %.1f Mbps (%s)", codec,
+                    target / 1e6, budget / 1e6, limitName(budget, storageBudget, sizeBudget)));
+        }
+        if (bitrate < MIN_BITRATE) {
+            bitrate = MIN_BITRATE;
+            reasons.add("raised to the 1 Mbps floor");
+        }
+
+        int clampedTarget = (int) Math.min(target, Integer.MAX_VALUE);
+        return new Plan(codec, (int) Math.min(bitrate, Integer.MAX_VALUE), clampedTarget, storageBudget, sizeBudget,
+                reasons);
+    }
+
+    // Smallest non-zero limit, 0 if there is none
+    private static long budget(long storageBudget, long sizeBudget, long encoderMax) {
+        long budget = 0;
+        for (long limit : new long[] { storageBudget, sizeBudget, encoderMax }) {
+            if (limit > 0 && (budget == 0 || limit < budget)) {
+                budget = limit;
+            }
+        }
+        return budget;
+    }
+
+    private static String limitName(long budget, long storageBudget, long sizeBudget) {
+        if (budget == storageBudget) {
+            return "storage";
+        }
+        if (budget == sizeBudget) {
+            return "sizeLimit";
+        }
+        return "encoder maximum";
+    }
+}
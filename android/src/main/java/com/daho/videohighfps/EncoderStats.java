@@ -0,0 +1,42 @@
+package com.daho.videohighfps;
+
+import java.util.Locale;
+
+/**
+ * Snapshot of what the encoder and muxer did during one take.
+ */
+public final class EncoderStats {
+
+    public final long capturedFrames;
+    public final long encodedFrames;
+    public final long droppedFrames;
+    public final long keyFrames;
+    public final long queueDepth;
+    public final long maxQueueDepth;
+    public final long bytesWritten;
+    public final long durationUs;
+
+    public EncoderStats(long capturedFrames, long encodedFrames, long droppedFrames, long keyFrames,
+            long queueDepth, long maxQueueDepth, long bytesWritten, long durationUs) {
+        this.capturedFrames = capturedFrames;
+        this.encodedFrames = encodedFrames;
+        this.droppedFrames = droppedFrames;
+        this.keyFrames = keyFrames;
+        this.queueDepth = queueDepth;
+        this.maxQueueDepth = maxQueueDepth;
+        this.bytesWritten = bytesWritten;
+        this.durationUs = durationUs;
+    }
+
+    /** Average bitrate actually written, in bits/s. */
+    public long averageBitrate() {
+        return durationUs > 0 ? bytesWritten * 8_000_000L / durationUs : 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "captured=%d encoded=%d dropped=%d keyframes=%d queue=%d (max %d) %.1f Mbps",
+                capturedFrames, encodedFrames, droppedFrames, keyFrames, queueDepth, maxQueueDepth,
+                averageBitrate() / 1e6);
+    }
+}
@@ -0,0 +1,151 @@
+package com.daho.videohighfps;
+
+/**
+ * Scene-brightness gate driven by per-frame exposure metadata instead of pixels.
+ *
+ * Auto-exposure already measures the scene: the exposure time, sensitivity and
+ * aperture it settles on give the scene's EV100. Dark scenes push AE to long
+ * exposures and high ISO, which shows up as a low EV long before the picture
+ * itself looks dark. This class smooths EV100 over the incoming results and
+ * turns it into a TOO_DARK / OK decision with hysteresis and a dwell time, so a
+ * single odd frame never flips the verdict.
+ *
+ * Pure Java so it can be driven by recorded metadata sequences in unit tests;
+ * the camera callback feeds it from {@code CaptureResult} on the camera thread.
+ */
+public class ExposureEstimator {
+
+    public enum Lighting {
+        UNKNOWN, TOO_DARK, OK
+    }
+
+    public interface Listener {
+        void onLightingChanged(Lighting lighting, double ev100);
+    }
+
+    // Mirrors CameraMetadata.CONTROL_AE_STATE_* so this class stays platform-free
+    public static final int AE_STATE_INACTIVE = 0;
+    public static final int AE_STATE_SEARCHING = 1;
+    public static final int AE_STATE_CONVERGED = 2;
+    public static final int AE_STATE_LOCKED = 3;
+    public static final int AE_STATE_FLASH_REQUIRED = 4;
+    public static final int AE_STATE_PRECAPTURE = 5;
+    public static final int AE_STATE_UNAVAILABLE = -1;
+
+    public static final double DEFAULT_DARK_BELOW_EV = 5.0; // Dim living room; mid-shot faces get noisy below this
+    public static final double DEFAULT_HYSTERESIS_EV = 1.0;
+    public static final long DEFAULT_DWELL_NS = 500_000_000L;
+    public static final float DEFAULT_APERTURE = 1.8f;
+
+    private static final double SMOOTHING = 0.2; // EMA weight of the newest frame
+    private static final double LOG2 = Math.log(2);
+
+    private final double darkBelowEv;
+    private final double okAboveEv;
+    private final long dwellNs;
+    private final Listener listener;
+
+    private Lighting lighting = Lighting.UNKNOWN;
+    private Lighting candidate = Lighting.UNKNOWN;
+    private long candidateSinceNs;
+    private double smoothedEv = Double.NaN;
+    private long resultCount;
+
+    public ExposureEstimator(Listener listener) {
+        this(DEFAULT_DARK_BELOW_EV, DEFAULT_HYSTERESIS_EV, DEFAULT_DWELL_NS, listener);
+    }
+
+    /**
+     * @param darkBelowEv  smoothed EV100 under which the scene is too dark
+     * @param hysteresisEv how far above {@code darkBelowEv} the scene must get to be OK again
+     * @param dwellNs      how long a new verdict must hold before it is reported
+     */
+    public ExposureEstimator(double darkBelowEv, double hysteresisEv, long dwellNs, Listener listener) {
+        this.darkBelowEv = darkBelowEv;
+        this.okAboveEv = darkBelowEv + Math.max(0, hysteresisEv);
+        this.dwellNs = Math.max(0, dwellNs);
+        this.listener = listener;
+    }
+
+    /**
+     * EV100 for the given exposure: log2(N^2 / t) - log2(ISO / 100).
+     */
+    public static double ev100(long exposureTimeNs, int sensitivity, float aperture) {
+        double seconds = exposureTimeNs / 1e9;
+        double n = aperture > 0 ? aperture : DEFAULT_APERTURE;
+        return Math.log(n * n / seconds) / LOG2 - Math.log(sensitivity / 100.0) / LOG2;
+    }
+
+    /**
+     * Feeds one capture result.
+     *
+     * @param timestampNs    sensor timestamp of the frame
+     * @param exposureTimeNs SENSOR_EXPOSURE_TIME
+     * @param sensitivity    SENSOR_SENSITIVITY (ISO)
+     * @param aperture       LENS_APERTURE, or 0 if unknown
+     * @param aeState        CONTROL_AE_STATE, or {@link #AE_STATE_UNAVAILABLE}
+     */
+    public void onCaptureResult(long timestampNs, long exposureTimeNs, int sensitivity, float aperture, int aeState) {
+        if (exposureTimeNs <= 0 || sensitivity <= 0) {
+            return;
+        }
+
+        // Exposure is still moving; its values say nothing about the scene yet
+        if (aeState == AE_STATE_SEARCHING || aeState == AE_STATE_PRECAPTURE) {
+            return;
+        }
+
+        resultCount++;
+        double ev = ev100(exposureTimeNs, sensitivity, aperture);
+        smoothedEv = Double.isNaN(smoothedEv) ? ev : smoothedEv + SMOOTHING * (ev - smoothedEv);
+
+        Lighting verdict = classify(aeState);
+        if (verdict != candidate) {
+            candidate = verdict;
+            candidateSinceNs = timestampNs;
+        }
+
+        boolean settled = lighting == Lighting.UNKNOWN || timestampNs - candidateSinceNs >= dwellNs;
+        if (candidate != lighting && settled) {
+            lighting = candidate;
+            if (listener != null) {
+                listener.onLightingChanged(lighting, smoothedEv);
+            }
+        }
+    }
+
+    private Lighting classify(int aeState) {
+        if (aeState == AE_STATE_FLASH_REQUIRED) {
+            return Lighting.TOO_DARK;
+        }
+        if (smoothedEv < darkBelowEv) {
+            return Lighting.TOO_DARK;
+        }
+        if (smoothedEv > okAboveEv) {
+            return Lighting.OK;
+        }
+        // Inside the hysteresis band: keep whatever was decided last
+        return lighting == Lighting.UNKNOWN ? Lighting.OK : lighting;
+    }
+
+    public Lighting getLighting() {
+        return lighting;
+    }
+
+    /** Smoothed EV100, NaN until the first usable result. */
+    public double getSmoothedEv() {
+        return smoothedEv;
+    }
+
+    /** True once the camera has delivered usable exposure metadata. */
+    public boolean hasData() {
+        return resultCount > 0;
+    }
+
+    public void reset() {
+        lighting = Lighting.UNKNOWN;
+        candidate = Lighting.UNKNOWN;
+        smoothedEv = Double.NaN;
+        resultCount = 0;
+    }
+}
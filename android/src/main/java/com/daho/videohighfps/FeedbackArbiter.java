@@ -0,0 +1,297 @@
+package com.daho.videohighfps;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decides which spoken feedback is played and when. Messages wait in a small
+ * priority queue instead of being dropped while something else is playing; a
+ * {@link Priority#WARNING} cuts off a lower-priority message that is playing.
+ *
+ * Messages with the same key describe the same state ("lighting", "pose"): a
+ * newer one replaces a queued one, the one playing is not repeated, and the
+ * same text is not repeated within its cooldown. A message is finished when the
+ * output reports the utterance done, not after an estimated duration.
+ *
+ * Not thread-safe: every call, including the output callbacks, must come from
+ * the scheduler's thread.
+ */
+public class FeedbackArbiter {
+
+    public enum Priority {
+        INFO, PROMPT, WARNING
+    }
+
+    /** Beeps and speech; the arbiter never plays two messages at once. */
+    public interface Output {
+        /** Plays {@code count} beeps and runs {@code done} on the arbiter's thread afterwards. */
+        void beep(int count, Runnable done);
+
+        /**
+         * Starts speaking; the end is reported through {@link #onUtteranceDone} or
+         * {@link #onUtteranceError} with the same id. Returns false if speech is unavailable.
+         */
+        boolean speak(String text, String utteranceId);
+
+        void stopSpeaking();
+    }
+
+    /** Delayed steps, e.g. a main-thread Handler. */
+    public interface Scheduler {
+        void postDelayed(Runnable task, long delayMs);
+
+        void cancel(Runnable task);
+    }
+
+    /** Told when playback starts and when the arbiter falls silent again. */
+    public interface BusyListener {
+        void onBusyChanged(boolean busy);
+    }
+
+    public static class Message {
+        public final String key;
+        public final String text;
+        public final Priority priority;
+        public int beeps = 0;
+        /** Silence after the speech before {@link #then} runs and the next message starts. */
+        public long pauseAfterMs = 0;
+        /** Runs once the message has played (or failed to); not when it is dropped or cut off. */
+        public Runnable then;
+        /** The same key and text are not spoken again within this time. */
+        public long cooldownMs = DEFAULT_COOLDOWN_MS;
+        /** A message that waited longer than this is stale and dropped. */
+        public long maxWaitMs = DEFAULT_MAX_WAIT_MS;
+
+        long submittedNs;
+
+        public Message(String key, String text, Priority priority) {
+            this.key = key;
+            this.text = text;
+            this.priority = priority;
+        }
+    }
+
+    public static final long DEFAULT_COOLDOWN_MS = 5000;
+    public static final long DEFAULT_MAX_WAIT_MS = 4000;
+    static final long SPEECH_AFTER_BEEPS_MS = 300;
+    static final long UTTERANCE_TIMEOUT_MS = 15_000; // only if the engine never reports the end
+    static final int MAX_QUEUED = 4;
+
+    private enum Step {
+        IDLE, BEEPING, SPEAKING, PAUSING
+    }
+
+    private static final class Spoken {
+        final String text;
+        final long atNs;
+
+        Spoken(String text, long atNs) {
+            this.text = text;
+            this.atNs = atNs;
+        }
+    }
+
+    private final Output output;
+    private final Scheduler scheduler;
+    private final FrameScheduler.Clock clock;
+
+    private final List<Message> queue = new ArrayList<>(MAX_QUEUED + 1); // by priority, then age
+    private final Map<String, Spoken> lastSpoken = new HashMap<>();
+
+    private Message current;
+    private Step step = Step.IDLE;
+    private int generation; // invalidates callbacks of a message that was cut off
+    private String utteranceId;
+
+    private final Runnable speakStep = this::speakCurrent;
+    private final Runnable finishStep = () -> finish(true);
+    private final Runnable timeoutStep = () -> finish(true);
+
+    private LatencyHistogram queueDelay;
+    private BusyListener busyListener;
+    private boolean reportedBusy;
+
+    public FeedbackArbiter(Output output, Scheduler scheduler) {
+        this(output, scheduler, FrameScheduler.SYSTEM_CLOCK);
+    }
+
+    public FeedbackArbiter(Output output, Scheduler scheduler, FrameScheduler.Clock clock) {
+        this.output = output;
+        this.scheduler = scheduler;
+        this.clock = clock;
+    }
+
+    /** Records how long each played message waited in the queue, in microseconds; null stops it. */
+    public void setQueueDelayHistogram(LatencyHistogram histogram) {
+        queueDelay = histogram;
+    }
+
+    /**
+     * Follows {@link #isBusy()}: true as a message starts, false once nothing
+     * plays or follows. Back-to-back messages are one busy span.
+     */
+    public void setBusyListener(BusyListener listener) {
+        busyListener = listener;
+    }
+
+    /** Queues a message; returns false if it was dropped as a repeat or as the least important. */
+    public boolean submit(Message message) {
+        if (message.text == null || message.text.isEmpty()) {
+            return false;
+        }
+        long now = clock.nowNanos();
+        message.submittedNs = now;
+
+        // A newer state replaces the queued one, even if the newer one is then suppressed
+        for (int i = 0; i < queue.size(); i++) {
+            if (queue.get(i).key.equals(message.key)) {
+                queue.remove(i);
+                break;
+            }
+        }
+        if (current != null && current.key.equals(message.key) && current.text.equals(message.text)) {
+            return false;
+        }
+        Spoken spoken = lastSpoken.get(message.key);
+        if (spoken != null && spoken.text.equals(message.text)
+                && now - spoken.atNs < message.cooldownMs * 1_000_000L) {
+            return false;
+        }
+
+        if (current != null && message.priority == Priority.WARNING
+                && current.priority.compareTo(message.priority) < 0) {
+            cutOff();
+        }
+
+        int at = 0;
+        while (at < queue.size() && queue.get(at).priority.compareTo(message.priority) >= 0) {
+            at++;
+        }
+        queue.add(at, message);
+        if (queue.size() > MAX_QUEUED) {
+            Message dropped = queue.remove(queue.size() - 1);
+            if (dropped == message) {
+                return false;
+            }
+        }
+        next();
+        return true;
+    }
+
+    public void onUtteranceDone(String id) {
+        if (step != Step.SPEAKING || !id.equals(utteranceId)) {
+            return; // a cut-off utterance
+        }
+        scheduler.cancel(timeoutStep);
+        lastSpoken.put(current.key, new Spoken(current.text, clock.nowNanos()));
+        step = Step.PAUSING;
+        scheduler.postDelayed(finishStep, current.pauseAfterMs);
+    }
+
+    public void onUtteranceError(String id) {
+        if (step == Step.SPEAKING && id.equals(utteranceId)) {
+            scheduler.cancel(timeoutStep);
+            finish(true);
+        }
+    }
+
+    /** Whether a message is playing, including its beeps and the pause after it. */
+    public boolean isBusy() {
+        return current != null;
+    }
+
+    public int getQueuedCount() {
+        return queue.size();
+    }
+
+    /** Drops everything, stopping the message that is playing. */
+    public void clear() {
+        queue.clear();
+        if (current != null) {
+            cutOff();
+        }
+        reportBusy();
+    }
+
+    private void next() {
+        if (current != null) {
+            return;
+        }
+        long now = clock.nowNanos();
+        while (!queue.isEmpty()) {
+            Message message = queue.remove(0);
+            if (now - message.submittedNs > message.maxWaitMs * 1_000_000L) {
+                continue; // stale
+            }
+            start(message);
+            return;
+        }
+    }
+
+    private void start(Message message) {
+        current = message;
+        reportBusy();
+        if (queueDelay != null) {
+            queueDelay.record((clock.nowNanos() - message.submittedNs) / 1000);
+        }
+        int started = ++generation;
+        if (message.beeps > 0) {
+            step = Step.BEEPING;
+            output.beep(message.beeps, () -> {
+                if (generation == started) {
+                    scheduler.postDelayed(speakStep, SPEECH_AFTER_BEEPS_MS);
+                }
+            });
+        } else {
+            speakCurrent();
+        }
+    }
+
+    private void speakCurrent() {
+        step = Step.SPEAKING;
+        utteranceId = "feedback_" + generation;
+        if (!output.speak(current.text, utteranceId)) {
+            finish(true);
+            return;
+        }
+        scheduler.postDelayed(timeoutStep, UTTERANCE_TIMEOUT_MS);
+    }
+
+    private void finish(boolean runThen) {
+        Message done = current;
+        current = null;
+        step = Step.IDLE;
+        utteranceId = null;
+        if (runThen && done != null && done.then != null) {
+            done.then.run();
+        }
+        next();
+        reportBusy();
+    }
+
+    private void reportBusy() {
+        boolean busy = current != null;
+        if (busy != reportedBusy) {
+            reportedBusy = busy;
+            if (busyListener != null) {
+                busyListener.onBusyChanged(busy);
+            }
+        }
+    }
+
+    private void cutOff() {
+        boolean speaking = step == Step.SPEAKING;
+        generation++;
+        scheduler.cancel(speakStep);
+        scheduler.cancel(finishStep);
+        scheduler.cancel(timeoutStep);
+        current = null;
+        step = Step.IDLE;
+        utteranceId = null;
+        if (speaking) {
+            output.stopSpeaking();
+        }
+    }
+}
@@ -7,7 +7,6 @@ import android.os.Handler; // For scheduling tasks on threads
 import android.os.Looper; // Access to the main (UI) thread looper
 import android.speech.tts.TextToSpeech; // For Text-to-Speech functionality
 import android.speech.tts.UtteranceProgressListener; // Listener for TTS progress
-import android.util.Log; // Logging utility
 
 import java.util.Locale; // For language settings
 import java.util.concurrent.atomic.AtomicBoolean; // Thread-safe boolean
@@ -20,7 +19,6 @@ public class FeedbackHelper {
     private TextToSpeech tts; // Instance of the Text-to-Speech engine
     private final Context context; // Application context (used for initializing TTS)
     private final AtomicBoolean isTtsReady = new AtomicBoolean(false); // Flag: is TTS engine initialized?
-    private final AtomicBoolean isSpeaking = new AtomicBoolean(false); // Flag: is TTS currently speaking?
     private final Handler mainHandler = new Handler(Looper.getMainLooper()); // Runs code on the main (UI) thread
     private final Runnable ttsTimeoutRunnable = this::handleTtsInitTimeout; // Action to run if TTS takes too long to
                                                                             // init
@@ -32,9 +30,53 @@ public class FeedbackHelper {
     private static final int TTS_INIT_TIMEOUT_MS = 5000; // Max time to wait for TTS to initialize
 
     private final ExecutorService beepExecutor = Executors.newSingleThreadExecutor();
+    private ToneGenerator toneGenerator; // one for the helper's lifetime, beep thread only
+    private final PhraseCache phraseCache;
+
+    // Which message plays when; main thread only
+    private final FeedbackArbiter arbiter = new FeedbackArbiter(new FeedbackArbiter.Output() {
+        @Override
+        public void beep(int count, Runnable done) {
+            playBeepsAsync(count, done);
+        }
+
+        @Override
+        public boolean speak(String text, String utteranceId) {
+            if (phraseCache.play(text, utteranceId)) {
+                TpaLog.d(TAG, "Speaking (cached): " + text);
+                return true;
+            }
+            if (!isTtsReady.get() || tts == null) {
+                TpaLog.w(TAG, "TTS not ready - Skipping: " + text);
+                return false;
+            }
+            TpaLog.d(TAG, "Speaking: " + text);
+            // QUEUE_ADD keeps pending phrase synthesis; the arbiter never overlaps messages anyway
+            return tts.speak(text, TextToSpeech.QUEUE_ADD, null, utteranceId) == TextToSpeech.SUCCESS;
+        }
+
+        @Override
+        public void stopSpeaking() {
+            phraseCache.stop();
+            if (tts != null) {
+                tts.stop();
+            }
+        }
+    }, new FeedbackArbiter.Scheduler() {
+        @Override
+        public void postDelayed(Runnable task, long delayMs) {
+            mainHandler.postDelayed(task, delayMs);
+        }
+
+        @Override
+        public void cancel(Runnable task) {
+            mainHandler.removeCallbacks(task);
+        }
+    });
 
     public FeedbackHelper(Context context) {
         this.context = context; // Save context
+        this.phraseCache = new PhraseCache(context, id -> mainHandler.post(() -> arbiter.onUtteranceDone(id)));
         initializeTts(); // Start TTS engine setup
     }
 
@@ -54,21 +96,22 @@ public class FeedbackHelper {
                         // Try to set US English as language
                         int result = tts.setLanguage(Locale.US);
                         if (result == TextToSpeech.LANG_MISSING_DATA || result == TextToSpeech.LANG_NOT_SUPPORTED) {
-                            Log.e(TAG, "TTS Language not supported");
+                            TpaLog.e(TAG, "TTS Language not supported");
                         } else {
                             isTtsReady.set(true); // TTS is ready
                             setupTtsListeners(); // Setup callbacks for TTS events
-                            Log.d(TAG, "TTS initialized successfully");
+                            phraseCache.sync(tts); // Synthesize fixed prompts for this voice
+                            TpaLog.d(TAG, "TTS initialized successfully");
                         }
                     } else {
-                        Log.e(TAG, "TTS initialization failed with status: " + status);
+                        TpaLog.e(TAG, "TTS initialization failed with status: " + status);
                     }
                 });
 
                 // Set a timeout in case TTS hangs during init
                 mainHandler.postDelayed(ttsTimeoutRunnable, TTS_INIT_TIMEOUT_MS);
             } catch (Exception e) {
-                Log.e(TAG, "Failed to initialize TTS", e);
+                TpaLog.e(TAG, "Failed to initialize TTS", e);
             }
         });
     }
@@ -86,19 +129,27 @@ public class FeedbackHelper {
         tts.setOnUtteranceProgressListener(new UtteranceProgressListener() {
             @Override
             public void onStart(String utteranceId) {
-                Log.d(TAG, "TTS started speaking");
+                TpaLog.d(TAG, "TTS started speaking");
             }
 
             @Override
             public void onDone(String utteranceId) {
-                isSpeaking.set(false); // Mark speaking as done
-                Log.d(TAG, "TTS finished speaking");
+                if (utteranceId.startsWith(PhraseCache.UTTERANCE_PREFIX)) {
+                    phraseCache.onSynthesisDone(utteranceId);
+                    return;
+                }
+                TpaLog.d(TAG, "TTS finished speaking");
+                mainHandler.post(() -> arbiter.onUtteranceDone(utteranceId));
             }
 
             @Override
             public void onError(String utteranceId) {
-                isSpeaking.set(false); // Allow new speech
-                Log.e(TAG, "TTS error occurred");
+                if (utteranceId.startsWith(PhraseCache.UTTERANCE_PREFIX)) {
+                    TpaLog.w(TAG, "Failed to synthesize cached phrase, it stays live TTS");
+                    return;
+                }
+                TpaLog.e(TAG, "TTS error occurred");
+                mainHandler.post(() -> arbiter.onUtteranceError(utteranceId));
             }
         });
     }
@@ -106,7 +157,7 @@ public class FeedbackHelper {
     private void handleTtsInitTimeout() {
         // If TTS is not ready within timeout period
         if (!isTtsReady.get()) {
-            Log.e(TAG, "TTS initialization timed out");
+            TpaLog.e(TAG, "TTS initialization timed out");
             if (tts != null) {
                 tts.shutdown(); // Shut it down
                 tts = null; // Clear reference
@@ -114,48 +165,60 @@ public class FeedbackHelper {
         }
     }
 
+    /**
+     * Speaks a prompt after {@code beepCount} beeps; {@code afterTtsAction} runs
+     * {@code delayAfterTtsMs} after the speech ends. The message itself is its key,
+     * so only exact repeats coalesce.
+     */
     public void speakWithBeeps(String message, int beepCount, long delayAfterTtsMs, Runnable afterTtsAction) {
-        // Skip empty messages
-        if (message == null || message.isEmpty()) {
-            Log.w(TAG, "Empty message provided");
-            return;
-        }
+        FeedbackArbiter.Message m = new FeedbackArbiter.Message(message, message, FeedbackArbiter.Priority.PROMPT);
+        m.beeps = beepCount;
+        m.pauseAfterMs = delayAfterTtsMs;
+        m.then = afterTtsAction;
+        say(m);
+    }
 
-        // Skip if TTS not ready or already speaking
-        if (!isTtsReady.get() || isSpeaking.getAndSet(true)) {
-            Log.w(TAG, "TTS not ready or already speaking - Skipping: " + message);
+    /** Records how long each message waited for the one before it, in microseconds. */
+    public void setQueueDelayHistogram(LatencyHistogram histogram) {
+        mainHandler.post(() -> arbiter.setQueueDelayHistogram(histogram));
+    }
+
+    /** Told on the main thread when feedback starts playing and when it falls silent. */
+    public void setSpeakingListener(FeedbackArbiter.BusyListener listener) {
+        mainHandler.post(() -> arbiter.setBusyListener(listener));
+    }
+
+    /**
+     * Fixed prompts to synthesize once and play from memory; other text is
+     * still spoken live.
+     */
+    public void precache(String... phrases) {
+        phraseCache.add(phrases);
+    }
+
+    /** Queues a message with the arbiter; safe to call from any thread. */
+    public void say(FeedbackArbiter.Message message) {
+        if (message.text == null || message.text.isEmpty()) {
+            TpaLog.w(TAG, "Empty message provided");
             return;
         }
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            arbiter.submit(message);
+        } else {
+            mainHandler.post(() -> arbiter.submit(message));
+        }
+    }
 
-        // Play beeps first, then speak
-        playBeepsAsync(beepCount, () -> {
-            if (!isTtsReady.get()) {
-                isSpeaking.set(false);
-                return;
-            }
+    /** Whether a message is playing, beeps and pause included. Main thread only. */
+    public boolean isSpeaking() {
+        return arbiter.isBusy();
+    }
 
-            // Delay after beep before speaking
-            mainHandler.postDelayed(() -> {
-                try {
-                    Log.d(TAG, "Speaking: " + message);
-                    // Speak message immediately (flush any queue)
-                    tts.speak(message, TextToSpeech.QUEUE_FLUSH, null, "tts_" + System.currentTimeMillis());
-
-                    // Estimate speaking duration using word count
-                    int wordCount = message.split("\\s+").length;
-                    long estimatedDuration = Math.max(1000, wordCount * 150); // Minimum 1s, else 150ms/word
-
-                    // After estimated time, run follow-up action (if any)
-                    mainHandler.postDelayed(() -> {
-                        if (afterTtsAction != null) {
-                            afterTtsAction.run();
-                        }
-                    }, estimatedDuration + delayAfterTtsMs);
-                } catch (Exception e) {
-                    Log.e(TAG, "Error during TTS speak", e);
-                    isSpeaking.set(false); // Allow future TTS
-                }
-            }, 300); // Delay after beeps before TTS starts
+    /**
+     * Plays beeps without speech, e.g. for a countdown. Not blocked by speech in progress.
+     */
+    public void playBeeps(int count) {
+        playBeepsAsync(count, () -> {
         });
     }
 
@@ -174,39 +237,48 @@ public class FeedbackHelper {
 
         // ✅ Use safe, reusable background thread
         beepExecutor.execute(() -> {
-            ToneGenerator toneGen = null;
             try {
-                toneGen = new ToneGenerator(AudioManager.STREAM_MUSIC, BEEP_VOLUME);
+                if (toneGenerator == null) {
+                    toneGenerator = new ToneGenerator(AudioManager.STREAM_MUSIC, BEEP_VOLUME);
+                }
                 for (int i = 0; i < count; i++) {
-                    toneGen.startTone(ToneGenerator.TONE_CDMA_PIP, BEEP_DURATION_MS);
+                    toneGenerator.startTone(ToneGenerator.TONE_CDMA_PIP, BEEP_DURATION_MS);
                     Thread.sleep(BEEP_INTERVAL_MS);
                 }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             } catch (Exception e) {
-                Log.e(TAG, "Error during beep generation", e);
+                TpaLog.e(TAG, "Error during beep generation", e);
             } finally {
-                if (toneGen != null) {
-                    toneGen.release();
-                }
                 mainHandler.post(onComplete); // 🔄 back to main thread
             }
         });
     }
 
     public void shutdown() {
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            arbiter.clear();
+        }
         mainHandler.removeCallbacksAndMessages(null);
-        isSpeaking.set(false);
 
         if (tts != null) {
             try {
                 tts.stop();
                 tts.shutdown();
             } catch (Exception e) {
-                Log.e(TAG, "Error shutting down TTS", e);
+                TpaLog.e(TAG, "Error shutting down TTS", e);
             }
             tts = null;
         }
 
-        beepExecutor.shutdownNow(); // ✅ CORRECT placement
+        phraseCache.release();
+        beepExecutor.execute(() -> {
+            if (toneGenerator != null) {
+                toneGenerator.release();
+                toneGenerator = null;
+            }
+        });
+        beepExecutor.shutdown(); // ✅ after the release above, which still runs
         isTtsReady.set(false);
     }
 }
\ No newline at end of file
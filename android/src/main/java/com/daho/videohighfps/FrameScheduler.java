@@ -0,0 +1,221 @@
+package com.daho.videohighfps;
+
+/**
+ * Back-pressure between the camera callbacks and a detector.
+ *
+ * At most {@code maxInFlight} frames are being processed at any time. A frame
+ * that arrives while every slot is busy, or before the next analysis slot is due,
+ * waits as the single pending frame; a newer frame replaces it and the older one
+ * is released and counted as dropped. The analysis rate is therefore bounded by
+ * the target rate and by the detector itself, never by the capture rate.
+ *
+ * The scheduler owns every submitted frame: each one is either handed to the
+ * detector (which must call its completion callback) or released.
+ */
+public class FrameScheduler<F> {
+
+    /** Runs inference on a frame and calls {@code onComplete} once, on any thread. */
+    public interface Detector<F> {
+        void process(F frame, Runnable onComplete);
+    }
+
+    /** Gives a frame back to its source (e.g. closes the camera image). */
+    public interface Releaser<F> {
+        void release(F frame);
+    }
+
+    /** Monotonic time source, replaceable in tests. */
+    public interface Clock {
+        long nowNanos();
+    }
+
+    public static final Clock SYSTEM_CLOCK = System::nanoTime;
+
+    private final Detector<F> detector;
+    private final Releaser<F> releaser;
+    private final Clock clock;
+    private final int maxInFlight;
+
+    private long minIntervalNs;
+    private long lastDispatchNs;
+    private boolean dispatchedOnce = false;
+    private boolean closed = false;
+
+    private F pending;
+    private int inFlight;
+
+    private long submittedCount;
+    private long processedCount;
+    private long droppedCount;
+    private long lastLatencyNs;
+    private volatile LatencyHistogram latencyHistogram;
+
+    public FrameScheduler(Detector<F> detector, Releaser<F> releaser) {
+        this(detector, releaser, SYSTEM_CLOCK, 1, 0);
+    }
+
+    /**
+     * @param maxInFlight number of concurrent inferences, at least 1
+     * @param targetFps   analysis rate cap, 0 for "as fast as the detector allows"
+     */
+    public FrameScheduler(Detector<F> detector, Releaser<F> releaser, Clock clock, int maxInFlight, double targetFps) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be at least 1");
+        }
+        this.detector = detector;
+        this.releaser = releaser;
+        this.clock = clock;
+        this.maxInFlight = maxInFlight;
+        setTargetFps(targetFps);
+    }
+
+    /** Also records every detector time, in microseconds, into {@code histogram}; null stops it. */
+    public void setLatencyHistogram(LatencyHistogram histogram) {
+        latencyHistogram = histogram;
+    }
+
+    /** Changes the analysis rate cap; 0 or less removes it. */
+    public synchronized void setTargetFps(double targetFps) {
+        minIntervalNs = targetFps > 0 ? (long) (1_000_000_000L / targetFps) : 0;
+    }
+
+    /**
+     * Offers the newest frame. The scheduler takes ownership of it.
+     */
+    public void submit(F frame) {
+        F dropped = null;
+        synchronized (this) {
+            submittedCount++;
+            if (closed) {
+                dropped = frame;
+                droppedCount++;
+            } else {
+                if (pending != null) {
+                    dropped = pending;
+                    droppedCount++;
+                }
+                pending = frame;
+            }
+        }
+
+        if (dropped != null) {
+            releaser.release(dropped);
+        }
+        drain();
+    }
+
+    /**
+     * Re-checks the pending frame, e.g. from a periodic tick when frames stop arriving
+     * but a throttled frame is still waiting.
+     */
+    public void drain() {
+        while (true) {
+            F next;
+            long dispatchNs;
+            synchronized (this) {
+                if (closed || pending == null || inFlight >= maxInFlight) {
+                    return;
+                }
+
+                long now = clock.nowNanos();
+                if (dispatchedOnce && minIntervalNs > 0 && now - lastDispatchNs < minIntervalNs) {
+                    return;
+                }
+
+                next = pending;
+                pending = null;
+                inFlight++;
+                lastDispatchNs = now;
+                dispatchedOnce = true;
+                dispatchNs = now;
+            }
+
+            dispatch(next, dispatchNs);
+        }
+    }
+
+    private void dispatch(F frame, long dispatchNs) {
+        Completion completion = new Completion(frame, dispatchNs);
+        try {
+            detector.process(frame, completion);
+        } catch (RuntimeException e) {
+            completion.run();
+            throw e;
+        }
+    }
+
+    private final class Completion implements Runnable {
+        private final F frame;
+        private final long dispatchNs;
+        private boolean done = false;
+
+        Completion(F frame, long dispatchNs) {
+            this.frame = frame;
+            this.dispatchNs = dispatchNs;
+        }
+
+        @Override
+        public void run() {
+            long latencyNs;
+            synchronized (FrameScheduler.this) {
+                if (done) {
+                    return;
+                }
+                done = true;
+                inFlight--;
+                processedCount++;
+                latencyNs = clock.nowNanos() - dispatchNs;
+                lastLatencyNs = latencyNs;
+            }
+            LatencyHistogram histogram = latencyHistogram;
+            if (histogram != null) {
+                histogram.record(latencyNs / 1000);
+            }
+
+            releaser.release(frame);
+            drain();
+        }
+    }
+
+    /**
+     * Stops dispatching and releases the pending frame. In-flight frames are
+     * released by their completion callbacks as usual.
+     */
+    public void close() {
+        F dropped;
+        synchronized (this) {
+            closed = true;
+            dropped = pending;
+            pending = null;
+            if (dropped != null) {
+                droppedCount++;
+            }
+        }
+
+        if (dropped != null) {
+            releaser.release(dropped);
+        }
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized long getSubmittedCount() {
+        return submittedCount;
+    }
+
+    public synchronized long getProcessedCount() {
+        return processedCount;
+    }
+
+    /** Frames released without being analyzed (superseded by a newer frame or closed). */
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /** Detector time of the most recently completed frame. */
+    public synchronized long getLastLatencyNs() {
+        return lastLatencyNs;
+    }
+}
@@ -0,0 +1,447 @@
+package com.daho.videohighfps;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Offline spotting of a few command words by template matching, on a plain PCM
+ * stream. Audio is resampled to 16 kHz and cut into 25 ms frames every 10 ms;
+ * each frame becomes 12 mel cepstra. An energy gate that tracks the noise floor
+ * segments utterances, and each utterance is compared with dynamic time
+ * warping against the enrolled templates, after per-utterance mean and
+ * variance normalization. A keyword is reported when its best template is
+ * close enough and clearly closer than any other keyword's; anything else
+ * (other words, coughs, clatter) is ignored.
+ *
+ * No model or network: templates are short recordings of each word, added
+ * with {@link #addTemplate}. Streaming is allocation-free; {@link #accept}
+ * runs on the caller's thread, so keep it off the camera and encoder threads.
+ */
+public class KeywordSpotter {
+
+    public interface Listener {
+        /** {@code distance} is the normalized DTW distance to the best template. */
+        void onKeyword(String keyword, float distance);
+    }
+
+    public static final int SAMPLE_RATE = 16000;
+
+    static final int FRAME = 400; // 25 ms
+    static final int HOP = 160; // 10 ms
+    static final int FFT = 512;
+    static final int MELS = 23;
+    static final int CEPS = 12;
+    static final int MIN_FRAMES = 15; // 150 ms
+    static final int MAX_FRAMES = 150; // 1.5 s
+    static final int ONSET_FRAMES = 3;
+    static final int HANGOVER_FRAMES = 20;
+    static final float START_ABOVE_FLOOR = 2.3f; // natural log of power, ~10 dB
+    static final float END_ABOVE_FLOOR = 1.2f;
+
+    static final float DEFAULT_THRESHOLD = 1.4f;
+    static final float DEFAULT_MARGIN = 0.12f; // runner-up keyword must be this much farther
+
+    private final Listener listener;
+    private final Frontend frontend;
+    private final List<String> keywords = new ArrayList<>();
+    private final List<float[][]> templates = new ArrayList<>();
+    private final float[][] work = new float[MAX_FRAMES][CEPS];
+    private final float[] previousRow = new float[MAX_FRAMES + 1];
+    private final float[] currentRow = new float[MAX_FRAMES + 1];
+    private float threshold = DEFAULT_THRESHOLD;
+    private float margin = DEFAULT_MARGIN;
+
+    public KeywordSpotter(int inputSampleRate, Listener listener) {
+        this.listener = listener;
+        this.frontend = new Frontend(inputSampleRate, this::onUtterance);
+    }
+
+    /**
+     * Enrolls one recording of {@code keyword}. The longest utterance in
+     * the clip is used; returns false if the clip holds no usable utterance.
+     */
+    public boolean addTemplate(String keyword, short[] pcm, int sampleRate) {
+        final float[][][] longest = { null };
+        Frontend enroll = new Frontend(sampleRate, (features, frames) -> {
+            if (longest[0] == null || frames > longest[0].length) {
+                float[][] copy = new float[frames][];
+                for (int i = 0; i < frames; i++) {
+                    copy[i] = features[i].clone();
+                }
+                longest[0] = copy;
+            }
+        });
+        enroll.accept(pcm, 0, pcm.length);
+        enroll.flush();
+        if (longest[0] == null) {
+            return false;
+        }
+        normalize(longest[0], longest[0].length);
+        synchronized (this) {
+            keywords.add(keyword);
+            templates.add(longest[0]);
+        }
+        return true;
+    }
+
+    public synchronized int getTemplateCount() {
+        return templates.size();
+    }
+
+    /** Maximum normalized DTW distance for a match. */
+    public synchronized void setThreshold(float threshold) {
+        this.threshold = threshold;
+    }
+
+    public synchronized void setMargin(float margin) {
+        this.margin = margin;
+    }
+
+    /** Feeds 16-bit mono PCM at the input rate. Keywords are reported from here. */
+    public void accept(short[] pcm, int offset, int count) {
+        frontend.accept(pcm, offset, count);
+    }
+
+    /** Ends any utterance in progress, e.g. when the input stops. */
+    public void flush() {
+        frontend.flush();
+    }
+
+    public void reset() {
+        frontend.reset();
+    }
+
+    private synchronized void onUtterance(float[][] features, int frames) {
+        if (templates.isEmpty()) {
+            return;
+        }
+        for (int i = 0; i < frames; i++) {
+            System.arraycopy(features[i], 0, work[i], 0, CEPS);
+        }
+        normalize(work, frames);
+
+        String best = null;
+        float bestDistance = Float.POSITIVE_INFINITY;
+        for (int t = 0; t < templates.size(); t++) {
+            float distance = dtw(work, frames, templates.get(t));
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = keywords.get(t);
+            }
+        }
+        float runnerUp = Float.POSITIVE_INFINITY;
+        for (int t = 0; t < templates.size(); t++) {
+            if (!keywords.get(t).equals(best)) {
+                runnerUp = Math.min(runnerUp, dtw(work, frames, templates.get(t)));
+            }
+        }
+
+        if (best != null && bestDistance <= threshold && runnerUp >= bestDistance * (1 + margin)) {
+            listener.onKeyword(best, bestDistance);
+        }
+    }
+
+    // Per-utterance cepstral mean and variance normalization, in place
+    static void normalize(float[][] features, int frames) {
+        for (int c = 0; c < CEPS; c++) {
+            double sum = 0, sumSq = 0;
+            for (int i = 0; i < frames; i++) {
+                sum += features[i][c];
+                sumSq += features[i][c] * features[i][c];
+            }
+            double mean = sum / frames;
+            double std = Math.sqrt(Math.max(sumSq / frames - mean * mean, 1e-6));
+            for (int i = 0; i < frames; i++) {
+                features[i][c] = (float) ((features[i][c] - mean) / std);
+            }
+        }
+    }
+
+    // Symmetric DTW with two rolling rows, normalized by path length bound n + m
+    private float dtw(float[][] a, int n, float[][] b) {
+        int m = b.length;
+        if (n > 2 * m || m > 2 * n) {
+            return Float.POSITIVE_INFINITY;
+        }
+        float[] previous = previousRow;
+        float[] current = currentRow;
+        previous[0] = 0;
+        for (int j = 1; j <= m; j++) {
+            previous[j] = Float.POSITIVE_INFINITY;
+        }
+        for (int i = 1; i <= n; i++) {
+            current[0] = Float.POSITIVE_INFINITY;
+            for (int j = 1; j <= m; j++) {
+                float best = Math.min(previous[j - 1], Math.min(previous[j], current[j - 1]));
+                current[j] = best + distance(a[i - 1], b[j - 1]);
+            }
+            float[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[m] / (n + m);
+    }
+
+    private static float distance(float[] x, float[] y) {
+        float sum = 0;
+        for (int c = 0; c < CEPS; c++) {
+            float d = x[c] - y[c];
+            sum += d * d;
+        }
+        return (float) Math.sqrt(sum);
+    }
+
+    /** Resampling, framing, mel cepstra and the utterance gate. */
+    static final class Frontend {
+
+        interface Sink {
+            void onUtterance(float[][] features, int frames);
+        }
+
+        private final Sink sink;
+        private final double step; // input samples per 16 kHz sample
+        private double position = 0; // fractional read position relative to lastSample
+        private float lastSample = 0;
+
+        private final float[] ring = new float[FRAME];
+        private int ringHead = 0; // oldest sample once the ring is full
+        private int ringFill = 0;
+        private int sinceHop = 0;
+
+        private final float[] window = new float[FRAME];
+        private final float[] re = new float[FFT];
+        private final float[] im = new float[FFT];
+        private final float[] cos = new float[FFT / 2];
+        private final float[] sin = new float[FFT / 2];
+        private final int[] reversed = new int[FFT];
+        private final int[] melStart = new int[MELS];
+        private final float[][] melWeights = new float[MELS][];
+        private final float[] mel = new float[MELS];
+        private final float[][] dct = new float[CEPS][MELS];
+
+        private final float[][] utterance = new float[MAX_FRAMES][CEPS];
+        private int frames = 0;
+        private boolean speech = false;
+        private boolean overflow = false;
+        private int onset = 0;
+        private int silence = 0;
+        private float floor = Float.NaN;
+
+        Frontend(int inputSampleRate, Sink sink) {
+            this.sink = sink;
+            this.step = inputSampleRate / (double) SAMPLE_RATE;
+            for (int i = 0; i < FRAME; i++) {
+                window[i] = (float) (0.54 - 0.46 * Math.cos(2 * Math.PI * i / (FRAME - 1)));
+            }
+            for (int i = 0; i < FFT / 2; i++) {
+                cos[i] = (float) Math.cos(-2 * Math.PI * i / FFT);
+                sin[i] = (float) Math.sin(-2 * Math.PI * i / FFT);
+            }
+            int bits = Integer.numberOfTrailingZeros(FFT);
+            for (int i = 0; i < FFT; i++) {
+                reversed[i] = Integer.reverse(i) >>> (32 - bits);
+            }
+            buildMelBank();
+            for (int c = 0; c < CEPS; c++) {
+                for (int k = 0; k < MELS; k++) {
+                    dct[c][k] = (float) Math.cos(Math.PI * (c + 1) * (k + 0.5) / MELS);
+                }
+            }
+        }
+
+        private static double toMel(double hz) {
+            return 2595 * Math.log10(1 + hz / 700);
+        }
+
+        private static double fromMel(double mel) {
+            return 700 * (Math.pow(10, mel / 2595) - 1);
+        }
+
+        private void buildMelBank() {
+            double low = toMel(100), high = toMel(SAMPLE_RATE / 2.0 - 400);
+            double[] edges = new double[MELS + 2];
+            for (int i = 0; i < edges.length; i++) {
+                edges[i] = fromMel(low + (high - low) * i / (MELS + 1)) * FFT / SAMPLE_RATE;
+            }
+            for (int b = 0; b < MELS; b++) {
+                int start = (int) Math.ceil(edges[b]);
+                int end = (int) Math.floor(edges[b + 2]);
+                melStart[b] = start;
+                melWeights[b] = new float[Math.max(0, end - start + 1)];
+                for (int k = start; k <= end; k++) {
+                    double w = k <= edges[b + 1] ? (k - edges[b]) / (edges[b + 1] - edges[b])
+                            : (edges[b + 2] - k) / (edges[b + 2] - edges[b + 1]);
+                    melWeights[b][k - start] = (float) Math.max(0, w);
+                }
+            }
+        }
+
+        void accept(short[] pcm, int offset, int count) {
+            for (int i = offset; i < offset + count; i++) {
+                float sample = pcm[i];
+                if (step == 1.0) {
+                    push(sample);
+                } else {
+                    // Linear interpolation between the previous and this input sample
+                    while (position < 1.0) {
+                        push((float) (lastSample + (sample - lastSample) * position));
+                        position += step;
+                    }
+                    position -= 1.0;
+                }
+                lastSample = sample;
+            }
+        }
+
+        void flush() {
+            if (speech) {
+                endUtterance(silence);
+            }
+        }
+
+        void reset() {
+            ringHead = 0;
+            ringFill = 0;
+            sinceHop = 0;
+            position = 0;
+            lastSample = 0;
+            frames = 0;
+            speech = false;
+            overflow = false;
+            onset = 0;
+            silence = 0;
+            floor = Float.NaN;
+        }
+
+        private void push(float sample) {
+            if (ringFill < FRAME) {
+                ring[ringFill++] = sample;
+                if (ringFill == FRAME) {
+                    frame();
+                }
+                return;
+            }
+            ring[ringHead] = sample;
+            ringHead = (ringHead + 1) % FRAME;
+            if (++sinceHop == HOP) {
+                sinceHop = 0;
+                frame();
+            }
+        }
+
+        private void frame() {
+            double power = 0;
+            float previous = ring[ringHead];
+            for (int i = 0; i < FRAME; i++) {
+                int index = ringHead + i < FRAME ? ringHead + i : ringHead + i - FRAME;
+                float sample = ring[index];
+                float emphasized = sample - 0.97f * previous;
+                previous = sample;
+                power += sample * (double) sample;
+                re[reversed[i]] = emphasized * window[i];
+            }
+            for (int i = FRAME; i < FFT; i++) {
+                re[reversed[i]] = 0;
+            }
+            for (int i = 0; i < FFT; i++) {
+                im[i] = 0;
+            }
+            float energy = (float) Math.log(power / FRAME + 1.0);
+
+            fft();
+            for (int b = 0; b < MELS; b++) {
+                float sum = 0;
+                float[] weights = melWeights[b];
+                for (int k = 0; k < weights.length; k++) {
+                    int bin = melStart[b] + k;
+                    sum += weights[k] * (re[bin] * re[bin] + im[bin] * im[bin]);
+                }
+                mel[b] = (float) Math.log(sum + 1.0);
+            }
+            gate(energy);
+        }
+
+        // In-place iterative radix-2 FFT; inputs are already in bit-reversed order
+        private void fft() {
+            for (int size = 2; size <= FFT; size <<= 1) {
+                int half = size >> 1;
+                int stride = FFT / size;
+                for (int start = 0; start < FFT; start += size) {
+                    for (int k = 0; k < half; k++) {
+                        float wr = cos[k * stride], wi = sin[k * stride];
+                        int a = start + k, b = a + half;
+                        float tr = wr * re[b] - wi * im[b];
+                        float ti = wr * im[b] + wi * re[b];
+                        re[b] = re[a] - tr;
+                        im[b] = im[a] - ti;
+                        re[a] += tr;
+                        im[a] += ti;
+                    }
+                }
+            }
+        }
+
+        private void gate(float energy) {
+            if (Float.isNaN(floor)) {
+                floor = energy;
+            }
+            boolean loud = energy > floor + START_ABOVE_FLOOR;
+
+            if (!speech) {
+                if (loud) {
+                    storeFrame();
+                    if (++onset >= ONSET_FRAMES) {
+                        speech = true;
+                        silence = 0;
+                    }
+                } else {
+                    onset = 0;
+                    frames = 0;
+                    floor = energy < floor ? energy : floor + 0.05f * (energy - floor);
+                }
+                return;
+            }
+
+            if (energy < floor + END_ABOVE_FLOOR) {
+                silence++;
+            } else {
+                silence = 0;
+            }
+            if (overflow) {
+                floor += 0.01f * (energy - floor); // steady noise slowly becomes the floor
+            } else {
+                storeFrame();
+            }
+            if (silence >= HANGOVER_FRAMES) {
+                endUtterance(silence);
+            }
+        }
+
+        private void storeFrame() {
+            if (frames == MAX_FRAMES) {
+                overflow = true;
+                return;
+            }
+            float[] out = utterance[frames++];
+            for (int c = 0; c < CEPS; c++) {
+                float sum = 0;
+                for (int k = 0; k < MELS; k++) {
+                    sum += dct[c][k] * mel[k];
+                }
+                out[c] = sum;
+            }
+        }
+
+        private void endUtterance(int trailingSilence) {
+            int length = frames - Math.min(trailingSilence, frames);
+            if (!overflow && length >= MIN_FRAMES) {
+                sink.onUtterance(utterance, length);
+            }
+            frames = 0;
+            speech = false;
+            overflow = false;
+            onset = 0;
+            silence = 0;
+        }
+    }
+}
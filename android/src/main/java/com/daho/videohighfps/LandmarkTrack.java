@@ -0,0 +1,273 @@
+package com.daho.videohighfps;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Binary track of every analyzed pose of a take, stored next to the video so
+ * the landmarks never have to be detected again.
+ *
+ * Little-endian. A 32-byte header ({@code "TPAL"}, version, landmark count,
+ * record size, frame size, record count) is followed by fixed-size records,
+ * one per analyzed frame in time order:
+ * <pre>
+ *   i64 videoUs                  presentation time in the video
+ *   u16 x, u16 y  x 33           position, quantized over -0.5..1.5 of the frame
+ *   u8 likelihood x 33           0 = not detected, else 1..255
+ * </pre>
+ * padded to {@link #RECORD_BYTES}. Frames with nobody detected are recorded
+ * with every landmark missing. The {@link Writer} maps the file in chunks and
+ * bumps the header count with every record, so a track cut short by a crash
+ * is still readable up to its last frame.
+ */
+public final class LandmarkTrack {
+
+    static final int MAGIC = 0x4C415054; // "TPAL" as read little-endian
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 32;
+    static final int RECORD_BYTES = 176; // 8 + 33 * 4 + 33, rounded up to 16
+    private static final int COUNT_OFFSET = 20;
+    private static final int XY_OFFSET = 8;
+    private static final int LIKELIHOOD_OFFSET = XY_OFFSET + PoseFrame.LANDMARK_COUNT * 4;
+    private static final int CHUNK_RECORDS = 1024; // ~176 KB mapped at a time
+
+    // Quantization range, in frames: landmarks may fall a little outside the image
+    private static final float MIN_FRACTION = -0.5f;
+    private static final float RANGE = 2f;
+    private static final int Q_MAX = 0xFFFF;
+
+    private LandmarkTrack() {
+    }
+
+    /** Appends poses to a new track file; one thread at a time. */
+    public static final class Writer implements Closeable {
+        private final File file;
+        private final RandomAccessFile raf;
+        private final FileChannel channel;
+        private final MappedByteBuffer header;
+        private MappedByteBuffer chunk;
+        private long chunkFirst = -1;
+        private long count = 0;
+        private long lastUs = Long.MIN_VALUE;
+        private int frameWidth = 0;
+        private int frameHeight = 0;
+        private boolean closed = false;
+
+        public Writer(File file) throws IOException {
+            this.file = file;
+            this.raf = new RandomAccessFile(file, "rw");
+            boolean ok = false;
+            try {
+                raf.setLength(0);
+                channel = raf.getChannel();
+                header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+                header.order(ByteOrder.LITTLE_ENDIAN);
+                header.putInt(0, MAGIC);
+                header.putShort(4, (short) VERSION);
+                header.putShort(6, (short) PoseFrame.LANDMARK_COUNT);
+                header.putInt(8, RECORD_BYTES);
+                header.putLong(COUNT_OFFSET, 0);
+                ok = true;
+            } finally {
+                if (!ok) {
+                    raf.close();
+                }
+            }
+        }
+
+        /**
+         * Records {@code pose} (null when nobody was detected) at {@code videoUs}.
+         * Returns false for a time not after the previous record's.
+         */
+        public boolean append(long videoUs, PoseFrame pose) throws IOException {
+            if (closed) {
+                throw new IOException("Landmark track closed: " + file);
+            }
+            if (videoUs <= lastUs) {
+                return false;
+            }
+            if (frameWidth == 0 && pose != null && pose.getFrameWidth() > 0 && pose.getFrameHeight() > 0) {
+                frameWidth = pose.getFrameWidth();
+                frameHeight = pose.getFrameHeight();
+                header.putInt(12, frameWidth);
+                header.putInt(16, frameHeight);
+            }
+            if (chunk == null || count - chunkFirst >= CHUNK_RECORDS) {
+                chunk = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_BYTES + count * RECORD_BYTES,
+                        (long) CHUNK_RECORDS * RECORD_BYTES);
+                chunk.order(ByteOrder.LITTLE_ENDIAN);
+                chunkFirst = count;
+            }
+            int base = (int) (count - chunkFirst) * RECORD_BYTES;
+            chunk.putLong(base, videoUs);
+            float width = pose != null && pose.getFrameWidth() > 0 ? pose.getFrameWidth() : 1;
+            float height = pose != null && pose.getFrameHeight() > 0 ? pose.getFrameHeight() : 1;
+            for (int i = 0; i < PoseFrame.LANDMARK_COUNT; i++) {
+                boolean present = pose != null && pose.has(i, 0f);
+                int xy = base + XY_OFFSET + i * 4;
+                chunk.putShort(xy, present ? quantize(pose.x(i) / width) : 0);
+                chunk.putShort(xy + 2, present ? quantize(pose.y(i) / height) : 0);
+                int likelihood = present ? Math.max(1, Math.round(Math.min(pose.likelihood(i), 1f) * 255)) : 0;
+                chunk.put(base + LIKELIHOOD_OFFSET + i, (byte) likelihood);
+            }
+            count++;
+            lastUs = videoUs;
+            header.putLong(COUNT_OFFSET, count);
+            return true;
+        }
+
+        public long getFrameCount() {
+            return count;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        /** Flushes the records and trims the unused end of the last chunk. */
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                if (chunk != null) {
+                    chunk.force();
+                }
+                header.force();
+                channel.truncate(HEADER_BYTES + count * RECORD_BYTES);
+            } finally {
+                chunk = null;
+                raf.close();
+            }
+        }
+    }
+
+    /** Random access to a finished (or interrupted) track. */
+    public static final class Reader implements Closeable {
+        private final RandomAccessFile raf;
+        private final ByteBuffer data;
+        private final int frameWidth;
+        private final int frameHeight;
+        private final int count;
+
+        public Reader(File file) throws IOException {
+            raf = new RandomAccessFile(file, "r");
+            boolean ok = false;
+            try {
+                long size = raf.length();
+                if (size < HEADER_BYTES) {
+                    throw new IOException("Not a landmark track: " + file);
+                }
+                data = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+                if (data.getInt(0) != MAGIC || data.getShort(6) != PoseFrame.LANDMARK_COUNT) {
+                    throw new IOException("Not a landmark track: " + file);
+                }
+                if (data.getShort(4) != VERSION || data.getInt(8) != RECORD_BYTES) {
+                    throw new IOException("Unsupported landmark track version " + data.getShort(4) + ": " + file);
+                }
+                frameWidth = data.getInt(12);
+                frameHeight = data.getInt(16);
+                // A writer that did not close leaves mapped space past its last record
+                long available = (size - HEADER_BYTES) / RECORD_BYTES;
+                count = (int) Math.min(data.getLong(COUNT_OFFSET), available);
+                ok = true;
+            } finally {
+                if (!ok) {
+                    raf.close();
+                }
+            }
+        }
+
+        public int getFrameCount() {
+            return count;
+        }
+
+        public int getFrameWidth() {
+            return frameWidth;
+        }
+
+        public int getFrameHeight() {
+            return frameHeight;
+        }
+
+        public long getTimeUs(int index) {
+            return data.getLong(offset(index));
+        }
+
+        /** First record at or after {@code videoUs}; {@link #getFrameCount()} if there is none. */
+        public int indexAtOrAfter(long videoUs) {
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (getTimeUs(mid) < videoUs) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /** Loads record {@code index} into {@code out}, in pixels, stamped with its video time in ns. */
+        public void read(int index, PoseFrame out) {
+            int base = offset(index);
+            out.reset(data.getLong(base) * 1000, frameWidth, frameHeight);
+            float width = frameWidth > 0 ? frameWidth : 1;
+            float height = frameHeight > 0 ? frameHeight : 1;
+            for (int i = 0; i < PoseFrame.LANDMARK_COUNT; i++) {
+                int likelihood = data.get(base + LIKELIHOOD_OFFSET + i) & 0xFF;
+                if (likelihood > 0) {
+                    int xy = base + XY_OFFSET + i * 4;
+                    out.set(i, dequantize(data.getShort(xy)) * width, dequantize(data.getShort(xy + 2)) * height,
+                            likelihood / 255f);
+                }
+            }
+        }
+
+        /**
+         * Record {@code index} as x, y, likelihood per landmark into {@code out}
+         * (at least 99 floats), x and y as fractions of the frame; missing
+         * landmarks are NaN, NaN, 0.
+         */
+        public void readNormalized(int index, float[] out) {
+            int base = offset(index);
+            for (int i = 0; i < PoseFrame.LANDMARK_COUNT; i++) {
+                int likelihood = data.get(base + LIKELIHOOD_OFFSET + i) & 0xFF;
+                int xy = base + XY_OFFSET + i * 4;
+                out[i * 3] = likelihood > 0 ? dequantize(data.getShort(xy)) : Float.NaN;
+                out[i * 3 + 1] = likelihood > 0 ? dequantize(data.getShort(xy + 2)) : Float.NaN;
+                out[i * 3 + 2] = likelihood / 255f;
+            }
+        }
+
+        private int offset(int index) {
+            if (index < 0 || index >= count) {
+                throw new IndexOutOfBoundsException("Record " + index + " of " + count);
+            }
+            return HEADER_BYTES + index * RECORD_BYTES;
+        }
+
+        @Override
+        public void close() throws IOException {
+            raf.close();
+        }
+    }
+
+    static short quantize(float fraction) {
+        float q = (fraction - MIN_FRACTION) / RANGE * Q_MAX;
+        return (short) Math.round(Math.max(0f, Math.min(Q_MAX, q)));
+    }
+
+    static float dequantize(short q) {
+        return (q & 0xFFFF) / (float) Q_MAX * RANGE + MIN_FRACTION;
+    }
+}
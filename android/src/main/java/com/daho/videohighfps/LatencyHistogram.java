@@ -0,0 +1,127 @@
+package com.daho.videohighfps;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of non-negative values, laid out like HdrHistogram:
+ * values below 32 get a bucket each, every power of two above that is split
+ * into 16 linear buckets, so any value is reported within 1/16 (~6%) of the
+ * truth. Values from 2^{@link #MAX_MAGNITUDE} on share the last bucket.
+ *
+ * {@link #record} is a few atomic adds and never allocates or blocks, so
+ * camera, encoder and detector threads can record on their hot paths. Reads
+ * are not atomic snapshots; a value recorded meanwhile may be counted in some
+ * statistics and not yet in others.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS; // per power of two
+    private static final int LINEAR_LIMIT = SUB_BUCKETS * 2; // values below get their own bucket
+    static final int MAX_MAGNITUDE = 40; // 2^40 us is 12 days
+    // Every power of two below 2^MAX_MAGNITUDE, then one bucket for everything above
+    static final int BUCKET_COUNT = (MAX_MAGNITUDE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+
+    /** Adds one value; negative values count as 0. */
+    public void record(long value) {
+        long v = Math.max(0, value);
+        counts.incrementAndGet(bucketOf(v));
+        count.incrementAndGet();
+        sum.addAndGet(v);
+        long low;
+        while (v < (low = min.get()) && !min.compareAndSet(low, v)) {
+            // lost a race with another thread; retry against its value
+        }
+        long high;
+        while (v > (high = max.get()) && !max.compareAndSet(high, v)) {
+            // same
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    /** Smallest value recorded, or 0 if none. */
+    public long getMin() {
+        long v = min.get();
+        return v == Long.MAX_VALUE ? 0 : v;
+    }
+
+    /** Largest value recorded, or 0 if none. */
+    public long getMax() {
+        long v = max.get();
+        return v == Long.MIN_VALUE ? 0 : v;
+    }
+
+    public double getMean() {
+        long n = count.get();
+        return n == 0 ? 0 : (double) sum.get() / n;
+    }
+
+    /**
+     * The value at {@code percentile} (0..100): the highest value of the bucket
+     * that holds it, capped at the largest value recorded. 0 if empty.
+     */
+    public long getPercentile(double percentile) {
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += counts.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestInBucket(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /** Forgets every value. Not atomic against concurrent {@link #record} calls. */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        min.set(Long.MAX_VALUE);
+        max.set(Long.MIN_VALUE);
+    }
+
+    static int bucketOf(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        if (magnitude >= MAX_MAGNITUDE) {
+            return BUCKET_COUNT - 1;
+        }
+        int shift = magnitude - SUB_BUCKET_BITS;
+        // (value >>> shift) is in [16, 32): the linear position within the power of two
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    static long highestInBucket(int bucket) {
+        if (bucket < LINEAR_LIMIT) {
+            return bucket;
+        }
+        if (bucket == BUCKET_COUNT - 1) {
+            return Long.MAX_VALUE;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long sub = bucket % SUB_BUCKETS + SUB_BUCKETS;
+        return ((sub + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,140 @@
+package com.daho.videohighfps;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Allocation-free brightness statistics for the lighting check.
+ *
+ * Reads either the Y plane of a YUV_420_888 frame or an ARGB buffer filled by
+ * one bulk {@code Bitmap.getPixels()} call, sampling every {@code stride}-th
+ * pixel row-major. Each measurement rebuilds a 256-bin histogram in place, from
+ * which mean and percentiles are derived. After construction nothing is
+ * allocated, so the meter can run on every analysis frame.
+ *
+ * Not thread-safe: use one meter per analysis thread.
+ */
+public class LuminanceMeter {
+
+    public static final int BINS = 256;
+
+    private final int[] histogram = new int[BINS];
+    private int[] argbBuffer = new int[0];
+    private int stride;
+    private int sampleCount;
+    private long sum;
+
+    public LuminanceMeter(int stride) {
+        setStride(stride);
+    }
+
+    /** Sample every {@code stride}-th pixel in both directions (1 = every pixel). */
+    public void setStride(int stride) {
+        this.stride = Math.max(1, stride);
+    }
+
+    public int getStride() {
+        return stride;
+    }
+
+    /** Stride giving roughly {@code samplesPerAxis} samples across the wider side. */
+    public static int strideFor(int width, int height, int samplesPerAxis) {
+        return Math.max(1, Math.max(width, height) / Math.max(1, samplesPerAxis));
+    }
+
+    /**
+     * Reusable destination for {@code Bitmap.getPixels()}; grows only when a larger
+     * frame shows up.
+     */
+    public int[] argbBuffer(int pixelCount) {
+        if (argbBuffer.length < pixelCount) {
+            argbBuffer = new int[pixelCount];
+        }
+        return argbBuffer;
+    }
+
+    /**
+     * Measures a Y plane. {@code rowStride} and {@code pixelStride} are the plane
+     * strides reported by {@code Image.Plane}. Returns the mean luma, or -1 if
+     * nothing was sampled.
+     */
+    public int measureLuma(ByteBuffer luma, int width, int height, int rowStride, int pixelStride) {
+        reset();
+        int step = stride;
+        int columnStep = step * pixelStride;
+        for (int y = 0; y < height; y += step) {
+            int index = y * rowStride;
+            int rowEnd = index + width * pixelStride;
+            for (; index < rowEnd; index += columnStep) {
+                int value = luma.get(index) & 0xFF;
+                histogram[value]++;
+                sum += value;
+                sampleCount++;
+            }
+        }
+        return getMean();
+    }
+
+    /**
+     * Measures packed ARGB pixels (row-major, {@code width} per row) using BT.601
+     * integer luma weights. Returns the mean luma, or -1 if nothing was sampled.
+     */
+    public int measureArgb(int[] pixels, int width, int height) {
+        reset();
+        int step = stride;
+        for (int y = 0; y < height; y += step) {
+            int index = y * width;
+            int rowEnd = index + width;
+            for (; index < rowEnd; index += step) {
+                int pixel = pixels[index];
+                int value = (((pixel >> 16) & 0xFF) * 77 + ((pixel >> 8) & 0xFF) * 150 + (pixel & 0xFF) * 29) >> 8;
+                histogram[value]++;
+                sum += value;
+                sampleCount++;
+            }
+        }
+        return getMean();
+    }
+
+    /** Mean luma of the last measurement, -1 if it had no samples. */
+    public int getMean() {
+        return sampleCount == 0 ? -1 : (int) (sum / sampleCount);
+    }
+
+    /**
+     * Luma value below which {@code percentile} percent of the samples fall
+     * (0-100), or -1 if the last measurement had no samples.
+     */
+    public int getPercentile(double percentile) {
+        if (sampleCount == 0) {
+            return -1;
+        }
+
+        long rank = (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100.0 * sampleCount);
+        rank = Math.max(1, rank);
+        long seen = 0;
+        for (int bin = 0; bin < BINS; bin++) {
+            seen += histogram[bin];
+            if (seen >= rank) {
+                return bin;
+            }
+        }
+        return BINS - 1;
+    }
+
+    public int getSampleCount() {
+        return sampleCount;
+    }
+
+    /** Live histogram of the last measurement. Do not modify. */
+    public int[] getHistogram() {
+        return histogram;
+    }
+
+    private void reset() {
+        for (int i = 0; i < BINS; i++) {
+            histogram[i] = 0;
+        }
+        sum = 0;
+        sampleCount = 0;
+    }
+}
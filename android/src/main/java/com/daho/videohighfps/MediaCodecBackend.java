@@ -0,0 +1,887 @@
+package com.daho.videohighfps;
+
+import android.annotation.SuppressLint;
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaCodecList;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+import android.media.MediaRecorder;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.view.Surface;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records by driving MediaCodec (surface input) and MediaMuxer directly.
+ *
+ * The video encoder runs in asynchronous mode with its callbacks on an
+ * "EncoderOutput" thread; audio comes from AudioRecord through an AAC encoder on
+ * an "AudioEncoder" thread. Both feed a {@link MuxerTimeline}, which decides when
+ * the muxer starts and what each sample's timestamp is. Unlike MediaRecorder this
+ * exposes per-take {@link EncoderStats}, keyframe requests and the bitrate mode.
+ *
+ * With a pre-roll configured, the encoders already run after {@link #prepare}
+ * and their output goes into a {@link PreRollRing}; {@link #start()} hands the
+ * ring to the timeline and switches to live output, so the file begins up to
+ * the pre-roll before the start.
+ *
+ * In sentinel mode ({@link RecordingConfig#segmentMs} set) there is no single
+ * output file: the output rotates through short segment files at keyframes and
+ * {@link #requestClip} cuts clips out of them, so the camera can run through a
+ * whole session without a stop and start per repetition.
+ */
+public class MediaCodecBackend implements RecordingBackend {
+
+    private static final String TAG = "MediaCodecBackend";
+    private static final long EOS_TIMEOUT_MS = 2000;
+
+    private static final String AUDIO_MIME = MediaFormat.MIMETYPE_AUDIO_AAC;
+    private static final int AUDIO_SAMPLE_RATE = 44100;
+    private static final int AUDIO_BITRATE = 128_000;
+    private static final long MAX_PRE_ROLL_BYTES = 256L << 20;
+    private static final long CLIP_TIMEOUT_MS = 10_000;
+
+    private final Listener listener;
+    private HandlerThread encoderThread;
+    private Handler encoderHandler;
+
+    private MediaCodec videoEncoder;
+    private MediaMuxer muxer;
+    private Surface inputSurface;
+    private boolean ownsInputSurface;
+    private MuxerTimeline<MediaFormat> timeline;
+    private AudioEncoder audioEncoder;
+    private RecordingConfig config;
+    private CountDownLatch videoEos;
+    private volatile boolean sizeLimitReported;
+
+    private final AtomicLong capturedFrames = new AtomicLong();
+    private final AtomicLong encodedFrames = new AtomicLong();
+    private volatile long maxQueueDepth;
+    private volatile boolean recording;
+
+    // Encoder output goes to the pre-roll ring until the take starts
+    private final Object outputLock = new Object();
+    private PreRollRing preRoll; // kept across takes while its size fits
+    private boolean live = true;
+    private MediaFormat heldVideoFormat;
+    private MediaFormat heldAudioFormat;
+    private volatile PreRollRing.Stats preRollStats;
+
+    // Sentinel mode replaces the muxer and timeline with rotating segments
+    private Sentinel sentinel;
+
+    public MediaCodecBackend(Listener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void prepare(RecordingConfig config, Surface persistentSurface) throws IOException {
+        this.config = config;
+        if (encoderThread == null) {
+            encoderThread = new HandlerThread("EncoderOutput");
+            encoderThread.start();
+            encoderHandler = new Handler(encoderThread.getLooper());
+        }
+
+        videoEncoder = MediaCodec.createEncoderByType(config.codec.mime);
+        MediaFormat format = videoFormat(config, videoEncoder.getCodecInfo());
+        TpaLog.d(TAG, "Video encoder " + videoEncoder.getName() + ": " + format);
+
+        videoEncoder.setCallback(videoCallback, encoderHandler);
+        videoEncoder.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+        if (persistentSurface != null) {
+            videoEncoder.setInputSurface(persistentSurface);
+            inputSurface = persistentSurface;
+            ownsInputSurface = false;
+        } else {
+            inputSurface = videoEncoder.createInputSurface();
+            ownsInputSurface = true;
+        }
+
+        if (config.audio) {
+            try {
+                audioEncoder = new AudioEncoder(config.realtimeTimestamps, config.audioTap);
+            } catch (Exception e) {
+                TpaLog.w(TAG, "Audio unavailable, recording video only", e);
+                audioEncoder = null;
+            }
+        }
+
+        sentinel = config.segmentMs > 0 ? new Sentinel(config, audioEncoder != null) : null;
+        if (sentinel != null) {
+            timeline = null;
+        } else {
+            muxer = new MediaMuxer(config.outputPath, MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+            muxer.setOrientationHint(config.orientationHint);
+            timeline = new MuxerTimeline<>(new MuxerSink(muxer), audioEncoder != null, config.fps);
+            timeline.setMaxBytes(config.maxFileSizeBytes);
+        }
+        sizeLimitReported = false;
+        capturedFrames.set(0);
+        encodedFrames.set(0);
+        maxQueueDepth = 0;
+        videoEos = new CountDownLatch(1);
+
+        preRollStats = null;
+        heldVideoFormat = null;
+        heldAudioFormat = null;
+        if (sentinel != null && (config.preRollMs > 0 || config.preRollMaxBytes > 0)) {
+            TpaLog.w(TAG, "Sentinel mode keeps its own history, ignoring the pre-roll");
+            live = true;
+        } else {
+            live = !armPreRoll(config);
+        }
+        if (!live) {
+            startEncoders();
+        }
+    }
+
+    // Sizes the ring for the window plus one GOP at the configured bitrate; true if pre-roll is on
+    private boolean armPreRoll(RecordingConfig config) {
+        if (config.preRollMs <= 0 && config.preRollMaxBytes <= 0) {
+            return false;
+        }
+        long bytesPerSec = (config.bitrate + AUDIO_BITRATE) / 8L;
+        long capacity;
+        double seconds;
+        if (config.preRollMs > 0) {
+            seconds = config.preRollMs / 1000.0 + config.keyFrameIntervalSec;
+            capacity = (long) (bytesPerSec * seconds * 1.5); // VBR peaks and keyframes
+            if (config.preRollMaxBytes > 0) {
+                capacity = Math.min(capacity, config.preRollMaxBytes);
+            }
+        } else {
+            capacity = config.preRollMaxBytes;
+            seconds = (double) capacity / Math.max(1, bytesPerSec);
+        }
+        capacity = Math.min(capacity, MAX_PRE_ROLL_BYTES);
+        int slots = PreRollRing.samplesFor(seconds, config.fps);
+        long windowUs = config.preRollMs * 1000L;
+
+        PreRollRing ring = preRoll;
+        if (ring == null || ring.getCapacityBytes() != capacity || ring.getMaxSamples() != slots
+                || ring.getWindowUs() != windowUs) {
+            ring = new PreRollRing((int) capacity, windowUs, slots);
+            preRoll = ring;
+        }
+        ring.clear();
+        TpaLog.d(TAG, String.format(Locale.US, "⏪ Pre-roll armed: %d ms window, %.1f MB ring", config.preRollMs,
+                capacity / (1024.0 * 1024.0)));
+        return true;
+    }
+
+    private void startEncoders() {
+        videoEncoder.start();
+        if (audioEncoder != null) {
+            audioEncoder.start();
+        }
+    }
+
+    // Rate control and real-time hints; unsupported modes fall back to VBR
+    private static MediaFormat videoFormat(RecordingConfig config, MediaCodecInfo info) {
+        MediaFormat format = MediaFormat.createVideoFormat(config.codec.mime, config.width, config.height);
+        format.setInteger(MediaFormat.KEY_COLOR_FORMAT, MediaCodecInfo.CodecCapabilities.COLOR_FormatSurface);
+        format.setInteger(MediaFormat.KEY_BIT_RATE, config.bitrate);
+        format.setInteger(MediaFormat.KEY_FRAME_RATE, config.fps);
+        format.setInteger(MediaFormat.KEY_I_FRAME_INTERVAL, config.keyFrameIntervalSec);
+        format.setInteger(MediaFormat.KEY_PRIORITY, 0); // real-time
+        format.setInteger(MediaFormat.KEY_OPERATING_RATE, config.fps);
+
+        MediaCodecInfo.EncoderCapabilities encoder = info.getCapabilitiesForType(config.codec.mime)
+                .getEncoderCapabilities();
+        int mode = bitrateMode(config.bitrateMode);
+        if (!encoder.isBitrateModeSupported(mode)) {
+            TpaLog.w(TAG, config.bitrateMode + " not supported by " + info.getName() + ", using VBR");
+            mode = MediaCodecInfo.EncoderCapabilities.BITRATE_MODE_VBR;
+        }
+        format.setInteger(MediaFormat.KEY_BITRATE_MODE, mode);
+        return format;
+    }
+
+    /**
+     * Highest bitrate any encoder for {@code codec} accepts at this size, or -1 if no
+     * encoder supports the size. The frame rate is not checked: high-speed sessions
+     * feed encoders in batches above their advertised rate.
+     */
+    public static int maxEncoderBitrate(RecordingConfig.Codec codec, int width, int height) {
+        int best = -1;
+        for (MediaCodecInfo info : new MediaCodecList(MediaCodecList.REGULAR_CODECS).getCodecInfos()) {
+            if (!info.isEncoder()) {
+                continue;
+            }
+            for (String type : info.getSupportedTypes()) {
+                if (!type.equalsIgnoreCase(codec.mime)) {
+                    continue;
+                }
+                MediaCodecInfo.VideoCapabilities video = info.getCapabilitiesForType(type).getVideoCapabilities();
+                if (video != null && video.isSizeSupported(width, height)) {
+                    best = Math.max(best, video.getBitrateRange().getUpper());
+                }
+            }
+        }
+        return best;
+    }
+
+    private static int bitrateMode(RecordingConfig.BitrateMode mode) {
+        switch (mode) {
+            case CBR:
+                return MediaCodecInfo.EncoderCapabilities.BITRATE_MODE_CBR;
+            case CQ:
+                return MediaCodecInfo.EncoderCapabilities.BITRATE_MODE_CQ;
+            default:
+                return MediaCodecInfo.EncoderCapabilities.BITRATE_MODE_VBR;
+        }
+    }
+
+    @Override
+    public Surface getInputSurface() {
+        return inputSurface;
+    }
+
+    @Override
+    public void start() {
+        synchronized (outputLock) {
+            if (live) {
+                startEncoders();
+            } else {
+                if (heldVideoFormat != null) {
+                    timeline.setFormat(MuxerTimeline.Track.VIDEO, heldVideoFormat);
+                }
+                if (heldAudioFormat != null) {
+                    timeline.setFormat(MuxerTimeline.Track.AUDIO, heldAudioFormat);
+                }
+                PreRollRing.Stats stats = preRoll.drainTo(timeline::writeSample);
+                preRollStats = stats;
+                live = true;
+                TpaLog.d(TAG, String.format(Locale.US, "⏪ Pre-roll: %d ms, %d samples, %.1f of %.1f MB",
+                        stats.spanUs / 1000, stats.samples, stats.bytes / (1024.0 * 1024.0),
+                        stats.capacityBytes / (1024.0 * 1024.0)));
+            }
+        }
+        recording = true;
+    }
+
+    @Override
+    public void pause() {
+        if (sentinel != null) {
+            TpaLog.d(TAG, "Sentinel recording does not pause");
+            return;
+        }
+        timeline.pause(nowUs());
+    }
+
+    @Override
+    public void resume() {
+        if (sentinel != null) {
+            return;
+        }
+        timeline.resume(nowUs());
+    }
+
+    @Override
+    public boolean stop() {
+        recording = false;
+        if (audioEncoder != null) {
+            audioEncoder.stop();
+        }
+        try {
+            videoEncoder.signalEndOfInputStream();
+            if (!videoEos.await(EOS_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                TpaLog.w(TAG, "Video encoder did not reach end of stream in " + EOS_TIMEOUT_MS + " ms");
+            }
+        } catch (IllegalStateException e) {
+            TpaLog.w(TAG, "Encoder was not running", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (sentinel != null) {
+            boolean recorded = sentinel.finish();
+            TpaLog.d(TAG, "Sentinel recording finished");
+            return recorded;
+        }
+
+        boolean written;
+        try {
+            written = timeline.finish();
+        } catch (IllegalStateException e) {
+            TpaLog.w(TAG, "MediaMuxer.stop() failed", e);
+            written = false;
+        }
+        TpaLog.d(TAG, "Take finished: " + getStats());
+        return written;
+    }
+
+    @Override
+    public void reset() {
+        recording = false;
+        if (sentinel != null) {
+            sentinel.release();
+            sentinel = null;
+        }
+        if (audioEncoder != null) {
+            audioEncoder.release();
+            audioEncoder = null;
+        }
+        if (videoEncoder != null) {
+            try {
+                videoEncoder.stop();
+            } catch (IllegalStateException ignored) {
+                // Already stopped or never started
+            }
+            videoEncoder.release();
+            videoEncoder = null;
+        }
+        if (timeline != null) {
+            timeline.finish();
+        }
+        if (muxer != null) {
+            muxer.release();
+            muxer = null;
+        }
+        if (ownsInputSurface && inputSurface != null) {
+            inputSurface.release();
+        }
+        inputSurface = null;
+    }
+
+    @Override
+    public void release() {
+        reset();
+        if (encoderThread != null) {
+            encoderThread.quitSafely();
+            encoderThread = null;
+            encoderHandler = null;
+        }
+    }
+
+    @Override
+    public void requestKeyFrame() {
+        MediaCodec encoder = videoEncoder;
+        if (encoder != null && recording) {
+            Bundle params = new Bundle();
+            params.putInt(MediaCodec.PARAMETER_KEY_REQUEST_SYNC_FRAME, 0);
+            encoder.setParameters(params);
+        }
+    }
+
+    @Override
+    public void onFrameCaptured() {
+        if (recording) {
+            long depth = capturedFrames.incrementAndGet() - encodedFrames.get();
+            if (depth > maxQueueDepth) {
+                maxQueueDepth = depth;
+            }
+        }
+    }
+
+    @Override
+    public PreRollRing.Stats getPreRollStats() {
+        return preRollStats;
+    }
+
+    @Override
+    public long getStartPtsUs() {
+        MuxerTimeline<MediaFormat> t = timeline;
+        return t != null ? t.getBaseUs() : -1;
+    }
+
+    @Override
+    public boolean requestClip(long preMs, long postMs, String outputPath, ClipListener listener) {
+        Sentinel s = sentinel;
+        if (s == null || !recording) {
+            return false;
+        }
+        s.request(nowUs(), preMs * 1000L, postMs * 1000L, outputPath, listener);
+        return true;
+    }
+
+    @Override
+    public EncoderStats getStats() {
+        MuxerTimeline<MediaFormat> t = timeline;
+        if (t == null) {
+            return null;
+        }
+        long captured = capturedFrames.get();
+        long encoded = encodedFrames.get();
+        return new EncoderStats(captured, encoded, t.getDroppedFrames(), t.getKeyFrames(),
+                Math.max(0, captured - encoded), maxQueueDepth, t.getBytesWritten(), t.getDurationUs());
+    }
+
+    private long nowUs() {
+        return (config != null && config.realtimeTimestamps ? SystemClock.elapsedRealtimeNanos() : System.nanoTime())
+                / 1000;
+    }
+
+    private final MediaCodec.Callback videoCallback = new MediaCodec.Callback() {
+        @Override
+        public void onInputBufferAvailable(MediaCodec codec, int index) {
+            // Surface input: never called
+        }
+
+        @Override
+        public void onOutputBufferAvailable(MediaCodec codec, int index, MediaCodec.BufferInfo info) {
+            ByteBuffer buffer = codec.getOutputBuffer(index);
+            if (buffer != null && info.size > 0 && (info.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) == 0) {
+                buffer.position(info.offset);
+                buffer.limit(info.offset + info.size);
+                if (writeSample(MuxerTimeline.Track.VIDEO, buffer, info.presentationTimeUs, info.flags)) {
+                    encodedFrames.incrementAndGet();
+                }
+            }
+            codec.releaseOutputBuffer(index, false);
+
+            MuxerTimeline<MediaFormat> t = timeline;
+            if (t != null && t.isFull() && !sizeLimitReported) {
+                sizeLimitReported = true;
+                listener.onMaxFileSizeReached();
+            }
+            if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                videoEos.countDown();
+            }
+        }
+
+        @Override
+        public void onError(MediaCodec codec, MediaCodec.CodecException e) {
+            TpaLog.e(TAG, "Video encoder error", e);
+            videoEos.countDown();
+            listener.onError("Video encoder error: " + e.getDiagnosticInfo(), e);
+        }
+
+        @Override
+        public void onOutputFormatChanged(MediaCodec codec, MediaFormat format) {
+            TpaLog.d(TAG, "Video output format: " + format);
+            setFormat(MuxerTimeline.Track.VIDEO, format);
+        }
+    };
+
+    // Encoder threads: live output goes to the timeline, earlier output to the pre-roll ring
+    private boolean writeSample(MuxerTimeline.Track track, ByteBuffer buffer, long ptsUs, int flags) {
+        synchronized (outputLock) {
+            if (live && sentinel != null) {
+                return sentinel.write(track, buffer, ptsUs, flags);
+            }
+            if (live) {
+                return timeline.writeSample(track, buffer, ptsUs, flags);
+            }
+            if ((flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) == 0) {
+                preRoll.add(track, buffer, ptsUs, flags);
+            }
+            return false;
+        }
+    }
+
+    private void setFormat(MuxerTimeline.Track track, MediaFormat format) {
+        synchronized (outputLock) {
+            if (live && sentinel != null) {
+                sentinel.setFormat(track, format);
+            } else if (live) {
+                timeline.setFormat(track, format);
+            } else if (track == MuxerTimeline.Track.VIDEO) {
+                heldVideoFormat = format;
+            } else {
+                heldAudioFormat = format;
+            }
+        }
+    }
+
+    private static final class MuxerSink implements MuxerTimeline.Sink<MediaFormat> {
+        private final MediaMuxer muxer;
+        private final MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+
+        MuxerSink(MediaMuxer muxer) {
+            this.muxer = muxer;
+        }
+
+        @Override
+        public int addTrack(MediaFormat format) {
+            return muxer.addTrack(format);
+        }
+
+        @Override
+        public void start() {
+            muxer.start();
+        }
+
+        @Override
+        public void writeSample(int trackIndex, ByteBuffer data, long presentationTimeUs, int flags) {
+            // Called under the timeline lock, so one BufferInfo is enough
+            info.set(data.position(), data.remaining(), presentationTimeUs, flags);
+            muxer.writeSampleData(trackIndex, data, info);
+        }
+
+        @Override
+        public void stop() {
+            muxer.stop();
+        }
+    }
+
+    /**
+     * Sentinel mode. Encoder output goes to the newest segment file; a new one
+     * opens on the first video keyframe {@link RecordingConfig#segmentMs} after the
+     * last. The previous segment stays open for audio encoded before the cut, then
+     * is closed on the "SegmentCloser" thread, which also cuts the clips whose
+     * post-roll is now on disk and deletes segments no clip needs any more.
+     * Fields are guarded by {@link #outputLock}; the ring is thread-safe.
+     */
+    private final class Sentinel {
+        private final RecordingConfig config;
+        private final boolean hasAudio;
+        private final long segmentUs;
+        private final long frameUs;
+        private final File dir;
+        private final SegmentRing ring;
+        private final ExecutorService closer = Executors.newSingleThreadExecutor(r -> new Thread(r, "SegmentCloser"));
+        private MediaFormat videoFormat;
+        private MediaFormat audioFormat;
+        private OpenSegment current;
+        private OpenSegment previous; // until audio passes the cut
+        private int nextIndex;
+        private long lastVideoUs = -1;
+        private boolean finished;
+        private volatile boolean released;
+
+        Sentinel(RecordingConfig config, boolean hasAudio) throws IOException {
+            this.config = config;
+            this.hasAudio = hasAudio;
+            this.segmentUs = config.segmentMs * 1000L;
+            this.frameUs = 1_000_000L / Math.max(1, config.fps);
+            this.ring = new SegmentRing(Math.max(config.sentinelRetainMs, config.segmentMs) * 1000L);
+            File parent = new File(config.outputPath).getParentFile();
+            dir = new File(parent, "sentinel-" + System.currentTimeMillis());
+            if (!dir.mkdirs()) {
+                throw new IOException("Failed to create segment directory: " + dir.getAbsolutePath());
+            }
+            TpaLog.d(TAG, "🛰 Sentinel: " + config.segmentMs + " ms segments in " + dir.getName());
+        }
+
+        void setFormat(MuxerTimeline.Track track, MediaFormat format) {
+            if (track == MuxerTimeline.Track.VIDEO) {
+                videoFormat = format;
+            } else {
+                audioFormat = format;
+            }
+        }
+
+        boolean write(MuxerTimeline.Track track, ByteBuffer buffer, long ptsUs, int flags) {
+            if (finished) {
+                return false;
+            }
+            if (track == MuxerTimeline.Track.VIDEO) {
+                boolean key = (flags & MuxerTimeline.FLAG_KEY_FRAME) != 0;
+                if (key && videoFormat != null && (!hasAudio || audioFormat != null)
+                        && (current == null || ptsUs - current.segment.startUs >= segmentUs)) {
+                    rotate(ptsUs);
+                }
+                if (current == null) {
+                    return false;
+                }
+                lastVideoUs = ptsUs;
+                return current.timeline.writeSample(track, buffer, ptsUs, flags);
+            }
+
+            if (current == null) {
+                return false;
+            }
+            if (ptsUs < current.segment.startUs) {
+                return previous != null && previous.timeline.writeSample(track, buffer, ptsUs, flags);
+            }
+            if (previous != null) {
+                close(previous, current.segment.startUs);
+                previous = null;
+            }
+            return current.timeline.writeSample(track, buffer, ptsUs, flags);
+        }
+
+        void request(long nowUs, long preUs, long postUs, String path, ClipListener listener) {
+            ring.request(nowUs, preUs, postUs, new ClipRequest(path, listener));
+            TpaLog.d(TAG, "✂️ Clip requested: -" + preUs / 1000 + " / +" + postUs / 1000 + " ms");
+        }
+
+        private void rotate(long startUs) {
+            if (previous != null) {
+                close(previous, current.segment.startUs); // audio never caught up
+            }
+            previous = current;
+            File file = new File(dir, String.format(Locale.US, "seg_%04d.mp4", nextIndex++));
+            try {
+                MediaMuxer segmentMuxer = new MediaMuxer(file.getAbsolutePath(),
+                        MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+                segmentMuxer.setOrientationHint(config.orientationHint);
+                MuxerTimeline<MediaFormat> segmentTimeline = new MuxerTimeline<>(new MuxerSink(segmentMuxer),
+                        hasAudio, config.fps);
+                segmentTimeline.setFormat(MuxerTimeline.Track.VIDEO, videoFormat);
+                if (hasAudio) {
+                    segmentTimeline.setFormat(MuxerTimeline.Track.AUDIO, audioFormat);
+                }
+                current = new OpenSegment(ring.open(file.getAbsolutePath(), startUs), segmentMuxer, segmentTimeline);
+            } catch (IOException | IllegalStateException e) {
+                TpaLog.e(TAG, "Failed to open segment " + file.getName(), e);
+                current = null; // retried at the next keyframe
+            }
+            if (previous != null && (!hasAudio || current == null)) {
+                close(previous, startUs);
+                previous = null;
+            }
+        }
+
+        private void close(OpenSegment open, long endUs) {
+            closer.execute(() -> {
+                try {
+                    open.timeline.finish();
+                } catch (IllegalStateException e) {
+                    TpaLog.w(TAG, "Segment did not finish cleanly: " + open.segment.path, e);
+                }
+                open.muxer.release();
+                ring.close(open.segment, endUs);
+                for (SegmentRing.Clip clip : ring.takeReady()) {
+                    cut(clip);
+                }
+                for (SegmentRing.Segment old : ring.evict(endUs)) {
+                    new File(old.path).delete();
+                }
+            });
+        }
+
+        // SegmentCloser thread
+        private void cut(SegmentRing.Clip clip) {
+            ClipRequest request = (ClipRequest) clip.tag;
+            if (released) {
+                ring.done(clip);
+                request.listener.onClipFailed(request.path, new IOException("Recording was released"));
+                return;
+            }
+            try {
+                ClipExtractor.Result result = ClipExtractor.extract(ring.segmentsFor(clip), clip.fromUs,
+                        clip.getToUs(), request.path, config.orientationHint);
+                TpaLog.d(TAG, String.format(Locale.US, "✂️ Clip written: %d ms, %.1f MB", result.durationUs / 1000,
+                        result.bytes / (1024.0 * 1024.0)));
+                request.listener.onClipReady(request.path, result.durationUs, result.bytes);
+            } catch (IOException | RuntimeException e) {
+                TpaLog.e(TAG, "Clip extraction failed", e);
+                request.listener.onClipFailed(request.path, e);
+            } finally {
+                ring.done(clip);
+            }
+        }
+
+        /** Encoders have stopped: closes the last segments and cuts what is still pending. */
+        boolean finish() {
+            boolean recorded;
+            synchronized (outputLock) {
+                if (finished) {
+                    return false;
+                }
+                finished = true;
+                recorded = current != null;
+                if (previous != null) {
+                    close(previous, current != null ? current.segment.startUs : lastVideoUs + frameUs);
+                    previous = null;
+                }
+                if (current != null) {
+                    close(current, lastVideoUs + frameUs);
+                    current = null;
+                }
+            }
+            closer.execute(() -> {
+                for (SegmentRing.Clip clip : ring.takeAll()) {
+                    cut(clip); // post-roll cut short by the stop
+                }
+            });
+            closer.shutdown();
+            try {
+                if (!closer.awaitTermination(CLIP_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                    TpaLog.w(TAG, "Clips still being cut after " + CLIP_TIMEOUT_MS + " ms");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            deleteSegments();
+            return recorded;
+        }
+
+        void release() {
+            released = true;
+            synchronized (outputLock) {
+                finished = true;
+                for (OpenSegment open : new OpenSegment[] { previous, current }) {
+                    if (open != null) {
+                        try {
+                            open.timeline.finish();
+                        } catch (IllegalStateException ignored) {
+                            // Nothing written yet
+                        }
+                        open.muxer.release();
+                    }
+                }
+                previous = null;
+                current = null;
+            }
+            closer.shutdown(); // queued closes still release their muxers; clips are skipped
+            try {
+                closer.awaitTermination(EOS_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            deleteSegments();
+        }
+
+        private void deleteSegments() {
+            for (SegmentRing.Segment segment : ring.clear()) {
+                new File(segment.path).delete();
+            }
+            dir.delete();
+        }
+    }
+
+    private static final class OpenSegment {
+        final SegmentRing.Segment segment;
+        final MediaMuxer muxer;
+        final MuxerTimeline<MediaFormat> timeline;
+
+        OpenSegment(SegmentRing.Segment segment, MediaMuxer muxer, MuxerTimeline<MediaFormat> timeline) {
+            this.segment = segment;
+            this.muxer = muxer;
+            this.timeline = timeline;
+        }
+    }
+
+    private static final class ClipRequest {
+        final String path;
+        final ClipListener listener;
+
+        ClipRequest(String path, ClipListener listener) {
+            this.path = path;
+            this.listener = listener;
+        }
+    }
+
+    /** Microphone → AAC on its own thread, timestamped on the camera's clock. Same MIC source as MediaRecorderBackend. */
+    private final class AudioEncoder implements Runnable {
+        private final boolean realtimeClock;
+        private final RecordingBackend.AudioTap tap;
+        private final AudioRecord audioRecord;
+        private final MediaCodec codec;
+        private final int chunkBytes;
+        private Thread thread;
+        private volatile boolean running;
+
+        @SuppressLint("MissingPermission") // RECORD_AUDIO is part of the plugin's camera permission alias
+        AudioEncoder(boolean realtimeClock, RecordingBackend.AudioTap tap) throws IOException {
+            this.realtimeClock = realtimeClock;
+            this.tap = tap;
+            int minBuffer = AudioRecord.getMinBufferSize(AUDIO_SAMPLE_RATE, AudioFormat.CHANNEL_IN_MONO,
+                    AudioFormat.ENCODING_PCM_16BIT);
+            chunkBytes = 2048;
+            audioRecord = new AudioRecord(MediaRecorder.AudioSource.MIC, AUDIO_SAMPLE_RATE,
+                    AudioFormat.CHANNEL_IN_MONO, AudioFormat.ENCODING_PCM_16BIT, Math.max(minBuffer, chunkBytes * 4));
+            if (audioRecord.getState() != AudioRecord.STATE_INITIALIZED) {
+                audioRecord.release();
+                throw new IOException("AudioRecord failed to initialize");
+            }
+
+            MediaFormat format = MediaFormat.createAudioFormat(AUDIO_MIME, AUDIO_SAMPLE_RATE, 1);
+            format.setInteger(MediaFormat.KEY_AAC_PROFILE, MediaCodecInfo.CodecProfileLevel.AACObjectLC);
+            format.setInteger(MediaFormat.KEY_BIT_RATE, AUDIO_BITRATE);
+            format.setInteger(MediaFormat.KEY_MAX_INPUT_SIZE, chunkBytes);
+            codec = MediaCodec.createEncoderByType(AUDIO_MIME);
+            codec.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+        }
+
+        void start() {
+            codec.start();
+            audioRecord.startRecording();
+            running = true;
+            thread = new Thread(this, "AudioEncoder");
+            thread.start();
+        }
+
+        void stop() {
+            running = false;
+            if (thread != null) {
+                try {
+                    thread.join(EOS_TIMEOUT_MS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                thread = null;
+            }
+        }
+
+        void release() {
+            stop();
+            try {
+                audioRecord.stop();
+            } catch (IllegalStateException ignored) {
+                // Never started
+            }
+            audioRecord.release();
+            try {
+                codec.stop();
+            } catch (IllegalStateException ignored) {
+                // Never started
+            }
+            codec.release();
+        }
+
+        @Override
+        public void run() {
+            MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+            boolean inputDone = false;
+            boolean outputDone = false;
+            while (!outputDone) {
+                if (!inputDone) {
+                    int in = codec.dequeueInputBuffer(10_000);
+                    if (in >= 0) {
+                        ByteBuffer buffer = codec.getInputBuffer(in);
+                        buffer.clear();
+                        int read = audioRecord.read(buffer, Math.min(buffer.capacity(), chunkBytes));
+                        if (tap != null && read > 0) {
+                            tap.onAudio(buffer, 0, read, AUDIO_SAMPLE_RATE);
+                        }
+                        long nowUs = (realtimeClock ? SystemClock.elapsedRealtimeNanos() : System.nanoTime()) / 1000;
+                        // The chunk started one chunk-duration before it was returned
+                        long ptsUs = nowUs - Math.max(0, read) / 2 * 1_000_000L / AUDIO_SAMPLE_RATE;
+                        inputDone = !running;
+                        codec.queueInputBuffer(in, 0, Math.max(0, read), ptsUs,
+                                inputDone ? MediaCodec.BUFFER_FLAG_END_OF_STREAM : 0);
+                    }
+                }
+
+                int out;
+                while ((out = codec.dequeueOutputBuffer(info, 0)) != MediaCodec.INFO_TRY_AGAIN_LATER) {
+                    if (out == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                        setFormat(MuxerTimeline.Track.AUDIO, codec.getOutputFormat());
+                    } else if (out >= 0) {
+                        ByteBuffer buffer = codec.getOutputBuffer(out);
+                        if (buffer != null && info.size > 0) {
+                            buffer.position(info.offset);
+                            buffer.limit(info.offset + info.size);
+                            writeSample(MuxerTimeline.Track.AUDIO, buffer, info.presentationTimeUs, info.flags);
+                        }
+                        codec.releaseOutputBuffer(out, false);
+                        if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                            outputDone = true;
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.daho.videohighfps;
+
+import android.media.MediaRecorder;
+import android.view.Surface;
+
+import java.io.IOException;
+
+/**
+ * The original recording path: MediaRecorder with a surface video source and
+ * AAC audio from the microphone. Encoder internals are not visible, so
+ * {@link #getStats()} returns null and the bitrate mode is left to the device.
+ */
+public class MediaRecorderBackend implements RecordingBackend {
+
+    private static final String TAG = "MediaRecorderBackend";
+
+    private final Listener listener;
+    private MediaRecorder mediaRecorder;
+    private Surface persistentSurface;
+
+    public MediaRecorderBackend(Listener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void prepare(RecordingConfig config, Surface persistentSurface) throws IOException {
+        // A reset recorder is reused, only the output file changes
+        if (mediaRecorder == null) {
+            mediaRecorder = new MediaRecorder();
+        }
+        this.persistentSurface = persistentSurface;
+
+        if (config.audio) {
+            mediaRecorder.setAudioSource(MediaRecorder.AudioSource.MIC);
+        }
+        mediaRecorder.setVideoSource(MediaRecorder.VideoSource.SURFACE);
+        mediaRecorder.setOutputFormat(MediaRecorder.OutputFormat.MPEG_4);
+        mediaRecorder.setOutputFile(config.outputPath); // use file path
+        if (config.audio) {
+            mediaRecorder.setAudioEncoder(MediaRecorder.AudioEncoder.AAC);
+        }
+        mediaRecorder.setVideoEncoder(config.codec == RecordingConfig.Codec.HEVC
+                ? MediaRecorder.VideoEncoder.HEVC
+                : MediaRecorder.VideoEncoder.H264);
+
+        mediaRecorder.setVideoEncodingBitRate(config.bitrate);
+        mediaRecorder.setVideoFrameRate(config.fps);
+        mediaRecorder.setVideoSize(config.width, config.height);
+        mediaRecorder.setOrientationHint(config.orientationHint);
+
+        if (config.maxFileSizeBytes > 0) {
+            mediaRecorder.setMaxFileSize(config.maxFileSizeBytes);
+            TpaLog.d(TAG, "Max file size set: " + config.maxFileSizeBytes + " bytes");
+        }
+
+        mediaRecorder.setOnInfoListener((mr, what, extra) -> {
+            if (what == MediaRecorder.MEDIA_RECORDER_INFO_MAX_FILESIZE_REACHED) {
+                listener.onMaxFileSizeReached();
+            }
+        });
+
+        if (persistentSurface != null) {
+            // Same surface for every take, so the capture session never has to change
+            mediaRecorder.setInputSurface(persistentSurface);
+        }
+
+        mediaRecorder.prepare();
+        TpaLog.d(TAG, "MediaRecorder prepared (file output mode)");
+    }
+
+    @Override
+    public Surface getInputSurface() {
+        // With a persistent input surface MediaRecorder.getSurface() must not be used
+        return persistentSurface != null ? persistentSurface : mediaRecorder.getSurface();
+    }
+
+    @Override
+    public void start() {
+        mediaRecorder.start();
+    }
+
+    @Override
+    public void pause() {
+        mediaRecorder.pause();
+    }
+
+    @Override
+    public void resume() {
+        mediaRecorder.resume();
+    }
+
+    @Override
+    public boolean stop() {
+        try {
+            mediaRecorder.stop();
+            return true;
+        } catch (RuntimeException e) {
+            // Thrown when no valid audio/video data was received
+            TpaLog.w(TAG, "MediaRecorder.stop() failed", e);
+            return false;
+        }
+    }
+
+    @Override
+    public void reset() {
+        if (mediaRecorder != null) {
+            mediaRecorder.reset();
+        }
+    }
+
+    @Override
+    public void release() {
+        if (mediaRecorder != null) {
+            try {
+                mediaRecorder.reset();
+                mediaRecorder.release();
+            } finally {
+                mediaRecorder = null;
+            }
+        }
+    }
+
+    @Override
+    public void requestKeyFrame() {
+        // Not exposed by MediaRecorder
+    }
+
+    @Override
+    public void onFrameCaptured() {
+        // Queue depth is not observable here
+    }
+
+    @Override
+    public EncoderStats getStats() {
+        return null;
+    }
+
+    @Override
+    public PreRollRing.Stats getPreRollStats() {
+        return null; // MediaRecorder cannot encode before start()
+    }
+
+    @Override
+    public long getStartPtsUs() {
+        return -1; // the recorder keeps its timestamps to itself
+    }
+
+    @Override
+    public boolean requestClip(long preMs, long postMs, String outputPath, ClipListener listener) {
+        return false; // one file per take; segments need control of the muxer
+    }
+}
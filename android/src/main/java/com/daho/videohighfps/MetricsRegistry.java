@@ -0,0 +1,123 @@
+package com.daho.videohighfps;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Named counters, gauges and {@link LatencyHistogram}s for one camera session.
+ *
+ * Look a metric up once and keep the reference: updating it is lock-free,
+ * while the lookup goes through a map. {@link #reset()} zeroes every metric in
+ * place, so kept references stay valid across sessions. Names are dotted,
+ * e.g. {@code capture.framesDelivered}; histogram names end in their unit.
+ */
+public class MetricsRegistry {
+
+    public static final class Counter {
+        private final AtomicLong value = new AtomicLong();
+
+        public void increment() {
+            value.incrementAndGet();
+        }
+
+        public void add(long delta) {
+            value.addAndGet(delta);
+        }
+
+        public long get() {
+            return value.get();
+        }
+    }
+
+    /** The latest value of something; unset gauges are left out of snapshots. */
+    public static final class Gauge {
+        private volatile double value;
+        private volatile boolean set = false;
+
+        public void set(double value) {
+            this.value = value;
+            this.set = true;
+        }
+
+        public double get() {
+            return value;
+        }
+
+        public boolean isSet() {
+            return set;
+        }
+
+        void clear() {
+            set = false;
+            value = 0;
+        }
+    }
+
+    static final double[] PERCENTILES = { 50, 90, 99 };
+
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private final Map<String, Gauge> gauges = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+    public Counter counter(String name) {
+        Counter counter = counters.get(name);
+        return counter != null ? counter : counters.computeIfAbsent(name, n -> new Counter());
+    }
+
+    public Gauge gauge(String name) {
+        Gauge gauge = gauges.get(name);
+        return gauge != null ? gauge : gauges.computeIfAbsent(name, n -> new Gauge());
+    }
+
+    public LatencyHistogram histogram(String name) {
+        LatencyHistogram histogram = histograms.get(name);
+        return histogram != null ? histogram : histograms.computeIfAbsent(name, n -> new LatencyHistogram());
+    }
+
+    /** Zeroes everything for a new session. */
+    public void reset() {
+        for (Counter counter : counters.values()) {
+            counter.value.set(0);
+        }
+        for (Gauge gauge : gauges.values()) {
+            gauge.clear();
+        }
+        for (LatencyHistogram histogram : histograms.values()) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * Every metric by name, sorted: counters as Long, gauges as Double and
+     * non-empty histograms as a map of count, min, mean, p50, p90, p99 and max.
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> out = new TreeMap<>();
+        for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+            out.put(entry.getKey(), entry.getValue().get());
+        }
+        for (Map.Entry<String, Gauge> entry : gauges.entrySet()) {
+            if (entry.getValue().isSet()) {
+                out.put(entry.getKey(), entry.getValue().get());
+            }
+        }
+        for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            if (histogram.getCount() == 0) {
+                continue;
+            }
+            Map<String, Object> summary = new TreeMap<>();
+            summary.put("count", histogram.getCount());
+            summary.put("min", histogram.getMin());
+            summary.put("mean", Math.round(histogram.getMean() * 10) / 10.0);
+            for (double p : PERCENTILES) {
+                summary.put("p" + (int) p, histogram.getPercentile(p));
+            }
+            summary.put("max", histogram.getMax());
+            out.put(entry.getKey(), summary);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,68 @@
+package com.daho.videohighfps;
+
+import com.google.mlkit.vision.pose.Pose;
+import com.google.mlkit.vision.pose.PoseDetection;
+import com.google.mlkit.vision.pose.PoseDetector;
+import com.google.mlkit.vision.pose.PoseLandmark;
+import com.google.mlkit.vision.pose.defaults.PoseDetectorOptions;
+
+import java.util.List;
+
+/**
+ * ML Kit stream-mode pose detection on analysis frames, for {@link PoseService}.
+ * Each result is converted once into a pooled {@link PoseFrame}; callbacks arrive
+ * on the main thread.
+ */
+public class MlKitPoseDetector implements PoseService.Detector<AnalysisFrame, PoseFrame> {
+
+    // At 15 fps analysis a frame stays valid for about half a second
+    private static final int POOL_SIZE = 8;
+
+    private final PoseDetector detector = PoseDetection.getClient(new PoseDetectorOptions.Builder()
+            .setDetectorMode(PoseDetectorOptions.STREAM_MODE)
+            .build());
+    private final PoseFrame.Pool pool = new PoseFrame.Pool(POOL_SIZE);
+
+    @Override
+    public void detect(AnalysisFrame frame, PoseService.Callback<PoseFrame> callback) {
+        final long timestampNs = frame.getTimestampNs();
+        final int width = frame.getWidth();
+        final int height = frame.getHeight();
+
+        // The service keeps the frame open until a callback has run
+        try {
+            detector.process(frame.getInputImage()).addOnCompleteListener(task -> {
+                if (task.isSuccessful()) {
+                    callback.onPose(toPoseFrame(task.getResult(), timestampNs, width, height));
+                } else {
+                    callback.onFailure(task.getException() != null ? task.getException()
+                            : new IllegalStateException("Pose detection canceled"));
+                }
+            });
+        } catch (RuntimeException e) {
+            callback.onFailure(e);
+        }
+    }
+
+    private PoseFrame toPoseFrame(Pose pose, long timestampNs, int width, int height) {
+        PoseFrame out = pool.acquire(timestampNs, width, height);
+        if (pose == null) {
+            return out;
+        }
+
+        List<PoseLandmark> landmarks = pose.getAllPoseLandmarks();
+        for (int i = 0, n = landmarks.size(); i < n; i++) {
+            PoseLandmark landmark = landmarks.get(i);
+            int type = landmark.getLandmarkType();
+            if (type >= 0 && type < PoseFrame.LANDMARK_COUNT) {
+                out.set(type, landmark.getPosition().x, landmark.getPosition().y, landmark.getInFrameLikelihood());
+            }
+        }
+        return out;
+    }
+
+    @Override
+    public void close() {
+        detector.close();
+    }
+}
@@ -0,0 +1,155 @@
+package com.daho.videohighfps;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Turns the caller's constraints and a camera's {@link CameraCapabilities} into a
+ * ranked list of capture modes to try, best first.
+ *
+ * Every mode the camera advertises is generated once, modes that break a hard
+ * constraint or are known to fail on this device are removed, and the rest are
+ * scored: frame rate relative to the request dominates (slow motion is the point
+ * of this plugin), then resolution relative to the preferred one, plus a small
+ * bonus for modes that already configured on this device. Session setup walks
+ * the list in order, so there is no separate fallback ladder.
+ */
+public class ModeNegotiator {
+
+    /** Thermal / battery headroom, mapped to a cap on pixels per second. */
+    public enum PowerBudget {
+        FULL(0),
+        REDUCED(1920L * 1080 * 120),
+        MINIMAL(1920L * 1080 * 30);
+
+        final long maxPixelRate;
+
+        PowerBudget(long maxPixelRate) {
+            this.maxPixelRate = maxPixelRate;
+        }
+    }
+
+    /** What the caller asked for. */
+    public static final class Constraints {
+        public int requestedFps = 240;
+        public int minFps = 30;
+        public int preferredWidth = 1920;
+        public int preferredHeight = 1080;
+        public long maxBitrate = 0; // bits/s, 0 = no limit
+        public PowerBudget budget = PowerBudget.FULL;
+    }
+
+    /** A mode with the score it was ranked by. */
+    public static final class Candidate {
+        public final CaptureMode mode;
+        public final double score;
+        public final int estimatedBitrate;
+
+        Candidate(CaptureMode mode, double score, int estimatedBitrate) {
+            this.mode = mode;
+            this.score = score;
+            this.estimatedBitrate = estimatedBitrate;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%s score=%.1f ~%.1f Mbps", mode, score, estimatedBitrate / 1e6);
+        }
+    }
+
+    static final int MAX_BITRATE = 50_000_000;
+    static final double BITS_PER_PIXEL = 0.07;
+    private static final int MIN_STANDARD_WIDTH = 640;
+    private static final int[] STANDARD_FPS = { 60, 30 };
+
+    private static final double FPS_WEIGHT = 100;
+    private static final double RESOLUTION_WEIGHT = 10;
+    private static final double KNOWN_GOOD_BONUS = 5;
+
+    /** Same heuristic the recorder uses: 0.07 bits per pixel, capped at 50 Mbps. */
+    public static int estimateBitrate(int width, int height, int fps) {
+        long base = (long) (width * (long) height * fps * BITS_PER_PIXEL);
+        return (int) Math.min(base, MAX_BITRATE);
+    }
+
+    /**
+     * Ranked candidates, best first. Empty if nothing satisfies the constraints.
+     */
+    public List<Candidate> negotiate(Constraints constraints, CameraCapabilities capabilities) {
+        List<Candidate> candidates = new ArrayList<>();
+        for (CaptureMode mode : enumerate(capabilities)) {
+            if (!isAllowed(mode, constraints, capabilities)) {
+                continue;
+            }
+            candidates.add(new Candidate(mode, score(mode, constraints, capabilities),
+                    estimateBitrate(mode.width, mode.height, mode.fps)));
+        }
+
+        Collections.sort(candidates, (a, b) -> {
+            int byScore = Double.compare(b.score, a.score);
+            if (byScore != 0)
+                return byScore;
+            int byThroughput = Long.compare(b.mode.pixelRate(), a.mode.pixelRate());
+            if (byThroughput != 0)
+                return byThroughput;
+            // Same size and rate: a regular session is the cheaper, more compatible choice
+            return Boolean.compare(a.mode.highSpeed, b.mode.highSpeed);
+        });
+        return candidates;
+    }
+
+    // Every mode the capabilities advertise, each once
+    private Set<CaptureMode> enumerate(CameraCapabilities capabilities) {
+        Set<CaptureMode> modes = new LinkedHashSet<>();
+
+        for (CameraCapabilities.HighSpeedRange range : capabilities.getHighSpeedRanges()) {
+            // Recording needs a fixed rate; the upper bound of each range is one
+            modes.add(new CaptureMode(range.width, range.height, range.maxFps, true));
+        }
+
+        int maxStandardFps = capabilities.maxStandardFps();
+        for (CameraCapabilities.VideoSize size : capabilities.getVideoSizes()) {
+            if (size.width < MIN_STANDARD_WIDTH) {
+                continue;
+            }
+            for (int fps : STANDARD_FPS) {
+                if (fps <= maxStandardFps) {
+                    modes.add(new CaptureMode(size.width, size.height, fps, false));
+                }
+            }
+        }
+        return modes;
+    }
+
+    private boolean isAllowed(CaptureMode mode, Constraints constraints, CameraCapabilities capabilities) {
+        if (mode.fps < constraints.minFps || mode.fps > Math.max(constraints.requestedFps, constraints.minFps)) {
+            return false;
+        }
+        if (mode.width > constraints.preferredWidth || mode.height > constraints.preferredHeight) {
+            return false;
+        }
+        if (constraints.budget.maxPixelRate > 0 && mode.pixelRate() > constraints.budget.maxPixelRate) {
+            return false;
+        }
+        if (constraints.maxBitrate > 0 && estimateBitrate(mode.width, mode.height, mode.fps) > constraints.maxBitrate) {
+            return false;
+        }
+        return capabilities.getOutcome(mode) != CameraCapabilities.Outcome.FAILED;
+    }
+
+    private double score(CaptureMode mode, Constraints constraints, CameraCapabilities capabilities) {
+        double fpsScore = (double) mode.fps / Math.max(1, constraints.requestedFps);
+        double preferredArea = (double) constraints.preferredWidth * constraints.preferredHeight;
+        double resolutionScore = Math.min(1.0, mode.width * (double) mode.height / preferredArea);
+
+        double score = FPS_WEIGHT * fpsScore + RESOLUTION_WEIGHT * resolutionScore;
+        if (capabilities.getOutcome(mode) == CameraCapabilities.Outcome.CONFIGURED) {
+            score += KNOWN_GOOD_BONUS;
+        }
+        return score;
+    }
+}
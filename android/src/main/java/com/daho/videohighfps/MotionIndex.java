@@ -0,0 +1,307 @@
+package com.daho.videohighfps;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Indexes a take by the athlete's motion, so playback can jump to the action.
+ *
+ * Fed the smoothed pose of every analyzed frame while recording. Each frame's
+ * motion is the mean landmark speed since the previous pose, in body heights
+ * per second (the unit {@link PoseStabilizer} uses). High-motion intervals open
+ * at {@link #ENTER_MOTION}, close below {@link #EXIT_MOTION}, and nearby ones
+ * are merged. Every second of video also gets a summary: motion, pose coverage
+ * and the mean position of the main landmarks.
+ *
+ * Times are milliseconds into the video, as mapped by a {@link VideoClock};
+ * frames the clock places outside the file (paused spans) break the motion
+ * signal like a lost pose. Memory grows by one summary per second and one
+ * entry per interval; nothing per frame is kept.
+ */
+public class MotionIndex {
+
+    public static final class Interval {
+        public final long startMs;
+        public final long endMs;
+        public final long peakMs;
+        public final float peakMotion;
+
+        Interval(long startMs, long endMs, long peakMs, float peakMotion) {
+            this.startMs = startMs;
+            this.endMs = endMs;
+            this.peakMs = peakMs;
+            this.peakMotion = peakMotion;
+        }
+    }
+
+    public static final float ENTER_MOTION = 0.8f; // body heights per second
+    public static final float EXIT_MOTION = 0.4f;
+    static final long MIN_INTERVAL_MS = 200;
+    static final long MERGE_GAP_MS = 300;
+
+    /** Landmarks summarized per second, in output order. */
+    static final int[] SUMMARY_LANDMARKS = {
+            PoseFrame.NOSE,
+            PoseFrame.LEFT_SHOULDER, PoseFrame.RIGHT_SHOULDER,
+            PoseFrame.LEFT_ELBOW, PoseFrame.RIGHT_ELBOW,
+            PoseFrame.LEFT_WRIST, PoseFrame.RIGHT_WRIST,
+            PoseFrame.LEFT_HIP, PoseFrame.RIGHT_HIP,
+            PoseFrame.LEFT_KNEE, PoseFrame.RIGHT_KNEE,
+            PoseFrame.LEFT_ANKLE, PoseFrame.RIGHT_ANKLE,
+    };
+    static final String[] SUMMARY_NAMES = {
+            "nose", "leftShoulder", "rightShoulder", "leftElbow", "rightElbow", "leftWrist", "rightWrist",
+            "leftHip", "rightHip", "leftKnee", "rightKnee", "leftAnkle", "rightAnkle",
+    };
+
+    private static final int SUMMARY_COUNT = SUMMARY_LANDMARKS.length;
+
+    private static final class Second {
+        final long index;
+        int frames;
+        int poses;
+        double motionSum;
+        int motionCount;
+        float peakMotion;
+        final double[] sums = new double[SUMMARY_COUNT * 2];
+        final int[] counts = new int[SUMMARY_COUNT];
+
+        Second(long index) {
+            this.index = index;
+        }
+    }
+
+    private final VideoClock clock;
+
+    private final PoseFrame previous = new PoseFrame();
+    private boolean hasPrevious = false;
+    private final float[] box = new float[4];
+
+    private final List<Interval> intervals = new ArrayList<>();
+    private long openStartMs = -1;
+    private long openPeakMs;
+    private float openPeak;
+    private long lastMs = -1;
+
+    private final List<Second> seconds = new ArrayList<>();
+    private Second second;
+    private boolean finished = false;
+
+    public MotionIndex(VideoClock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * One analyzed frame; {@code pose} is the smoothed pose, or null when nobody
+     * was detected. Frames must come in timestamp order.
+     */
+    public synchronized void add(long timestampNs, PoseFrame pose) {
+        if (finished) {
+            return;
+        }
+        long us = clock.toVideoUs(timestampNs);
+        if (us < 0) {
+            closeInterval(lastMs);
+            hasPrevious = false;
+            return;
+        }
+        long ms = us / 1000;
+        if (ms <= lastMs) {
+            return;
+        }
+        Second s = secondAt(ms);
+        s.frames++;
+
+        if (pose == null || pose.isEmpty()) {
+            closeInterval(lastMs); // nobody to measure; the motion is unknown
+            hasPrevious = false;
+            lastMs = ms;
+            return;
+        }
+        s.poses++;
+        summarize(s, pose);
+
+        if (hasPrevious) {
+            float dt = (ms - lastMs) / 1000f;
+            float motion = motion(previous, pose, dt);
+            s.motionSum += motion;
+            s.motionCount++;
+            s.peakMotion = Math.max(s.peakMotion, motion);
+            track(lastMs, ms, motion);
+        }
+        previous.copyFrom(pose);
+        hasPrevious = true;
+        lastMs = ms;
+    }
+
+    /** Closes what is still open; later frames are ignored. */
+    public synchronized void finish() {
+        if (!finished) {
+            closeInterval(lastMs);
+            finished = true;
+        }
+    }
+
+    public synchronized List<Interval> getIntervals() {
+        return new ArrayList<>(intervals);
+    }
+
+    /** Seconds of video with at least one analyzed frame. */
+    public synchronized int getSecondCount() {
+        return seconds.size();
+    }
+
+    public synchronized long getDurationMs() {
+        return Math.max(0, lastMs);
+    }
+
+    /** The sidecar document for {@code videoName}; coordinates are fractions of the frame. */
+    public synchronized String toJson(String videoName) {
+        StringBuilder out = new StringBuilder(256 + seconds.size() * 300);
+        out.append("{\"version\":1,\"video\":");
+        quote(out, videoName);
+        out.append(",\"durationMs\":").append(getDurationMs());
+        out.append(",\"motionUnit\":\"bodyHeightsPerSecond\"");
+        out.append(",\"enterMotion\":").append(format(ENTER_MOTION));
+        out.append(",\"exitMotion\":").append(format(EXIT_MOTION));
+
+        out.append(",\"intervals\":[");
+        for (int i = 0; i < intervals.size(); i++) {
+            Interval interval = intervals.get(i);
+            out.append(i > 0 ? "," : "").append("{\"startMs\":").append(interval.startMs)
+                    .append(",\"endMs\":").append(interval.endMs)
+                    .append(",\"peakMs\":").append(interval.peakMs)
+                    .append(",\"peakMotion\":").append(format(interval.peakMotion)).append('}');
+        }
+
+        out.append("],\"landmarks\":[");
+        for (int i = 0; i < SUMMARY_COUNT; i++) {
+            out.append(i > 0 ? "," : "");
+            quote(out, SUMMARY_NAMES[i]);
+        }
+
+        out.append("],\"seconds\":[");
+        for (int i = 0; i < seconds.size(); i++) {
+            Second s = seconds.get(i);
+            out.append(i > 0 ? "," : "").append("{\"t\":").append(s.index)
+                    .append(",\"frames\":").append(s.frames)
+                    .append(",\"poses\":").append(s.poses)
+                    .append(",\"meanMotion\":")
+                    .append(format(s.motionCount > 0 ? (float) (s.motionSum / s.motionCount) : 0f))
+                    .append(",\"peakMotion\":").append(format(s.peakMotion))
+                    .append(",\"xy\":[");
+            for (int k = 0; k < SUMMARY_COUNT; k++) {
+                out.append(k > 0 ? "," : "");
+                if (s.counts[k] == 0) {
+                    out.append("null,null");
+                } else {
+                    out.append(format((float) (s.sums[2 * k] / s.counts[k]))).append(',')
+                            .append(format((float) (s.sums[2 * k + 1] / s.counts[k])));
+                }
+            }
+            out.append("]}");
+        }
+        out.append("]}");
+        return out.toString();
+    }
+
+    private Second secondAt(long ms) {
+        long index = ms / 1000;
+        if (second == null || second.index != index) {
+            second = new Second(index);
+            seconds.add(second);
+        }
+        return second;
+    }
+
+    private static void summarize(Second s, PoseFrame pose) {
+        float width = pose.getFrameWidth() > 0 ? pose.getFrameWidth() : 1;
+        float height = pose.getFrameHeight() > 0 ? pose.getFrameHeight() : 1;
+        for (int k = 0; k < SUMMARY_COUNT; k++) {
+            int landmark = SUMMARY_LANDMARKS[k];
+            if (pose.has(landmark, PoseStabilizer.MIN_LIKELIHOOD)) {
+                s.sums[2 * k] += pose.x(landmark) / width;
+                s.sums[2 * k + 1] += pose.y(landmark) / height;
+                s.counts[k]++;
+            }
+        }
+    }
+
+    // Mean landmark speed in body heights per second, as in PoseStabilizer
+    private float motion(PoseFrame from, PoseFrame to, float dt) {
+        if (dt <= 0 || !PoseGeometry.boundingBox(to, PoseStabilizer.MIN_LIKELIHOOD, box)) {
+            return 0;
+        }
+        double sum = 0;
+        int n = 0;
+        for (int i = 0; i < PoseFrame.LANDMARK_COUNT; i++) {
+            if (from.has(i, PoseStabilizer.MIN_LIKELIHOOD) && to.has(i, PoseStabilizer.MIN_LIKELIHOOD)) {
+                float dx = to.x(i) - from.x(i);
+                float dy = to.y(i) - from.y(i);
+                sum += Math.sqrt(dx * dx + dy * dy);
+                n++;
+            }
+        }
+        float scale = to.getFrameHeight() > 0 ? to.getFrameHeight() : 1;
+        float bodyHeight = Math.max(box[PoseGeometry.MAX_Y] - box[PoseGeometry.MIN_Y], 0.1f * scale);
+        return n == 0 ? 0 : (float) (sum / n / bodyHeight / dt);
+    }
+
+    // Hysteresis: the motion between fromMs and toMs opens, extends or closes an interval
+    private void track(long fromMs, long toMs, float motion) {
+        if (openStartMs < 0) {
+            if (motion >= ENTER_MOTION) {
+                openStartMs = fromMs;
+                openPeak = motion;
+                openPeakMs = toMs;
+            }
+            return;
+        }
+        if (motion < EXIT_MOTION) {
+            closeInterval(toMs);
+        } else if (motion > openPeak) {
+            openPeak = motion;
+            openPeakMs = toMs;
+        }
+    }
+
+    private void closeInterval(long endMs) {
+        if (openStartMs < 0) {
+            return;
+        }
+        long startMs = openStartMs;
+        openStartMs = -1;
+        if (!intervals.isEmpty()) {
+            Interval last = intervals.get(intervals.size() - 1);
+            if (startMs - last.endMs <= MERGE_GAP_MS) {
+                boolean peakHere = openPeak > last.peakMotion;
+                intervals.set(intervals.size() - 1, new Interval(last.startMs, endMs,
+                        peakHere ? openPeakMs : last.peakMs, Math.max(openPeak, last.peakMotion)));
+                return;
+            }
+        }
+        if (endMs - startMs >= MIN_INTERVAL_MS) {
+            intervals.add(new Interval(startMs, endMs, openPeakMs, openPeak));
+        }
+    }
+
+    private static String format(float value) {
+        return String.format(Locale.US, "%.3f", value);
+    }
+
+    private static void quote(StringBuilder out, String value) {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < 0x20) {
+                out.append(String.format(Locale.US, "\\u%04x", (int) c));
+            } else {
+                out.append(c);
+            }
+        }
+        out.append('"');
+    }
+}
@@ -0,0 +1,281 @@
+package com.daho.videohighfps;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Track and timestamp bookkeeping between the encoders and the muxer.
+ *
+ * A muxer can only start once every track's format is known, and the file
+ * should begin on a video keyframe with audio aligned to it. This class holds
+ * early samples until both are true, rebases presentation times so the file
+ * starts at 0, cuts paused spans out of the timeline, enforces monotonic audio
+ * and counts what was written and what was lost (gaps in the video timestamps
+ * larger than one and a half frame intervals count as dropped frames).
+ *
+ * Generic over the format type and free of Android classes, so the muxing rules
+ * can be tested with synthetic encoded buffers; the backend plugs MediaMuxer in
+ * through {@link Sink}.
+ */
+public class MuxerTimeline<F> {
+
+    // Same values as MediaCodec.BUFFER_FLAG_*
+    public static final int FLAG_KEY_FRAME = 1;
+    public static final int FLAG_CODEC_CONFIG = 2;
+    public static final int FLAG_END_OF_STREAM = 4;
+
+    public enum Track {
+        VIDEO, AUDIO
+    }
+
+    public interface Sink<F> {
+        int addTrack(F format);
+
+        void start();
+
+        void writeSample(int trackIndex, ByteBuffer data, long presentationTimeUs, int flags);
+
+        void stop();
+    }
+
+    private static final int MAX_PENDING_SAMPLES = 256;
+
+    private static final class Pending {
+        final Track track;
+        final ByteBuffer data;
+        final long ptsUs;
+        final int flags;
+
+        Pending(Track track, ByteBuffer data, long ptsUs, int flags) {
+            this.track = track;
+            this.data = data;
+            this.ptsUs = ptsUs;
+            this.flags = flags;
+        }
+    }
+
+    private final Sink<F> sink;
+    private final boolean hasAudio;
+    private final long frameIntervalUs;
+    private final Map<Track, Integer> trackIndex = new EnumMap<>(Track.class);
+    private final ArrayDeque<Pending> pending = new ArrayDeque<>();
+
+    private boolean started = false;
+    private boolean finished = false;
+    private long baseUs = -1; // raw pts of the first video keyframe
+    private long pauseOffsetUs = 0;
+    private long previousOffsetUs = 0; // for late samples from before the last pause
+    private long pausedAtUs = -1;
+    private long cutStartUs = Long.MAX_VALUE;
+    private long cutEndUs = Long.MAX_VALUE;
+    private long maxBytes = 0;
+
+    private long lastVideoOutUs = -1;
+    private long lastAudioOutUs = -1;
+    private long lastOutUs = 0;
+
+    private long videoFrames = 0;
+    private long keyFrames = 0;
+    private long audioSamples = 0;
+    private long droppedFrames = 0;
+    private long discardedSamples = 0;
+    private long bytesWritten = 0;
+
+    public MuxerTimeline(Sink<F> sink, boolean hasAudio, int fps) {
+        this.sink = sink;
+        this.hasAudio = hasAudio;
+        this.frameIntervalUs = 1_000_000L / Math.max(1, fps);
+    }
+
+    /** Stop accepting samples once this many bytes are written; 0 = no limit. */
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /** An encoder reported its output format. Starts the sink once all tracks are known. */
+    public synchronized void setFormat(Track track, F format) {
+        if (finished || trackIndex.containsKey(track)) {
+            return;
+        }
+        trackIndex.put(track, sink.addTrack(format));
+        if (trackIndex.containsKey(Track.VIDEO) && (!hasAudio || trackIndex.containsKey(Track.AUDIO))) {
+            sink.start();
+            started = true;
+            flushPending();
+        }
+    }
+
+    /**
+     * Offers one encoded sample, with {@code ptsUs} on the shared capture clock. The
+     * buffer is only read during this call. Returns false if it was discarded.
+     */
+    public synchronized boolean writeSample(Track track, ByteBuffer data, long ptsUs, int flags) {
+        if (finished || (flags & FLAG_CODEC_CONFIG) != 0 || data.remaining() == 0) {
+            return false;
+        }
+        if (isFull()) {
+            discardedSamples++;
+            return false;
+        }
+
+        // Paused spans are cut out of the file
+        if ((pausedAtUs >= 0 && ptsUs >= pausedAtUs) || (ptsUs >= cutStartUs && ptsUs < cutEndUs)) {
+            discardedSamples++;
+            return false;
+        }
+
+        if (track == Track.VIDEO && baseUs < 0) {
+            if ((flags & FLAG_KEY_FRAME) == 0) {
+                discardedSamples++; // the file must open on a keyframe
+                return false;
+            }
+            baseUs = ptsUs;
+            dropPendingBefore(baseUs);
+        }
+        if (!started || baseUs < 0) {
+            queue(track, data, ptsUs, flags);
+            return true;
+        }
+        flushPending();
+        return write(track, data, ptsUs, flags);
+    }
+
+    /** Starts cutting samples at {@code nowUs} (capture clock). */
+    public synchronized void pause(long nowUs) {
+        if (pausedAtUs < 0) {
+            pausedAtUs = nowUs;
+        }
+    }
+
+    /** Resumes; the paused span is removed from the output timeline. */
+    public synchronized void resume(long nowUs) {
+        if (pausedAtUs >= 0) {
+            previousOffsetUs = pauseOffsetUs;
+            pauseOffsetUs += Math.max(0, nowUs - pausedAtUs);
+            cutStartUs = pausedAtUs;
+            cutEndUs = nowUs;
+            pausedAtUs = -1;
+        }
+    }
+
+    /** Stops the sink if it was started. Returns false if nothing was written. */
+    public synchronized boolean finish() {
+        if (finished) {
+            return videoFrames > 0;
+        }
+        finished = true;
+        pending.clear();
+        if (started) {
+            sink.stop();
+        }
+        return started && videoFrames > 0;
+    }
+
+    public synchronized boolean isStarted() {
+        return started;
+    }
+
+    public synchronized boolean isFull() {
+        return maxBytes > 0 && bytesWritten >= maxBytes;
+    }
+
+    public synchronized long getVideoFrames() {
+        return videoFrames;
+    }
+
+    public synchronized long getKeyFrames() {
+        return keyFrames;
+    }
+
+    public synchronized long getAudioSamples() {
+        return audioSamples;
+    }
+
+    /** Video frames missing from the timeline, estimated from timestamp gaps. */
+    public synchronized long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    /** Samples thrown away before the first keyframe, while paused or past the size limit. */
+    public synchronized long getDiscardedSamples() {
+        return discardedSamples;
+    }
+
+    public synchronized long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /** Capture-clock time the file starts at (its first keyframe), or -1 before it. */
+    public synchronized long getBaseUs() {
+        return baseUs;
+    }
+
+    /** Presentation time of the latest written sample. */
+    public synchronized long getDurationUs() {
+        return lastOutUs;
+    }
+
+    private boolean write(Track track, ByteBuffer data, long ptsUs, int flags) {
+        long outUs = ptsUs - baseUs - (ptsUs < cutStartUs ? previousOffsetUs : pauseOffsetUs);
+        if (outUs < 0) {
+            discardedSamples++;
+            return false;
+        }
+
+        if (track == Track.AUDIO) {
+            // AAC frames must be strictly increasing
+            if (outUs <= lastAudioOutUs) {
+                outUs = lastAudioOutUs + 1;
+            }
+            lastAudioOutUs = outUs;
+            audioSamples++;
+        } else {
+            // Gaps are measured on the output timeline, so a pause is not a drop
+            if (lastVideoOutUs >= 0 && outUs > lastVideoOutUs) {
+                long gapUs = outUs - lastVideoOutUs;
+                if (gapUs * 2 > frameIntervalUs * 3) {
+                    droppedFrames += Math.round((double) gapUs / frameIntervalUs) - 1;
+                }
+            }
+            lastVideoOutUs = Math.max(lastVideoOutUs, outUs);
+            videoFrames++;
+            if ((flags & FLAG_KEY_FRAME) != 0) {
+                keyFrames++;
+            }
+        }
+
+        bytesWritten += data.remaining();
+        lastOutUs = Math.max(lastOutUs, outUs);
+        sink.writeSample(trackIndex.get(track), data, outUs, flags & ~FLAG_END_OF_STREAM);
+        return true;
+    }
+
+    private void queue(Track track, ByteBuffer data, long ptsUs, int flags) {
+        if (pending.size() >= MAX_PENDING_SAMPLES) {
+            pending.removeFirst();
+            discardedSamples++;
+        }
+        ByteBuffer copy = ByteBuffer.allocate(data.remaining());
+        copy.put(data.duplicate());
+        copy.flip();
+        pending.addLast(new Pending(track, copy, ptsUs, flags));
+    }
+
+    private void dropPendingBefore(long ptsUs) {
+        int before = pending.size();
+        pending.removeIf(p -> p.ptsUs < ptsUs);
+        discardedSamples += before - pending.size();
+    }
+
+    private void flushPending() {
+        if (baseUs < 0) {
+            return;
+        }
+        while (!pending.isEmpty()) {
+            Pending p = pending.removeFirst();
+            write(p.track, p.data, p.ptsUs, p.flags);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.daho.videohighfps;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * A decoded mono 16-bit sound, ready to be written to an AudioTrack.
+ *
+ * {@link #decodeWav} reads the RIFF/WAVE files written by
+ * {@code TextToSpeech.synthesizeToFile}: 16-bit PCM, any rate, stereo mixed
+ * down. Engines that stream the file may leave the RIFF and data sizes at 0 or
+ * -1, so a data chunk without a usable size runs to the end of the file.
+ */
+public class PcmClip {
+
+    public final int sampleRate;
+    public final short[] samples;
+
+    public PcmClip(int sampleRate, short[] samples) {
+        this.sampleRate = sampleRate;
+        this.samples = samples;
+    }
+
+    public long getDurationMs() {
+        return samples.length * 1000L / sampleRate;
+    }
+
+    public static PcmClip decodeWav(byte[] wav) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(wav).order(ByteOrder.LITTLE_ENDIAN);
+        if (wav.length < 12 || !"RIFF".equals(tag(in, 0)) || !"WAVE".equals(tag(in, 8))) {
+            throw new IOException("Not a WAVE file");
+        }
+
+        int channels = 0, sampleRate = 0, bits = 0;
+        int pos = 12;
+        while (pos + 8 <= wav.length) {
+            String id = tag(in, pos);
+            int size = in.getInt(pos + 4);
+            int body = pos + 8;
+            if ("fmt ".equals(id)) {
+                if (size < 16 || body + 16 > wav.length) {
+                    throw new IOException("Truncated fmt chunk");
+                }
+                int format = in.getShort(body) & 0xffff;
+                channels = in.getShort(body + 2);
+                sampleRate = in.getInt(body + 4);
+                bits = in.getShort(body + 14);
+                if (format != 1 && format != 0xfffe) { // PCM or WAVE_FORMAT_EXTENSIBLE
+                    throw new IOException("Unsupported WAVE format " + format);
+                }
+            } else if ("data".equals(id)) {
+                if (channels <= 0 || sampleRate <= 0) {
+                    throw new IOException("data chunk before fmt chunk");
+                }
+                if (bits != 16) {
+                    throw new IOException("Unsupported sample size " + bits);
+                }
+                int end = (size <= 0 || body + size > wav.length) ? wav.length : body + size;
+                return new PcmClip(sampleRate, mixDown(in, body, end, channels));
+            }
+            if (size < 0 || body + size > wav.length) {
+                break;
+            }
+            pos = body + size + (size & 1); // chunks are word aligned
+        }
+        throw new IOException("No data chunk");
+    }
+
+    /** Stable file name for a phrase, e.g. for a cache directory. */
+    public static String fileNameFor(String phrase) {
+        return UUID.nameUUIDFromBytes(phrase.getBytes(StandardCharsets.UTF_8)) + ".wav";
+    }
+
+    private static short[] mixDown(ByteBuffer in, int start, int end, int channels) {
+        int frames = (end - start) / (2 * channels);
+        short[] out = new short[frames];
+        for (int f = 0, p = start; f < frames; f++) {
+            int sum = 0;
+            for (int c = 0; c < channels; c++, p += 2) {
+                sum += in.getShort(p);
+            }
+            out[f] = (short) (sum / channels);
+        }
+        return out;
+    }
+
+    private static String tag(ByteBuffer in, int pos) {
+        byte[] id = new byte[4];
+        for (int i = 0; i < 4; i++) {
+            id[i] = in.get(pos + i);
+        }
+        return new String(id, StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,287 @@
+package com.daho.videohighfps;
+
+import android.content.Context;
+import android.media.AudioAttributes;
+import android.media.AudioFormat;
+import android.media.AudioTrack;
+import android.os.Bundle;
+import android.speech.tts.TextToSpeech;
+import android.speech.tts.Voice;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Fixed prompts, synthesized once with {@code synthesizeToFile} and kept in
+ * memory as PCM, so speaking one is a write to an AudioTrack that is already
+ * open instead of a round trip through the TTS engine.
+ *
+ * Files live in {@code files/feedback-phrases/<voice>/}. Clips from the last
+ * voice are loaded right away, so cached prompts play before the engine has
+ * even started; once it has, a different locale or voice discards them and the
+ * phrases are synthesized again. Anything not cached is left to live TTS.
+ *
+ * Disk work and playback run on the "PhraseCache" thread; completion is
+ * reported through the {@link Listener}, on that thread.
+ */
+public class PhraseCache {
+
+    private static final String TAG = "PhraseCache";
+
+    public interface Listener {
+        void onPlaybackDone(String utteranceId);
+    }
+
+    public static final String UTTERANCE_PREFIX = "phrase_cache:";
+    private static final String DIR = "feedback-phrases";
+    private static final String VOICE_FILE = "voice";
+    private static final int WRITE_CHUNK = 1024; // ~40 ms at TTS rates, the granularity of stop()
+    private static final long DRAIN_TIMEOUT_MS = 2000;
+
+    private final File root;
+    private final Listener listener;
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(r -> new Thread(r, "PhraseCache"));
+    private final Set<String> phrases = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private final Map<String, PcmClip> clips = new ConcurrentHashMap<>();
+
+    private volatile String voice; // key of the voice the clips belong to
+    private volatile int generation; // bumped by stop(), ends the playback it belongs to
+    private AudioTrack track; // worker thread only
+    private int trackRate;
+
+    public PhraseCache(Context context, Listener listener) {
+        this.root = new File(context.getFilesDir(), DIR);
+        this.listener = listener;
+        worker.execute(() -> voice = readVoice());
+    }
+
+    /** Adds phrases to keep cached; those already on disk for the last voice load now. */
+    public void add(String... texts) {
+        for (String text : texts) {
+            phrases.add(text);
+        }
+        worker.execute(() -> {
+            for (String text : texts) {
+                load(text);
+            }
+        });
+    }
+
+    /**
+     * Called once the engine is ready: drops clips of another voice and
+     * synthesizes whatever is missing. Synthesis ids start with
+     * {@link #UTTERANCE_PREFIX}; pass their completion to {@link #onSynthesisDone}.
+     */
+    public void sync(TextToSpeech tts) {
+        String current = voiceKey(tts);
+        worker.execute(() -> {
+            if (!current.equals(voice)) {
+                TpaLog.d(TAG, "Voice changed from " + voice + " to " + current + ", discarding cached phrases");
+                clips.clear();
+                // Clips of the current voice are still valid, so only other voices' files go
+                File[] voices = root.listFiles();
+                if (voices != null) {
+                    for (File dir : voices) {
+                        if (dir.isDirectory() && !dir.getName().equals(current)) {
+                            deleteRecursively(dir);
+                        }
+                    }
+                }
+                voice = current;
+                writeVoice(current);
+            }
+            File dir = new File(root, current);
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                TpaLog.w(TAG, "Cannot create " + dir);
+                return;
+            }
+            for (String text : phrases) {
+                if (!clips.containsKey(text)) {
+                    File file = new File(dir, PcmClip.fileNameFor(text));
+                    // Queued behind earlier requests; live speech must not use QUEUE_FLUSH meanwhile
+                    tts.synthesizeToFile(text, new Bundle(), file, UTTERANCE_PREFIX + text);
+                }
+            }
+        });
+    }
+
+    /** Synthesis finished; loads the new file. */
+    public void onSynthesisDone(String utteranceId) {
+        String text = utteranceId.substring(UTTERANCE_PREFIX.length());
+        worker.execute(() -> load(text));
+    }
+
+    public boolean has(String text) {
+        return clips.containsKey(text);
+    }
+
+    /**
+     * Plays a cached phrase; {@link Listener#onPlaybackDone} follows once it has
+     * been heard, or after {@link #stop()}. Returns false if it is not cached.
+     */
+    public boolean play(String text, String utteranceId) {
+        PcmClip clip = clips.get(text);
+        if (clip == null) {
+            return false;
+        }
+        int started = generation;
+        worker.execute(() -> {
+            playNow(clip, started);
+            listener.onPlaybackDone(utteranceId);
+        });
+        return true;
+    }
+
+    /** Cuts off the phrase that is playing. */
+    public void stop() {
+        generation++;
+    }
+
+    public void release() {
+        generation++;
+        worker.execute(() -> {
+            if (track != null) {
+                track.release();
+                track = null;
+            }
+        });
+        worker.shutdown();
+    }
+
+    // Worker thread: stream the clip and wait until the last sample has been played
+    private void playNow(PcmClip clip, int started) {
+        AudioTrack out = trackFor(clip.sampleRate);
+        if (out == null) {
+            return;
+        }
+        int head = out.getPlaybackHeadPosition();
+        out.play();
+        for (int off = 0; off < clip.samples.length && started == generation; off += WRITE_CHUNK) {
+            int n = Math.min(WRITE_CHUNK, clip.samples.length - off);
+            if (out.write(clip.samples, off, n) < 0) {
+                break;
+            }
+        }
+        long deadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MS;
+        while (started == generation && out.getPlaybackHeadPosition() - head < clip.samples.length
+                && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        out.pause();
+        out.flush();
+    }
+
+    // One track for all prompts; only reopened if a voice has another sample rate
+    private AudioTrack trackFor(int sampleRate) {
+        if (track != null && trackRate == sampleRate) {
+            return track;
+        }
+        if (track != null) {
+            track.release();
+            track = null;
+        }
+        try {
+            int minBuffer = AudioTrack.getMinBufferSize(sampleRate, AudioFormat.CHANNEL_OUT_MONO,
+                    AudioFormat.ENCODING_PCM_16BIT);
+            track = new AudioTrack.Builder()
+                    .setAudioAttributes(new AudioAttributes.Builder()
+                            .setUsage(AudioAttributes.USAGE_ASSISTANCE_SONIFICATION)
+                            .setContentType(AudioAttributes.CONTENT_TYPE_SPEECH)
+                            .build())
+                    .setAudioFormat(new AudioFormat.Builder()
+                            .setEncoding(AudioFormat.ENCODING_PCM_16BIT)
+                            .setSampleRate(sampleRate)
+                            .setChannelMask(AudioFormat.CHANNEL_OUT_MONO)
+                            .build())
+                    .setBufferSizeInBytes(Math.max(minBuffer, WRITE_CHUNK * 4))
+                    .setTransferMode(AudioTrack.MODE_STREAM)
+                    .build();
+            trackRate = sampleRate;
+        } catch (RuntimeException e) {
+            TpaLog.e(TAG, "Failed to open AudioTrack at " + sampleRate + " Hz", e);
+            track = null;
+        }
+        return track;
+    }
+
+    private void load(String text) {
+        String current = voice;
+        if (current == null || clips.containsKey(text)) {
+            return;
+        }
+        File file = new File(new File(root, current), PcmClip.fileNameFor(text));
+        if (!file.isFile()) {
+            return;
+        }
+        try {
+            PcmClip clip = PcmClip.decodeWav(readFile(file));
+            clips.put(text, clip);
+            trackFor(clip.sampleRate); // open it now rather than on the first prompt
+            TpaLog.d(TAG, "Cached \"" + text + "\" (" + clip.getDurationMs() + " ms)");
+        } catch (IOException e) {
+            TpaLog.w(TAG, "Dropping unreadable cached phrase " + file.getName(), e);
+            file.delete();
+        }
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        byte[] data = new byte[(int) file.length()];
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            in.readFully(data);
+        }
+        return data;
+    }
+
+    private static String voiceKey(TextToSpeech tts) {
+        Voice v = tts.getVoice();
+        Locale locale = v != null ? v.getLocale() : Locale.US;
+        String name = v != null ? v.getName() : "default";
+        return (locale.toLanguageTag() + "_" + name).replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+
+    private String readVoice() {
+        try {
+            File file = new File(root, VOICE_FILE);
+            return file.isFile() ? new String(readFile(file), StandardCharsets.UTF_8).trim() : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void writeVoice(String key) {
+        if (!root.isDirectory() && !root.mkdirs()) {
+            return;
+        }
+        try (FileOutputStream out = new FileOutputStream(new File(root, VOICE_FILE))) {
+            out.write(key.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            TpaLog.w(TAG, "Failed to record cache voice", e);
+        }
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,149 @@
+package com.daho.videohighfps;
+
+import java.util.Arrays;
+
+/**
+ * One detected pose as primitives: 33 landmarks of (x, y, likelihood) in a flat
+ * {@code float[99]}, in analysis-frame pixels, indexed by ML Kit landmark type.
+ *
+ * Frames come from a {@link Pool} and are filled once per detector result, so
+ * validation and feedback at analysis rate allocate nothing. A landmark the
+ * detector did not report has likelihood -1 and NaN coordinates.
+ */
+public final class PoseFrame {
+
+    public static final int LANDMARK_COUNT = 33;
+    public static final int STRIDE = 3;
+
+    // Same indices as com.google.mlkit.vision.pose.PoseLandmark
+    public static final int NOSE = 0;
+    public static final int LEFT_SHOULDER = 11;
+    public static final int RIGHT_SHOULDER = 12;
+    public static final int LEFT_ELBOW = 13;
+    public static final int RIGHT_ELBOW = 14;
+    public static final int LEFT_WRIST = 15;
+    public static final int RIGHT_WRIST = 16;
+    public static final int LEFT_HIP = 23;
+    public static final int RIGHT_HIP = 24;
+    public static final int LEFT_KNEE = 25;
+    public static final int RIGHT_KNEE = 26;
+    public static final int LEFT_ANKLE = 27;
+    public static final int RIGHT_ANKLE = 28;
+
+    private final float[] data = new float[LANDMARK_COUNT * STRIDE];
+    private long timestampNs;
+    private int frameWidth;
+    private int frameHeight;
+    private int landmarkCount;
+
+    public PoseFrame() {
+        reset(0, 0, 0);
+    }
+
+    /** Clears all landmarks and sets the frame this pose belongs to. */
+    public void reset(long timestampNs, int frameWidth, int frameHeight) {
+        this.timestampNs = timestampNs;
+        this.frameWidth = frameWidth;
+        this.frameHeight = frameHeight;
+        this.landmarkCount = 0;
+        for (int i = 0; i < LANDMARK_COUNT; i++) {
+            data[i * STRIDE] = Float.NaN;
+            data[i * STRIDE + 1] = Float.NaN;
+            data[i * STRIDE + 2] = -1f;
+        }
+    }
+
+    public void set(int landmark, float x, float y, float likelihood) {
+        int base = landmark * STRIDE;
+        if (data[base + 2] < 0) {
+            landmarkCount++;
+        }
+        data[base] = x;
+        data[base + 1] = y;
+        data[base + 2] = Math.max(0f, likelihood);
+    }
+
+    public float x(int landmark) {
+        return data[landmark * STRIDE];
+    }
+
+    public float y(int landmark) {
+        return data[landmark * STRIDE + 1];
+    }
+
+    public float likelihood(int landmark) {
+        return data[landmark * STRIDE + 2];
+    }
+
+    /** Reported with at least {@code minLikelihood}. */
+    public boolean has(int landmark, float minLikelihood) {
+        float likelihood = data[landmark * STRIDE + 2];
+        return likelihood >= 0 && likelihood >= minLikelihood;
+    }
+
+    public boolean isEmpty() {
+        return landmarkCount == 0;
+    }
+
+    public int getLandmarkCount() {
+        return landmarkCount;
+    }
+
+    public long getTimestampNs() {
+        return timestampNs;
+    }
+
+    public int getFrameWidth() {
+        return frameWidth;
+    }
+
+    public int getFrameHeight() {
+        return frameHeight;
+    }
+
+    /** Copies everything from {@code other}, e.g. to keep a pose past its pool slot. */
+    public void copyFrom(PoseFrame other) {
+        System.arraycopy(other.data, 0, data, 0, data.length);
+        timestampNs = other.timestampNs;
+        frameWidth = other.frameWidth;
+        frameHeight = other.frameHeight;
+        landmarkCount = other.landmarkCount;
+    }
+
+    @Override
+    public String toString() {
+        return "PoseFrame{t=" + timestampNs + ", " + frameWidth + "x" + frameHeight + ", landmarks=" + landmarkCount
+                + ", " + Arrays.toString(data) + "}";
+    }
+
+    /**
+     * Fixed ring of preallocated frames. {@link #acquire()} hands out the oldest
+     * slot, so a frame stays valid until {@code size} more have been acquired;
+     * consumers that need it longer copy it with {@link #copyFrom}.
+     */
+    public static final class Pool {
+        private final PoseFrame[] frames;
+        private int next;
+
+        public Pool(int size) {
+            if (size < 1) {
+                throw new IllegalArgumentException("size must be at least 1");
+            }
+            frames = new PoseFrame[size];
+            for (int i = 0; i < size; i++) {
+                frames[i] = new PoseFrame();
+            }
+        }
+
+        public synchronized PoseFrame acquire(long timestampNs, int frameWidth, int frameHeight) {
+            PoseFrame frame = frames[next];
+            next = (next + 1) % frames.length;
+            frame.reset(timestampNs, frameWidth, frameHeight);
+            return frame;
+        }
+
+        public int size() {
+            return frames.length;
+        }
+    }
+}
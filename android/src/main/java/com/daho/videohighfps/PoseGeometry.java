@@ -0,0 +1,139 @@
+package com.daho.videohighfps;
+
+/**
+ * Allocation-free measurements on a {@link PoseFrame}: bounding box, centroid,
+ * limb lengths and joint angles. Results go into caller-owned arrays so the
+ * same buffers can be reused every frame.
+ *
+ * Only landmarks with at least the given likelihood count; a measurement whose
+ * landmarks are missing is NaN.
+ */
+public final class PoseGeometry {
+
+    // Bounding box layout in the out array
+    public static final int MIN_X = 0;
+    public static final int MIN_Y = 1;
+    public static final int MAX_X = 2;
+    public static final int MAX_Y = 3;
+
+    /** Landmark pairs measured by {@link #limbLengths}. */
+    public static final int[][] LIMBS = {
+            { PoseFrame.LEFT_SHOULDER, PoseFrame.RIGHT_SHOULDER },
+            { PoseFrame.LEFT_HIP, PoseFrame.RIGHT_HIP },
+            { PoseFrame.LEFT_SHOULDER, PoseFrame.LEFT_ELBOW },
+            { PoseFrame.LEFT_ELBOW, PoseFrame.LEFT_WRIST },
+            { PoseFrame.RIGHT_SHOULDER, PoseFrame.RIGHT_ELBOW },
+            { PoseFrame.RIGHT_ELBOW, PoseFrame.RIGHT_WRIST },
+            { PoseFrame.LEFT_SHOULDER, PoseFrame.LEFT_HIP },
+            { PoseFrame.RIGHT_SHOULDER, PoseFrame.RIGHT_HIP },
+            { PoseFrame.LEFT_HIP, PoseFrame.LEFT_KNEE },
+            { PoseFrame.LEFT_KNEE, PoseFrame.LEFT_ANKLE },
+            { PoseFrame.RIGHT_HIP, PoseFrame.RIGHT_KNEE },
+            { PoseFrame.RIGHT_KNEE, PoseFrame.RIGHT_ANKLE },
+    };
+
+    /** Landmark triples measured by {@link #jointAngles}; the angle is at the middle one. */
+    public static final int[][] JOINTS = {
+            { PoseFrame.LEFT_SHOULDER, PoseFrame.LEFT_ELBOW, PoseFrame.LEFT_WRIST },
+            { PoseFrame.RIGHT_SHOULDER, PoseFrame.RIGHT_ELBOW, PoseFrame.RIGHT_WRIST },
+            { PoseFrame.LEFT_ELBOW, PoseFrame.LEFT_SHOULDER, PoseFrame.LEFT_HIP },
+            { PoseFrame.RIGHT_ELBOW, PoseFrame.RIGHT_SHOULDER, PoseFrame.RIGHT_HIP },
+            { PoseFrame.LEFT_SHOULDER, PoseFrame.LEFT_HIP, PoseFrame.LEFT_KNEE },
+            { PoseFrame.RIGHT_SHOULDER, PoseFrame.RIGHT_HIP, PoseFrame.RIGHT_KNEE },
+            { PoseFrame.LEFT_HIP, PoseFrame.LEFT_KNEE, PoseFrame.LEFT_ANKLE },
+            { PoseFrame.RIGHT_HIP, PoseFrame.RIGHT_KNEE, PoseFrame.RIGHT_ANKLE },
+    };
+
+    private PoseGeometry() {
+    }
+
+    /**
+     * Writes minX, minY, maxX, maxY into {@code out}. Returns false, leaving
+     * {@code out} untouched, if no landmark qualifies.
+     */
+    public static boolean boundingBox(PoseFrame pose, float minLikelihood, float[] out) {
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+        boolean any = false;
+        for (int i = 0; i < PoseFrame.LANDMARK_COUNT; i++) {
+            if (!pose.has(i, minLikelihood)) {
+                continue;
+            }
+            float x = pose.x(i);
+            float y = pose.y(i);
+            minX = Math.min(minX, x);
+            minY = Math.min(minY, y);
+            maxX = Math.max(maxX, x);
+            maxY = Math.max(maxY, y);
+            any = true;
+        }
+        if (!any) {
+            return false;
+        }
+        out[MIN_X] = minX;
+        out[MIN_Y] = minY;
+        out[MAX_X] = maxX;
+        out[MAX_Y] = maxY;
+        return true;
+    }
+
+    /** Mean position of the qualifying landmarks into {@code out[0..1]}; false if there are none. */
+    public static boolean centroid(PoseFrame pose, float minLikelihood, float[] out) {
+        double sumX = 0, sumY = 0;
+        int n = 0;
+        for (int i = 0; i < PoseFrame.LANDMARK_COUNT; i++) {
+            if (pose.has(i, minLikelihood)) {
+                sumX += pose.x(i);
+                sumY += pose.y(i);
+                n++;
+            }
+        }
+        if (n == 0) {
+            return false;
+        }
+        out[0] = (float) (sumX / n);
+        out[1] = (float) (sumY / n);
+        return true;
+    }
+
+    /** Distance between two landmarks in pixels, NaN if either is missing. */
+    public static float distance(PoseFrame pose, int a, int b, float minLikelihood) {
+        if (!pose.has(a, minLikelihood) || !pose.has(b, minLikelihood)) {
+            return Float.NaN;
+        }
+        float dx = pose.x(a) - pose.x(b);
+        float dy = pose.y(a) - pose.y(b);
+        return (float) Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /** Angle a-b-c at {@code b} in degrees (0..180), NaN if a landmark is missing or coincident. */
+    public static float angle(PoseFrame pose, int a, int b, int c, float minLikelihood) {
+        if (!pose.has(a, minLikelihood) || !pose.has(b, minLikelihood) || !pose.has(c, minLikelihood)) {
+            return Float.NaN;
+        }
+        float ux = pose.x(a) - pose.x(b);
+        float uy = pose.y(a) - pose.y(b);
+        float vx = pose.x(c) - pose.x(b);
+        float vy = pose.y(c) - pose.y(b);
+        double lengths = Math.sqrt((double) (ux * ux + uy * uy) * (vx * vx + vy * vy));
+        if (lengths == 0) {
+            return Float.NaN;
+        }
+        double cos = Math.max(-1, Math.min(1, (ux * vx + uy * vy) / lengths));
+        return (float) Math.toDegrees(Math.acos(cos));
+    }
+
+    /** Length of every {@link #LIMBS} entry into {@code out}, which must hold LIMBS.length values. */
+    public static void limbLengths(PoseFrame pose, float minLikelihood, float[] out) {
+        for (int i = 0; i < LIMBS.length; i++) {
+            out[i] = distance(pose, LIMBS[i][0], LIMBS[i][1], minLikelihood);
+        }
+    }
+
+    /** Angle of every {@link #JOINTS} entry into {@code out}, which must hold JOINTS.length values. */
+    public static void jointAngles(PoseFrame pose, float minLikelihood, float[] out) {
+        for (int i = 0; i < JOINTS.length; i++) {
+            out[i] = angle(pose, JOINTS[i][0], JOINTS[i][1], JOINTS[i][2], minLikelihood);
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.daho.videohighfps;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * One pose detector, one frame source, any number of consumers.
+ *
+ * Frames from the analysis stream are submitted here and go through a single
+ * {@link FrameScheduler}, so inference runs at most once per analysis slot no
+ * matter how many parts of the plugin want poses. Each result is published to
+ * every subscriber; one-shot requests ({@link #requestNext}) get the next result
+ * only. While nobody is listening, frames are released without inference.
+ *
+ * Generic over the frame and pose types so the fan-out and lifecycle can be
+ * tested with a fake detector; the plugin plugs in ML Kit through
+ * {@link MlKitPoseDetector}. Results are delivered on the thread the detector
+ * calls back on.
+ */
+public class PoseService<F, P> {
+
+    /** Runs inference and calls exactly one method of {@code callback}, on any thread. */
+    public interface Detector<F, P> {
+        void detect(F frame, Callback<P> callback);
+
+        void close();
+    }
+
+    public interface Callback<P> {
+        void onPose(P pose);
+
+        void onFailure(Exception e);
+    }
+
+    public interface Subscriber<P> {
+        void onPose(Result<P> result);
+    }
+
+    /** A pose with the analysis frame it was detected in. */
+    public static final class Result<P> {
+        public final P pose;
+        public final int frameWidth;
+        public final int frameHeight;
+        public final long timestampNs;
+        public final long sequence;
+
+        Result(P pose, int frameWidth, int frameHeight, long timestampNs, long sequence) {
+            this.pose = pose;
+            this.frameWidth = frameWidth;
+            this.frameHeight = frameHeight;
+            this.timestampNs = timestampNs;
+            this.sequence = sequence;
+        }
+    }
+
+    private static final class Job<F> {
+        final F frame;
+        final int width;
+        final int height;
+        final long timestampNs;
+
+        Job(F frame, int width, int height, long timestampNs) {
+            this.frame = frame;
+            this.width = width;
+            this.height = height;
+            this.timestampNs = timestampNs;
+        }
+    }
+
+    private final Detector<F, P> detector;
+    private final FrameScheduler.Releaser<F> releaser;
+    private final FrameScheduler<Job<F>> scheduler;
+    private final List<Subscriber<P>> subscribers = new CopyOnWriteArrayList<>();
+    private final List<Subscriber<P>> oneShots = new CopyOnWriteArrayList<>();
+
+    private volatile boolean closed = false;
+    private volatile Result<P> latest;
+    private long sequence;
+    private long skippedCount;
+    private long failureCount;
+    private long subscriberErrorCount;
+
+    public PoseService(Detector<F, P> detector, FrameScheduler.Releaser<F> releaser, FrameScheduler.Clock clock,
+            double targetFps) {
+        this.detector = detector;
+        this.releaser = releaser;
+        this.scheduler = new FrameScheduler<>(this::process, job -> releaser.release(job.frame), clock, 1,
+                targetFps);
+    }
+
+    public void setTargetFps(double targetFps) {
+        scheduler.setTargetFps(targetFps);
+    }
+
+    /** Records the detector time of every frame, in microseconds; null stops it. */
+    public void setLatencyHistogram(LatencyHistogram histogram) {
+        scheduler.setLatencyHistogram(histogram);
+    }
+
+    /** Receives every result until {@link #unsubscribe}. */
+    public void subscribe(Subscriber<P> subscriber) {
+        if (!subscribers.contains(subscriber)) {
+            subscribers.add(subscriber);
+        }
+    }
+
+    public void unsubscribe(Subscriber<P> subscriber) {
+        subscribers.remove(subscriber);
+        oneShots.remove(subscriber);
+    }
+
+    /** Receives the next result only. Asking again before it arrives has no extra effect. */
+    public void requestNext(Subscriber<P> subscriber) {
+        if (!oneShots.contains(subscriber)) {
+            oneShots.add(subscriber);
+        }
+    }
+
+    /** True if a submitted frame would be analyzed; lets callers skip retaining frames. */
+    public boolean hasSubscribers() {
+        return !closed && (!subscribers.isEmpty() || !oneShots.isEmpty());
+    }
+
+    /**
+     * Offers the newest analysis frame. The service takes ownership of it and
+     * releases it once analyzed, superseded, or not needed.
+     */
+    public void submit(F frame, int width, int height, long timestampNs) {
+        if (!hasSubscribers()) {
+            synchronized (this) {
+                skippedCount++;
+            }
+            releaser.release(frame);
+            return;
+        }
+        scheduler.submit(new Job<>(frame, width, height, timestampNs));
+    }
+
+    /** The most recent result, or null if there has been none. */
+    public Result<P> getLatest() {
+        return latest;
+    }
+
+    /** Stops inference, drops subscribers and closes the detector. */
+    public void close() {
+        closed = true;
+        subscribers.clear();
+        oneShots.clear();
+        scheduler.close();
+        detector.close();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public long getSubmittedCount() {
+        return scheduler.getSubmittedCount() + getSkippedCount();
+    }
+
+    /** Frames that went through the detector. */
+    public long getInferenceCount() {
+        return scheduler.getProcessedCount();
+    }
+
+    /** Frames superseded by a newer one while the detector was busy or throttled. */
+    public long getDroppedCount() {
+        return scheduler.getDroppedCount();
+    }
+
+    /** Frames released without inference because nobody was subscribed. */
+    public synchronized long getSkippedCount() {
+        return skippedCount;
+    }
+
+    public synchronized long getFailureCount() {
+        return failureCount;
+    }
+
+    /** Exceptions thrown by subscribers; they never stop delivery to the others. */
+    public synchronized long getSubscriberErrorCount() {
+        return subscriberErrorCount;
+    }
+
+    public long getLastLatencyNs() {
+        return scheduler.getLastLatencyNs();
+    }
+
+    private void process(Job<F> job, Runnable onComplete) {
+        detector.detect(job.frame, new Callback<P>() {
+            @Override
+            public void onPose(P pose) {
+                try {
+                    publish(job, pose);
+                } finally {
+                    onComplete.run();
+                }
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                synchronized (PoseService.this) {
+                    failureCount++;
+                }
+                onComplete.run();
+            }
+        });
+    }
+
+    private void publish(Job<F> job, P pose) {
+        if (closed) {
+            return;
+        }
+
+        Result<P> result;
+        synchronized (this) {
+            result = new Result<>(pose, job.width, job.height, job.timestampNs, ++sequence);
+        }
+        latest = result;
+
+        for (Subscriber<P> subscriber : subscribers) {
+            deliver(subscriber, result);
+        }
+        for (Subscriber<P> subscriber : oneShots) {
+            // remove() decides the winner if two results race for the same request
+            if (oneShots.remove(subscriber)) {
+                deliver(subscriber, result);
+            }
+        }
+    }
+
+    private void deliver(Subscriber<P> subscriber, Result<P> result) {
+        try {
+            subscriber.onPose(result);
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                subscriberErrorCount++;
+            }
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package com.daho.videohighfps;
+
+import java.util.Arrays;
+
+/**
+ * Streaming pose smoothing and stillness detection.
+ *
+ * Every landmark coordinate goes through a One-Euro filter (low cutoff when the
+ * landmark is slow, so detector jitter is removed; higher cutoff when it moves,
+ * so real motion is not lagged). Motion is the mean landmark speed between
+ * consecutive smoothed frames in body heights per second, averaged over a
+ * sliding window of the last {@code windowSize} frames. With hysteresis between
+ * {@link #STILL_THRESHOLD} and {@link #MOVING_THRESHOLD}, a single jittery
+ * frame cannot flip a still athlete to moving.
+ *
+ * States, reported incrementally on every {@link #update}: NO_POSE, MOVING,
+ * SETTLING (still, but for less than the hold time) and STABLE. Each update is
+ * O(landmarks) and allocation-free; smoothed frames live in a fixed ring.
+ */
+public class PoseStabilizer {
+
+    public enum State {
+        NO_POSE, MOVING, SETTLING, STABLE
+    }
+
+    public interface Listener {
+        void onStateChanged(State state, PoseStabilizer stabilizer);
+    }
+
+    public static final int DEFAULT_WINDOW = 8;
+    public static final long DEFAULT_HOLD_MS = 500;
+
+    static final float MIN_LIKELIHOOD = 0.5f;
+    static final float STILL_THRESHOLD = 0.10f; // body heights per second
+    static final float MOVING_THRESHOLD = 0.25f;
+    static final int MIN_MOTION_SAMPLES = 3;
+
+    // One-Euro parameters, in frame heights and seconds
+    static final float MIN_CUTOFF_HZ = 1.0f;
+    static final float BETA = 2.0f;
+    static final float DERIVATIVE_CUTOFF_HZ = 1.0f;
+
+    private static final int COORDS = PoseFrame.LANDMARK_COUNT * 2;
+
+    private final Listener listener;
+    private final long holdNs;
+
+    private final PoseFrame[] ring;
+    private final float[] motionRing;
+    private int head = -1; // index of the newest smoothed frame
+    private int frames = 0;
+    private int motionCount = 0;
+    private int motionHead = 0;
+    private double motionSum = 0;
+
+    private final float[] filtered = new float[COORDS]; // in frame heights
+    private final float[] derivative = new float[COORDS];
+    private final boolean[] tracking = new boolean[PoseFrame.LANDMARK_COUNT];
+    private final float[] box = new float[4];
+
+    private long lastNs = -1;
+    private long stillSinceNs = -1;
+    private long stableForNs = 0;
+    private float motion = 0;
+    private State state = State.NO_POSE;
+
+    public PoseStabilizer() {
+        this(DEFAULT_WINDOW, DEFAULT_HOLD_MS, null);
+    }
+
+    public PoseStabilizer(Listener listener) {
+        this(DEFAULT_WINDOW, DEFAULT_HOLD_MS, listener);
+    }
+
+    public PoseStabilizer(int windowSize, long holdMs, Listener listener) {
+        if (windowSize < 2) {
+            throw new IllegalArgumentException("windowSize must be at least 2");
+        }
+        this.listener = listener;
+        this.holdNs = holdMs * 1_000_000L;
+        this.ring = new PoseFrame[windowSize];
+        for (int i = 0; i < windowSize; i++) {
+            ring[i] = new PoseFrame();
+        }
+        this.motionRing = new float[windowSize];
+    }
+
+    /** Feeds the next detected pose, in timestamp order. Returns the new state. */
+    public synchronized State update(PoseFrame pose) {
+        long t = pose.getTimestampNs();
+        if (lastNs >= 0 && t <= lastNs) {
+            return state; // duplicate or out of order
+        }
+        float scale = pose.getFrameHeight() > 0 ? pose.getFrameHeight() : 1;
+
+        if (!hasUsableLandmarks(pose)) {
+            clearHistory();
+            lastNs = t;
+            return setState(State.NO_POSE);
+        }
+
+        float dt = lastNs >= 0 ? (t - lastNs) / 1e9f : 0;
+        lastNs = t;
+
+        PoseFrame previous = frames > 0 ? ring[head] : null;
+        head = (head + 1) % ring.length;
+        PoseFrame smoothed = ring[head];
+        smoothed.reset(t, pose.getFrameWidth(), pose.getFrameHeight());
+        frames = Math.min(frames + 1, ring.length);
+
+        for (int i = 0; i < PoseFrame.LANDMARK_COUNT; i++) {
+            if (!pose.has(i, MIN_LIKELIHOOD)) {
+                tracking[i] = false;
+                continue;
+            }
+            float x = filter(2 * i, pose.x(i) / scale, dt, tracking[i]);
+            float y = filter(2 * i + 1, pose.y(i) / scale, dt, tracking[i]);
+            tracking[i] = true;
+            smoothed.set(i, x * scale, y * scale, pose.likelihood(i));
+        }
+
+        if (previous != null && dt > 0) {
+            addMotion(frameMotion(previous, smoothed, scale, dt));
+        }
+        return setState(nextState(t));
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /** How long the athlete has been still, as of the last update; 0 while moving. */
+    public synchronized long getStableForMs() {
+        return stableForNs / 1_000_000L;
+    }
+
+    /** Windowed mean motion in body heights per second. */
+    public synchronized float getMotion() {
+        return motion;
+    }
+
+    /**
+     * Smoothed pose {@code age} frames back (0 = newest), or null. Valid until
+     * the ring wraps; copy it to keep it longer.
+     */
+    public synchronized PoseFrame getSmoothed(int age) {
+        if (age < 0 || age >= frames) {
+            return null;
+        }
+        return ring[(head - age + ring.length) % ring.length];
+    }
+
+    public PoseFrame getSmoothed() {
+        return getSmoothed(0);
+    }
+
+    /** Forgets all history, e.g. when a new readiness check starts. */
+    public synchronized void reset() {
+        clearHistory();
+        lastNs = -1;
+        state = State.NO_POSE;
+    }
+
+    private boolean hasUsableLandmarks(PoseFrame pose) {
+        for (int i = 0; i < PoseFrame.LANDMARK_COUNT; i++) {
+            if (pose.has(i, MIN_LIKELIHOOD)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void clearHistory() {
+        frames = 0;
+        head = -1;
+        motionCount = 0;
+        motionHead = 0;
+        motionSum = 0;
+        motion = 0;
+        stillSinceNs = -1;
+        stableForNs = 0;
+        Arrays.fill(tracking, false);
+    }
+
+    // One-Euro filter step for one coordinate; restarts when the landmark was not tracked
+    private float filter(int k, float value, float dt, boolean wasTracking) {
+        if (!wasTracking || dt <= 0) {
+            filtered[k] = value;
+            derivative[k] = 0;
+            return value;
+        }
+        float rawDerivative = (value - filtered[k]) / dt;
+        derivative[k] += alpha(DERIVATIVE_CUTOFF_HZ, dt) * (rawDerivative - derivative[k]);
+        float cutoff = MIN_CUTOFF_HZ + BETA * Math.abs(derivative[k]);
+        filtered[k] += alpha(cutoff, dt) * (value - filtered[k]);
+        return filtered[k];
+    }
+
+    private static float alpha(float cutoffHz, float dt) {
+        float tau = (float) (1.0 / (2 * Math.PI * cutoffHz));
+        return 1f / (1f + tau / dt);
+    }
+
+    // Mean landmark speed between two smoothed frames, in body heights per second
+    private float frameMotion(PoseFrame previous, PoseFrame current, float scale, float dt) {
+        double sum = 0;
+        int n = 0;
+        for (int i = 0; i < PoseFrame.LANDMARK_COUNT; i++) {
+            if (previous.has(i, MIN_LIKELIHOOD) && current.has(i, MIN_LIKELIHOOD)) {
+                float dx = current.x(i) - previous.x(i);
+                float dy = current.y(i) - previous.y(i);
+                sum += Math.sqrt(dx * dx + dy * dy);
+                n++;
+            }
+        }
+        if (n == 0 || !PoseGeometry.boundingBox(current, MIN_LIKELIHOOD, box)) {
+            return 0;
+        }
+        // Small or partial bodies are measured against at least a tenth of the frame
+        float bodyHeight = Math.max(box[PoseGeometry.MAX_Y] - box[PoseGeometry.MIN_Y], 0.1f * scale);
+        return (float) (sum / n / bodyHeight / dt);
+    }
+
+    private void addMotion(float value) {
+        if (motionCount == motionRing.length) {
+            motionSum -= motionRing[motionHead];
+        } else {
+            motionCount++;
+        }
+        motionRing[motionHead] = value;
+        motionSum += value;
+        motionHead = (motionHead + 1) % motionRing.length;
+        motion = (float) (motionSum / motionCount);
+    }
+
+    private State nextState(long t) {
+        if (motionCount < MIN_MOTION_SAMPLES) {
+            stableForNs = 0;
+            return State.MOVING;
+        }
+
+        boolean wasStill = state == State.SETTLING || state == State.STABLE;
+        boolean still = wasStill ? motion <= MOVING_THRESHOLD : motion < STILL_THRESHOLD;
+        if (!still) {
+            stillSinceNs = -1;
+            stableForNs = 0;
+            return State.MOVING;
+        }
+
+        if (stillSinceNs < 0) {
+            stillSinceNs = t;
+        }
+        stableForNs = t - stillSinceNs;
+        return stableForNs >= holdNs ? State.STABLE : State.SETTLING;
+    }
+
+    private State setState(State next) {
+        if (next != state) {
+            state = next;
+            if (listener != null) {
+                listener.onStateChanged(next, this);
+            }
+        }
+        return next;
+    }
+}
@@ -0,0 +1,235 @@
+package com.daho.videohighfps;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The last few seconds of encoded samples, kept until recording starts.
+ *
+ * Sample data is copied into one direct buffer allocated up front, so the ring
+ * never allocates while the encoders run and its memory use is exactly
+ * {@link #getCapacityBytes()}. Samples leave the ring a whole GOP at a time: the
+ * oldest GOP goes once the next one is older than the window, or when the bytes
+ * run out. What is left therefore always opens on a video keyframe and covers
+ * at least the window, up to one keyframe interval more.
+ *
+ * Free of Android classes; used from the encoder threads under the caller's
+ * lock.
+ */
+public class PreRollRing {
+
+    /** Receives drained samples, oldest first; the buffer is only valid during the call. */
+    public interface Consumer {
+        void accept(MuxerTimeline.Track track, ByteBuffer data, long ptsUs, int flags);
+    }
+
+    /** What the ring held and what it handed over at the start of a take. */
+    public static final class Stats {
+        public final long capacityBytes;
+        public final long windowUs;
+        public final int samples;
+        public final long bytes;
+        public final long spanUs;
+        public final long evictedSamples;
+
+        Stats(long capacityBytes, long windowUs, int samples, long bytes, long spanUs, long evictedSamples) {
+            this.capacityBytes = capacityBytes;
+            this.windowUs = windowUs;
+            this.samples = samples;
+            this.bytes = bytes;
+            this.spanUs = spanUs;
+            this.evictedSamples = evictedSamples;
+        }
+    }
+
+    private final ByteBuffer storage;
+    private final long windowUs;
+    private final int maxSamples;
+
+    // Sample metadata, circular from head
+    private final MuxerTimeline.Track[] tracks;
+    private final long[] pts;
+    private final int[] flags;
+    private final int[] offsets;
+    private final int[] sizes;
+    private int head;
+    private int count;
+    private int writePos;
+    private long usedBytes;
+
+    // Slots of the video keyframes, circular, oldest first
+    private final int[] keys;
+    private int keyHead;
+    private int keyCount;
+
+    private long newestVideoUs = Long.MIN_VALUE;
+    private long evicted;
+
+    /**
+     * @param capacityBytes sample bytes to hold at most (allocated now)
+     * @param windowUs      how far back to keep, 0 for "as much as fits"
+     * @param maxSamples    sample slots, video and audio together
+     */
+    public PreRollRing(int capacityBytes, long windowUs, int maxSamples) {
+        this.storage = ByteBuffer.allocateDirect(capacityBytes);
+        this.windowUs = windowUs;
+        this.maxSamples = Math.max(2, maxSamples);
+        tracks = new MuxerTimeline.Track[this.maxSamples];
+        pts = new long[this.maxSamples];
+        flags = new int[this.maxSamples];
+        offsets = new int[this.maxSamples];
+        sizes = new int[this.maxSamples];
+        keys = new int[this.maxSamples];
+    }
+
+    /** Slots for {@code seconds} of video at {@code fps} plus AAC audio, with headroom. */
+    public static int samplesFor(double seconds, int fps) {
+        double perSecond = fps + 44100 / 1024.0;
+        return (int) Math.ceil(seconds * perSecond * 1.5) + 64;
+    }
+
+    /** Copies one sample in, evicting old GOPs as needed. Returns false if it cannot fit at all. */
+    public boolean add(MuxerTimeline.Track track, ByteBuffer data, long ptsUs, int sampleFlags) {
+        int size = data.remaining();
+        if (size == 0 || size > storage.capacity()) {
+            evicted++;
+            return false;
+        }
+        boolean key = track == MuxerTimeline.Track.VIDEO && (sampleFlags & MuxerTimeline.FLAG_KEY_FRAME) != 0;
+
+        int at;
+        while ((at = placeFor(size)) < 0 || count == maxSamples) {
+            evictGop();
+        }
+
+        int slot = (head + count) % maxSamples;
+        ByteBuffer dst = storage.duplicate();
+        dst.position(at);
+        dst.put(data.duplicate());
+        tracks[slot] = track;
+        pts[slot] = ptsUs;
+        flags[slot] = sampleFlags;
+        offsets[slot] = at;
+        sizes[slot] = size;
+        count++;
+        writePos = at + size;
+        usedBytes += size;
+        if (key) {
+            keys[(keyHead + keyCount) % maxSamples] = slot;
+            keyCount++;
+        }
+
+        if (track == MuxerTimeline.Track.VIDEO) {
+            newestVideoUs = Math.max(newestVideoUs, ptsUs);
+            // Drop the oldest GOP while the following one alone still covers the window
+            while (windowUs > 0 && keyCount >= 2 && pts[keys[(keyHead + 1) % maxSamples]] <= newestVideoUs - windowUs) {
+                evictGop();
+            }
+        }
+        return true;
+    }
+
+    /** Hands every sample to {@code consumer}, oldest first, and empties the ring. */
+    public Stats drainTo(Consumer consumer) {
+        Stats stats = snapshot();
+        ByteBuffer view = storage.duplicate();
+        for (int i = 0; i < count; i++) {
+            int slot = (head + i) % maxSamples;
+            view.limit(offsets[slot] + sizes[slot]);
+            view.position(offsets[slot]);
+            consumer.accept(tracks[slot], view, pts[slot], flags[slot]);
+            view.limit(view.capacity());
+        }
+        clear();
+        return stats;
+    }
+
+    public void clear() {
+        head = 0;
+        count = 0;
+        writePos = 0;
+        usedBytes = 0;
+        keyHead = 0;
+        keyCount = 0;
+        newestVideoUs = Long.MIN_VALUE;
+        evicted = 0;
+    }
+
+    public Stats snapshot() {
+        long span = 0;
+        if (count > 0) {
+            long oldest = Long.MAX_VALUE;
+            for (int i = 0; i < count; i++) {
+                int slot = (head + i) % maxSamples;
+                if (tracks[slot] == MuxerTimeline.Track.VIDEO) {
+                    oldest = pts[slot];
+                    break;
+                }
+            }
+            span = oldest == Long.MAX_VALUE ? 0 : Math.max(0, newestVideoUs - oldest);
+        }
+        return new Stats(storage.capacity(), windowUs, count, usedBytes, span, evicted);
+    }
+
+    public int getCapacityBytes() {
+        return storage.capacity();
+    }
+
+    public int getMaxSamples() {
+        return maxSamples;
+    }
+
+    public long getWindowUs() {
+        return windowUs;
+    }
+
+    public int getSampleCount() {
+        return count;
+    }
+
+    public long getUsedBytes() {
+        return usedBytes;
+    }
+
+    // Offset where `size` contiguous bytes fit without touching live samples, or -1
+    private int placeFor(int size) {
+        if (count == 0) {
+            writePos = 0;
+            return 0;
+        }
+        int headOffset = offsets[head];
+        if (writePos > headOffset) {
+            // Live data is [headOffset, writePos); free space at the end, then at the start
+            if (writePos + size <= storage.capacity()) {
+                return writePos;
+            }
+            return size <= headOffset ? 0 : -1;
+        }
+        // Wrapped: free space is [writePos, headOffset)
+        return writePos + size <= headOffset ? writePos : -1;
+    }
+
+    // Removes samples up to the second keyframe (or everything), so the ring opens on a keyframe
+    private void evictGop() {
+        int end = count;
+        int firstKey = keyCount > 0 ? keys[keyHead] : -1;
+        if (keyCount >= 2 && firstKey == head) {
+            end = distance(keys[(keyHead + 1) % maxSamples]);
+        } else if (keyCount >= 1 && firstKey != head) {
+            end = distance(firstKey);
+        }
+        for (int i = 0; i < end; i++) {
+            if (keyCount > 0 && keys[keyHead] == head) {
+                keyHead = (keyHead + 1) % maxSamples;
+                keyCount--;
+            }
+            usedBytes -= sizes[head];
+            head = (head + 1) % maxSamples;
+            count--;
+            evicted++;
+        }
+    }
+
+    private int distance(int slot) {
+        return (slot - head + maxSamples) % maxSamples;
+    }
+}
@@ -0,0 +1,151 @@
+package com.daho.videohighfps;
+
+/**
+ * Pre-record readiness as an explicit state machine driven by lighting and pose
+ * events instead of timers:
+ *
+ * <pre>
+ * IDLE -> LIGHTING -> FRAMING -> STABLE -> READY -> RECORDING
+ * </pre>
+ *
+ * Each pre-record state names the check that is still failing: LIGHTING until
+ * lighting is known to be good, FRAMING until the athlete is centered and far
+ * enough away, STABLE until they have held still. The state is derived from the
+ * latest facts on every event, so losing any of them falls back to the first
+ * failing check right away. Pose and lighting events are ignored while
+ * recording.
+ *
+ * Events may arrive on any thread. The listener runs on the thread of the
+ * event that caused the change, while the machine is locked, so it must not
+ * block.
+ */
+public class ReadinessMachine {
+
+    public enum State {
+        IDLE, LIGHTING, FRAMING, STABLE, READY, RECORDING
+    }
+
+    /** What caused a transition; reported to JS with it. */
+    public enum Reason {
+        START("start"),
+        LIGHTING("lighting"),
+        POSE("pose"),
+        RECORDING("recording"),
+        RESET("reset");
+
+        public final String key;
+
+        Reason(String key) {
+            this.key = key;
+        }
+    }
+
+    public interface Listener {
+        /** {@code previousMs} is how long the machine stayed in {@code previous}. */
+        void onReadinessChanged(State previous, State state, Reason reason, long previousMs);
+    }
+
+    private final FrameScheduler.Clock clock;
+    private final Listener listener;
+
+    private State state = State.IDLE;
+    private long enteredNs;
+    private boolean lightingGood = false;
+    private boolean framed = false;
+    private boolean still = false;
+
+    public ReadinessMachine(Listener listener) {
+        this(FrameScheduler.SYSTEM_CLOCK, listener);
+    }
+
+    public ReadinessMachine(FrameScheduler.Clock clock, Listener listener) {
+        this.clock = clock;
+        this.listener = listener;
+        this.enteredNs = clock.nowNanos();
+    }
+
+    /** Starts a readiness check from scratch; lighting must be reported again. */
+    public synchronized void start() {
+        lightingGood = false;
+        framed = false;
+        still = false;
+        moveTo(State.LIGHTING, Reason.START);
+    }
+
+    /** Latest lighting verdict. Only a known-good verdict passes LIGHTING. */
+    public synchronized void onLighting(boolean good) {
+        lightingGood = good;
+        update(Reason.LIGHTING);
+    }
+
+    /** Latest pose verdict: framed correctly, and held still long enough. */
+    public synchronized void onPose(boolean framed, boolean still) {
+        this.framed = framed;
+        this.still = framed && still;
+        update(Reason.POSE);
+    }
+
+    public synchronized void onRecordingStarted() {
+        moveTo(State.RECORDING, Reason.RECORDING);
+    }
+
+    /**
+     * A take ended and another may follow. Lighting is kept, the pose has to be
+     * checked again.
+     */
+    public synchronized void onRecordingStopped() {
+        if (state != State.RECORDING) {
+            return;
+        }
+        framed = false;
+        still = false;
+        moveTo(derive(), Reason.RECORDING);
+    }
+
+    /** Stops checking, e.g. when the camera closes. */
+    public synchronized void reset() {
+        moveTo(State.IDLE, Reason.RESET);
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized boolean isReady() {
+        return state == State.READY;
+    }
+
+    private void update(Reason reason) {
+        if (state == State.IDLE || state == State.RECORDING) {
+            return;
+        }
+        moveTo(derive(), reason);
+    }
+
+    private State derive() {
+        if (!lightingGood) {
+            return State.LIGHTING;
+        }
+        if (!framed) {
+            return State.FRAMING;
+        }
+        if (!still) {
+            return State.STABLE;
+        }
+        return State.READY;
+    }
+
+    private void moveTo(State next, Reason reason) {
+        if (next == state) {
+            return;
+        }
+        long now = clock.nowNanos();
+        State previous = state;
+        long previousMs = (now - enteredNs) / 1_000_000L;
+        state = next;
+        enteredNs = now;
+        if (listener != null) {
+            listener.onReadinessChanged(previous, next, reason, previousMs);
+        }
+    }
+}
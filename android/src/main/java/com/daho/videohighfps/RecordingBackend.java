@@ -0,0 +1,85 @@
+package com.daho.videohighfps;
+
+import android.view.Surface;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes the camera's recorder stream into a file.
+ *
+ * The capture session renders into {@link #getInputSurface()}; the backend owns
+ * encoding and muxing. Lifecycle per take: prepare, start, (pause/resume), stop,
+ * then reset before the next prepare. With a persistent surface the input surface
+ * stays the same across takes, so the session does not have to be rebuilt.
+ */
+public interface RecordingBackend {
+
+    interface Listener {
+        void onMaxFileSizeReached();
+
+        void onError(String message, Exception e);
+    }
+
+    /**
+     * Sees the recorded microphone audio (16-bit mono PCM) on the audio thread,
+     * before it is encoded. Must copy what it needs and return at once.
+     */
+    interface AudioTap {
+        void onAudio(ByteBuffer pcm, int offset, int bytes, int sampleRate);
+    }
+
+    /** Outcome of {@link #requestClip}; called on a background thread. */
+    interface ClipListener {
+        void onClipReady(String path, long durationUs, long bytes);
+
+        void onClipFailed(String path, Exception e);
+    }
+
+    /**
+     * Configures the next output file. {@code persistentSurface} is null unless the
+     * caller keeps one surface across takes.
+     */
+    void prepare(RecordingConfig config, Surface persistentSurface) throws IOException;
+
+    Surface getInputSurface();
+
+    void start();
+
+    void pause();
+
+    void resume();
+
+    /** Finishes the file. Returns false if nothing usable was written. */
+    boolean stop();
+
+    /** Back to unconfigured; {@link #prepare} may be called again. */
+    void reset();
+
+    void release();
+
+    /** Asks the encoder for a sync frame as soon as possible, where supported. */
+    void requestKeyFrame();
+
+    /** Called for every frame the camera delivered while recording; feeds queue depth. */
+    void onFrameCaptured();
+
+    /** Stats for the current or last take, or null if this backend cannot see them. */
+    EncoderStats getStats();
+
+    /** What the pre-roll added to the current take, or null without pre-roll. */
+    PreRollRing.Stats getPreRollStats();
+
+    /**
+     * Capture-clock time (us) of the current take's first frame, or -1 if it is
+     * not written yet or the backend cannot tell.
+     */
+    long getStartPtsUs();
+
+    /**
+     * Sentinel mode: cuts [now - preMs, now + postMs] into {@code outputPath} once
+     * the post-roll is recorded. Returns false if the backend is not recording
+     * continuously, in which case the listener is never called.
+     */
+    boolean requestClip(long preMs, long postMs, String outputPath, ClipListener listener);
+}
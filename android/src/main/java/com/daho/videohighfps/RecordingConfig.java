@@ -0,0 +1,44 @@
+package com.daho.videohighfps;
+
+/**
+ * Everything a {@link RecordingBackend} needs to prepare one output file.
+ */
+public class RecordingConfig {
+
+    public enum Codec {
+        H264("video/avc"),
+        HEVC("video/hevc");
+
+        public final String mime;
+
+        Codec(String mime) {
+            this.mime = mime;
+        }
+    }
+
+    /** Encoder rate control. MediaRecorder ignores this and always uses the device default. */
+    public enum BitrateMode {
+        VBR, CBR, CQ
+    }
+
+    public String outputPath;
+    public int width;
+    public int height;
+    public int fps;
+    public int bitrate;
+    public Codec codec = Codec.H264;
+    public BitrateMode bitrateMode = BitrateMode.VBR;
+    public int keyFrameIntervalSec = 1;
+    public int orientationHint = 0;
+    public long maxFileSizeBytes = 0; // 0 = no limit
+    public boolean audio = true;
+    public RecordingBackend.AudioTap audioTap; // MediaCodec backend only
+    // Pre-roll kept before start(), MediaCodec backend only; either limit alone turns it on
+    public long preRollMs = 0;
+    public long preRollMaxBytes = 0; // 0 = sized from preRollMs and the bitrate
+    // Sentinel mode, MediaCodec backend only: rotating segment files of this length instead of outputPath
+    public long segmentMs = 0;
+    public long sentinelRetainMs = 0; // how long closed segments stay available for clips
+    // Camera timestamps use elapsedRealtimeNanos() rather than nanoTime(); audio must match
+    public boolean realtimeTimestamps = false;
+}
@@ -0,0 +1,174 @@
+package com.daho.videohighfps;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Bookkeeping for sentinel recording: the rotating segment files on disk and
+ * the clips requested from them.
+ *
+ * Times are on the capture clock, in microseconds. A segment covers
+ * [start, end) and is only usable once closed. A clip [trigger - pre,
+ * trigger + post] is ready when closed segments reach its end; until it has
+ * been cut, the segments it needs are never evicted, however old they are.
+ *
+ * Free of Android classes and thread-safe.
+ */
+public class SegmentRing {
+
+    public static final class Segment {
+        public final int index;
+        public final String path;
+        public final long startUs;
+        private long endUs = -1;
+
+        Segment(int index, String path, long startUs) {
+            this.index = index;
+            this.path = path;
+            this.startUs = startUs;
+        }
+
+        /** End of the segment, or -1 while it is still being written. */
+        public synchronized long getEndUs() {
+            return endUs;
+        }
+    }
+
+    public static final class Clip {
+        public final long triggerUs;
+        public final long fromUs;
+        public final Object tag;
+        private long toUs;
+        private boolean cutting;
+
+        Clip(long triggerUs, long fromUs, long toUs, Object tag) {
+            this.triggerUs = triggerUs;
+            this.fromUs = fromUs;
+            this.toUs = toUs;
+            this.tag = tag;
+        }
+
+        public synchronized long getToUs() {
+            return toUs;
+        }
+    }
+
+    private final long retainUs;
+    private final List<Segment> segments = new ArrayList<>(); // oldest first
+    private final List<Clip> clips = new ArrayList<>(); // pending and being cut
+    private int nextIndex;
+
+    /** @param retainUs how long closed segments stay on disk when no clip needs them */
+    public SegmentRing(long retainUs) {
+        this.retainUs = retainUs;
+    }
+
+    public synchronized Segment open(String path, long startUs) {
+        Segment segment = new Segment(nextIndex++, path, startUs);
+        segments.add(segment);
+        return segment;
+    }
+
+    public synchronized void close(Segment segment, long endUs) {
+        synchronized (segment) {
+            segment.endUs = Math.max(segment.startUs, endUs);
+        }
+    }
+
+    /** Asks for [trigger - pre, trigger + post]; {@code tag} comes back with the clip. */
+    public synchronized Clip request(long triggerUs, long preUs, long postUs, Object tag) {
+        Clip clip = new Clip(triggerUs, triggerUs - Math.max(0, preUs), triggerUs + Math.max(0, postUs), tag);
+        clips.add(clip);
+        return clip;
+    }
+
+    /** Clips whose end is on disk now; the caller cuts each and then calls {@link #done}. */
+    public synchronized List<Clip> takeReady() {
+        long closedUntil = closedUntilUs();
+        List<Clip> ready = new ArrayList<>();
+        for (Clip clip : clips) {
+            if (!clip.cutting && clip.getToUs() <= closedUntil) {
+                clip.cutting = true;
+                ready.add(clip);
+            }
+        }
+        return ready;
+    }
+
+    /** Recording ended: every pending clip, cut short to what was recorded. */
+    public synchronized List<Clip> takeAll() {
+        long closedUntil = closedUntilUs();
+        List<Clip> all = new ArrayList<>();
+        for (Clip clip : clips) {
+            if (!clip.cutting) {
+                clip.cutting = true;
+                synchronized (clip) {
+                    clip.toUs = Math.min(clip.toUs, closedUntil);
+                }
+                all.add(clip);
+            }
+        }
+        return all;
+    }
+
+    public synchronized void done(Clip clip) {
+        clips.remove(clip);
+    }
+
+    /** Closed segments overlapping the clip, oldest first. */
+    public synchronized List<Segment> segmentsFor(Clip clip) {
+        List<Segment> out = new ArrayList<>();
+        for (Segment segment : segments) {
+            long end = segment.getEndUs();
+            if (end >= 0 && end > clip.fromUs && segment.startUs < clip.getToUs()) {
+                out.add(segment);
+            }
+        }
+        return out;
+    }
+
+    /** Removes and returns closed segments older than the retention that no clip needs. */
+    public synchronized List<Segment> evict(long nowUs) {
+        long keepFrom = nowUs - retainUs;
+        for (Clip clip : clips) {
+            keepFrom = Math.min(keepFrom, clip.fromUs);
+        }
+        List<Segment> evicted = new ArrayList<>();
+        for (Iterator<Segment> it = segments.iterator(); it.hasNext();) {
+            Segment segment = it.next();
+            long end = segment.getEndUs();
+            if (end < 0 || end > keepFrom) {
+                break; // segments are in order
+            }
+            it.remove();
+            evicted.add(segment);
+        }
+        return evicted;
+    }
+
+    /** Removes and returns every segment, e.g. to delete them when recording ends. */
+    public synchronized List<Segment> clear() {
+        List<Segment> all = new ArrayList<>(segments);
+        segments.clear();
+        clips.clear();
+        return all;
+    }
+
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    public synchronized int getPendingClipCount() {
+        return clips.size();
+    }
+
+    /** End of the newest closed segment, or Long.MIN_VALUE before the first closes. */
+    private long closedUntilUs() {
+        long until = Long.MIN_VALUE;
+        for (Segment segment : segments) {
+            until = Math.max(until, segment.getEndUs() >= 0 ? segment.getEndUs() : Long.MIN_VALUE);
+        }
+        return until;
+    }
+}
@@ -0,0 +1,132 @@
+package com.daho.videohighfps;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Tracks camera startup as a set of timed stages and starts the capture session
+ * as soon as its three inputs exist: an open camera device, a prepared recorder
+ * and a preview surface. Those stages run concurrently on whatever thread owns
+ * them; whichever finishes last triggers {@code onInputsReady}, exactly once.
+ *
+ * Platform-free so the join and the timings can be tested with a fake clock.
+ */
+public class StartupPipeline {
+
+    public enum Stage {
+        CAPABILITIES("capabilitiesMs"),
+        NEGOTIATE("negotiateMs"),
+        CAMERA_OPEN("cameraOpenMs"),
+        RECORDER_PREPARE("recorderPrepareMs"),
+        PREVIEW_SURFACE("previewSurfaceMs"),
+        SESSION_CONFIGURE("sessionConfigureMs"),
+        FIRST_FRAME("firstFrameMs");
+
+        /** Key used when reporting to JS. */
+        public final String key;
+
+        Stage(String key) {
+            this.key = key;
+        }
+    }
+
+    private static final Stage[] SESSION_INPUTS = { Stage.CAMERA_OPEN, Stage.RECORDER_PREPARE, Stage.PREVIEW_SURFACE };
+
+    private final FrameScheduler.Clock clock;
+    private final Runnable onInputsReady;
+    private final long createdNs;
+    private final Map<Stage, Long> beganNs = new EnumMap<>(Stage.class);
+    private final Map<Stage, Long> endedNs = new EnumMap<>(Stage.class);
+    private boolean inputsFired = false;
+    private boolean cancelled = false;
+
+    public StartupPipeline(Runnable onInputsReady) {
+        this(FrameScheduler.SYSTEM_CLOCK, onInputsReady);
+    }
+
+    public StartupPipeline(FrameScheduler.Clock clock, Runnable onInputsReady) {
+        this.clock = clock;
+        this.onInputsReady = onInputsReady;
+        this.createdNs = clock.nowNanos();
+    }
+
+    /** Marks a stage as started. Only the first call per stage counts. */
+    public synchronized void begin(Stage stage) {
+        if (!beganNs.containsKey(stage)) {
+            beganNs.put(stage, clock.nowNanos());
+        }
+    }
+
+    /**
+     * Marks a stage as finished. A stage that was never begun is treated as
+     * already available (e.g. a camera opened by prepare()) and takes 0 ms.
+     */
+    public void end(Stage stage) {
+        boolean fire;
+        synchronized (this) {
+            if (endedNs.containsKey(stage)) {
+                return;
+            }
+            long now = clock.nowNanos();
+            if (!beganNs.containsKey(stage)) {
+                beganNs.put(stage, now);
+            }
+            endedNs.put(stage, now);
+            fire = !inputsFired && !cancelled && inputsDone();
+            if (fire) {
+                inputsFired = true;
+            }
+        }
+        // Outside the lock: the callback creates the session
+        if (fire) {
+            onInputsReady.run();
+        }
+    }
+
+    /** Stops {@code onInputsReady} from firing, e.g. when startup is aborted. */
+    public synchronized void cancel() {
+        cancelled = true;
+    }
+
+    public synchronized boolean isDone(Stage stage) {
+        return endedNs.containsKey(stage);
+    }
+
+    /** Duration of a finished stage in milliseconds, or -1. */
+    public synchronized double getStageMs(Stage stage) {
+        Long end = endedNs.get(stage);
+        Long begin = beganNs.get(stage);
+        return end != null && begin != null ? (end - begin) / 1e6 : -1;
+    }
+
+    /** Milliseconds from construction until the first frame, or -1 if none yet. */
+    public synchronized double getTimeToFirstFrameMs() {
+        Long end = endedNs.get(Stage.FIRST_FRAME);
+        return end != null ? (end - createdNs) / 1e6 : -1;
+    }
+
+    /** Finished stages by report key, in pipeline order, plus "totalMs" once a frame arrived. */
+    public synchronized Map<String, Double> snapshot() {
+        Map<String, Double> out = new LinkedHashMap<>();
+        for (Stage stage : Stage.values()) {
+            if (endedNs.containsKey(stage)) {
+                out.put(stage.key, getStageMs(stage));
+            }
+        }
+        double total = getTimeToFirstFrameMs();
+        if (total >= 0) {
+            out.put("totalMs", total);
+        }
+        return out;
+    }
+
+    private boolean inputsDone() {
+        for (Stage input : SESSION_INPUTS) {
+            if (!endedNs.containsKey(input)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
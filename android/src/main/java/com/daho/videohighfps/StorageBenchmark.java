@@ -0,0 +1,158 @@
+package com.daho.videohighfps;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.SystemClock;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Measures sequential write throughput of the video directory and caches it.
+ *
+ * The write is the same shape as recording: large sequential chunks, with the
+ * final fsync counted, so the page cache cannot hide slow flash. The result is
+ * kept next to the capability cache and re-measured after an OS update, when the
+ * output directory changes, or after {@link #MAX_AGE_MS}.
+ */
+public class StorageBenchmark {
+
+    private static final String TAG = "StorageBenchmark";
+    private static final String DIR_NAME = "tpa-capabilities";
+    private static final String FILE_NAME = "storage.json";
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int CHUNK_BYTES = 1024 * 1024;
+    private static final int TOTAL_BYTES = 16 * CHUNK_BYTES;
+    private static final long MAX_AGE_MS = 30L * 24 * 60 * 60 * 1000;
+
+    private final File cacheFile;
+    private long cachedBytesPerSec = -1;
+
+    public StorageBenchmark(Context context) {
+        this.cacheFile = new File(new File(context.getFilesDir(), DIR_NAME), FILE_NAME);
+    }
+
+    /**
+     * Write throughput of {@code dir} in bytes/s, measuring it first if there is no
+     * valid cached value. Returns 0 if it cannot be measured.
+     */
+    public synchronized long getWriteBytesPerSec(File dir) {
+        if (cachedBytesPerSec >= 0) {
+            return cachedBytesPerSec;
+        }
+
+        long cached = read(dir);
+        if (cached > 0) {
+            TpaLog.d(TAG, "Using cached write throughput: " + cached / 1_000_000 + " MB/s");
+            cachedBytesPerSec = cached;
+            return cached;
+        }
+
+        long measured = measure(dir);
+        if (measured > 0) {
+            save(dir, measured);
+        }
+        cachedBytesPerSec = measured;
+        return measured;
+    }
+
+    private static long measure(File dir) {
+        if (!dir.exists() && !dir.mkdirs()) {
+            TpaLog.w(TAG, "Cannot create " + dir);
+            return 0;
+        }
+
+        File file = new File(dir, ".write-benchmark.tmp");
+        byte[] chunk = new byte[CHUNK_BYTES];
+        for (int i = 0; i < chunk.length; i++) {
+            chunk[i] = (byte) (i * 31); // not all zeros, in case the storage compresses
+        }
+
+        long startNs = SystemClock.elapsedRealtimeNanos();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            for (int written = 0; written < TOTAL_BYTES; written += CHUNK_BYTES) {
+                out.write(chunk);
+            }
+            out.getFD().sync();
+        } catch (IOException e) {
+            TpaLog.w(TAG, "Write benchmark failed", e);
+            return 0;
+        } finally {
+            if (file.exists() && !file.delete()) {
+                TpaLog.w(TAG, "Failed to delete " + file);
+            }
+        }
+        long elapsedNs = Math.max(1, SystemClock.elapsedRealtimeNanos() - startNs);
+
+        long bytesPerSec = TOTAL_BYTES * 1_000_000_000L / elapsedNs;
+        TpaLog.d(TAG, "⏱ Wrote " + TOTAL_BYTES / CHUNK_BYTES + " MB in " + elapsedNs / 1_000_000 + " ms: "
+                + bytesPerSec / 1_000_000 + " MB/s");
+        return bytesPerSec;
+    }
+
+    private long read(File dir) {
+        if (!cacheFile.exists()) {
+            return 0;
+        }
+
+        try (InputStream in = new FileInputStream(cacheFile)) {
+            byte[] data = new byte[(int) cacheFile.length()];
+            int read = 0;
+            while (read < data.length) {
+                int n = in.read(data, read, data.length - read);
+                if (n < 0)
+                    break;
+                read += n;
+            }
+
+            JSONObject json = new JSONObject(new String(data, 0, read, StandardCharsets.UTF_8));
+            long age = System.currentTimeMillis() - json.optLong("measuredAt");
+            if (json.optInt("version") != FORMAT_VERSION
+                    || !Build.FINGERPRINT.equals(json.optString("fingerprint"))
+                    || !dir.getAbsolutePath().equals(json.optString("path"))
+                    || age < 0 || age > MAX_AGE_MS) {
+                TpaLog.d(TAG, "Cached write throughput is stale, re-measuring");
+                return 0;
+            }
+            return json.optLong("bytesPerSec");
+        } catch (IOException | JSONException e) {
+            TpaLog.w(TAG, "Unreadable storage cache " + cacheFile + ", re-measuring", e);
+            return 0;
+        }
+    }
+
+    private void save(File dir, long bytesPerSec) {
+        File parent = cacheFile.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            TpaLog.w(TAG, "Cannot create " + parent);
+            return;
+        }
+
+        File tmp = new File(parent, FILE_NAME + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            JSONObject json = new JSONObject();
+            json.put("version", FORMAT_VERSION);
+            json.put("fingerprint", Build.FINGERPRINT);
+            json.put("path", dir.getAbsolutePath());
+            json.put("bytesPerSec", bytesPerSec);
+            json.put("measuredAt", System.currentTimeMillis());
+            out.write(json.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException | JSONException e) {
+            TpaLog.w(TAG, "Failed to write storage cache", e);
+            return;
+        }
+
+        if (!tmp.renameTo(cacheFile)) {
+            TpaLog.w(TAG, "Failed to replace storage cache " + cacheFile);
+        }
+    }
+}
@@ -12,12 +12,14 @@ import android.graphics.SurfaceTexture;
 import android.graphics.drawable.GradientDrawable;
 import android.hardware.camera2.*;
 import android.hardware.camera2.params.StreamConfigurationMap;
-import android.media.MediaRecorder;
+import android.media.MediaCodec;
 import android.os.Build;
+import android.os.Debug;
 import android.os.Handler;
 import android.os.HandlerThread;
+import android.os.PowerManager;
+import android.os.Looper;
 import android.os.SystemClock;
-import android.util.Log;
 import android.util.Range;
 import android.util.Size;
 import android.view.Display;
@@ -36,6 +38,7 @@ import android.widget.Toast;
 import androidx.annotation.DrawableRes;
 import androidx.annotation.NonNull;
 import androidx.core.app.ActivityCompat;
+import com.getcapacitor.JSArray;
 import com.getcapacitor.JSObject;
 import com.getcapacitor.Plugin;
 import com.getcapacitor.PluginCall;
@@ -44,26 +47,28 @@ import com.getcapacitor.PermissionState;
 import com.getcapacitor.annotation.CapacitorPlugin;
 import com.getcapacitor.annotation.Permission;
 import com.getcapacitor.annotation.PermissionCallback;
-import com.google.mlkit.vision.pose.PoseDetection;
-import com.google.mlkit.vision.pose.PoseDetector;
-import com.google.mlkit.vision.pose.defaults.PoseDetectorOptions;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import org.json.JSONObject;
 import android.graphics.Rect;
 
 // ONNX
 import android.graphics.Bitmap;
 import com.google.mlkit.vision.common.InputImage;
-import com.google.mlkit.vision.pose.PoseLandmark;
 import android.speech.tts.TextToSpeech;
-import com.google.mlkit.vision.pose.Pose;
 
 @CapacitorPlugin(name = "TpaCamera", permissions = {
         @Permission(strings = {
@@ -75,9 +80,13 @@ import com.google.mlkit.vision.pose.Pose;
 public class TpaCameraPlugin extends Plugin {
 
     private static final String TAG = "TpaCamera --=>";
+    // Per-pose validation runs at the analysis rate; a line a second is plenty
+    private static final TpaLog.Site POSE_LOG = TpaLog.site(TAG, TpaLog.DEBUG, 1000);
+    // A throttled sensor drops a frame every interval
+    private static final TpaLog.Site GAP_LOG = TpaLog.site(TAG, TpaLog.WARN, 1000);
     private CameraDevice cameraDevice;
     private CameraCaptureSession captureSession;
-    private MediaRecorder mediaRecorder;
+    private RecordingBackend recorder;
     private CameraManager cameraManager;
     private Handler backgroundHandler;
     private HandlerThread backgroundThread;
@@ -88,6 +97,7 @@ public class TpaCameraPlugin extends Plugin {
     private TextView timerView;
     private boolean isRecording = false;
     private boolean isPaused = false;
+    private boolean startingRecording = false; // recorder.start() pending on the recorder thread
     private long startTime;
     private String videoPath; // Absolute file path,
     private PluginCall storedCall;
@@ -99,52 +109,173 @@ public class TpaCameraPlugin extends Plugin {
     private View blackPlaceholder;
     private final Object cameraLock = new Object();
 
+    // Per-device capability cache (sizes, fps ranges, configure outcomes)
+    private CapabilityCache capabilityCache;
+    private CameraCapabilities capabilities;
+    private final ModeNegotiator modeNegotiator = new ModeNegotiator();
+    private List<ModeNegotiator.Candidate> candidateModes;
+    private int candidateIndex;
+    private boolean selectedHighSpeed;
+
+    // Startup pipeline: camera open, recorder prepare and preview surface in parallel
+    private StartupPipeline startupPipeline;
+    private boolean startupWarm = false;
+    private volatile boolean awaitingFirstFrame = false;
+    private volatile boolean cameraOpening = false;
+    private PluginCall prepareCall;
+    private HandlerThread recorderThread;
+    private Handler recorderHandler;
+    private final Object recorderLock = new Object();
+    private CaptureMode warmRecorderMode; // mode the startup recorder was prepared for
+
+    // Session telemetry, reported by getMetrics() and with every result
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    private final MetricsRegistry.Counter framesDelivered = metrics.counter("capture.framesDelivered");
+    private long activeSinceMs; // start of the recorded span not yet counted as frames expected, 0 if none
+    private long[] gcAtStart;
+
+    // Sensor timestamps of the repeating request, watched for gaps; one monitor per capture mode
+    private volatile CaptureMonitor captureMonitor;
+    private boolean downgradeOnThrottle = false;
+    private final LatencyHistogram captureGaps = metrics.histogram("capture.gapUs");
+    private final MetricsRegistry.Counter framesMissed = metrics.counter("capture.framesMissed");
+
+    // Multi-take: the session records into a persistent surface, only the output file rotates
+    private boolean multiTake = false;
+    private Surface persistentRecorderSurface;
+    private final List<JSObject> takes = new ArrayList<>();
+
+    // Sentinel: the camera records continuously into rotating segments and triggers cut clips
+    private boolean sentinel = false;
+    private long segmentMs = DEFAULT_SEGMENT_MS;
+    private long clipPreMs = DEFAULT_CLIP_PRE_MS;
+    private long clipPostMs = DEFAULT_CLIP_POST_MS;
+    private boolean clipOnMotion = false;
+    private boolean clipOnSound = false;
+    private long lastAutoClipMs = 0; // main thread
+    private final Map<String, PluginCall> clipCalls = new HashMap<>(); // main thread, by clip path
+    private static final long DEFAULT_SEGMENT_MS = 2000;
+    private static final long DEFAULT_CLIP_PRE_MS = 3000;
+    private static final long DEFAULT_CLIP_POST_MS = 2000;
+    private static final float CLIP_MOTION_THRESHOLD = 1.0f; // body heights per second; a jump or a swing
+
+    // slowMotion: a motion index sidecar next to each take, built from the pose stream
+    private boolean motionIndexEnabled = false;
+    private MotionIndex motionIndex; // main thread, while a take records
+    private boolean realtimeTimestamps = false; // clock of sensor and pose timestamps
+
+    // landmarkTrack: every analyzed pose of a take in a binary file next to the video
+    private boolean landmarkTrackEnabled = false;
+    private LandmarkTrack.Writer landmarkWriter; // main thread, while a take records
+    private VideoClock videoClock; // places pose timestamps in the take's file
+    private boolean videoClockExact = false; // origin taken from the encoder, not estimated
+    private static final int DEFAULT_LANDMARK_MAX_FRAMES = 1000;
+
+    // Recording backend and encoder settings (startRecording options)
+    private boolean useMediaCodec = false;
+    private RecordingConfig.Codec videoCodec = null; // null = chosen by the encoder plan
+    private RecordingConfig.BitrateMode bitrateMode = RecordingConfig.BitrateMode.VBR;
+    private final EncoderPlanner encoderPlanner = new EncoderPlanner();
+    private long preRollMs = 0;
+    private long preRollMaxBytes = 0;
+    private StorageBenchmark storageBenchmark;
+    private EncoderPlanner.Plan encoderPlan;
+    private String encoderPlanKey; // inputs the plan was made for; takes reuse it
+
     // ONNX
     private onnxPreChecking preCheck;
-    private PoseDetector poseDetector;
 
-    // Pose detection handler with 1-second interval
-    private final Handler poseHandler = new Handler();
-    private int poseDetectionInterval = 1000; // Start with 1 second
+    // Low-resolution frames for pose and lighting checks
+    private AnalysisStream analysisStream;
+    private double analysisFps = DEFAULT_ANALYSIS_FPS;
+    private static final double DEFAULT_ANALYSIS_FPS = 15;
 
-    private FeedbackHelper feedbackHelper;
-    private final AtomicBoolean isTtsInitializing = new AtomicBoolean(false);
-    private static final int TTS_INIT_DELAY_MS = 500;
-    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // The one pose detector; validation and the pre-check subscribe to its results
+    private PoseService<AnalysisFrame, PoseFrame> poseService;
+    private final float[] poseBox = new float[4]; // main thread only, reused for every validation
 
-    /**
-     * Safely initializes the FeedbackHelper with TTS capabilities
-     * Ensures only one initialization happens at a time
-     */
-    private void initializeFeedbackHelper() {
-        // Already initialized or in progress
-        if (feedbackHelper != null || isTtsInitializing.get()) {
-            return;
+    // Smooths the pose stream and tells a still athlete from a moving one
+    private final PoseStabilizer poseStabilizer = new PoseStabilizer();
+    private final PoseService.Subscriber<PoseFrame> stabilitySubscriber = result -> onPoseForReadiness(
+            result.pose);
+
+    // Lighting -> framing -> stillness -> ready, driven by lighting and pose events
+    private final ReadinessMachine readiness = new ReadinessMachine(this::onReadinessChanged);
+
+    // Hands-free start after readiness holds, and the automatic stop rules
+    private AutoTrigger.Config autoConfig = new AutoTrigger.Config();
+    private final AutoTrigger autoTrigger = new AutoTrigger(new AutoTrigger.Actions() {
+        @Override
+        public void onCountdown(int remaining) {
+            TpaLog.d(TAG, "⏳ Auto-start in " + remaining);
+            mainHandler.post(() -> {
+                if (feedbackHelper != null) {
+                    feedbackHelper.playBeeps(1);
+                }
+            });
         }
 
-        // Set initialization flag
-        isTtsInitializing.set(true);
+        @Override
+        public void onCountdownCancelled() {
+            TpaLog.d(TAG, "⏳ Auto-start countdown cancelled, athlete no longer ready");
+        }
 
-        getActivity().runOnUiThread(() -> {
-            try {
-                Log.d(TAG, "Initializing FeedbackHelper...");
-                initializeFeedbackHelper();
-
-                // Set up delayed check for TTS readiness
-                mainHandler.postDelayed(() -> {
-                    isTtsInitializing.set(false);
-                    if (feedbackHelper != null) {
-                        Log.d(TAG, "FeedbackHelper initialization complete");
-                    } else {
-                        Log.e(TAG, "FeedbackHelper initialization failed");
-                    }
-                }, TTS_INIT_DELAY_MS);
+        @Override
+        public void onStart() {
+            mainHandler.post(() -> {
+                if (!isRecording) {
+                    startRecordingInternal();
+                }
+            });
+        }
 
-            } catch (Exception e) {
-                isTtsInitializing.set(false);
-                Log.e(TAG, "Failed to initialize FeedbackHelper", e);
-            }
-        });
+        @Override
+        public void onStop(AutoTrigger.StopReason reason) {
+            TpaLog.d(TAG, "⏹ Auto-stop: " + reason.key);
+            mainHandler.post(() -> {
+                if (isRecording) {
+                    stopReason = reason.key;
+                    stopRecording();
+                }
+            });
+        }
+    });
+    private String stopReason; // set by an automatic stop, reported with the take
+
+    // Offline "yes" / "start" / "stop" / "pause"
+    private boolean voiceCommandsEnabled = false;
+    private VoiceCommands voiceCommands;
+
+    // Lighting gate from capture-result exposure metadata
+    private ExposureEstimator exposureEstimator;
+    private long lastExposureSampleNs = 0;
+    private static final long EXPOSURE_SAMPLE_INTERVAL_NS = 33_000_000L; // ~30 Hz is plenty for lighting
+
+    private FeedbackHelper feedbackHelper; // the only one; the pre-check speaks through it too
+    private static final String READY_PROMPT = "You're good to go, can I start recording now?";
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Creates the FeedbackHelper once; TTS then comes up on the main thread.
+     * Every prompt goes through its single arbiter, so the pre-check's warnings
+     * and the plugin's own prompts are prioritized against each other.
+     */
+    private FeedbackHelper initializeFeedbackHelper() {
+        if (feedbackHelper == null) {
+            TpaLog.d(TAG, "Initializing FeedbackHelper...");
+            feedbackHelper = new FeedbackHelper(getContext());
+            // One cache, one AudioTrack: every fixed prompt is registered before TTS syncs it
+            feedbackHelper.precache(READY_PROMPT);
+            feedbackHelper.precache(onnxPreChecking.PHRASES);
+            feedbackHelper.setQueueDelayHistogram(metrics.histogram("tts.queueDelayUs"));
+            // The microphone would hear our own prompts as commands
+            feedbackHelper.setSpeakingListener(speaking -> {
+                if (voiceCommands != null) {
+                    voiceCommands.setSuspended(speaking);
+                }
+            });
+        }
+        return feedbackHelper;
     }
 
     /**
@@ -152,7 +283,7 @@ public class TpaCameraPlugin extends Plugin {
      */
     private void safeSpeakWithBeeps(String message, int beeps, long delay, Runnable action) {
         if (feedbackHelper == null) {
-            Log.w(TAG, "Cannot speak - FeedbackHelper not initialized");
+            TpaLog.w(TAG, "Cannot speak - FeedbackHelper not initialized");
             // Optionally queue the message or retry initialization
             return;
         }
@@ -161,7 +292,7 @@ public class TpaCameraPlugin extends Plugin {
             try {
                 feedbackHelper.speakWithBeeps(message, beeps, delay, action);
             } catch (Exception e) {
-                Log.e(TAG, "Error in safeSpeakWithBeeps", e);
+                TpaLog.e(TAG, "Error in safeSpeakWithBeeps", e);
             }
         });
     }
@@ -174,51 +305,27 @@ public class TpaCameraPlugin extends Plugin {
             try {
                 feedbackHelper.shutdown();
             } catch (Exception e) {
-                Log.e(TAG, "Error shutting down FeedbackHelper", e);
+                TpaLog.e(TAG, "Error shutting down FeedbackHelper", e);
             }
             feedbackHelper = null;
         }
-        isTtsInitializing.set(false);
     }
 
-    private final Runnable poseRunnable = new Runnable() {
-        @Override
-        public void run() {
-            if (textureView != null && textureView.isAvailable()) {
-                // Convert the current frame into a Bitmap
-                Bitmap bitmap = textureView.getBitmap();
-
-                if (bitmap != null) {
-                    // Convert Bitmap to InputImage
-                    InputImage image = InputImage.fromBitmap(bitmap, 0); // The second argument is the rotation (if any)
-
-                    // Process the frame with pose detection
-                    poseDetector.process(image)
-                            .addOnSuccessListener(pose -> {
-                                if (pose != null) {
-                                    // Validate the pose
-                                    validatePoseAndFeedback(pose, textureView.getWidth(), textureView.getHeight());
-                                }
-                            })
-                            .addOnFailureListener(e -> {
-                                Log.e(TAG, "Pose detection failed", e);
-                                poseDetectionInterval = 2000; // Increase interval after failure
-                                poseHandler.postDelayed(this, poseDetectionInterval); // Retry after a longer interval
-                            });
-                } else {
-                    Log.w(TAG, "Failed to get bitmap from TextureView");
-                }
-            }
-
-            // Re-run after dynamic interval (default 1 second or adjusted based on
-            // conditions)
-            poseHandler.postDelayed(this, poseDetectionInterval);
+    private PoseService<AnalysisFrame, PoseFrame> getPoseService() {
+        if (poseService == null) {
+            poseService = new PoseService<>(new MlKitPoseDetector(), AnalysisFrame::release,
+                    FrameScheduler.SYSTEM_CLOCK, analysisFps);
+            poseService.setLatencyHistogram(metrics.histogram("analysis.latencyUs"));
         }
-    };
+        return poseService;
+    }
 
-    // Start pose detection with dynamic interval
-    public void startPoseDetection() {
-        poseHandler.post(poseRunnable); // Ensure this is inside a method that is executed
+    private onnxPreChecking getPreCheck() {
+        if (preCheck == null) {
+            preCheck = new onnxPreChecking(getContext(), getPoseService(), initializeFeedbackHelper());
+            preCheck.setLightingListener(readiness::onLighting);
+        }
+        return preCheck;
     }
 
     // timerHandler
@@ -237,7 +344,7 @@ public class TpaCameraPlugin extends Plugin {
 
     @PluginMethod
     public void startRecording(PluginCall call) {
-        Log.d(TAG, "startRecording(PluginCall call) is called");
+        TpaLog.d(TAG, "startRecording(PluginCall call) is called");
 
         this.storedCall = call;
         this.cameraManager = (CameraManager) getContext().getSystemService(Context.CAMERA_SERVICE);
@@ -248,64 +355,73 @@ public class TpaCameraPlugin extends Plugin {
             return;
         }
 
-        Log.d(TAG, "startRecording -> Permission granted...");
-
-        // ✅ ONNX: Only lighting check
-        if (preCheck == null) {
-            preCheck = new onnxPreChecking(getContext());
-        }
+        TpaLog.d(TAG, "startRecording -> Permission granted...");
 
         // ✅ Safe FeedbackHelper initialization (no crash on null)
         initializeFeedbackHelper();
 
-        // ONNX: Initialize pose detector (only once)
-        if (poseDetector == null) {
-            poseDetector = PoseDetection.getClient(new PoseDetectorOptions.Builder()
-                    .setDetectorMode(PoseDetectorOptions.STREAM_MODE)
-                    .build());
-        }
+        // ✅ ONNX: Only lighting check, speaking through the same helper
+        getPreCheck();
 
-        // Read parameters for video recording
-        Integer fpsOpt = call.getInt("fps");
-        this.videoFrameRate = (fpsOpt != null) ? fpsOpt : 240;
+        // Lighting verdicts come from exposure metadata of the running session
+        exposureEstimator = new ExposureEstimator((lighting, ev100) -> {
+            TpaLog.d(TAG, "💡 Lighting " + lighting + " (EV100 " + String.format(Locale.US, "%.1f", ev100) + ")");
+            onnxPreChecking check = preCheck;
+            if (check != null) {
+                check.onExposureLighting(lighting);
+            }
+        });
+        lastExposureSampleNs = 0;
 
-        String resOpt = call.getString("resolution");
-        String resolution = (resOpt != null) ? resOpt : "1080p";
+        // ONNX: Initialize the shared pose service (only once) and follow the athlete's stillness
+        poseStabilizer.reset();
+        getPoseService().subscribe(stabilitySubscriber);
+        readiness.start();
 
-        Long sizeOpt = call.getLong("sizeLimit");
-        this.sizeLimit = (sizeOpt != null) ? sizeOpt : 0L;
+        String resolution = readCaptureOptions(call);
+        autoTrigger.arm(autoConfig);
+        if (voiceCommandsEnabled) {
+            startVoiceCommands();
+        }
 
-        Log.d(TAG, "start Recording Params:");
-        Log.d(TAG, " --> fps: " + videoFrameRate);
-        Log.d(TAG, " --> sizeLimit: " + sizeLimit);
-        Log.d(TAG, " --> resolution: " + resolution);
+        TpaLog.d(TAG, "start Recording Params:");
+        TpaLog.d(TAG, " --> fps: " + videoFrameRate);
+        TpaLog.d(TAG, " --> sizeLimit: " + sizeLimit);
+        TpaLog.d(TAG, " --> resolution: " + resolution);
+        TpaLog.d(TAG, " --> analysisFps: " + analysisFps);
 
         // Start lighting check
-        Log.d(TAG, "✅ [ONNX] Preparing lighting monitor...");
-        getActivity().runOnUiThread(() -> {
-            if (textureView != null && textureView.isAvailable()) {
-                preCheck.startReactiveLightingCheck(textureView);
-                Log.d(TAG, "✅ [ONNX] Lighting check started");
-            } else {
-                Log.w(TAG, "⚠️ [ONNX] TextureView not available yet");
-            }
-        });
+        TpaLog.d(TAG, "✅ [ONNX] Preparing lighting monitor...");
+        preCheck.startReactiveLightingCheck();
+        TpaLog.d(TAG, "✅ [ONNX] Lighting check armed, waiting for analysis frames");
 
         // Camera initialization and preview
         try {
-            cleanupResources();
-            stopBackgroundThread();
-
-            // Start fresh
-            startBackgroundThread();
-            cameraDevice = null;
+            // A camera opened (or opening) from prepare() is kept; anything else starts fresh
+            final boolean warm = isCameraWarm();
+            if (!warm) {
+                metrics.reset(); // a warm start keeps what prepare() measured
+                cleanupResources();
+                stopBackgroundThread();
+                startBackgroundThread();
+                cameraDevice = null;
+            }
             captureSession = null;
-            mediaRecorder = null;
+            recorder = null;
             isRecording = false;
             isPaused = false;
-
-            this.selectedCameraId = getPreferredCameraId();
-            selectOptimalConfiguration(resolution, videoFrameRate);
+            takes.clear();
+
+            // Camera open, recorder prepare and preview surface now run side by side
+            synchronized (cameraLock) {
+                startupPipeline = new StartupPipeline(this::onStartupInputsReady);
+                startupWarm = warm;
+                if (cameraDevice != null) {
+                    startupPipeline.end(StartupPipeline.Stage.CAMERA_OPEN);
+                } else if (warm) {
+                    startupPipeline.begin(StartupPipeline.Stage.CAMERA_OPEN);
+                }
+            }
 
             getActivity().runOnUiThread(() -> {
                 try {
@@ -315,167 +431,550 @@ public class TpaCameraPlugin extends Plugin {
                     View webView = getBridge().getWebView();
                     if (webView != null) {
                         webView.setVisibility(View.GONE);
-                        Log.d(TAG, "WebView hidden for native camera mode");
+                        TpaLog.d(TAG, "WebView hidden for native camera mode");
                     }
                 } catch (Exception e) {
                     rejectIfPossible(e.getMessage());
                 }
             });
 
-            // Check Lighting and Pose after some time (recheck loop)
-            new Handler().postDelayed(() -> {
-                // First, check lighting
-                preCheck.startReactiveLightingCheck(textureView); // Fixed here
-
-                if (isLightingGood()) {
-                    // Then, check pose
-                    Log.d(TAG, "start checking pose -------------------------------------------");
-                    preCheck.detectPoseFromPreview(textureView);
-                } else {
-                    Log.w(TAG, "Lighting is not good, retrying...");
-                    preCheck.startReactiveLightingCheck(textureView); // Retry Lighting Check
-                    return;
-                }
-
-                // Get the latest pose after the lighting check
-                Pose latestPose = preCheck.getLatestPose(); // Ensure you are getting the most recent pose from preCheck
-
-                // Validate pose
-                if (latestPose != null && isPoseValid(latestPose, textureView.getWidth(), textureView.getHeight())) {
-                    askToStartRecording();
-                } else {
-                    Log.w(TAG, "Pose is invalid, retrying...");
-                    preCheck.detectPoseFromPreview(textureView); // Keep checking pose
+            backgroundHandler.post(() -> {
+                try {
+                    if (!warm) {
+                        selectedCameraId = getPreferredCameraId();
+                    }
+                    loadCapabilities();
+                    negotiateCaptureModes(call, resolution);
+                    prepareRecorderAsync();
+                    if (!warm) {
+                        openCamera();
+                    }
+                } catch (Exception e) {
+                    TpaLog.e(TAG, "Failed to start camera pipeline", e);
+                    abortStartup("Failed to start recording: " + e.getMessage());
                 }
-            }, 5000); // Check again after 5 seconds
+            });
 
         } catch (Exception e) {
-            Log.e(TAG, "Failed to startRecording()", e);
+            TpaLog.e(TAG, "Failed to startRecording()", e);
             cleanupResources();
             stopBackgroundThread();
             call.reject("Failed to start recording: " + e.getMessage());
         }
     }
 
-    private boolean isLightingGood() {
-        return true;
+    /**
+     * Opens the camera ahead of startRecording(): looks up capabilities, negotiates the
+     * capture mode and opens the device, so the later call only has to build the
+     * preview and session. Resolves with the stage timings once the camera is open.
+     */
+    @PluginMethod
+    public void prepare(PluginCall call) {
+        TpaLog.d(TAG, "prepare(PluginCall call) is called");
+        this.cameraManager = (CameraManager) getContext().getSystemService(Context.CAMERA_SERVICE);
+
+        if (getPermissionState("camera") != PermissionState.GRANTED) {
+            requestPermissionForAlias("camera", call, "onPreparePermissionResult");
+            return;
+        }
+
+        if (isRecording || captureSession != null || prepareCall != null) {
+            call.reject("Camera is busy");
+            return;
+        }
+
+        String resolution = readCaptureOptions(call);
+        if (cameraDevice != null) {
+            call.resolve(startupTimingsResult());
+            return;
+        }
+
+        startBackgroundThread();
+        metrics.reset();
+        synchronized (cameraLock) {
+            startupPipeline = new StartupPipeline(this::onStartupInputsReady);
+            startupWarm = false;
+        }
+        prepareCall = call;
+
+        backgroundHandler.post(() -> {
+            try {
+                selectedCameraId = getPreferredCameraId();
+                loadCapabilities();
+                negotiateCaptureModes(call, resolution);
+                openCamera();
+            } catch (Exception e) {
+                TpaLog.e(TAG, "Failed to prepare camera", e);
+                failPrepare("Failed to prepare camera: " + e.getMessage());
+            }
+        });
     }
 
-    private String getPreferredCameraId() throws CameraAccessException {
-        String[] cameraIds = cameraManager.getCameraIdList();
-        if (cameraIds.length == 0) {
-            throw new CameraAccessException(CameraAccessException.CAMERA_ERROR, "No cameras available");
+    @PermissionCallback
+    private void onPreparePermissionResult(PluginCall call) {
+        if (getPermissionState("camera") == PermissionState.GRANTED) {
+            prepare(call);
+        } else {
+            call.reject("Camera permission denied");
         }
+    }
 
-        // Log available cameras for debugging
-        Log.d(TAG, "Available cameras...: " + Arrays.toString(cameraIds));
+    // Options shared by prepare() and startRecording(); returns the resolution string
+    private String readCaptureOptions(PluginCall call) {
+        Integer fpsOpt = call.getInt("fps");
+        this.videoFrameRate = (fpsOpt != null) ? fpsOpt : 240;
 
-        // Prefer back camera
-        for (String cameraId : cameraIds) {
-            CameraCharacteristics characteristics = cameraManager.getCameraCharacteristics(cameraId);
-            Integer lensFacing = characteristics.get(CameraCharacteristics.LENS_FACING);
-            if (lensFacing != null && lensFacing == CameraCharacteristics.LENS_FACING_BACK) {
-                return cameraId;
+        String resOpt = call.getString("resolution");
+        String resolution = (resOpt != null) ? resOpt : "1080p";
+
+        Long sizeOpt = call.getLong("sizeLimit");
+        this.sizeLimit = (sizeOpt != null) ? sizeOpt : 0L;
+
+        Boolean multiTakeOpt = call.getBoolean("multiTake");
+        this.multiTake = multiTakeOpt != null && multiTakeOpt;
+
+        Boolean downgradeOpt = call.getBoolean("downgradeOnThrottle");
+        this.downgradeOnThrottle = downgradeOpt != null && downgradeOpt;
+
+        this.useMediaCodec = "mediacodec".equals(call.getString("recorder"));
+        String codecOpt = call.getString("codec");
+        this.videoCodec = "hevc".equals(codecOpt) ? RecordingConfig.Codec.HEVC
+                : "h264".equals(codecOpt) ? RecordingConfig.Codec.H264 : null;
+        String modeOpt = call.getString("bitrateMode");
+        this.bitrateMode = "cbr".equals(modeOpt) ? RecordingConfig.BitrateMode.CBR
+                : "cq".equals(modeOpt) ? RecordingConfig.BitrateMode.CQ : RecordingConfig.BitrateMode.VBR;
+
+        AutoTrigger.Config auto = new AutoTrigger.Config();
+        Boolean autoStartOpt = call.getBoolean("autoStart");
+        auto.autoStart = autoStartOpt != null && autoStartOpt;
+        Long dwellOpt = call.getLong("autoStartDwellMs");
+        if (dwellOpt != null && dwellOpt >= 0) {
+            auto.dwellMs = dwellOpt;
+        }
+        Integer countdownOpt = call.getInt("countdown");
+        if (countdownOpt != null && countdownOpt >= 0) {
+            auto.countdown = countdownOpt;
+        }
+        Long absentOpt = call.getLong("autoStopAbsentMs");
+        auto.absentStopMs = (absentOpt != null && absentOpt >= 0) ? absentOpt : auto.autoStart ? 2000 : 0;
+        Long maxDurationOpt = call.getLong("maxDurationMs");
+        auto.maxDurationMs = (maxDurationOpt != null && maxDurationOpt > 0) ? maxDurationOpt : 0;
+        this.autoConfig = auto;
+
+        Long preRollOpt = call.getLong("preRollMs");
+        this.preRollMs = (preRollOpt != null && preRollOpt > 0) ? preRollOpt : 0;
+        Long preRollBytesOpt = call.getLong("preRollMaxBytes");
+        this.preRollMaxBytes = (preRollBytesOpt != null && preRollBytesOpt > 0) ? preRollBytesOpt : 0;
+        if (preRollEnabled() && !useMediaCodec) {
+            TpaLog.w(TAG, "Pre-roll needs the mediacodec recorder, ignoring it");
+        }
+
+        Boolean sentinelOpt = call.getBoolean("sentinel");
+        this.sentinel = sentinelOpt != null && sentinelOpt;
+        Long segmentOpt = call.getLong("segmentMs");
+        this.segmentMs = (segmentOpt != null && segmentOpt >= 500) ? segmentOpt : DEFAULT_SEGMENT_MS;
+        Long clipPreOpt = call.getLong("clipPreMs");
+        this.clipPreMs = (clipPreOpt != null && clipPreOpt >= 0) ? clipPreOpt : DEFAULT_CLIP_PRE_MS;
+        Long clipPostOpt = call.getLong("clipPostMs");
+        this.clipPostMs = (clipPostOpt != null && clipPostOpt >= 0) ? clipPostOpt : DEFAULT_CLIP_POST_MS;
+        Boolean motionOpt = call.getBoolean("clipOnMotion");
+        this.clipOnMotion = motionOpt != null && motionOpt;
+        Boolean soundOpt = call.getBoolean("clipOnSound");
+        this.clipOnSound = soundOpt != null && soundOpt;
+        if (sentinel) {
+            // Segments are cut at keyframes by our own muxer, which MediaRecorder does not expose
+            this.useMediaCodec = true;
+            this.multiTake = false;
+        }
+
+        Boolean slowMotionOpt = call.getBoolean("slowMotion");
+        this.motionIndexEnabled = slowMotionOpt != null && slowMotionOpt;
+        Boolean landmarkTrackOpt = call.getBoolean("landmarkTrack");
+        this.landmarkTrackEnabled = landmarkTrackOpt != null && landmarkTrackOpt;
+
+        Boolean voiceOpt = call.getBoolean("voiceCommands");
+        this.voiceCommandsEnabled = voiceOpt != null && voiceOpt;
+
+        Double analysisFpsOpt = call.getDouble("analysisFps");
+        this.analysisFps = (analysisFpsOpt != null && analysisFpsOpt > 0) ? analysisFpsOpt : DEFAULT_ANALYSIS_FPS;
+        if (poseService != null) {
+            poseService.setTargetFps(analysisFps);
+        }
+        return resolution;
+    }
+
+    // True when prepare() left a camera open (or opening) with no session on it yet
+    private boolean isCameraWarm() {
+        synchronized (cameraLock) {
+            return (cameraDevice != null || cameraOpening || prepareCall != null) && captureSession == null
+                    && !isRecording && backgroundHandler != null;
+        }
+    }
+
+    private void loadCapabilities() throws CameraAccessException {
+        StartupPipeline pipeline = startupPipeline;
+        pipeline.begin(StartupPipeline.Stage.CAPABILITIES);
+        if (capabilities == null || !capabilities.getCameraId().equals(selectedCameraId)) {
+            if (capabilityCache == null) {
+                capabilityCache = new CapabilityCache(getContext());
             }
+            this.capabilities = capabilityCache.load(cameraManager, selectedCameraId);
         }
+        pipeline.end(StartupPipeline.Stage.CAPABILITIES);
+    }
 
-        // Fallback to first available camera
-        Log.w(TAG, "No back camera found, using camera ID: " + cameraIds[0]);
-        return cameraIds[0];
+    // Recorder prepare() runs on its own thread while the camera opens
+    private void prepareRecorderAsync() {
+        StartupPipeline pipeline = startupPipeline;
+        Handler handler = recorderHandler;
+        if (handler == null) {
+            return;
+        }
+
+        pipeline.begin(StartupPipeline.Stage.RECORDER_PREPARE);
+        handler.post(() -> {
+            try {
+                synchronized (recorderLock) {
+                    safeReleaseRecorder();
+                    setupRecorder();
+                    warmRecorderMode = selectedMode();
+                }
+                pipeline.end(StartupPipeline.Stage.RECORDER_PREPARE);
+            } catch (Exception e) {
+                TpaLog.e(TAG, "Failed to prepare recorder", e);
+                abortStartup("Failed to prepare recorder: " + e.getMessage());
+            }
+        });
     }
 
-    private void selectOptimalConfiguration(String resolution, int requestedFps) throws CameraAccessException {
-        CameraCharacteristics characteristics = cameraManager.getCameraCharacteristics(selectedCameraId);
-        StreamConfigurationMap configMap = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
-        if (configMap == null) {
-            throw new IllegalStateException("Cannot access camera configuration");
+    // Camera, recorder and preview surface all exist: build the session right away
+    private void onStartupInputsReady() {
+        Handler handler = backgroundHandler;
+        if (handler == null) {
+            return;
         }
 
-        // Log full capability matrix
-        Log.d(TAG, "Supported High-Speed Video Sizes and FPS Ranges:");
-        for (Size size : configMap.getHighSpeedVideoSizes()) {
+        handler.post(() -> {
             try {
-                Range<Integer>[] ranges = configMap.getHighSpeedVideoFpsRangesFor(size);
-                for (Range<Integer> r : ranges) {
-                    Log.d(TAG, size.getWidth() + "x" + size.getHeight() + " @ " + r.getLower() + "–"
-                            + r.getUpper() + " fps");
+                synchronized (cameraLock) {
+                    if (cameraDevice == null) {
+                        rejectIfPossible("Camera disconnected before session start");
+                        return;
+                    }
+                    startupPipeline.begin(StartupPipeline.Stage.SESSION_CONFIGURE);
+                    startSelectedSession();
                 }
-            } catch (IllegalArgumentException e) {
-                Log.w(TAG, size + " (not valid for high-speed)");
+            } catch (Exception e) {
+                TpaLog.w(TAG, "Session setup failed: " + e.getMessage(), e);
+                tryNextCandidate();
             }
+        });
+    }
+
+    // A session configured: start waiting for its first frame
+    private void onSessionConfigured() {
+        StartupPipeline pipeline = startupPipeline;
+        if (pipeline != null && !pipeline.isDone(StartupPipeline.Stage.FIRST_FRAME)) {
+            pipeline.end(StartupPipeline.Stage.SESSION_CONFIGURE);
+            pipeline.begin(StartupPipeline.Stage.FIRST_FRAME);
+            awaitingFirstFrame = true;
         }
+    }
 
-        Size[] availableSizes = configMap.getOutputSizes(MediaRecorder.class);
-        selectedSize = null;
-        videoFrameRate = 30;
+    private void onFirstFrame() {
+        awaitingFirstFrame = false;
+        StartupPipeline pipeline = startupPipeline;
+        if (pipeline == null) {
+            return;
+        }
+        pipeline.end(StartupPipeline.Stage.FIRST_FRAME);
+        metrics.gauge("startup.timeToPreviewMs").set(pipeline.getTimeToFirstFrameMs());
 
-        List<Integer> fallbackFpsList = Arrays.asList(240, 120, 60, 30);
-        List<Size> resolutionPriority = Arrays.asList(
-                new Size(1920, 1080), // Full HD
-                new Size(1280, 720) // HD
-        );
+        JSObject timings = startupTimingsResult();
+        TpaLog.d(TAG, "⏱ Time to first frame: " + timings.toString());
+        notifyListeners("startupTimings", timings);
+    }
 
-        // === Fallback Decision Trace ===
-        for (int targetFps : fallbackFpsList) {
-            for (Size size : resolutionPriority) {
-                Log.d(TAG, "Trying Fallback: " + size.getWidth() + "x" + size.getHeight() + " @ " + targetFps + "fps");
+    private JSObject startupTimingsResult() {
+        JSObject result = new JSObject();
+        result.put("cameraId", selectedCameraId);
+        result.put("warm", startupWarm);
+        if (selectedSize != null) {
+            result.put("mode", selectedMode().key());
+        }
+        StartupPipeline pipeline = startupPipeline;
+        if (pipeline != null) {
+            for (Map.Entry<String, Double> stage : pipeline.snapshot().entrySet()) {
+                result.put(stage.getKey(), stage.getValue());
+            }
+        }
+        return result;
+    }
 
-                try {
-                    List<Size> supportedHighSpeedSizes = Arrays.asList(configMap.getHighSpeedVideoSizes());
-                    if (!supportedHighSpeedSizes.contains(size)) {
-                        Log.d(TAG, "Not in supportedHighSpeedSizes");
-                        continue;
-                    }
+    private void abortStartup(String errorMessage) {
+        StartupPipeline pipeline = startupPipeline;
+        if (pipeline != null) {
+            pipeline.cancel();
+        }
+        failPrepare(errorMessage);
+        rejectIfPossible(errorMessage);
+        getActivity().runOnUiThread(this::cleanupResources);
+    }
 
-                    Range<Integer>[] ranges = configMap.getHighSpeedVideoFpsRangesFor(size);
-                    if (ranges == null) {
-                        Log.d(TAG, "No FPS range info");
-                        continue;
-                    }
+    private void resolvePrepare() {
+        PluginCall call = prepareCall;
+        prepareCall = null;
+        if (call != null) {
+            call.resolve(startupTimingsResult());
+        }
+    }
 
-                    for (Range<Integer> range : ranges) {
-                        if (range.getLower() <= targetFps && range.getUpper() >= targetFps) {
-                            selectedSize = size;
-                            videoFrameRate = targetFps;
-                            Log.d(TAG, "Selected high-speed config: " + selectedSize + " @" + videoFrameRate + "fps");
-                            return;
-                        }
-                    }
+    private void failPrepare(String errorMessage) {
+        PluginCall call = prepareCall;
+        prepareCall = null;
+        if (call != null) {
+            call.reject(errorMessage);
+        }
+    }
 
-                    Log.d(TAG, "FPS " + targetFps + " not in supported range for this size");
+    // Per-frame capture results of the repeating request, delivered on backgroundHandler
+    private final CameraCaptureSession.CaptureCallback captureCallback = new CameraCaptureSession.CaptureCallback() {
+        @Override
+        public void onCaptureCompleted(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request,
+                @NonNull TotalCaptureResult result) {
+            if (awaitingFirstFrame) {
+                onFirstFrame();
+            }
+            CaptureMonitor monitor = captureMonitor;
+            Long timestamp = result.get(CaptureResult.SENSOR_TIMESTAMP);
+            if (monitor != null && timestamp != null) {
+                monitor.onFrame(timestamp);
+            }
+            RecordingBackend r = recorder;
+            if (isRecording && !isPaused && r != null) {
+                r.onFrameCaptured();
+                framesDelivered.increment();
+            }
+            onCaptureResult(result);
+        }
+    };
 
-                } catch (IllegalArgumentException e) {
-                    Log.w(TAG, "IllegalArgumentException for size " + size + ": " + e.getMessage());
+    private final CaptureMonitor.Listener captureListener = new CaptureMonitor.Listener() {
+        @Override
+        public void onGap(long gapNs, int missedFrames) {
+            if (isRecording && !isPaused) {
+                captureGaps.record(gapNs / 1000);
+                framesMissed.add(missedFrames);
+            }
+            if (GAP_LOG.shouldLog()) {
+                GAP_LOG.emit("⚠️ Capture gap of " + gapNs / 1000 + " us, " + missedFrames + " frame(s) missed");
+            }
+        }
+
+        @Override
+        public void onRateChanged(boolean collapsed, double effectiveFps) {
+            onCaptureRateChanged(collapsed, effectiveFps);
+        }
+    };
+
+    // The sensor fell well short of the requested rate, or caught up again: tell JS, and step down if allowed
+    private void onCaptureRateChanged(boolean collapsed, double effectiveFps) {
+        int expectedFps = videoFrameRate;
+        int slower = collapsed && downgradeOnThrottle && !isRecording && takes.isEmpty() ? nextSlowerCandidate() : -1;
+        if (collapsed) {
+            metrics.counter("capture.rateCollapses").increment();
+            TpaLog.w(TAG, String.format(Locale.US, "⚠️ Capture rate collapsed: %.1f of %d fps%s", effectiveFps,
+                    expectedFps, slower >= 0 ? ", moving to " + candidateModes.get(slower).mode : ""));
+        } else {
+            TpaLog.i(TAG, String.format(Locale.US, "Capture rate recovered: %.1f of %d fps", effectiveFps, expectedFps));
+        }
+
+        JSObject event = new JSObject();
+        event.put("collapsed", collapsed);
+        event.put("expectedFps", expectedFps);
+        event.put("effectiveFps", Math.round(effectiveFps * 10) / 10.0);
+        event.put("recording", isRecording);
+        event.put("downgraded", slower >= 0);
+        notifyListeners("captureRateChanged", event);
+
+        if (slower >= 0) {
+            downgradeCapture(slower);
+        }
+    }
+
+    // First negotiated mode after the current one with a lower frame rate, or -1
+    private int nextSlowerCandidate() {
+        List<ModeNegotiator.Candidate> candidates = candidateModes;
+        if (candidates == null) {
+            return -1;
+        }
+        for (int i = candidateIndex + 1; i < candidates.size(); i++) {
+            if (candidates.get(i).mode.fps < videoFrameRate) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Rebuilds the preview session in a slower mode; only before the first take, while nothing records
+    private void downgradeCapture(int index) {
+        Handler handler = backgroundHandler;
+        if (handler == null) {
+            return;
+        }
+        handler.post(() -> {
+            if (isRecording || captureSession == null) {
+                return;
+            }
+            metrics.counter("capture.downgrades").increment();
+            applyCandidate(index);
+            try {
+                synchronized (cameraLock) {
+                    if (cameraDevice == null) {
+                        return;
+                    }
+                    startSelectedSession();
                 }
+            } catch (Exception e) {
+                TpaLog.w(TAG, "Session setup failed for " + candidateModes.get(candidateIndex).mode, e);
+                tryNextCandidate();
             }
+        });
+    }
+
+    private void onCaptureResult(CaptureResult result) {
+        ExposureEstimator estimator = exposureEstimator;
+        if (estimator == null) {
+            return;
         }
 
-        Log.w(TAG, "No high-speed config matched. Falling back to standard mode.");
+        Long timestamp = result.get(CaptureResult.SENSOR_TIMESTAMP);
+        if (timestamp == null || timestamp - lastExposureSampleNs < EXPOSURE_SAMPLE_INTERVAL_NS) {
+            return;
+        }
+        lastExposureSampleNs = timestamp;
+
+        Long exposureTime = result.get(CaptureResult.SENSOR_EXPOSURE_TIME);
+        Integer sensitivity = result.get(CaptureResult.SENSOR_SENSITIVITY);
+        if (exposureTime == null || sensitivity == null) {
+            return; // LEGACY devices: the luma meter on analysis frames stays in charge
+        }
 
-        Size preferredMax = resolution.equals("4k") ? new Size(3840, 2160)
-                : resolution.equals("1080p") ? new Size(1920, 1080)
-                        : new Size(1280, 720);
+        Float aperture = result.get(CaptureResult.LENS_APERTURE);
+        Integer aeState = result.get(CaptureResult.CONTROL_AE_STATE);
+        estimator.onCaptureResult(timestamp, exposureTime, sensitivity,
+                aperture != null ? aperture : 0f,
+                aeState != null ? aeState : ExposureEstimator.AE_STATE_UNAVAILABLE);
+    }
 
-        Size bestStandardSize = null;
-        int bestArea = 0;
-        for (Size size : availableSizes) {
-            int area = size.getWidth() * size.getHeight();
-            if (area > bestArea && size.getWidth() <= preferredMax.getWidth()) {
-                bestStandardSize = size;
-                bestArea = area;
+    private String getPreferredCameraId() throws CameraAccessException {
+        String[] cameraIds = cameraManager.getCameraIdList();
+        if (cameraIds.length == 0) {
+            throw new CameraAccessException(CameraAccessException.CAMERA_ERROR, "No cameras available");
+        }
+
+        // Log available cameras for debugging
+        TpaLog.d(TAG, "Available cameras...: " + Arrays.toString(cameraIds));
+
+        // Prefer back camera
+        for (String cameraId : cameraIds) {
+            CameraCharacteristics characteristics = cameraManager.getCameraCharacteristics(cameraId);
+            Integer lensFacing = characteristics.get(CameraCharacteristics.LENS_FACING);
+            if (lensFacing != null && lensFacing == CameraCharacteristics.LENS_FACING_BACK) {
+                return cameraId;
             }
         }
 
-        if (bestStandardSize != null) {
-            selectedSize = bestStandardSize;
-        } else if (availableSizes.length > 0) {
-            selectedSize = availableSizes[0];
-        } else {
-            throw new IllegalStateException("No valid MediaRecorder sizes available");
+        // Fallback to first available camera
+        TpaLog.w(TAG, "No back camera found, using camera ID: " + cameraIds[0]);
+        return cameraIds[0];
+    }
+
+    // Rank every mode this camera can run against the call's constraints; sessions walk the list in order
+    private void negotiateCaptureModes(PluginCall call, String resolution) {
+        startupPipeline.begin(StartupPipeline.Stage.NEGOTIATE);
+        ModeNegotiator.Constraints constraints = new ModeNegotiator.Constraints();
+        constraints.requestedFps = videoFrameRate;
+        constraints.preferredWidth = resolution.equals("4k") ? 3840 : resolution.equals("1080p") ? 1920 : 1280;
+        constraints.preferredHeight = resolution.equals("4k") ? 2160 : resolution.equals("1080p") ? 1080 : 720;
+
+        Integer minFpsOpt = call.getInt("minFps");
+        if (minFpsOpt != null && minFpsOpt > 0) {
+            constraints.minFps = minFpsOpt;
+        }
+        Long maxBitrateOpt = call.getLong("maxBitrate");
+        if (maxBitrateOpt != null && maxBitrateOpt > 0) {
+            constraints.maxBitrate = maxBitrateOpt;
+        }
+        constraints.budget = currentPowerBudget();
+
+        candidateModes = modeNegotiator.negotiate(constraints, capabilities);
+        TpaLog.d(TAG, "Negotiated capture modes (budget " + constraints.budget + "):");
+        for (ModeNegotiator.Candidate candidate : candidateModes) {
+            TpaLog.d(TAG, " --> " + candidate);
+        }
+        if (candidateModes.isEmpty()) {
+            throw new IllegalStateException("No capture mode satisfies fps " + constraints.minFps + "–"
+                    + constraints.requestedFps + " at " + resolution);
+        }
+        applyCandidate(0);
+        startupPipeline.end(StartupPipeline.Stage.NEGOTIATE);
+    }
+
+    private void applyCandidate(int index) {
+        CaptureMode mode = candidateModes.get(index).mode;
+        candidateIndex = index;
+        selectedSize = new Size(mode.width, mode.height);
+        videoFrameRate = mode.fps;
+        selectedHighSpeed = mode.highSpeed;
+        captureMonitor = new CaptureMonitor(mode.fps, captureListener);
+        TpaLog.d(TAG, "Selected config " + (index + 1) + "/" + candidateModes.size() + ": " + mode);
+    }
+
+    // Thermal status (API 29+) and battery saver cap the pixel rate the negotiator may choose
+    private ModeNegotiator.PowerBudget currentPowerBudget() {
+        PowerManager powerManager = (PowerManager) getContext().getSystemService(Context.POWER_SERVICE);
+        if (powerManager == null) {
+            return ModeNegotiator.PowerBudget.FULL;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            int thermal = powerManager.getCurrentThermalStatus();
+            if (thermal >= PowerManager.THERMAL_STATUS_SEVERE) {
+                return ModeNegotiator.PowerBudget.MINIMAL;
+            }
+            if (thermal >= PowerManager.THERMAL_STATUS_MODERATE) {
+                return ModeNegotiator.PowerBudget.REDUCED;
+            }
+        }
+        return powerManager.isPowerSaveMode() ? ModeNegotiator.PowerBudget.REDUCED : ModeNegotiator.PowerBudget.FULL;
+    }
+
+    // Remember whether the current mode configured, so the next launch can skip known failures
+    private void recordSessionOutcome(boolean configured) {
+        recordSessionOutcome(configured, true);
+    }
+
+    // Only the HAL rejecting the configuration is learned; transient errors (a closed device,
+    // a surface race, a request failing after configure) are counted but never cached
+    private void recordSessionOutcome(boolean configured, boolean learn) {
+        metrics.counter("session.attempts").increment();
+        metrics.counter("session.step" + candidateIndex + (configured ? ".configured" : ".failed")).increment();
+        if (configured) {
+            metrics.gauge("session.fallbackStep").set(candidateIndex);
+        }
+        if (!learn || capabilityCache == null || capabilities == null || selectedSize == null) {
+            return;
         }
+        capabilityCache.recordOutcome(capabilities, selectedMode(), configured);
+    }
+
+    // Thrown for surface sets or sizes the device cannot configure, as opposed to a device in a bad state
+    private static boolean isConfigurationRejected(Exception e) {
+        return e instanceof IllegalArgumentException || e instanceof UnsupportedOperationException;
+    }
 
-        videoFrameRate = Math.min(requestedFps, 30);
-        Log.d(TAG, "Selected standard config: " + selectedSize + " @" + videoFrameRate + "fps");
+    private CaptureMode selectedMode() {
+        return new CaptureMode(selectedSize.getWidth(), selectedSize.getHeight(), videoFrameRate, selectedHighSpeed);
     }
 
     private void startBackgroundThread() {
@@ -484,15 +983,20 @@ public class TpaCameraPlugin extends Plugin {
             backgroundThread.start();
             backgroundHandler = new Handler(backgroundThread.getLooper());
         }
+        if (recorderThread == null) {
+            recorderThread = new HandlerThread("RecorderPrepare");
+            recorderThread.start();
+            recorderHandler = new Handler(recorderThread.getLooper());
+        }
     }
 
     @PermissionCallback
     private void onCameraPermissionResult(PluginCall call) {
-        Log.d(TAG, "onCameraPermissionResult -->  getPermissionState");
+        TpaLog.d(TAG, "onCameraPermissionResult -->  getPermissionState");
         if (getPermissionState("camera") == PermissionState.GRANTED) {
             startRecording(call);
         } else {
-            Log.e(TAG, "onCameraPermissionResult --> Surface setup failed");
+            TpaLog.e(TAG, "onCameraPermissionResult --> Surface setup failed");
             call.reject("Camera permission denied");
         }
     }
@@ -500,7 +1004,7 @@ public class TpaCameraPlugin extends Plugin {
     private View blackOverlayView; // Class field
 
     private void showCameraPreview() {
-        Log.d(TAG, "showCameraPreview -> cancelRecording() triggered");
+        TpaLog.d(TAG, "showCameraPreview -> cancelRecording() triggered");
 
         Activity activity = getActivity();
         if (activity == null) {
@@ -521,6 +1025,10 @@ public class TpaCameraPlugin extends Plugin {
         blackOverlayView.bringToFront(); // Force on top
 
         // TextureView setup
+        StartupPipeline pipeline = startupPipeline;
+        if (pipeline != null) {
+            pipeline.begin(StartupPipeline.Stage.PREVIEW_SURFACE);
+        }
         textureView = new TextureView(activity);
         textureView.setLayoutParams(new FrameLayout.LayoutParams(
                 FrameLayout.LayoutParams.MATCH_PARENT,
@@ -532,33 +1040,16 @@ public class TpaCameraPlugin extends Plugin {
             // ONNX: SurfaceTexture available callback
             // ONNX: Start the pose detection loop
             public void onSurfaceTextureAvailable(@NonNull SurfaceTexture surface, int width, int height) {
-                if (selectedSize != null) {
-                    surface.setDefaultBufferSize(selectedSize.getWidth(), selectedSize.getHeight());
-                    previewSurface = new Surface(surface);
-                    configureTransform(width, height);
-                    openCamera();
-
-                    // Start ONNX lighting check AFTER texture is available
-                    getActivity().runOnUiThread(() -> {
-                        if (preCheck == null) {
-                            preCheck = new onnxPreChecking(getContext());
-                            Log.d(TAG, "✅ [ONNX] Instance created after preview");
-                        }
-
-                        if (textureView != null && textureView.isAvailable()) {
-                            preCheck.startReactiveLightingCheck(textureView);
-                            Log.d(TAG, "✅ [ONNX] Lighting check started after preview");
-                        } else {
-                            Log.w(TAG, "⚠️ [ONNX] TextureView still not available");
-                        }
-
-                        // Start processing the pose detection
-                        // processPoseDetection();
-                    });
-
-                } else {
-                    rejectIfPossible("Camera preview setup failed: no resolution selected");
+                // The session sets the buffer size once a mode is selected
+                configureTransform(width, height);
+                StartupPipeline pipeline = startupPipeline;
+                if (pipeline != null) {
+                    pipeline.end(StartupPipeline.Stage.PREVIEW_SURFACE);
                 }
+
+                // Start ONNX lighting check AFTER texture is available
+                getPreCheck().startReactiveLightingCheck();
+                TpaLog.d(TAG, "✅ [ONNX] Lighting check started after preview");
             }
 
             @Override
@@ -572,90 +1063,72 @@ public class TpaCameraPlugin extends Plugin {
             }
 
             @Override
-            //
             public void onSurfaceTextureUpdated(@NonNull SurfaceTexture surface) {
-                // ONNX: This is where you will process the frame for pose detection
-                processPoseDetection();
+                // Nothing to do per preview frame: pose and lighting run on the AnalysisStream
             }
         });
 
         setupUI(); // Adds textureView and UI buttons
     }
 
-    // ONXX: Process the current frame for pose detection
-    private void processPoseDetection() {
-        if (textureView != null && textureView.isAvailable()) {
-            Bitmap bitmap = textureView.getBitmap();
-
-            if (bitmap == null) {
-                Log.w(TAG, "Failed to get bitmap from TextureView");
-                return;
-            }
+    /**
+     * Starts the analysis stream for the session about to be created and returns the
+     * surface to add as an output, or null when the session cannot take one.
+     * Constrained high-speed sessions only accept preview and recorder outputs, so
+     * they fall back to a throttled low-resolution TextureView readback.
+     */
+    private Surface startAnalysisStream(boolean allowImageReader) {
+        if (analysisStream == null) {
+            analysisStream = new AnalysisStream(this::onAnalysisFrame);
+        }
 
-            InputImage image = InputImage.fromBitmap(bitmap, 0);
+        if (allowImageReader) {
+            try {
+                CameraCharacteristics characteristics = cameraManager.getCameraCharacteristics(selectedCameraId);
+                StreamConfigurationMap configMap = characteristics
+                        .get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+                Size analysisSize = configMap != null ? AnalysisStream.chooseAnalysisSize(configMap, selectedSize) : null;
 
-            // ✅ Capture helper early to avoid null in async callback
-            final FeedbackHelper helper = this.feedbackHelper;
+                if (analysisSize != null) {
+                    Integer sensorOrientation = characteristics.get(CameraCharacteristics.SENSOR_ORIENTATION);
+                    int displayRotation = getActivity().getWindowManager().getDefaultDisplay().getRotation();
+                    int rotation = getRotationDegrees(sensorOrientation != null ? sensorOrientation : 90,
+                            displayRotation);
 
-            poseDetector.process(image)
-                    .addOnSuccessListener(pose -> {
-                        if (pose != null) {
-                            if (helper == null) {
-                                Log.w(TAG, "⚠️ Captured helper is null – skipping validation.");
-                                return;
-                            }
-                            // ✅ Pass the helper to avoid using the field directly
-                            // validateShouldersAlignment(pose, helper);
-                        }
-                    })
-                    .addOnFailureListener(e -> {
-                        Log.e(TAG, "Pose detection failed", e);
-                    });
-        } else {
-            Log.w(TAG, "TextureView not available for pose detection");
+                    analysisStream.startYuv(analysisSize, rotation);
+                    return analysisStream.getSurface();
+                }
+            } catch (Exception e) {
+                TpaLog.w(TAG, "YUV analysis stream unavailable, using readback", e);
+            }
         }
-    }
-
-    private boolean isTTSInProgress = false; // Flag to track if TTS is in progress
 
-    // ONNX: Validate shoulders alignment and provide feedback
-    private void validateShouldersAlignment(Pose pose) {
-        // Get all pose landmarks
-        List<PoseLandmark> landmarks = pose.getAllPoseLandmarks();
-        PoseLandmark leftShoulder = null;
-        PoseLandmark rightShoulder = null;
+        analysisStream.startReadback(textureView, this::cameraClockNs);
+        return null;
+    }
 
-        for (PoseLandmark landmark : landmarks) {
-            if (landmark.getLandmarkType() == PoseLandmark.LEFT_SHOULDER) {
-                leftShoulder = landmark;
-            } else if (landmark.getLandmarkType() == PoseLandmark.RIGHT_SHOULDER) {
-                rightShoulder = landmark;
-            }
+    private void stopAnalysisStream() {
+        if (analysisStream != null) {
+            analysisStream.stop();
         }
+        if (poseService != null) {
+            TpaLog.d(TAG, "Pose analysis: " + poseService.getInferenceCount() + " processed, "
+                    + poseService.getDroppedCount() + " dropped, " + poseService.getSkippedCount()
+                    + " skipped without subscribers of " + poseService.getSubmittedCount());
+        }
+    }
 
-        if (leftShoulder != null && rightShoulder != null) {
-            float leftShoulderX = leftShoulder.getPosition().x;
-            float rightShoulderX = rightShoulder.getPosition().x;
+    // Called on the analysis thread for every low-resolution frame
+    private void onAnalysisFrame(AnalysisFrame frame) {
+        onnxPreChecking check = preCheck;
+        if (check != null) {
+            check.onAnalysisFrame(frame);
+        }
 
-            if (Math.abs(leftShoulderX - rightShoulderX) < 50) {
-                if (!isTTSInProgress) {
-                    isTTSInProgress = true;
-                    helper.speakWithBeeps("Pose looks good, you're aligned!", 2, 1500,
-                            () -> isTTSInProgress = false);
-                }
-            } else {
-                if (!isTTSInProgress) {
-                    isTTSInProgress = true;
-                    helper.speakWithBeeps("Please align your shoulders!", 2, 1500,
-                            () -> isTTSInProgress = false);
-                }
-            }
-        } else {
-            if (!isTTSInProgress) {
-                isTTSInProgress = true;
-                helper.speakWithBeeps("Failed to detect shoulders.", 2, 1500,
-                        () -> isTTSInProgress = false);
-            }
+        PoseService<AnalysisFrame, PoseFrame> service = poseService;
+        if (service != null && service.hasSubscribers()) {
+            // The service owns this reference until the frame is analyzed or dropped
+            service.submit(frame.retain(), frame.getWidth(), frame.getHeight(), frame.getTimestampNs());
         }
     }
 
@@ -833,7 +1306,7 @@ public class TpaCameraPlugin extends Plugin {
 
         if (pauseButton != null) {
             pauseButton.setOnClickListener(v -> {
-                Log.d(TAG, "Pause/Resume clicked");
+                TpaLog.d(TAG, "Pause/Resume clicked");
 
                 if (isRecording && !isPaused) {
                     // Pausing
@@ -860,52 +1333,48 @@ public class TpaCameraPlugin extends Plugin {
         Activity activity = getActivity();
         if (activity == null || ActivityCompat.checkSelfPermission(activity,
                 Manifest.permission.CAMERA) != PackageManager.PERMISSION_GRANTED) {
+            failPrepare("Camera permission not granted");
             rejectIfPossible("Camera permission not granted");
             cleanupResources();
             return;
         }
 
         if (selectedCameraId == null) {
-            Log.e(TAG, "selectedCameraId is null");
+            TpaLog.e(TAG, "selectedCameraId is null");
             rejectIfPossible("Camera ID not selected");
             cleanupResources();
             return;
         }
 
         try {
+            synchronized (cameraLock) {
+                cameraOpening = true;
+                startupPipeline.begin(StartupPipeline.Stage.CAMERA_OPEN);
+            }
             cameraManager.openCamera(selectedCameraId, new CameraDevice.StateCallback() {
                 @Override
                 public void onOpened(@NonNull CameraDevice camera) {
+                    StartupPipeline pipeline;
                     synchronized (cameraLock) {
-                        Log.d(TAG, "onOpened() -> Assigning cameraDevice...");
+                        TpaLog.d(TAG, "onOpened() -> Assigning cameraDevice...");
                         cameraDevice = camera;
+                        cameraOpening = false;
+                        pipeline = startupPipeline;
                     }
 
-                    backgroundHandler.postDelayed(() -> {
-                        try {
-                            synchronized (cameraLock) {
-                                if (cameraDevice == null) {
-                                    rejectIfPossible("Camera disconnected before session start");
-                                    return;
-                                }
-
-                                if (videoFrameRate >= 120) {
-                                    startHighSpeedCaptureSession();
-                                } else {
-                                    startStandardCaptureSession();
-                                }
-                            }
-                        } catch (Exception e) {
-                            rejectIfPossible(e.getMessage());
-                            getActivity().runOnUiThread(() -> cleanupResources());
-                        }
-                    }, 400);
+                    // The session starts as soon as recorder and preview surface are ready too
+                    resolvePrepare();
+                    if (pipeline != null) {
+                        pipeline.end(StartupPipeline.Stage.CAMERA_OPEN);
+                    }
                 }
 
                 @Override
                 public void onDisconnected(@NonNull CameraDevice camera) {
                     camera.close();
                     cameraDevice = null;
+                    cameraOpening = false;
+                    failPrepare("Camera disconnected");
                     getActivity().runOnUiThread(() -> cleanupResources());
                 }
 
@@ -913,12 +1382,16 @@ public class TpaCameraPlugin extends Plugin {
                 public void onError(@NonNull CameraDevice camera, int error) {
                     camera.close();
                     cameraDevice = null;
+                    cameraOpening = false;
                     String fullError = getCameraErrorMessage(error);
+                    failPrepare(fullError);
                     rejectIfPossible(fullError);
                     getActivity().runOnUiThread(() -> cleanupResources());
                 }
             }, backgroundHandler);
         } catch (CameraAccessException e) {
+            cameraOpening = false;
+            failPrepare("Camera access failed: " + e.getMessage());
             rejectIfPossible("Camera access failed: " + e.getMessage());
             cleanupResources();
         }
@@ -931,15 +1404,6 @@ public class TpaCameraPlugin extends Plugin {
                 return;
             }
 
-            CameraCharacteristics characteristics = cameraManager.getCameraCharacteristics(selectedCameraId);
-            StreamConfigurationMap configMap = characteristics
-                    .get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
-            if (configMap == null || configMap.getHighSpeedVideoSizes() == null) {
-                Log.w(TAG, "High-speed not supported, falling back to standard");
-                tryStandardSessionAgain();
-                return;
-            }
-
             SurfaceTexture surfaceTexture = textureView.getSurfaceTexture();
             if (surfaceTexture == null) {
                 throw new IllegalStateException("Surface texture not available");
@@ -948,9 +1412,11 @@ public class TpaCameraPlugin extends Plugin {
             surfaceTexture.setDefaultBufferSize(selectedSize.getWidth(), selectedSize.getHeight());
             previewSurface = new Surface(surfaceTexture);
 
-            safeReleaseMediaRecorder();
-            setupMediaRecorder();
-            Surface recorderSurface = mediaRecorder.getSurface();
+            ensureRecorderForSelectedMode();
+            Surface recorderSurface = getRecorderSurface();
+
+            // Constrained high-speed sessions take exactly preview + recorder
+            startAnalysisStream(false);
 
             List<Surface> surfaces = Arrays.asList(previewSurface, recorderSurface);
 
@@ -970,10 +1436,13 @@ public class TpaCameraPlugin extends Plugin {
 
                         hsSession.setRepeatingBurst(
                                 hsSession.createHighSpeedRequestList(builder.build()),
-                                null,
+                                captureCallback,
                                 backgroundHandler);
 
                         captureSession = session;
+                        recordSessionOutcome(true);
+                        onSessionConfigured();
+                        textureView.post(() -> configureTransform(textureView.getWidth(), textureView.getHeight()));
 
                         // ✅ Show toast with selected resolution + FPS
                         getActivity().runOnUiThread(() -> {
@@ -987,96 +1456,66 @@ public class TpaCameraPlugin extends Plugin {
                         onPreviewSuccess(); // Handles fade-in + UI
 
                     } catch (Exception e) {
-                        Log.e(TAG, "High-speed burst failed. Trying lower FPS fallback.", e);
-                        tryLowerFpsFallback();
+                        TpaLog.e(TAG, "High-speed burst failed. Trying next mode.", e);
+                        recordSessionOutcome(false, false); // the session itself configured
+                        tryNextCandidate();
                     }
                 }
 
                 @Override
                 public void onConfigureFailed(@NonNull CameraCaptureSession session) {
-                    Log.e(TAG, "High-speed session configure failed. Trying lower FPS fallback.");
-                    tryLowerFpsFallback();
+                    TpaLog.e(TAG, "High-speed session configure failed. Trying next mode.");
+                    recordSessionOutcome(false);
+                    tryNextCandidate();
                 }
             }, backgroundHandler);
 
         } catch (Exception e) {
-            Log.e(TAG, "Exception during high-speed setup. Trying lower FPS fallback.", e);
-            tryLowerFpsFallback();
+            TpaLog.e(TAG, "Exception during high-speed setup. Trying next mode.", e);
+            recordSessionOutcome(false, isConfigurationRejected(e));
+            tryNextCandidate();
         }
     }
 
-    private void tryLowerFpsFallback() {
-        getActivity().runOnUiThread(() -> {
-            try {
-                CameraCharacteristics characteristics = cameraManager.getCameraCharacteristics(selectedCameraId);
-                StreamConfigurationMap configMap = characteristics
-                        .get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
-                if (configMap == null) {
-                    rejectIfPossible("❌ Cannot access camera configuration.");
-                    cleanupResources(); // ❗Only clean up if we abort
-                    return;
-                }
+    private void startSelectedSession() throws Exception {
+        if (selectedHighSpeed) {
+            startHighSpeedCaptureSession();
+        } else {
+            startStandardCaptureSession();
+        }
+    }
 
-                List<Size> highSpeedSizes = Arrays.asList(configMap.getHighSpeedVideoSizes());
+    // The current mode failed to configure: move on to the next negotiated one
+    private void tryNextCandidate() {
+        Handler handler = backgroundHandler;
+        if (handler == null) {
+            return;
+        }
+        handler.post(() -> {
+            if (candidateModes == null || candidateIndex + 1 >= candidateModes.size()) {
+                rejectIfPossible("All negotiated capture modes failed");
+                getActivity().runOnUiThread(() -> cleanupResources());
+                return;
+            }
 
-                // === Resolution Fallback ===
-                if (selectedSize != null && selectedSize.getWidth() > 720) {
-                    Size fallbackSize = new Size(720, 480);
-                    if (highSpeedSizes.contains(fallbackSize)) {
-                        Log.w(TAG, "Resolution fallback: trying 720x480 @ " + videoFrameRate + "fps");
-                        selectedSize = fallbackSize;
-                        tryHighSpeedAgain();
+            applyCandidate(candidateIndex + 1);
+            try {
+                synchronized (cameraLock) {
+                    if (cameraDevice == null) {
+                        rejectIfPossible("Camera disconnected before session start");
                         return;
-                    } else {
-                        Log.w(TAG, "720x480 not supported for high-speed. Skipping resolution fallback.");
                     }
+                    startSelectedSession();
                 }
-
-                // === FPS Fallback ===
-                if (videoFrameRate >= 240) {
-                    Log.w(TAG, "240fps failed → trying 120fps...");
-                    videoFrameRate = 120;
-                    tryHighSpeedAgain();
-                } else if (videoFrameRate >= 120) {
-                    Log.w(TAG, "120fps failed → trying 60fps...");
-                    videoFrameRate = 60;
-                    tryStandardSessionAgain();
-                } else if (videoFrameRate >= 60) {
-                    Log.w(TAG, "60fps failed → trying 30fps...");
-                    videoFrameRate = 30;
-                    tryStandardSessionAgain();
-                } else {
-                    rejectIfPossible("All fallback attempts failed (fps & resolution)");
-                    cleanupResources();
-                }
-
-            } catch (CameraAccessException e) {
-                rejectIfPossible("Camera access error during fallback: " + e.getMessage());
-                cleanupResources();
+            } catch (Exception e) {
+                TpaLog.w(TAG, "Session setup failed for " + candidateModes.get(candidateIndex).mode, e);
+                tryNextCandidate();
             }
         });
     }
 
-    private void tryHighSpeedAgain() {
-        try {
-            startHighSpeedCaptureSession();
-        } catch (Exception e) {
-            Log.w(TAG, "High-speed retry failed. Trying standard...", e);
-            tryStandardSessionAgain();
-        }
-    }
-
-    private void tryStandardSessionAgain() {
-        try {
-            startStandardCaptureSession();
-            Log.d(TAG, "Final fallback: standard session @ " + videoFrameRate + "fps");
-        } catch (Exception e) {
-            rejectIfPossible("❌ Standard fallback failed: " + e.getMessage());
-        }
-    }
-
     private void onPreviewSuccess() {
-        Log.d(TAG, "Preview started successfully");
+        TpaLog.d(TAG, "Preview started successfully");
 
         getActivity().runOnUiThread(() -> {
             if (textureView != null) {
@@ -1096,48 +1535,60 @@ public class TpaCameraPlugin extends Plugin {
     }
 
     private void startStandardCaptureSession() throws Exception {
-        Log.d(TAG, " startStandardCaptureSession() called");
+        startStandardCaptureSession(true);
+    }
+
+    private void startStandardCaptureSession(boolean withAnalysisOutput) throws Exception {
+        TpaLog.d(TAG, " startStandardCaptureSession() called");
 
         SurfaceTexture surfaceTexture = textureView.getSurfaceTexture();
         if (surfaceTexture == null) {
-            Log.e(TAG, "Surface texture is null");
+            TpaLog.e(TAG, "Surface texture is null");
             throw new IllegalStateException("Surface texture not available");
         }
 
         surfaceTexture.setDefaultBufferSize(selectedSize.getWidth(), selectedSize.getHeight());
         previewSurface = new Surface(surfaceTexture);
-        Log.d(TAG, " Preview surface set: " + selectedSize.getWidth() + "x" + selectedSize.getHeight());
-
-        safeReleaseMediaRecorder();
+        TpaLog.d(TAG, " Preview surface set: " + selectedSize.getWidth() + "x" + selectedSize.getHeight());
 
-        setupMediaRecorder();
-        Surface recorderSurface = mediaRecorder.getSurface();
+        ensureRecorderForSelectedMode();
+        Surface recorderSurface = getRecorderSurface();
         if (recorderSurface == null) {
-            Log.e(TAG, " Recorder surface is null after prepare()");
+            TpaLog.e(TAG, " Recorder surface is null after prepare()");
             throw new IllegalStateException("Recorder surface is null after prepare()");
         }
 
+        Surface analysisSurface = startAnalysisStream(withAnalysisOutput);
+
         List<Surface> surfaces = new ArrayList<>();
         surfaces.add(previewSurface);
         surfaces.add(recorderSurface);
+        if (analysisSurface != null) {
+            surfaces.add(analysisSurface);
+        }
 
-        Log.d(TAG, "🎥 Creating standard camera session...");
+        TpaLog.d(TAG, "🎥 Creating standard camera session...");
         cameraDevice.createCaptureSession(surfaces, new CameraCaptureSession.StateCallback() {
             @Override
             public void onConfigured(@NonNull CameraCaptureSession session) {
-                Log.d(TAG, "✅ Standard session configured");
+                TpaLog.d(TAG, "✅ Standard session configured");
                 captureSession = session;
+                recordSessionOutcome(true);
+                onSessionConfigured();
 
                 try {
                     CaptureRequest.Builder builder = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_RECORD);
                     builder.addTarget(previewSurface);
                     builder.addTarget(recorderSurface);
+                    if (analysisSurface != null) {
+                        builder.addTarget(analysisSurface);
+                    }
                     builder.set(CaptureRequest.CONTROL_MODE, CameraMetadata.CONTROL_MODE_AUTO);
                     builder.set(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE,
                             new Range<>(videoFrameRate, videoFrameRate));
 
-                    Log.d(TAG, "⚡ Repeating standard request: " + videoFrameRate + "fps");
-                    session.setRepeatingRequest(builder.build(), null, backgroundHandler);
+                    TpaLog.d(TAG, "⚡ Repeating standard request: " + videoFrameRate + "fps");
+                    session.setRepeatingRequest(builder.build(), captureCallback, backgroundHandler);
 
                     textureView.post(() -> {
                         configureTransform(textureView.getWidth(), textureView.getHeight());
@@ -1154,7 +1605,7 @@ public class TpaCameraPlugin extends Plugin {
                                                 overlay.removeView(blackPlaceholder);
                                             }
                                         } catch (Exception e) {
-                                            Log.e(TAG, "Failed to remove blackPlaceholder", e);
+                                            TpaLog.e(TAG, "Failed to remove blackPlaceholder", e);
                                         }
                                     })
                                     .start();
@@ -1168,47 +1619,165 @@ public class TpaCameraPlugin extends Plugin {
                     });
 
                     getActivity().runOnUiThread(() -> {
-                        Log.d(TAG, "✅ UI ready — preview should be visible now");
+                        TpaLog.d(TAG, "✅ UI ready — preview should be visible now");
                         recordButton.setVisibility(View.VISIBLE);
                         Toast.makeText(getContext(), "Ready: " + videoFrameRate + "fps " +
                                 selectedSize.getWidth() + "x" + selectedSize.getHeight(), Toast.LENGTH_SHORT).show();
                     });
 
                 } catch (Exception e) {
-                    Log.e(TAG, "❌ Failed to start preview: " + e.getMessage(), e);
-                    rejectIfPossible("Failed to start preview: " + e.getMessage());
-                    getActivity().runOnUiThread(() -> cleanupResources());
+                    TpaLog.e(TAG, "❌ Failed to start preview: " + e.getMessage(), e);
+                    recordSessionOutcome(false, false); // the session itself configured
+                    tryNextCandidate();
                 }
             }
 
             @Override
             public void onConfigureFailed(@NonNull CameraCaptureSession session) {
-                Log.e(TAG, "❌ Standard configuration failed");
-                rejectIfPossible("Standard configuration failed");
-                getActivity().runOnUiThread(() -> cleanupResources());
+                if (analysisSurface != null) {
+                    // Some LIMITED devices refuse a third (YUV) stream; retry with readback analysis
+                    TpaLog.w(TAG, "Standard configuration failed with analysis output, retrying without it");
+                    metrics.counter("session.analysisRetries").increment();
+                    try {
+                        startStandardCaptureSession(false);
+                        return;
+                    } catch (Exception e) {
+                        TpaLog.e(TAG, "❌ Retry without analysis output failed", e);
+                    }
+                }
+
+                TpaLog.e(TAG, "❌ Standard configuration failed. Trying next mode.");
+                recordSessionOutcome(false);
+                tryNextCandidate();
             }
         }, backgroundHandler);
     }
 
-    private int calculateBitrate(Size resolution, int fps) {
-        int pixels = resolution.getWidth() * resolution.getHeight();
-        int base = (int) (pixels * fps * 0.07f);
-        return Math.min(base, 50_000_000);
+    // The recorder prepared during startup is used by the first session attempt only;
+    // retries and other modes get a fresh one, as a failed session may have abandoned it
+    private void ensureRecorderForSelectedMode() throws IOException {
+        synchronized (recorderLock) {
+            CaptureMode mode = selectedMode();
+            if (recorder != null && mode.equals(warmRecorderMode)) {
+                warmRecorderMode = null;
+                return;
+            }
+            safeReleaseRecorder();
+            setupRecorder();
+        }
+    }
+
+    // Codec and bitrate fitted to the measured storage speed, sizeLimit and the encoders
+    private EncoderPlanner.Plan planEncoder(File videosDir) {
+        String key = selectedMode().key() + ":" + videoCodec + ":" + sizeLimit;
+        if (encoderPlan != null && key.equals(encoderPlanKey)) {
+            return encoderPlan;
+        }
+        if (storageBenchmark == null) {
+            storageBenchmark = new StorageBenchmark(getContext());
+        }
+
+        EncoderPlanner.Request request = new EncoderPlanner.Request();
+        request.width = selectedSize.getWidth();
+        request.height = selectedSize.getHeight();
+        request.fps = videoFrameRate;
+        request.codec = videoCodec;
+        request.writeBytesPerSec = storageBenchmark.getWriteBytesPerSec(videosDir);
+        request.sizeLimitBytes = sizeLimit;
+        request.h264MaxBitrate = Math.max(0,
+                MediaCodecBackend.maxEncoderBitrate(RecordingConfig.Codec.H264, request.width, request.height));
+        int hevcMax = MediaCodecBackend.maxEncoderBitrate(RecordingConfig.Codec.HEVC, request.width, request.height);
+        request.hevcAvailable = hevcMax > 0;
+        request.hevcMaxBitrate = Math.max(0, hevcMax);
+
+        EncoderPlanner.Plan plan = encoderPlanner.plan(request);
+        TpaLog.d(TAG, "Encoder plan: " + plan + " " + plan.reasons);
+        encoderPlanKey = key;
+        return plan;
+    }
+
+    private void startVoiceCommands() {
+        if (voiceCommands != null) {
+            return;
+        }
+        VoiceCommands commands = new VoiceCommands(getContext(), this::onVoiceCommand);
+        if (commands.start()) {
+            // A pre-rolling encoder already holds the microphone before the take
+            commands.useTap(preRollEnabled() && useMediaCodec);
+            voiceCommands = commands;
+        }
+    }
+
+    private boolean preRollEnabled() {
+        return preRollMs > 0 || preRollMaxBytes > 0;
+    }
+
+    // Runs on the main thread; acts like the matching button
+    private void onVoiceCommand(VoiceCommands.Command command) {
+        if (feedbackHelper != null && feedbackHelper.isSpeaking()) {
+            return; // heard before the spotter was suspended for our own prompt
+        }
+        TpaLog.d(TAG, "🎙 Voice command: " + command);
+        switch (command) {
+            case YES:
+            case START:
+                if (!isRecording && recordButton != null && recordButton.getVisibility() == View.VISIBLE) {
+                    recordButton.performClick();
+                } else if (isRecording && isPaused && pauseButton != null) {
+                    pauseButton.performClick();
+                }
+                break;
+            case STOP:
+                if (isRecording && stopButton != null) {
+                    stopButton.performClick();
+                }
+                break;
+            case PAUSE:
+                if (isRecording && !isPaused && pauseButton != null) {
+                    pauseButton.performClick();
+                }
+                break;
+        }
     }
 
     private void cleanupResources() {
         timerHandler.removeCallbacks(timerRunnable);
-        Log.d(TAG, "cleanupResources() called");
+        TpaLog.d(TAG, "cleanupResources() called");
+        startingRecording = false;
+
+        if (poseService != null) {
+            poseService.unsubscribe(stabilitySubscriber);
+        }
+        readiness.reset();
+        autoTrigger.disarm();
+        if (voiceCommands != null) {
+            voiceCommands.stop();
+            voiceCommands = null;
+        }
+        for (PluginCall pending : clipCalls.values()) {
+            pending.reject("Camera closed before the clip was cut");
+        }
+        clipCalls.clear();
+        motionIndex = null;
+        closeLandmarkTrack();
+        videoClock = null;
 
         // ONNX cleanup feedback helper
         cleanupFeedbackHelper();
+        stopAnalysisStream();
+
+        if (startupPipeline != null) {
+            startupPipeline.cancel();
+        }
+        awaitingFirstFrame = false;
+        failPrepare("Camera closed before it was ready");
 
         try {
             if (captureSession != null) {
                 try {
                     captureSession.close();
                 } catch (Exception e) {
-                    Log.w(TAG, "Failed to close captureSession", e);
+                    TpaLog.w(TAG, "Failed to close captureSession", e);
                 }
                 captureSession = null;
             }
@@ -1217,18 +1786,23 @@ public class TpaCameraPlugin extends Plugin {
                 try {
                     cameraDevice.close();
                 } catch (Exception e) {
-                    Log.w(TAG, "Failed to close cameraDevice", e);
+                    TpaLog.w(TAG, "Failed to close cameraDevice", e);
                 }
                 cameraDevice = null;
             }
 
-            safeReleaseMediaRecorder();
+            safeReleaseRecorder();
+
+            if (persistentRecorderSurface != null) {
+                persistentRecorderSurface.release();
+                persistentRecorderSurface = null;
+            }
 
             if (previewSurface != null) {
                 try {
                     previewSurface.release();
                 } catch (Exception e) {
-                    Log.w(TAG, "Failed to release previewSurface", e);
+                    TpaLog.w(TAG, "Failed to release previewSurface", e);
                 }
                 previewSurface = null;
             }
@@ -1237,7 +1811,7 @@ public class TpaCameraPlugin extends Plugin {
             if (preCheck != null) {
                 preCheck.cleanup();
                 preCheck = null;
-                Log.d(TAG, "1 Pre-check clean up <<<<<<<<<<<<<<<");
+                TpaLog.d(TAG, "1 Pre-check clean up <<<<<<<<<<<<<<<");
             }
 
             // Ensure UI view removal is done on UI thread
@@ -1279,12 +1853,12 @@ public class TpaCameraPlugin extends Plugin {
                     }
 
                 } catch (Exception e) {
-                    Log.w(TAG, "Error during UI cleanup", e);
+                    TpaLog.w(TAG, "Error during UI cleanup", e);
                 }
             });
 
         } catch (Exception e) {
-            Log.e(TAG, "Unhandled error during cleanupResources..", e);
+            TpaLog.e(TAG, "Unhandled error during cleanupResources..", e);
         }
     }
 
@@ -1340,165 +1914,879 @@ public class TpaCameraPlugin extends Plugin {
 
     }
 
-    private void setupMediaRecorder() throws IOException {
-        Log.d(TAG, "Initializing MediaRecorder with direct file path......");
+    private void setupRecorder() throws IOException {
+        TpaLog.d(TAG, "Initializing " + (useMediaCodec ? "MediaCodec" : "MediaRecorder") + " backend......");
+        recorder = useMediaCodec ? new MediaCodecBackend(recorderListener) : new MediaRecorderBackend(recorderListener);
+        configureRecorder();
+    }
+
+    // Configures a new or reset recorder for the next output file and prepares it
+    private void configureRecorder() throws IOException {
+        // Step 1: Prepare file path
+
+        String fileName = "VID_" + new SimpleDateFormat("yyyyMMdd_HHmmss_SSS", Locale.US).format(new Date()) + ".mp4";
+        File videosDir = new File(getContext().getExternalFilesDir(null), "tpa-videos");
+
+        if (!videosDir.exists() && !videosDir.mkdirs()) {
+            throw new IOException("Failed to create videos directory: " + videosDir.getAbsolutePath());
+        }
+
+        File outputFile = new File(videosDir, fileName);
+        videoPath = outputFile.getAbsolutePath(); // this is now a direct path
+
+        TpaLog.d(TAG, "Saving to: " + videoPath);
+
+        // Step 2: Configure the recorder
+        RecordingConfig config = new RecordingConfig();
+        config.outputPath = videoPath;
+        config.width = selectedSize.getWidth();
+        config.height = selectedSize.getHeight();
+        config.fps = videoFrameRate;
+        encoderPlan = planEncoder(videosDir);
+        config.bitrate = encoderPlan.bitrate;
+        config.codec = encoderPlan.codec;
+        config.bitrateMode = bitrateMode;
+        config.maxFileSizeBytes = sizeLimit;
+        realtimeTimestamps = hasRealtimeTimestamps();
+        config.realtimeTimestamps = realtimeTimestamps;
+        config.audioTap = audioTap();
+        config.preRollMs = preRollMs;
+        config.preRollMaxBytes = preRollMaxBytes;
+        if (sentinel) {
+            config.segmentMs = segmentMs;
+            config.sentinelRetainMs = clipPreMs + segmentMs;
+        }
+
+        Activity activity = getActivity();
+        if (activity != null) {
+            Display display = activity.getWindowManager().getDefaultDisplay();
+            int rotation = display.getRotation();
+            config.orientationHint = (rotation == Surface.ROTATION_0 || rotation == Surface.ROTATION_180) ? 90 : 0;
+            TpaLog.d(TAG, "Orientation hint set to " + config.orientationHint + "°");
+        }
+
+        if (multiTake && persistentRecorderSurface == null) {
+            // Same surface for every take, so the capture session never has to change
+            persistentRecorderSurface = MediaCodec.createPersistentInputSurface();
+        }
+
+        recorder.prepare(config, multiTake ? persistentRecorderSurface : null);
+        TpaLog.d(TAG, "Recorder prepared: " + config.codec + " " + config.bitrateMode + " @ " + config.bitrate + " bps");
+    }
+
+    // Voice commands and the sound trigger both listen to the recorded audio
+    private RecordingBackend.AudioTap audioTap() {
+        final VoiceCommands voice = voiceCommands;
+        final TransientDetector detector = sentinel && clipOnSound
+                ? new TransientDetector(ratio -> mainHandler.post(() -> onAutoClipTrigger("sound")))
+                : null;
+        if (detector == null) {
+            return voice;
+        }
+        return (pcm, offset, bytes, sampleRate) -> {
+            if (voice != null) {
+                voice.onAudio(pcm, offset, bytes, sampleRate);
+            }
+            detector.onAudio(pcm, offset, bytes, sampleRate);
+        };
+    }
+
+    // Sensor timestamps are on elapsedRealtime on most devices; audio must use the same clock
+    private boolean hasRealtimeTimestamps() {
+        try {
+            CameraCharacteristics characteristics = cameraManager.getCameraCharacteristics(selectedCameraId);
+            Integer source = characteristics.get(CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE);
+            return source != null && source == CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE_REALTIME;
+        } catch (CameraAccessException e) {
+            return false;
+        }
+    }
+
+    private long cameraClockNs() {
+        return realtimeTimestamps ? SystemClock.elapsedRealtimeNanos() : System.nanoTime();
+    }
+
+    private Surface getRecorderSurface() {
+        return recorder.getInputSurface();
+    }
+
+    private final RecordingBackend.Listener recorderListener = new RecordingBackend.Listener() {
+        @Override
+        public void onMaxFileSizeReached() {
+            TpaLog.w(TAG, "Max file size reached");
+        }
+
+        @Override
+        public void onError(String message, Exception e) {
+            TpaLog.e(TAG, "Recorder error: " + message, e);
+            rejectIfPossible(message);
+            getActivity().runOnUiThread(TpaCameraPlugin.this::cleanupResources);
+        }
+    };
+
+    private void startRecordingInternal() {
+        TpaLog.d(TAG, "startRecordingInternal() called");
+
+        if (isRecording || startingRecording) {
+            TpaLog.w(TAG, "startRecordingInternal: already recording, skipping");
+            return;
+        }
+
+        if (recorder == null) {
+            TpaLog.e(TAG, "startRecordingInternal: recorder is null");
+            rejectIfPossible("Recorder is null, cannot start recording");
+            getActivity().runOnUiThread(this::cleanupResources);
+            return;
+        }
+
+        startingRecording = true;
+        final RecordingBackend r = recorder;
+        // MediaCodecBackend.start() drains the pre-roll into the muxer; like stop, it runs on the recorder thread
+        onRecorderThread(() -> {
+            Exception failure = null;
+            try {
+                if (voiceCommands != null) {
+                    // The take owns the microphone unless it can be shared; released before the recorder opens it.
+                    // MediaRecorder has no PCM tap, so before Android 10 its takes run without voice commands.
+                    voiceCommands.useTap(useMediaCodec || Build.VERSION.SDK_INT < Build.VERSION_CODES.Q);
+                }
+                r.start();
+                if (!useMediaCodec) {
+                    SystemClock.sleep(50); // ensure encoder is ready; MediaCodec starts synchronously
+                }
+            } catch (Exception e) {
+                failure = e;
+            }
+            final Exception startFailure = failure;
+            mainHandler.post(() -> onRecorderStarted(startFailure));
+        });
+    }
+
+    private void onRecorderStarted(Exception failure) {
+        if (!startingRecording) {
+            return; // canceled while starting; cancelRecording() stops the recorder
+        }
+        startingRecording = false;
+
+        if (failure instanceof IllegalStateException) {
+            TpaLog.e(TAG, "Failed to start recorder", failure);
+            rejectIfPossible("Failed to start recording: recorder error");
+            getActivity().runOnUiThread(this::cleanupResources);
+            return;
+        } else if (failure != null) {
+            TpaLog.e(TAG, "Unexpected error in startRecordingInternal", failure);
+            rejectIfPossible("Failed to start recording: " + failure.getMessage());
+            getActivity().runOnUiThread(this::cleanupResources);
+            return;
+        }
+
+        try {
+            isRecording = true;
+            isPaused = false;
+            startTime = SystemClock.elapsedRealtime();
+            beginRecordingMetrics();
+            if ((motionIndexEnabled || landmarkTrackEnabled) && !sentinel) {
+                startPoseTracks();
+            }
+            timerHandler.post(timerRunnable);
+
+            getActivity().runOnUiThread(() -> {
+                recordButton.setVisibility(View.GONE);
+                pauseButton.setVisibility(sentinel ? View.GONE : View.VISIBLE); // sentinel never pauses
+                stopButton.setVisibility(View.VISIBLE);
+                backButton.setVisibility(View.GONE);
+            });
+
+            TpaLog.d(TAG, "Recording started successfully");
+
+            // Readiness is settled; poses are only needed for the automatic stop rules
+            readiness.onRecordingStarted();
+            autoTrigger.onRecordingStarted();
+            if (poseService != null && !needsPosesWhileRecording()) {
+                poseService.unsubscribe(stabilitySubscriber);
+            }
+
+        } catch (Exception e) {
+            TpaLog.e(TAG, "Unexpected error in startRecordingInternal", e);
+            rejectIfPossible("Failed to start recording: " + e.getMessage());
+            getActivity().runOnUiThread(this::cleanupResources);
+        }
+    }
+
+    private void stopRecording() {
+        TpaLog.d(TAG, "🔴 stopRecording() method called");
+        if (multiTake) {
+            stopTake();
+            return;
+        }
+        if (sentinel) {
+            stopSentinel();
+            return;
+        }
+
+        isRecording = false;
+        timerHandler.removeCallbacks(timerRunnable);
+        hideTakeButtons();
+        endRecordingMetrics();
+        final long stoppedAtMs = SystemClock.elapsedRealtime();
+        final RecordingBackend r = recorder;
+        // MediaCodecBackend.stop() waits for the encoders to drain; the file is described back on the main thread
+        onRecorderThread(() -> {
+            try {
+                if (r != null) {
+                    r.stop();
+                }
+            } catch (Exception e) {
+                mainHandler.post(() -> {
+                    rejectIfPossible("Failed to stop recording: " + e.getMessage());
+                    endStoppedRecording();
+                });
+                return;
+            }
+            EncoderStats stats = r != null ? r.getStats() : null;
+            PreRollRing.Stats preRoll = r != null ? r.getPreRollStats() : null;
+            mainHandler.post(() -> finishStoppedRecording(stats, preRoll, stoppedAtMs));
+        });
+    }
+
+    private void finishStoppedRecording(EncoderStats stats, PreRollRing.Stats preRoll, long stoppedAtMs) {
+        try {
+            JSObject result = finishTakeFile(stats, preRoll, stoppedAtMs);
+            if (result == null) {
+                rejectIfPossible("Recording too short or failed");
+                return;
+            }
+
+            TpaLog.d(TAG, "[stopRecording] Result JSON:\n" + result.toString(2));
+            if (storedCall != null) {
+                storedCall.resolve(result);
+                storedCall = null;
+            }
+
+        } catch (Exception e) {
+            rejectIfPossible("Failed to stop recording: " + e.getMessage());
+        } finally {
+            endStoppedRecording();
+        }
+    }
+
+    private void endStoppedRecording() {
+        if (preCheck != null) {
+            preCheck.stopReactiveLightingCheck();
+            TpaLog.d(TAG, "✅ Lighting check stopped in stopRecording()");
+        }
+        cleanupResources();
+    }
+
+    // While the encoders drain, a second tap on stop must not read as cancel
+    private void hideTakeButtons() {
+        if (stopButton != null)
+            stopButton.setVisibility(View.GONE);
+        if (pauseButton != null)
+            pauseButton.setVisibility(View.GONE);
+    }
+
+    // Work that may block on the encoders; runs inline if the recorder thread is gone
+    private void onRecorderThread(Runnable task) {
+        Handler handler = recorderHandler;
+        if (handler != null) {
+            handler.post(task);
+        } else {
+            task.run();
+        }
+    }
+
+    /**
+     * Multi-take: closes the current file and re-arms the same recorder with a new
+     * one. The capture session keeps streaming into the persistent surface throughout,
+     * so the next take is ready after a recorder reset instead of a session rebuild.
+     * The stop and re-arm run on the recorder thread; the take is described on the
+     * main thread in between, before the re-arm moves on to the next file.
+     */
+    private void stopTake() {
+        final long stopRequestedMs = SystemClock.elapsedRealtime();
+        isRecording = false;
+        isPaused = false;
+        timerHandler.removeCallbacks(timerRunnable);
+        hideTakeButtons();
+        endRecordingMetrics();
+
+        onRecorderThread(() -> {
+            if (!recorder.stop()) {
+                TpaLog.w(TAG, "Take stopped without valid data");
+            }
+            EncoderStats stats = recorder.getStats();
+            PreRollRing.Stats preRoll = recorder.getPreRollStats();
+            mainHandler.post(() -> {
+                if (voiceCommands != null) {
+                    voiceCommands.useTap(preRollEnabled() && useMediaCodec);
+                }
+
+                JSObject take = finishTakeFile(stats, preRoll, stopRequestedMs);
+                if (take != null) {
+                    takes.add(take);
+                    take.put("take", takes.size());
+                    notifyListeners("takeRecorded", take);
+                }
+                onRecorderThread(() -> rearmForNextTake(stopRequestedMs));
+            });
+        });
+    }
+
+    private void rearmForNextTake(long stopRequestedMs) {
+        try {
+            synchronized (recorderLock) {
+                recorder.reset();
+                configureRecorder();
+            }
+        } catch (Exception e) {
+            TpaLog.e(TAG, "Failed to re-arm recorder for the next take", e);
+            rejectIfPossible("Failed to prepare next take: " + e.getMessage());
+            getActivity().runOnUiThread(this::cleanupResources);
+            return;
+        }
+
+        long readyMs = SystemClock.elapsedRealtime() - stopRequestedMs;
+        TpaLog.d(TAG, "⏱ Ready for take " + (takes.size() + 1) + " after " + readyMs + " ms");
+        JSObject ready = new JSObject();
+        ready.put("readyMs", readyMs);
+        ready.put("takeCount", takes.size());
+        notifyListeners("takeReady", ready);
+
+        // The athlete has to be framed and still again before the next take
+        poseStabilizer.reset();
+        readiness.onRecordingStopped();
+        autoTrigger.onRecordingStopped();
+        PoseService<AnalysisFrame, PoseFrame> service = poseService;
+        if (service != null) {
+            service.subscribe(stabilitySubscriber);
+        }
+
+        getActivity().runOnUiThread(() -> {
+            if (timerView != null)
+                timerView.setText("00:00");
+            if (recordButton != null)
+                recordButton.setVisibility(View.VISIBLE);
+            if (pauseButton != null)
+                pauseButton.setVisibility(View.GONE);
+            if (stopButton != null)
+                stopButton.setVisibility(View.GONE);
+            if (backButton != null)
+                backButton.setVisibility(View.VISIBLE);
+        });
+    }
+
+    // Describes the file just recorded, or deletes it and returns null if it is unusable
+    private JSObject finishTakeFile(EncoderStats stats, PreRollRing.Stats preRoll, long stoppedAtMs) {
+        long durationMillis = stoppedAtMs - startTime;
+        if (preRoll != null) {
+            durationMillis += preRoll.spanUs / 1000; // the file starts before the tap
+        }
+        float durationSec = durationMillis / 1000f;
+
+        File file = new File(videoPath);
+        long fileSizeBytes = file.exists() ? file.length() : 0;
+        float fileSizeMB = fileSizeBytes / (1024f * 1024f);
+
+        // Delete if file is too short or has 0 bytes
+        if (durationSec < 0.5f || fileSizeBytes == 0) {
+            TpaLog.w(TAG, "Recording too short or file invalid, deleting: " + videoPath);
+            motionIndex = null;
+            File track = closeLandmarkTrack();
+            if (track != null) {
+                track.delete();
+            }
+            if (file.exists()) {
+                boolean deleted = file.delete();
+                TpaLog.w(TAG, "Deleted file: " + deleted);
+            }
+            return null;
+        }
 
-        // Step 1: Prepare file path
+        // Log file size
+        TpaLog.d(TAG, String.format(Locale.US, "Video saved: %.2f MB (%d bytes)", fileSizeMB, fileSizeBytes));
 
-        String fileName = "VID_" + new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US).format(new Date()) + ".mp4";
-        File videosDir = new File(getContext().getExternalFilesDir(null), "tpa-videos");
+        JSObject result = fileResult(videoPath, durationSec, fileSizeMB);
+        result.put("stopReason", stopReason != null ? stopReason : "user");
+        stopReason = null;
+        String motionIndexPath = writeMotionIndex();
+        if (motionIndexPath != null) {
+            result.put("motionIndexPath", motionIndexPath);
+        }
+        File landmarkTrack = closeLandmarkTrack();
+        if (landmarkTrack != null) {
+            result.put("landmarkTrackPath", landmarkTrack.getAbsolutePath());
+        }
+        if (stats != null) {
+            JSObject encoder = new JSObject();
+            encoder.put("capturedFrames", stats.capturedFrames);
+            encoder.put("encodedFrames", stats.encodedFrames);
+            encoder.put("droppedFrames", stats.droppedFrames);
+            encoder.put("keyFrames", stats.keyFrames);
+            encoder.put("maxQueueDepth", stats.maxQueueDepth);
+            encoder.put("averageBitrate", stats.averageBitrate());
+            result.put("encoderStats", encoder);
+        }
+        if (preRoll != null) {
+            JSObject pre = new JSObject();
+            pre.put("durationMs", preRoll.spanUs / 1000);
+            pre.put("bytes", preRoll.bytes);
+            pre.put("bufferBytes", preRoll.capacityBytes);
+            pre.put("windowMs", preRoll.windowUs / 1000);
+            result.put("preRoll", pre);
+        }
+        return result;
+    }
 
-        if (!videosDir.exists() && !videosDir.mkdirs()) {
-            throw new IOException("Failed to create videos directory: " + videosDir.getAbsolutePath());
+    // The take's file starts at the tap, or earlier by the pre-roll, until the encoder tells exactly
+    private void startPoseTracks() {
+        PreRollRing.Stats preRoll = recorder.getPreRollStats();
+        videoClock = new VideoClock(cameraClockNs() - (preRoll != null ? preRoll.spanUs * 1000L : 0));
+        videoClockExact = false;
+        if (motionIndexEnabled) {
+            motionIndex = new MotionIndex(videoClock);
         }
+        if (landmarkTrackEnabled) {
+            File track = sidecarFile(".landmarks.bin");
+            try {
+                landmarkWriter = new LandmarkTrack.Writer(track);
+            } catch (IOException e) {
+                TpaLog.w(TAG, "Failed to create landmark track " + track, e);
+            }
+        }
+    }
 
-        File outputFile = new File(videosDir, fileName);
-        videoPath = outputFile.getAbsolutePath(); // this is now a direct path
+    // One analyzed frame of the take; the raw pose goes to the track, the smoothed one to the index
+    private void trackPose(PoseFrame pose, boolean present) {
+        if (!videoClockExact && recorder != null) {
+            long startPtsUs = recorder.getStartPtsUs();
+            if (startPtsUs >= 0) {
+                videoClock.setOrigin(startPtsUs * 1000);
+                videoClockExact = true;
+            }
+        }
+        if (motionIndex != null) {
+            motionIndex.add(pose.getTimestampNs(), present ? poseStabilizer.getSmoothed() : null);
+        }
+        LandmarkTrack.Writer writer = landmarkWriter;
+        if (writer != null) {
+            long videoUs = videoClock.toVideoUs(pose.getTimestampNs());
+            if (videoUs < 0) {
+                return; // paused, or from before the file
+            }
+            try {
+                writer.append(videoUs, pose.isEmpty() ? null : pose);
+            } catch (IOException e) {
+                TpaLog.w(TAG, "Landmark track failed, dropping it", e);
+                closeLandmarkTrack();
+            }
+        }
+    }
 
-        Log.d(TAG, "Saving to: " + videoPath);
+    // Closes the take's landmark track; returns the file, or null without one
+    private File closeLandmarkTrack() {
+        LandmarkTrack.Writer writer = landmarkWriter;
+        landmarkWriter = null;
+        if (writer == null) {
+            return null;
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            TpaLog.w(TAG, "Failed to close landmark track " + writer.getFile(), e);
+        }
+        TpaLog.d(TAG, "🦴 Landmark track: " + writer.getFrameCount() + " frames -> " + writer.getFile().getName());
+        return writer.getFile();
+    }
 
-        // Step 2: Configure MediaRecorder
-        mediaRecorder = new MediaRecorder();
-        mediaRecorder.setAudioSource(MediaRecorder.AudioSource.MIC);
-        mediaRecorder.setVideoSource(MediaRecorder.VideoSource.SURFACE);
-        mediaRecorder.setOutputFormat(MediaRecorder.OutputFormat.MPEG_4);
-        mediaRecorder.setOutputFile(videoPath); // use file path
-        mediaRecorder.setAudioEncoder(MediaRecorder.AudioEncoder.AAC);
-        mediaRecorder.setVideoEncoder(MediaRecorder.VideoEncoder.H264);
+    // Whether anything still consumes poses once the take is rolling
+    private boolean needsPosesWhileRecording() {
+        return autoConfig.needsPosesWhileRecording() || (sentinel && clipOnMotion) || motionIndex != null
+                || landmarkWriter != null;
+    }
 
-        int bitrate = calculateBitrate(selectedSize, videoFrameRate);
-        mediaRecorder.setVideoEncodingBitRate(bitrate);
-        mediaRecorder.setVideoFrameRate(videoFrameRate);
-        mediaRecorder.setVideoSize(selectedSize.getWidth(), selectedSize.getHeight());
+    // <video name without .mp4><suffix>, next to the video
+    private File sidecarFile(String suffix) {
+        File video = new File(videoPath);
+        return new File(video.getParentFile(), video.getName().replaceFirst("\\.mp4$", "") + suffix);
+    }
 
-        Activity activity = getActivity();
-        if (activity != null) {
-            Display display = activity.getWindowManager().getDefaultDisplay();
-            int rotation = display.getRotation();
-            int orientation = (rotation == Surface.ROTATION_0 || rotation == Surface.ROTATION_180) ? 90 : 0;
-            mediaRecorder.setOrientationHint(orientation);
-            Log.d(TAG, "Orientation hint set to " + orientation + "°");
+    // Writes the take's motion index next to the video; returns its path, or null without one
+    private String writeMotionIndex() {
+        MotionIndex index = motionIndex;
+        motionIndex = null;
+        if (index == null) {
+            return null;
+        }
+        index.finish();
+        File video = new File(videoPath);
+        File sidecar = sidecarFile(".motion.json");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(sidecar), StandardCharsets.UTF_8)) {
+            writer.write(index.toJson(video.getName()));
+        } catch (IOException e) {
+            TpaLog.w(TAG, "Failed to write motion index " + sidecar, e);
+            return null;
         }
+        TpaLog.d(TAG, "🏃 Motion index: " + index.getIntervals().size() + " intervals, " + index.getSecondCount()
+                + " s -> " + sidecar.getName());
+        return sidecar.getAbsolutePath();
+    }
 
-        if (sizeLimit > 0) {
-            mediaRecorder.setMaxFileSize(sizeLimit);
-            Log.d(TAG, "Max file size set: " + sizeLimit + " bytes");
+    // Fields every recorded file reports, takes and clips alike
+    private JSObject fileResult(String path, float durationSec, float fileSizeMB) {
+        JSObject result = new JSObject();
+        result.put("videoPath", path);
+        result.put("frameRate", videoFrameRate);
+        result.put("resolution", selectedSize.getWidth() + "x" + selectedSize.getHeight());
+        result.put("duration", durationSec);
+        result.put("sizeLimit", sizeLimit);
+        result.put("fileSizeMB", fileSizeMB);
+        result.put("backend", useMediaCodec ? "mediacodec" : "mediarecorder");
+        result.put("bitrateMode", bitrateMode.name().toLowerCase(Locale.US));
+        if (encoderPlan != null) {
+            result.put("codec", encoderPlan.codec.name().toLowerCase(Locale.US));
+            result.put("bitrate", encoderPlan.bitrate);
+            JSObject plan = new JSObject();
+            plan.put("targetBitrate", encoderPlan.targetBitrate);
+            plan.put("storageBudget", encoderPlan.storageBudget);
+            plan.put("sizeBudget", encoderPlan.sizeBudget);
+            plan.put("reasons", new JSArray(encoderPlan.reasons));
+            result.put("encoderPlan", plan);
         }
+        result.put("metrics", metricsResult());
+        return result;
+    }
 
-        mediaRecorder.setOnInfoListener((mr, what, extra) -> {
-            if (what == MediaRecorder.MEDIA_RECORDER_INFO_MAX_FILESIZE_REACHED) {
-                Log.w(TAG, "Max file size reached");
-            }
-        });
+    /**
+     * The current session's telemetry: startup, session fallback, capture and
+     * analysis counters, speech queue delay and garbage collection while recording.
+     * Histograms are summarized as count, min, mean, p50, p90, p99 and max.
+     */
+    @PluginMethod
+    public void getMetrics(PluginCall call) {
+        JSObject result = new JSObject();
+        result.put("metrics", metricsResult());
+        call.resolve(result);
+    }
 
-        mediaRecorder.prepare();
-        Log.d(TAG, "MediaRecorder prepared (file output mode)");
+    private JSObject metricsResult() {
+        PoseService<AnalysisFrame, PoseFrame> service = poseService;
+        if (service != null) {
+            metrics.gauge("analysis.submitted").set(service.getSubmittedCount());
+            metrics.gauge("analysis.inferences").set(service.getInferenceCount());
+            metrics.gauge("analysis.dropped").set(service.getDroppedCount());
+            metrics.gauge("analysis.skipped").set(service.getSkippedCount());
+        }
+        CaptureMonitor monitor = captureMonitor;
+        if (monitor != null && !Double.isNaN(monitor.getEffectiveFps())) {
+            metrics.gauge("capture.effectiveFps").set(Math.round(monitor.getEffectiveFps() * 10) / 10.0);
+        }
+        return toJs(metrics.snapshot());
     }
 
-    private void startRecordingInternal() {
-        Log.d(TAG, "startRecordingInternal() called");
+    @SuppressWarnings("unchecked")
+    private static JSObject toJs(Map<String, Object> values) {
+        JSObject out = new JSObject();
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            Object value = entry.getValue();
+            if (value instanceof Map) {
+                out.put(entry.getKey(), toJs((Map<String, Object>) value));
+            } else if (value instanceof Long) {
+                out.put(entry.getKey(), (long) (Long) value);
+            } else {
+                out.put(entry.getKey(), (double) (Double) value);
+            }
+        }
+        return out;
+    }
 
-        if (isRecording) {
-            Log.w(TAG, "startRecordingInternal: already recording, skipping");
-            return;
+    private void beginRecordingMetrics() {
+        activeSinceMs = startTime;
+        gcAtStart = gcStats();
+    }
+
+    // Counts the frames the sensor should have delivered since recording last started or resumed
+    private void countFramesExpected() {
+        if (activeSinceMs > 0) {
+            metrics.counter("capture.framesExpected")
+                    .add((SystemClock.elapsedRealtime() - activeSinceMs) * videoFrameRate / 1000);
+            activeSinceMs = 0;
         }
+    }
 
-        if (mediaRecorder == null) {
-            Log.e(TAG, "startRecordingInternal: MediaRecorder is null");
-            rejectIfPossible("MediaRecorder is null, cannot start recording");
-            getActivity().runOnUiThread(this::cleanupResources);
-            return;
+    private void endRecordingMetrics() {
+        countFramesExpected();
+        long[] gcAtEnd = gcStats();
+        if (gcAtStart != null && gcAtEnd != null) {
+            metrics.counter("recording.gcCount").add(gcAtEnd[0] - gcAtStart[0]);
+            metrics.counter("recording.gcBlockingCount").add(gcAtEnd[1] - gcAtStart[1]);
+            metrics.counter("recording.gcTimeMs").add(gcAtEnd[2] - gcAtStart[2]);
         }
+        gcAtStart = null;
+    }
 
+    // ART's collection count, blocking collection count and total GC time, or null if unavailable
+    private static long[] gcStats() {
         try {
-            mediaRecorder.start();
-            SystemClock.sleep(50); // ensure encoder is ready
-
-            isRecording = true;
-            isPaused = false;
-            startTime = SystemClock.elapsedRealtime();
-            timerHandler.post(timerRunnable);
-
-            getActivity().runOnUiThread(() -> {
-                recordButton.setVisibility(View.GONE);
-                pauseButton.setVisibility(View.VISIBLE);
-                stopButton.setVisibility(View.VISIBLE);
-                backButton.setVisibility(View.GONE);
-            });
+            return new long[] {
+                    Long.parseLong(Debug.getRuntimeStat("art.gc.gc-count")),
+                    Long.parseLong(Debug.getRuntimeStat("art.gc.blocking-gc-count")),
+                    Long.parseLong(Debug.getRuntimeStat("art.gc.gc-time"))
+            };
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
 
-            Log.d(TAG, "Recording started successfully");
+    /**
+     * The plugin's most recent log events, oldest first, e.g. to report why a
+     * recording failed. {@code level} (debug, info, warn or error) filters them;
+     * debug events are only kept in debug builds.
+     */
+    @PluginMethod
+    public void getRecentLogs(PluginCall call) {
+        String levelOpt = call.getString("level", "debug");
+        int level;
+        switch (levelOpt) {
+            case "info":
+                level = TpaLog.INFO;
+                break;
+            case "warn":
+                level = TpaLog.WARN;
+                break;
+            case "error":
+                level = TpaLog.ERROR;
+                break;
+            default:
+                level = TpaLog.DEBUG;
+        }
+        JSArray events = new JSArray();
+        for (TpaLog.Event event : TpaLog.recent(level)) {
+            JSObject item = new JSObject();
+            item.put("timeMs", event.timeMs);
+            item.put("level", levelName(event.level));
+            item.put("tag", event.tag);
+            item.put("message", event.message);
+            item.put("thread", event.thread);
+            if (event.error != null) {
+                item.put("error", event.error);
+            }
+            events.put(item);
+        }
+        JSObject result = new JSObject();
+        result.put("events", events);
+        call.resolve(result);
+    }
 
-        } catch (IllegalStateException e) {
-            Log.e(TAG, "Failed to start MediaRecorder", e);
-            rejectIfPossible("Failed to start recording: MediaRecorder error");
-            getActivity().runOnUiThread(this::cleanupResources);
-        } catch (Exception e) {
-            Log.e(TAG, "Unexpected error in startRecordingInternal", e);
-            rejectIfPossible("Failed to start recording: " + e.getMessage());
-            getActivity().runOnUiThread(this::cleanupResources);
+    private static String levelName(int level) {
+        switch (level) {
+            case TpaLog.INFO:
+                return "info";
+            case TpaLog.WARN:
+                return "warn";
+            case TpaLog.ERROR:
+                return "error";
+            default:
+                return "debug";
         }
     }
 
-    private void stopRecording() {
-        Log.d(TAG, "🔴 stopRecording() method called");
+    /**
+     * Reads a range of a take's landmark track: frames from {@code fromMs} (default
+     * 0) up to {@code toMs}, at most {@code maxFrames} per call. Each frame is x, y,
+     * likelihood per landmark, x and y as fractions of the frame and null where the
+     * landmark was not detected. {@code nextMs} is set when the range continues.
+     */
+    @PluginMethod
+    public void getLandmarks(PluginCall call) {
+        String path = call.getString("path");
+        if (path == null || path.isEmpty()) {
+            call.reject("path is required");
+            return;
+        }
+        File file = new File(path);
+        File videosDir = new File(getContext().getExternalFilesDir(null), "tpa-videos");
         try {
-            if (mediaRecorder != null) {
-                mediaRecorder.stop();
+            if (!file.getCanonicalPath().startsWith(videosDir.getCanonicalPath() + File.separator)) {
+                call.reject("Landmark tracks are only read from the recordings directory");
+                return;
             }
+        } catch (IOException e) {
+            call.reject("Invalid path: " + e.getMessage());
+            return;
+        }
+        // Fractional milliseconds, so a returned nextMs continues exactly where the last call stopped
+        Double fromOpt = call.getDouble("fromMs");
+        Double toOpt = call.getDouble("toMs");
+        Integer maxOpt = call.getInt("maxFrames");
+        long fromUs = (fromOpt != null && fromOpt > 0) ? Math.round(fromOpt * 1000) : 0;
+        long toUs = toOpt != null ? Math.round(toOpt * 1000) : Long.MAX_VALUE;
+        int maxFrames = (maxOpt != null && maxOpt > 0) ? maxOpt : DEFAULT_LANDMARK_MAX_FRAMES;
+
+        try (LandmarkTrack.Reader reader = new LandmarkTrack.Reader(file)) {
+            float[] values = new float[PoseFrame.LANDMARK_COUNT * 3];
+            JSArray frames = new JSArray();
+            int index = reader.indexAtOrAfter(fromUs);
+            int end = reader.indexAtOrAfter(toUs);
+            for (int n = 0; index < end && n < maxFrames; index++, n++) {
+                reader.readNormalized(index, values);
+                JSArray landmarks = new JSArray();
+                for (float value : values) {
+                    landmarks.put(Float.isNaN(value) ? JSONObject.NULL : Math.round(value * 10000) / 10000.0);
+                }
+                JSObject frame = new JSObject();
+                frame.put("timeMs", reader.getTimeUs(index) / 1000.0);
+                frame.put("landmarks", landmarks);
+                frames.put(frame);
+            }
+            JSObject result = new JSObject();
+            result.put("frameWidth", reader.getFrameWidth());
+            result.put("frameHeight", reader.getFrameHeight());
+            result.put("frameCount", reader.getFrameCount());
+            result.put("frames", frames);
+            if (index < end) {
+                result.put("nextMs", reader.getTimeUs(index) / 1000.0);
+            }
+            call.resolve(result);
+        } catch (IOException e) {
+            call.reject("Failed to read landmark track: " + e.getMessage());
+        }
+    }
 
-            long durationMillis = SystemClock.elapsedRealtime() - startTime;
-            float durationSec = durationMillis / 1000f;
-
-            File file = new File(videoPath);
-            long fileSizeBytes = file.exists() ? file.length() : 0;
-            float fileSizeMB = fileSizeBytes / (1024f * 1024f);
+    /**
+     * Cuts a clip out of a sentinel recording: {@code preMs} before now to
+     * {@code postMs} after. Resolves once the post-roll has been recorded and the
+     * clip written, with the startRecording result shape plus the trigger.
+     */
+    @PluginMethod
+    public void triggerClip(PluginCall call) {
+        Long preOpt = call.getLong("preMs");
+        Long postOpt = call.getLong("postMs");
+        long pre = (preOpt != null && preOpt >= 0) ? preOpt : clipPreMs;
+        long post = (postOpt != null && postOpt >= 0) ? postOpt : clipPostMs;
+        mainHandler.post(() -> requestClip("manual", pre, post, call));
+    }
 
-            // Delete if file is too short or has 0 bytes
-            if (durationSec < 0.5f || fileSizeBytes == 0) {
-                Log.w(TAG, "Recording too short or file invalid, deleting: " + videoPath);
-                if (file.exists()) {
-                    boolean deleted = file.delete();
-                    Log.w(TAG, "Deleted file: " + deleted);
-                }
+    // Motion and sound triggers, on the main thread; one clip per clip length at most
+    private void onAutoClipTrigger(String trigger) {
+        long now = SystemClock.elapsedRealtime();
+        if (!isRecording || now - lastAutoClipMs < clipPreMs + clipPostMs) {
+            return;
+        }
+        lastAutoClipMs = now;
+        requestClip(trigger, clipPreMs, clipPostMs, null);
+    }
 
-                rejectIfPossible("Recording too short or failed");
-                return;
+    // Main thread; the result arrives as a takeRecorded event and, for triggerClip(), resolves the call
+    private void requestClip(String trigger, long preMs, long postMs, PluginCall call) {
+        if (!sentinel || !isRecording || recorder == null) {
+            if (call != null) {
+                call.reject("Clips need a running sentinel recording");
             }
+            return;
+        }
+        String fileName = "CLIP_" + new SimpleDateFormat("yyyyMMdd_HHmmss_SSS", Locale.US).format(new Date()) + ".mp4";
+        File clipFile = new File(new File(getContext().getExternalFilesDir(null), "tpa-videos"), fileName);
+        final String path = clipFile.getAbsolutePath();
+        TpaLog.d(TAG, "✂️ Clip trigger: " + trigger);
 
-            // Log file size
-            Log.d(TAG, String.format(Locale.US, "Video saved: %.2f MB (%d bytes)", fileSizeMB, fileSizeBytes));
-
-            JSObject result = new JSObject();
-            result.put("videoPath", videoPath);
-            result.put("frameRate", videoFrameRate);
-            result.put("resolution", selectedSize.getWidth() + "x" + selectedSize.getHeight());
-            result.put("duration", durationSec);
-            result.put("sizeLimit", sizeLimit);
-            result.put("fileSizeMB", fileSizeMB);
-
-            Log.d(TAG, "[stopRecording] Result JSON:\n" + result.toString(2));
-            if (storedCall != null) {
-                storedCall.resolve(result);
-                storedCall = null;
+        boolean accepted = recorder.requestClip(preMs, postMs, path, new RecordingBackend.ClipListener() {
+            @Override
+            public void onClipReady(String clipPath, long durationUs, long bytes) {
+                mainHandler.post(() -> onClipRecorded(clipPath, trigger, durationUs, bytes));
             }
 
-        } catch (Exception e) {
-            rejectIfPossible("Failed to stop recording: " + e.getMessage());
-        } finally {
-            if (preCheck != null) {
-                preCheck.stopReactiveLightingCheck();
-                Log.d(TAG, "✅ Lighting check stopped in stopRecording()");
+            @Override
+            public void onClipFailed(String clipPath, Exception e) {
+                mainHandler.post(() -> {
+                    PluginCall pending = clipCalls.remove(clipPath);
+                    if (pending != null) {
+                        pending.reject("Failed to cut clip: " + e.getMessage());
+                    }
+                });
+            }
+        });
+        if (!accepted) {
+            if (call != null) {
+                call.reject("Recorder cannot cut clips");
             }
+        } else if (call != null) {
+            clipCalls.put(path, call);
+        }
+    }
 
-            getActivity().runOnUiThread(this::cleanupResources);
+    private void onClipRecorded(String path, String trigger, long durationUs, long bytes) {
+        JSObject clip = fileResult(path, durationUs / 1_000_000f, bytes / (1024f * 1024f));
+        clip.put("trigger", trigger);
+        takes.add(clip);
+        clip.put("take", takes.size());
+        notifyListeners("takeRecorded", clip);
+
+        PluginCall pending = clipCalls.remove(path);
+        if (pending != null) {
+            pending.resolve(clip);
+        }
+    }
+
+    // The encoders stop and pending clips are cut off the main thread; resolves like multi-take
+    private void stopSentinel() {
+        isRecording = false;
+        endRecordingMetrics();
+        timerHandler.removeCallbacks(timerRunnable);
+        Runnable finish = () -> {
+            recorder.stop();
+            mainHandler.post(() -> {
+                for (PluginCall pending : clipCalls.values()) {
+                    pending.reject("Recording stopped before the clip was cut");
+                }
+                clipCalls.clear();
+                if (takes.isEmpty()) {
+                    rejectIfPossible("No clips were triggered");
+                } else {
+                    resolveTakes();
+                }
+                if (preCheck != null) {
+                    preCheck.stopReactiveLightingCheck();
+                }
+                cleanupResources();
+            });
+        };
+        Handler handler = recorderHandler;
+        if (handler != null) {
+            handler.post(finish);
+        } else {
+            finish.run();
         }
     }
 
+    // Leaving a multi-take session resolves with the last take and the full list
+    private void resolveTakes() {
+        if (storedCall == null) {
+            return;
+        }
+        JSObject result = new JSObject();
+        JSObject last = takes.get(takes.size() - 1);
+        result.put("videoPath", last.getString("videoPath"));
+        result.put("duration", last.optDouble("duration"));
+        result.put("frameRate", videoFrameRate);
+        result.put("resolution", selectedSize != null ? selectedSize.getWidth() + "x" + selectedSize.getHeight() : "");
+        result.put("takes", new JSArray(takes));
+        result.put("metrics", metricsResult());
+
+        storedCall.resolve(result);
+        storedCall = null;
+    }
+
     private void pauseRecording() {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
             try {
-                mediaRecorder.pause();
+                recorder.pause();
                 isPaused = true;
+                countFramesExpected();
+                if (videoClock != null) {
+                    videoClock.pause(cameraClockNs());
+                }
+                autoTrigger.onPaused(true);
                 timerHandler.removeCallbacks(timerRunnable);
 
                 getActivity().runOnUiThread(() -> {
@@ -1506,7 +2794,7 @@ public class TpaCameraPlugin extends Plugin {
                 });
 
             } catch (Exception e) {
-                Log.e(TAG, "Failed to pause recording", e);
+                TpaLog.e(TAG, "Failed to pause recording", e);
             }
         } else {
             stopRecording();
@@ -1516,8 +2804,14 @@ public class TpaCameraPlugin extends Plugin {
     private void resumeRecording() {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
             try {
-                mediaRecorder.resume();
+                recorder.resume();
+                recorder.requestKeyFrame(); // the resumed span opens on a sync frame
                 isPaused = false;
+                activeSinceMs = SystemClock.elapsedRealtime();
+                if (videoClock != null) {
+                    videoClock.resume(cameraClockNs());
+                }
+                autoTrigger.onPaused(false);
                 timerHandler.post(timerRunnable);
 
                 getActivity().runOnUiThread(() -> {
@@ -1525,7 +2819,7 @@ public class TpaCameraPlugin extends Plugin {
                 });
 
             } catch (Exception e) {
-                Log.e(TAG, "Failed to resume recording", e);
+                TpaLog.e(TAG, "Failed to resume recording", e);
             }
         } else {
             startRecordingInternal();
@@ -1533,49 +2827,68 @@ public class TpaCameraPlugin extends Plugin {
     }
 
     private void cancelRecording() {
-        Log.d(TAG, "x - cancelRecording() triggered");
-
-        try {
-            // Only attempt stop if recording actually started
-            if (isRecording && mediaRecorder != null) {
-                try {
-                    mediaRecorder.stop();
-                    Log.d(TAG, "MediaRecorder stopped safely on cancel");
-                } catch (IllegalStateException e) {
-                    Log.w(TAG, "MediaRecorder.stop() failed - not in recording state", e);
+        TpaLog.d(TAG, "x - cancelRecording() triggered");
+
+        // Only attempt stop if recording actually started, or is starting on the recorder thread
+        final RecordingBackend r = isRecording || startingRecording ? recorder : null;
+        isRecording = false;
+        isPaused = false;
+        startingRecording = false;
+
+        // Posted ahead of the thread shutdown below: quitSafely() still runs it,
+        // and the result is settled on the main thread once the encoders drained
+        onRecorderThread(() -> {
+            Exception failure = null;
+            try {
+                if (r != null) {
+                    if (r.stop()) {
+                        TpaLog.d(TAG, "Recorder stopped safely on cancel");
+                    } else {
+                        TpaLog.w(TAG, "Recorder stop failed - no valid data on cancel");
+                    }
                 }
+            } catch (Exception e) {
+                failure = e;
             }
+            final Exception stopFailure = failure;
+            mainHandler.post(() -> finishCancel(stopFailure));
+        });
 
-            rejectIfPossible("Recording canceled by the user, this is ok.");
+        stopBackgroundThread(); // shut down camera thread
+    }
 
+    private void finishCancel(Exception stopFailure) {
+        try {
+            if (stopFailure != null) {
+                TpaLog.e(TAG, "Unexpected error canceling recording", stopFailure);
+                rejectIfPossible("Error canceling recording: " + stopFailure.getMessage());
+            } else if ((multiTake || sentinel) && !takes.isEmpty()) {
+                resolveTakes();
+            } else {
+                rejectIfPossible("Recording canceled by the user, this is ok.");
+            }
         } catch (Exception e) {
-            Log.e(TAG, "Unexpected error canceling recording", e);
+            TpaLog.e(TAG, "Unexpected error canceling recording", e);
             rejectIfPossible("Error canceling recording: " + e.getMessage());
         } finally {
-            isRecording = false;
-            isPaused = false;
             storedCall = null;
 
-            stopBackgroundThread(); // shut down camera thread
-
-            getActivity().runOnUiThread(() -> {
-                // UI-safe cleanup
-                cleanupResources();
+            // UI-safe cleanup
+            cleanupResources();
 
-                // Bring back WebView
-                if (bridge != null && bridge.getWebView() != null) {
-                    View webView = bridge.getWebView();
-                    webView.setVisibility(View.VISIBLE);
-                    fadeTo(webView, 1f, 200);
-                    Log.d(TAG, "WebView restored after cancel");
-                }
-            });
+            // Bring back WebView
+            if (bridge != null && bridge.getWebView() != null) {
+                View webView = bridge.getWebView();
+                webView.setVisibility(View.VISIBLE);
+                fadeTo(webView, 1f, 200);
+                TpaLog.d(TAG, "WebView restored after cancel");
+            }
         }
     }
 
     private void rejectIfPossible(String errorMessage) {
         if (storedCall == null) {
-            Log.w(TAG, "storedCall is null. Could not reject: " + errorMessage);
+            TpaLog.w(TAG, "storedCall is null. Could not reject: " + errorMessage);
             return;
         }
 
@@ -1587,8 +2900,9 @@ public class TpaCameraPlugin extends Plugin {
         result.put("duration", 0);
         result.put("sizeLimit", sizeLimit);
         result.put("fileSizeMB", 0);
+        result.put("metrics", metricsResult());
 
-        Log.d(TAG, "Result JSON: " + result.toString());
+        TpaLog.d(TAG, "Result JSON: " + result.toString());
 
         storedCall.resolve(result);
         storedCall = null;
@@ -1611,15 +2925,15 @@ public class TpaCameraPlugin extends Plugin {
         }
     }
 
-    private void safeReleaseMediaRecorder() {
-        if (mediaRecorder != null) {
+    private void safeReleaseRecorder() {
+        if (recorder != null) {
             try {
-                mediaRecorder.reset();
-                mediaRecorder.release();
+                recorder.release();
             } catch (Exception e) {
-                Log.w(TAG, "Failed to release MediaRecorder", e);
+                TpaLog.w(TAG, "Failed to release recorder", e);
             } finally {
-                mediaRecorder = null;
+                recorder = null;
+                warmRecorderMode = null;
             }
         }
     }
@@ -1638,7 +2952,13 @@ public class TpaCameraPlugin extends Plugin {
     @Override
     protected void handleOnDestroy() {
         stopBackgroundThread();
-        getActivity().runOnUiThread(this::cleanupResources);
+        getActivity().runOnUiThread(() -> {
+            cleanupResources();
+            if (poseService != null) {
+                poseService.close();
+                poseService = null;
+            }
+        });
     }
 
     private void stopBackgroundThread() {
@@ -1647,78 +2967,86 @@ public class TpaCameraPlugin extends Plugin {
             try {
                 backgroundThread.join();
             } catch (InterruptedException e) {
-                Log.e(TAG, "Failed to join background thread", e);
+                TpaLog.e(TAG, "Failed to join background thread", e);
             }
             backgroundThread = null;
             backgroundHandler = null;
         }
+        if (recorderThread != null) {
+            recorderThread.quitSafely();
+            recorderThread = null;
+            recorderHandler = null;
+        }
     }
 
     // ========================================
 
-    // Validate the pose and give feedback
-    private void validatePoseAndFeedback(Pose pose, int previewWidth, int previewHeight) {
-        if (isPoseValid(pose, previewWidth, previewHeight)) {
-            askToStartRecording();
-        } else {
-            Log.w(TAG, "Pose is invalid, retrying...");
-            // Retry the pose detection after a short delay, if needed
+    // Ask the user if they're ready to start recording. The answer is not awaited here:
+    // "yes" arrives through onVoiceCommand() like a tap on the record button, and the
+    // readiness machine asks again if the athlete drops out of position and comes back.
+    private void askToStartRecording() {
+        safeSpeakWithBeeps(READY_PROMPT, 1, 3000, null);
+    }
 
-            if (textureView == null || !textureView.isAvailable()) {
-                Log.w(TAG, "❌ TextureView not available, skipping pose recheck.");
-                return;
-            }
+    // Every analyzed pose while checking readiness, on the main thread
+    private void onPoseForReadiness(PoseFrame pose) {
+        PoseStabilizer.State stability = poseStabilizer.update(pose);
+        boolean present = stability != PoseStabilizer.State.NO_POSE;
+        if (isRecording && videoClock != null) {
+            trackPose(pose, present);
+        }
+        if (!isRecording) {
+            boolean framed = present && isPoseValid(poseStabilizer.getSmoothed());
+            readiness.onPose(framed, stability == PoseStabilizer.State.STABLE);
+        }
+        autoTrigger.onSubject(present);
+        autoTrigger.tick();
+        if (sentinel && clipOnMotion && isRecording && poseStabilizer.getMotion() >= CLIP_MOTION_THRESHOLD) {
+            onAutoClipTrigger("motion");
+        }
+    }
 
-            // Run pose detection on the UI thread after a delay to prevent tight loops
-            new Handler(Looper.getMainLooper()).postDelayed(() -> {
-                try {
-                    preCheck.detectPoseFromPreview(textureView);
-                } catch (Exception e) {
-                    Log.e(TAG, "⚠️ Failed to run pose detection: " + e.getMessage());
+    // Transitions go to JS; entering FRAMING or READY triggers its spoken prompt
+    private void onReadinessChanged(ReadinessMachine.State previous, ReadinessMachine.State state,
+            ReadinessMachine.Reason reason, long previousMs) {
+        TpaLog.d(TAG, "🚦 Readiness " + previous + " -> " + state + " (" + reason.key + ", " + previousMs + " ms)");
+        JSObject event = new JSObject();
+        event.put("state", state.name().toLowerCase(Locale.US));
+        event.put("previous", previous.name().toLowerCase(Locale.US));
+        event.put("reason", reason.key);
+        event.put("previousMs", previousMs);
+        notifyListeners("readinessChanged", event);
+
+        if (state == ReadinessMachine.State.FRAMING) {
+            mainHandler.post(() -> {
+                onnxPreChecking check = preCheck;
+                if (check != null) {
+                    check.detectPoseFromPreview(); // speaks what is wrong with the framing
                 }
-            }, 1000); // Delay avoids recursion flood
-
+            });
         }
-    }
 
-    // Ask the user if they're ready to start recording
-    private void askToStartRecording() {
-        feedbackHelper.speakWithBeeps("You're good to go, can I start recording now?", 1, 3000, () -> {
-            // Wait for response, if "Yes", start recording
-            // If response is "No", ask again after 20 seconds
-            // This requires integrating voice recognition to capture the answer (e.g.
-            // SpeechRecognizer)
-        });
+        autoTrigger.onReady(state == ReadinessMachine.State.READY);
+        if (state == ReadinessMachine.State.READY && !autoConfig.autoStart) {
+            mainHandler.post(this::askToStartRecording);
+        }
     }
 
     // Updated isPoseValid to check alignment and distance
-    private boolean isPoseValid(Pose pose, int previewWidth, int previewHeight) {
-        if (pose == null || pose.getAllPoseLandmarks().isEmpty()) {
-            Log.w(TAG, "Pose is invalid: no landmarks detected.");
+    private boolean isPoseValid(PoseFrame pose) {
+        // Bounding box of the detected pose
+        if (pose == null || !PoseGeometry.boundingBox(pose, 0f, poseBox)) {
+            if (POSE_LOG.shouldLog()) {
+                POSE_LOG.emit("Pose is invalid: no landmarks detected.");
+            }
             return false; // Pose is invalid if there are no landmarks
         }
-
-        // Initialize bounding box coordinates for the detected pose
-        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE;
-        float maxX = Float.MIN_VALUE, maxY = Float.MIN_VALUE;
-
-        for (PoseLandmark landmark : pose.getAllPoseLandmarks()) {
-            float x = landmark.getPosition().x;
-            float y = landmark.getPosition().y;
-
-            // Find bounding box coordinates (min/max)
-            minX = Math.min(minX, x);
-            minY = Math.min(minY, y);
-            maxX = Math.max(maxX, x);
-            maxY = Math.max(maxY, y);
-        }
+        int previewWidth = pose.getFrameWidth();
 
         // Calculate center and width of the bounding box
-        float centerX = (minX + maxX) / 2f;
-        float centerY = (minY + maxY) / 2f;
-        float bboxWidth = maxX - minX;
-
-        Log.d(TAG, "📐 Pose Center: x=" + centerX + ", y=" + centerY + ", bbox width=" + bboxWidth);
+        float centerX = (poseBox[PoseGeometry.MIN_X] + poseBox[PoseGeometry.MAX_X]) / 2f;
+        float centerY = (poseBox[PoseGeometry.MIN_Y] + poseBox[PoseGeometry.MAX_Y]) / 2f;
+        float bboxWidth = poseBox[PoseGeometry.MAX_X] - poseBox[PoseGeometry.MIN_X];
 
         // Check if the person is centered in the frame (assuming centered around 50% of
         // the preview width)
@@ -1727,11 +3055,9 @@ public class TpaCameraPlugin extends Plugin {
         // Check if the person is too close (based on the width of the detected pose)
         boolean isTooClose = bboxWidth > previewWidth * 0.6;
 
-        if (!isCentered) {
-            Log.d(TAG, "Position is not centered.");
-        }
-        if (isTooClose) {
-            Log.d(TAG, "Position is too close.");
+        if (POSE_LOG.shouldLog()) {
+            POSE_LOG.emit("📐 Pose Center: x=" + centerX + ", y=" + centerY + ", bbox width=" + bboxWidth
+                    + (isCentered ? "" : ", not centered") + (isTooClose ? ", too close" : ""));
         }
 
         // If the pose is not centered or the person is too close, it's an invalid pose
@@ -1743,57 +3069,4 @@ public class TpaCameraPlugin extends Plugin {
         return true;
     }
 
-    // ONNX: Run lighting and pose checks in a safe loop
-    private void runPoseValidationLoop() {
-        if (textureView == null || !textureView.isAvailable()) {
-            Log.w(TAG, "❌ TextureView not available. Skipping ONNX loop.");
-            return;
-        }
-
-        // ✅ Fix: Make sure preCheck is initialized
-        if (preCheck == null) {
-            preCheck = new onnxPreChecking(getContext());
-            Log.d(TAG, "[ONNX] Initialized preCheck inside runPoseValidationLoop()");
-        }
-
-        Log.d(TAG, "🔁 Starting ONNX pose validation loop...");
-
-        preCheck.sayLightIsGood(() -> {
-            Log.d(TAG, "✅ Lighting feedback done, now running pose detection...");
-
-            new Handler(Looper.getMainLooper()).post(() -> {
-                try {
-                    Log.d(TAG, "📸 Calling detectPoseFromPreview...");
-                    preCheck.detectPoseFromPreview(textureView);
-                } catch (Exception e) {
-                    Log.e(TAG, "💥 Exception in detectPoseFromPreview: " + e.getMessage(), e);
-                    return;
-                }
-
-                new Handler(Looper.getMainLooper()).postDelayed(() -> {
-                    Log.d(TAG, "⏳ Attempting to get latest pose...");
-                    Pose pose = null;
-                    try {
-                        pose = preCheck.getLatestPose();
-                        Log.d(TAG, "📥 Pose retrieved: " + (pose != null ? "✅ Not null" : "❌ Null"));
-                    } catch (Exception e) {
-                        Log.e(TAG, "💥 Exception in getLatestPose(): " + e.getMessage(), e);
-                    }
-
-                    if (pose != null && isPoseValid(pose, textureView.getWidth(), textureView.getHeight())) {
-                        Log.d(TAG, "✅ Pose is valid, asking to start recording...");
-                        askToStartRecording();
-                    } else {
-                        Log.w(TAG, "❌ Pose invalid or null, retrying...");
-                        preCheck.speakPoseNotValid(() -> {
-                            Log.d(TAG, "🔁 Retrying pose validation...");
-                            runPoseValidationLoop();
-                        });
-                    }
-
-                }, 1200);
-            });
-        });
-    }
-
 }
\ No newline at end of file
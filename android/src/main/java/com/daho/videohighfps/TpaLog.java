@@ -0,0 +1,259 @@
+package com.daho.videohighfps;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The plugin's logging facade, in front of logcat.
+ *
+ * Levels are android.util.Log's. Release builds start at INFO and
+ * {@link #setLevel} cannot lower them further; debug builds start at DEBUG.
+ * The check is a runtime comparison against one volatile field.
+ * Code that runs per frame declares a {@link Site}: it checks the level and its
+ * own rate limit before any message is built, and a disabled or rate-limited
+ * call allocates nothing. {@link Message} builds the text lazily.
+ *
+ * Every event that passes the level also goes into a lock-free ring of the
+ * last {@link #RING_CAPACITY} events, which {@link #recent} returns, e.g. to
+ * report what led up to a failed recording.
+ */
+public final class TpaLog {
+
+    public static final int DEBUG = Log.DEBUG;
+    public static final int INFO = Log.INFO;
+    public static final int WARN = Log.WARN;
+    public static final int ERROR = Log.ERROR;
+
+    /**
+     * Whether the app was built for debugging. A library's BuildConfig.DEBUG is
+     * not a compile-time constant, so this only sets the runtime floor.
+     */
+    public static final boolean DEBUG_BUILD = BuildConfig.DEBUG;
+
+    static final int RING_CAPACITY = 256; // a power of two
+
+    /** Where events go besides the ring; logcat unless replaced. */
+    public interface Sink {
+        void write(int level, String tag, String message, Throwable error);
+    }
+
+    /** Message text built only if the event is logged. */
+    public interface Message {
+        String get();
+    }
+
+    /** One logged event, as kept in the ring. */
+    public static final class Event {
+        public final long sequence;
+        public final long timeMs; // wall clock
+        public final int level;
+        public final String tag;
+        public final String message;
+        public final String thread;
+        public final String error; // class and message of the throwable, or null
+
+        Event(long sequence, long timeMs, int level, String tag, String message, String thread, String error) {
+            this.sequence = sequence;
+            this.timeMs = timeMs;
+            this.level = level;
+            this.tag = tag;
+            this.message = message;
+            this.thread = thread;
+            this.error = error;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%d %s/%s [%s] %s%s", timeMs, levelName(level), tag, thread, message,
+                    error != null ? " (" + error + ")" : "");
+        }
+    }
+
+    /**
+     * A log statement that may run per frame. Logs at most once per interval;
+     * the next message that gets through reports how many were suppressed.
+     * Declare it as a static final field, never per call.
+     */
+    public static final class Site {
+        private final String tag;
+        private final int level;
+        private final long intervalNanos;
+        private final AtomicLong nextNanos = new AtomicLong(Long.MIN_VALUE);
+        private final AtomicInteger suppressed = new AtomicInteger();
+
+        Site(String tag, int level, long intervalMs) {
+            this.tag = tag;
+            this.level = level;
+            this.intervalNanos = intervalMs * 1_000_000L;
+        }
+
+        /**
+         * True if the level is on and the interval has passed, in which case the
+         * caller must follow with {@link #emit}. Allocation-free either way.
+         */
+        public boolean shouldLog() {
+            if (level < minLevel) {
+                return false;
+            }
+            if (intervalNanos <= 0) {
+                return true;
+            }
+            long now = clock.nowNanos();
+            long next = nextNanos.get();
+            if ((next != Long.MIN_VALUE && now < next) || !nextNanos.compareAndSet(next, now + intervalNanos)) {
+                suppressed.incrementAndGet();
+                return false;
+            }
+            return true;
+        }
+
+        /** Writes a message after {@link #shouldLog()} returned true. */
+        public void emit(String message) {
+            int skipped = suppressed.getAndSet(0);
+            write(level, tag, skipped > 0 ? message + " (+" + skipped + " suppressed)" : message, null);
+        }
+
+        public void log(Message message) {
+            if (shouldLog()) {
+                emit(message.get());
+            }
+        }
+    }
+
+    private static final Sink LOGCAT = (level, tag, message, error) -> {
+        if (error != null) {
+            Log.println(level, tag, message + '\n' + Log.getStackTraceString(error));
+        } else {
+            Log.println(level, tag, message);
+        }
+    };
+
+    private static volatile int minLevel = DEBUG_BUILD ? DEBUG : INFO;
+    private static volatile Sink sink = LOGCAT;
+    private static volatile FrameScheduler.Clock clock = FrameScheduler.SYSTEM_CLOCK;
+
+    private static final AtomicReferenceArray<Event> ring = new AtomicReferenceArray<>(RING_CAPACITY);
+    private static final AtomicLong sequence = new AtomicLong();
+
+    private TpaLog() {
+    }
+
+    /** A rate-limited call site; {@code intervalMs} 0 means level gating only. */
+    public static Site site(String tag, int level, long intervalMs) {
+        return new Site(tag, level, intervalMs);
+    }
+
+    /** Lowest level logged; never below INFO in release builds. */
+    public static void setLevel(int level) {
+        minLevel = DEBUG_BUILD ? level : Math.max(level, INFO);
+    }
+
+    public static int getLevel() {
+        return minLevel;
+    }
+
+    public static boolean isLoggable(int level) {
+        return level >= minLevel;
+    }
+
+    /** Replaces logcat, or restores it with null. */
+    public static void setSink(Sink replacement) {
+        sink = replacement != null ? replacement : LOGCAT;
+    }
+
+    static void setClock(FrameScheduler.Clock replacement) {
+        clock = replacement != null ? replacement : FrameScheduler.SYSTEM_CLOCK;
+    }
+
+    public static void d(String tag, String message) {
+        if (DEBUG >= minLevel) {
+            write(DEBUG, tag, message, null);
+        }
+    }
+
+    public static void d(String tag, Message message) {
+        if (DEBUG >= minLevel) {
+            write(DEBUG, tag, message.get(), null);
+        }
+    }
+
+    public static void i(String tag, String message) {
+        if (INFO >= minLevel) {
+            write(INFO, tag, message, null);
+        }
+    }
+
+    public static void w(String tag, String message) {
+        w(tag, message, null);
+    }
+
+    public static void w(String tag, String message, Throwable error) {
+        if (WARN >= minLevel) {
+            write(WARN, tag, message, error);
+        }
+    }
+
+    public static void e(String tag, String message) {
+        e(tag, message, null);
+    }
+
+    public static void e(String tag, String message, Throwable error) {
+        if (ERROR >= minLevel) {
+            write(ERROR, tag, message, error);
+        }
+    }
+
+    /** The ring's events at or above {@code level}, oldest first. */
+    public static List<Event> recent(int level) {
+        long end = sequence.get();
+        long start = Math.max(0, end - RING_CAPACITY);
+        List<Event> events = new ArrayList<>((int) (end - start));
+        for (long s = start; s < end; s++) {
+            Event event = ring.get((int) (s & (RING_CAPACITY - 1)));
+            // A slot can already hold a newer event, or not yet hold its own
+            if (event != null && event.sequence == s && event.level >= level) {
+                events.add(event);
+            }
+        }
+        return events;
+    }
+
+    static void clearRing() {
+        for (int i = 0; i < RING_CAPACITY; i++) {
+            ring.set(i, null);
+        }
+    }
+
+    private static void write(int level, String tag, String message, Throwable error) {
+        long s = sequence.getAndIncrement();
+        String cause = error != null ? error.getClass().getSimpleName() + ": " + error.getMessage() : null;
+        ring.set((int) (s & (RING_CAPACITY - 1)),
+                new Event(s, System.currentTimeMillis(), level, tag, message, Thread.currentThread().getName(), cause));
+        try {
+            sink.write(level, tag, message, error);
+        } catch (RuntimeException ignored) {
+            // Logging must never take the caller down
+        }
+    }
+
+    static String levelName(int level) {
+        switch (level) {
+            case DEBUG:
+                return "D";
+            case INFO:
+                return "I";
+            case WARN:
+                return "W";
+            case ERROR:
+                return "E";
+            default:
+                return String.valueOf(level);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.daho.videohighfps;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Spots sudden loud sounds (a bat crack, a landing) in the recorded audio.
+ *
+ * Energy is measured in 10 ms blocks and compared with a slowly adapting
+ * background level; a block {@link #DEFAULT_RATIO} times louder than the
+ * background, and above an absolute floor, is a transient. After one, the
+ * detector stays quiet for the refractory time so one event fires once. Time
+ * is counted in samples, so the detector behaves the same at any speed.
+ *
+ * Runs on the audio thread; allocation-free after construction.
+ */
+public class TransientDetector implements RecordingBackend.AudioTap {
+
+    public interface Listener {
+        /** Called on the audio thread; must return at once. */
+        void onTransient(float ratio);
+    }
+
+    public static final float DEFAULT_RATIO = 8f;
+    static final float FLOOR_RMS = 1500f; // of 32768; ignores loud-but-still rooms waking up
+    static final float BACKGROUND_SECONDS = 1.5f;
+    static final long DEFAULT_REFRACTORY_MS = 1500;
+
+    private final Listener listener;
+    private float ratio = DEFAULT_RATIO;
+    private long refractoryMs = DEFAULT_REFRACTORY_MS;
+
+    private int sampleRate;
+    private int blockSamples;
+    private int inBlock;
+    private double blockEnergy;
+    private double background = -1; // mean square
+    private long samples;
+    private long quietUntil;
+
+    public TransientDetector(Listener listener) {
+        this.listener = listener;
+    }
+
+    public void setRatio(float ratio) {
+        this.ratio = ratio;
+    }
+
+    public void setRefractoryMs(long refractoryMs) {
+        this.refractoryMs = refractoryMs;
+    }
+
+    public void reset() {
+        inBlock = 0;
+        blockEnergy = 0;
+        background = -1;
+        samples = 0;
+        quietUntil = 0;
+    }
+
+    @Override
+    public void onAudio(ByteBuffer pcm, int offset, int bytes, int sampleRate) {
+        ByteOrder order = pcm.order();
+        pcm.order(ByteOrder.nativeOrder());
+        for (int p = offset; p + 1 < offset + bytes; p += 2) {
+            accept(pcm.getShort(p), sampleRate);
+        }
+        pcm.order(order);
+    }
+
+    /** One sample at a time, for callers that already hold shorts. */
+    public void accept(short sample, int sampleRate) {
+        if (sampleRate != this.sampleRate) {
+            reset();
+            this.sampleRate = sampleRate;
+            blockSamples = Math.max(1, sampleRate / 100);
+        }
+        blockEnergy += (double) sample * sample;
+        samples++;
+        if (++inBlock < blockSamples) {
+            return;
+        }
+        double energy = blockEnergy / inBlock;
+        inBlock = 0;
+        blockEnergy = 0;
+
+        if (background < 0) {
+            background = energy;
+            return;
+        }
+        double level = energy / Math.max(background, 1.0);
+        boolean loud = energy >= (double) FLOOR_RMS * FLOOR_RMS && level >= (double) ratio * ratio;
+        if (loud && samples >= quietUntil) {
+            quietUntil = samples + refractoryMs * sampleRate / 1000;
+            listener.onTransient((float) Math.sqrt(level));
+        }
+        // Transients barely move the background, so a burst of them still stands out
+        double blocksPerBackground = BACKGROUND_SECONDS * 100;
+        double weight = loud ? 0.1 / blocksPerBackground : 1 / blocksPerBackground;
+        background += (energy - background) * weight;
+    }
+}
@@ -0,0 +1,71 @@
+package com.daho.videohighfps;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Maps capture timestamps to presentation times in the recorded file.
+ *
+ * The file starts at the origin and paused spans are cut out, exactly as
+ * {@link MuxerTimeline} does for the encoded samples, so anything stamped with
+ * the sensor clock (poses, landmarks) lines up with the video frames. A
+ * timestamp from before a pause that arrives after it still gets its original
+ * offset.
+ */
+public class VideoClock {
+
+    private long originNs;
+    private long pausedAtNs = -1;
+    private long pauseOffsetNs = 0;
+    private long previousOffsetNs = 0;
+    private long cutStartNs = Long.MAX_VALUE;
+    private long cutEndNs = Long.MAX_VALUE;
+
+    /**
+     * Capture-clock timestamp for a frame from a producer that may not have
+     * stamped one yet. Sensor timestamps are on elapsedRealtime or on the
+     * monotonic clock depending on the device, and the two differ by the time
+     * spent in deep sleep, so a fallback must come from the same clock the
+     * origin does, never from a fixed one.
+     *
+     * @param producerTimestampNs sensor timestamp carried by the frame, or 0 if none
+     * @param captureClock        the clock the origin was read from
+     */
+    public static long captureTimestampNs(long producerTimestampNs, LongSupplier captureClock) {
+        return producerTimestampNs > 0 ? producerTimestampNs : captureClock.getAsLong();
+    }
+
+    /** @param originNs start of the file on the capture clock */
+    public VideoClock(long originNs) {
+        this.originNs = originNs;
+    }
+
+    /** Replaces an estimated origin once the file's first frame is known. */
+    public synchronized void setOrigin(long originNs) {
+        this.originNs = originNs;
+    }
+
+    public synchronized void pause(long nowNs) {
+        if (pausedAtNs < 0) {
+            pausedAtNs = nowNs;
+        }
+    }
+
+    public synchronized void resume(long nowNs) {
+        if (pausedAtNs >= 0) {
+            previousOffsetNs = pauseOffsetNs;
+            pauseOffsetNs += Math.max(0, nowNs - pausedAtNs);
+            cutStartNs = pausedAtNs;
+            cutEndNs = nowNs;
+            pausedAtNs = -1;
+        }
+    }
+
+    /** Presentation time of {@code timestampNs} in microseconds, or -1 if it is not in the file. */
+    public synchronized long toVideoUs(long timestampNs) {
+        if ((pausedAtNs >= 0 && timestampNs >= pausedAtNs) || (timestampNs >= cutStartNs && timestampNs < cutEndNs)) {
+            return -1;
+        }
+        long videoNs = timestampNs - originNs - (timestampNs < cutStartNs ? previousOffsetNs : pauseOffsetNs);
+        return videoNs < 0 ? -1 : videoNs / 1000;
+    }
+}
@@ -0,0 +1,307 @@
+package com.daho.videohighfps;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.content.res.AssetManager;
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.media.MediaRecorder;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * "yes", "start", "stop" and "pause", recognized on the device by a
+ * {@link KeywordSpotter}, without network. Templates are bundled as assets in
+ * {@code voice/<keyword>*.pcm} (16 kHz mono 16-bit little-endian); with none,
+ * voice commands stay off.
+ *
+ * Audio comes from an own AudioRecord until {@link #useTap} switches to the
+ * encoder's PCM tap, so a MediaCodec take never has to share the microphone.
+ * MediaRecorder has no tap: before Android 10, where only one capture can hold
+ * the microphone, commands are off for the length of such a take.
+ * The tap only copies into pooled chunks, dropping them if the spotter falls
+ * behind, so the audio thread never waits. Spotting runs on the "VoiceCommands"
+ * thread and commands are delivered on the main thread.
+ */
+public class VoiceCommands implements RecordingBackend.AudioTap {
+
+    private static final String TAG = "VoiceCommands";
+
+    public enum Command {
+        YES, START, STOP, PAUSE
+    }
+
+    public interface Listener {
+        void onCommand(Command command);
+    }
+
+    private static final String ASSET_DIR = "voice";
+    private static final int SAMPLE_RATE = 44100; // same as the encoder's audio, so tap and mic share a spotter
+    private static final int CHUNK_SAMPLES = 2048;
+    private static final int POOL_CHUNKS = 8;
+    private static final long MIC_RELEASE_TIMEOUT_MS = 500;
+
+    private static final class Chunk {
+        final short[] samples = new short[CHUNK_SAMPLES];
+        int count;
+    }
+
+    private final Context context;
+    private final Listener listener;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final KeywordSpotter spotter = new KeywordSpotter(SAMPLE_RATE, this::onKeyword);
+    private final BlockingQueue<Chunk> free = new ArrayBlockingQueue<>(POOL_CHUNKS);
+    private final BlockingQueue<Chunk> filled = new ArrayBlockingQueue<>(POOL_CHUNKS);
+    private final short[] micBuffer = new short[CHUNK_SAMPLES];
+
+    private Thread thread;
+    private volatile boolean running;
+    private volatile boolean tapActive;
+    private volatile boolean suspended; // e.g. while our own prompts are playing
+    private long droppedChunks;
+    private final Object micLock = new Object();
+    private boolean micOpen = false; // guarded by micLock
+
+    public VoiceCommands(Context context, Listener listener) {
+        this.context = context;
+        this.listener = listener;
+        for (int i = 0; i < POOL_CHUNKS; i++) {
+            free.add(new Chunk());
+        }
+    }
+
+    /** Loads the templates and starts listening. Returns false if there is nothing to listen for. */
+    public boolean start() {
+        if (running) {
+            return true;
+        }
+        int loaded = loadTemplates();
+        if (loaded == 0) {
+            TpaLog.w(TAG, "No keyword templates in assets/" + ASSET_DIR + ", voice commands disabled");
+            return false;
+        }
+        TpaLog.d(TAG, "🎙 Listening for commands with " + loaded + " templates");
+        running = true;
+        thread = new Thread(this::run, "VoiceCommands");
+        thread.start();
+        return true;
+    }
+
+    public void stop() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+            try {
+                thread.join(500);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+        }
+        if (droppedChunks > 0) {
+            TpaLog.w(TAG, droppedChunks + " tap chunks dropped");
+        }
+    }
+
+    /**
+     * True while a take feeds {@link #onAudio}; the own microphone is closed in
+     * the meantime. With no tap data, commands pause until this goes false.
+     * Switching to the tap returns once the microphone is released, so a
+     * recorder started right after can open it.
+     */
+    public void useTap(boolean tap) {
+        tapActive = tap;
+        Thread t = thread;
+        if (t != null) {
+            t.interrupt(); // wake the loop so it switches source now
+        }
+        if (tap) {
+            awaitMicClosed();
+        }
+    }
+
+    // A pending mic read returns within one chunk (~50 ms); the timeout only guards a stuck driver
+    private void awaitMicClosed() {
+        long deadline = System.currentTimeMillis() + MIC_RELEASE_TIMEOUT_MS;
+        synchronized (micLock) {
+            long left;
+            while (micOpen && (left = deadline - System.currentTimeMillis()) > 0) {
+                try {
+                    micLock.wait(left);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            if (micOpen) {
+                TpaLog.w(TAG, "Microphone still open after " + MIC_RELEASE_TIMEOUT_MS + " ms");
+            }
+        }
+    }
+
+    /** Ignores audio, e.g. while a spoken prompt would be heard by the microphone. */
+    public void setSuspended(boolean suspended) {
+        this.suspended = suspended;
+    }
+
+    @Override
+    public void onAudio(ByteBuffer pcm, int offset, int bytes, int sampleRate) {
+        if (!running || !tapActive || suspended || sampleRate != SAMPLE_RATE) {
+            return;
+        }
+        Chunk chunk = free.poll();
+        if (chunk == null) {
+            droppedChunks++;
+            return;
+        }
+        pcm.order(ByteOrder.nativeOrder());
+        int count = Math.min(bytes / 2, CHUNK_SAMPLES);
+        for (int i = 0; i < count; i++) {
+            chunk.samples[i] = pcm.getShort(offset + 2 * i);
+        }
+        chunk.count = count;
+        filled.offer(chunk);
+    }
+
+    private void run() {
+        boolean usingTap = !tapActive;
+        AudioRecord mic = null;
+        try {
+            while (running) {
+                if (usingTap != tapActive) {
+                    usingTap = tapActive;
+                    spotter.reset();
+                    if (usingTap) {
+                        mic = closeMic(mic);
+                    } else {
+                        mic = openMic();
+                    }
+                }
+
+                if (usingTap || mic == null) {
+                    try {
+                        Chunk chunk = filled.poll(100, TimeUnit.MILLISECONDS);
+                        if (chunk != null) {
+                            spotter.accept(chunk.samples, 0, chunk.count);
+                            free.offer(chunk);
+                        }
+                    } catch (InterruptedException e) {
+                        // source switch or stop
+                    }
+                } else {
+                    int read = mic.read(micBuffer, 0, micBuffer.length);
+                    if (read > 0 && !suspended) {
+                        spotter.accept(micBuffer, 0, read);
+                    }
+                }
+            }
+        } finally {
+            closeMic(mic);
+        }
+    }
+
+    @SuppressLint("MissingPermission") // RECORD_AUDIO is part of the plugin's camera permission alias
+    private AudioRecord openMic() {
+        try {
+            int minBuffer = AudioRecord.getMinBufferSize(SAMPLE_RATE, AudioFormat.CHANNEL_IN_MONO,
+                    AudioFormat.ENCODING_PCM_16BIT);
+            AudioRecord mic = new AudioRecord(MediaRecorder.AudioSource.VOICE_RECOGNITION, SAMPLE_RATE,
+                    AudioFormat.CHANNEL_IN_MONO, AudioFormat.ENCODING_PCM_16BIT,
+                    Math.max(minBuffer, CHUNK_SAMPLES * 4));
+            if (mic.getState() != AudioRecord.STATE_INITIALIZED) {
+                mic.release();
+                TpaLog.w(TAG, "Microphone unavailable for voice commands");
+                return null;
+            }
+            mic.startRecording();
+            synchronized (micLock) {
+                micOpen = true;
+            }
+            return mic;
+        } catch (RuntimeException e) {
+            TpaLog.w(TAG, "Failed to open microphone for voice commands", e);
+            return null;
+        }
+    }
+
+    private AudioRecord closeMic(AudioRecord mic) {
+        if (mic != null) {
+            try {
+                mic.stop();
+            } catch (IllegalStateException ignored) {
+                // Never started
+            }
+            mic.release();
+        }
+        synchronized (micLock) {
+            micOpen = false;
+            micLock.notifyAll();
+        }
+        return null;
+    }
+
+    private void onKeyword(String keyword, float distance) {
+        if (suspended) {
+            return;
+        }
+        Command command;
+        try {
+            command = Command.valueOf(keyword.toUpperCase(Locale.US));
+        } catch (IllegalArgumentException e) {
+            return;
+        }
+        TpaLog.d(TAG, "🎙 Heard \"" + keyword + "\" (distance " + String.format(Locale.US, "%.2f", distance) + ")");
+        mainHandler.post(() -> listener.onCommand(command));
+    }
+
+    // voice/yes.pcm, voice/yes_2.pcm, ... : the keyword is the name up to the first '_' or '.'
+    private int loadTemplates() {
+        if (spotter.getTemplateCount() > 0) {
+            return spotter.getTemplateCount();
+        }
+        AssetManager assets = context.getAssets();
+        try {
+            String[] names = assets.list(ASSET_DIR);
+            if (names == null) {
+                return 0;
+            }
+            for (String name : names) {
+                if (!name.endsWith(".pcm")) {
+                    continue;
+                }
+                String keyword = name.split("[_.]", 2)[0];
+                try (InputStream in = assets.open(ASSET_DIR + "/" + name)) {
+                    if (!spotter.addTemplate(keyword, readPcm(in), KeywordSpotter.SAMPLE_RATE)) {
+                        TpaLog.w(TAG, "No utterance in template " + name);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            TpaLog.e(TAG, "Failed to load keyword templates", e);
+        }
+        return spotter.getTemplateCount();
+    }
+
+    private static short[] readPcm(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            bytes.write(buffer, 0, n);
+        }
+        ByteBuffer data = ByteBuffer.wrap(bytes.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+        short[] pcm = new short[data.remaining() / 2];
+        data.asShortBuffer().get(pcm);
+        return pcm;
+    }
+}
@@ -1,35 +1,38 @@
 package com.daho.videohighfps;
 
 import android.graphics.Bitmap;
-import android.view.TextureView;
-import android.util.Log;
 import android.content.Context;
 import android.os.Handler;
 import android.os.Looper;
-
-import com.google.mlkit.vision.common.InputImage;
-import com.google.mlkit.vision.pose.Pose;
-import com.google.mlkit.vision.pose.PoseLandmark;
-import com.google.mlkit.vision.pose.PoseDetector;
-import com.google.mlkit.vision.pose.PoseDetection;
-import com.google.mlkit.vision.pose.defaults.PoseDetectorOptions;
-
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import android.os.SystemClock;
 
 public class onnxPreChecking {
 
+    /** Receives every lighting verdict, from exposure metadata or from frame brightness. */
+    public interface LightingListener {
+        void onLighting(boolean good);
+    }
+
     private final FeedbackHelper feedbackHelper;
     private static final String TAG = "onnxPreChecking";
 
-    private final Handler lightCheckHandler = new Handler(Looper.getMainLooper());
-    private boolean wasDarkBefore = false;
-    private boolean lightingCheckRunning = false;
-
-    private final PoseDetector poseDetector;
-    private Pose latestPose;
+    private volatile boolean wasDarkBefore = false;
+    private volatile boolean lightingCheckRunning = false;
+    private volatile boolean exposureLightingActive = false; // Metadata verdicts replace pixel sampling
+    private long lastLightingCheckMs = 0;
+    private static final long LIGHTING_CHECK_INTERVAL_MS = 200;
+    private static final float CENTER_INSET = 0.05f; // of the frame, on each side of the middle third
+    private static final TpaLog.Site LIGHTING_LOG = TpaLog.site(TAG, TpaLog.DEBUG, 2000);
+    private static final int LIGHTING_SAMPLES_PER_AXIS = 100; // ~100x100 samples, same as the old 100x100 bitmap
+    private final LuminanceMeter luminanceMeter = new LuminanceMeter(1);
+    private volatile LightingListener lightingListener;
+
+    // Poses come from the plugin's shared service; this class only asks for the next one
+    private final PoseService<AnalysisFrame, PoseFrame> poseService;
+    private final PoseService.Subscriber<PoseFrame> poseSubscriber = this::onPose;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final float[] bbox = new float[4]; // main thread only
 
-    private final ExecutorService inferenceExecutor = Executors.newSingleThreadExecutor();
     private final Context context;
 
     private final static class phrases {
@@ -38,43 +41,51 @@ public class onnxPreChecking {
         static final String TOO_CLOSE = "You're too close... Step back slightly.";
         static final String OFF_CENTER = "You're not centered..., align yourself to the center of the frame.";
         static final String FACE_OK = "Great position... Stay still and get ready.";
+        static final String LIGHT_GOOD = "Lighting looks good";
+        static final String NOT_DETECTED = "Player not detected... Please make sure your full body is visible in the frame.";
+        static final String POSE_NOT_VALID = "Pose is not valid. Please stand in the center";
+
+        static final String[] ALL = { TOO_DARK, LIGHT_OK, TOO_CLOSE, OFF_CENTER, FACE_OK, LIGHT_GOOD, NOT_DETECTED,
+                POSE_NOT_VALID };
     }
 
-    public onnxPreChecking(Context context) {
-        this.feedbackHelper = new FeedbackHelper(context);
-        this.context = context;
+    /** Fixed prompts this check speaks; cached by whoever builds the helper, before its TTS is up. */
+    static final String[] PHRASES = phrases.ALL;
 
-        PoseDetectorOptions options = new PoseDetectorOptions.Builder()
-                .setDetectorMode(PoseDetectorOptions.STREAM_MODE)
-                .build();
+    /** @param feedbackHelper the plugin's helper; owned and shut down by the plugin */
+    public onnxPreChecking(Context context, PoseService<AnalysisFrame, PoseFrame> poseService,
+            FeedbackHelper feedbackHelper) {
+        this.feedbackHelper = feedbackHelper;
+        this.context = context;
+        this.poseService = poseService;
+    }
 
-        poseDetector = PoseDetection.getClient(options);
+    public void setLightingListener(LightingListener listener) {
+        lightingListener = listener;
     }
 
     public void cleanup() {
-        feedbackHelper.shutdown();
         stopReactiveLightingCheck();
-        poseDetector.close();
-        inferenceExecutor.shutdownNow(); // 🔒 Ensure thread pool is cleared
+        poseService.unsubscribe(poseSubscriber);
     }
 
     public void sayTooDarkWarning() {
-        Log.d(TAG, "🗣️ Triggering TTS: TOO DARK");
-        feedbackHelper.speakWithBeeps(phrases.TOO_DARK, 2, 1000, () -> Log.d("TTS", "Next"));
+        TpaLog.d(TAG, "🗣️ Triggering TTS: TOO DARK");
+        say("lighting", phrases.TOO_DARK, FeedbackArbiter.Priority.WARNING, 2, 1000, () -> TpaLog.d("TTS", "Next"));
     }
 
     // With callback
     public void sayLightIsGood(Runnable callback) {
         if (feedbackHelper == null) {
-            Log.w(TAG, "⚠️ feedbackHelper was null. Skipping light feedback.");
+            TpaLog.w(TAG, "⚠️ feedbackHelper was null. Skipping light feedback.");
             if (callback != null)
                 callback.run();
             return;
         }
         if (feedbackHelper != null) {
-            feedbackHelper.speakWithBeeps("Lighting looks good", 1, 500, callback);
+            say("lighting", phrases.LIGHT_GOOD, FeedbackArbiter.Priority.INFO, 1, 500, callback);
         } else {
-            Log.w(TAG, "⚠️ feedbackHelper still null, skipping light feedback.");
+            TpaLog.w(TAG, "⚠️ feedbackHelper still null, skipping light feedback.");
             if (callback != null)
                 callback.run();
         }
@@ -86,180 +97,145 @@ public class onnxPreChecking {
         });
     }
 
-    public void startReactiveLightingCheck(TextureView textureView) {
-        if (lightingCheckRunning || textureView == null || !textureView.isAvailable())
-            return;
-
+    /**
+     * Arms the lighting check. Verdicts come from {@link #onExposureLighting} when
+     * the camera reports exposure metadata; otherwise brightness is sampled from
+     * analysis frames delivered through {@link #onAnalysisFrame(AnalysisFrame)},
+     * at most every 200 ms.
+     */
+    public void startReactiveLightingCheck() {
         lightingCheckRunning = true;
-
-        inferenceExecutor.execute(() -> {
-            while (lightingCheckRunning) {
-                Bitmap bitmap = textureView.getBitmap(100, 100);
-                if (bitmap == null) {
-                    Log.w(TAG, "Failed to get bitmap for lighting check");
-                    sleep(200);
-                    continue;
-                }
-
-                try {
-                    int brightness = calculateBrightness(bitmap);
-                    Log.d(TAG, "🔁 Lighting check - Brightness: " + brightness + " | wasDarkBefore: " + wasDarkBefore);
-
-                    if (brightness < 60 && !wasDarkBefore) {
-                        wasDarkBefore = true;
-                        sayTooDarkWarning();
-                    } else if (brightness >= 60 && wasDarkBefore) {
-                        wasDarkBefore = false;
-                        sayLightIsGood();
-                    }
-
-                } catch (Exception e) {
-                    Log.e(TAG, "Error in lighting check loop", e);
-                } finally {
-                    bitmap.recycle();
-                }
-
-                sleep(200); // Delay before next check
-            }
-        });
     }
 
-    private int calculateBrightness(Bitmap bitmap) {
-        long sum = 0;
-        int count = 0;
-
-        for (int x = 0; x < bitmap.getWidth(); x++) {
-            for (int y = 0; y < bitmap.getHeight(); y++) {
-                int pixel = bitmap.getPixel(x, y);
-                int r = (pixel >> 16) & 0xFF;
-                int g = (pixel >> 8) & 0xFF;
-                int b = pixel & 0xFF;
-                sum += (r + g + b) / 3;
-                count++;
-            }
+    /**
+     * Lighting verdict from the {@link ExposureEstimator}, called on the camera thread.
+     * Once this has been called, frames are no longer sampled for brightness.
+     */
+    public void onExposureLighting(ExposureEstimator.Lighting lighting) {
+        exposureLightingActive = true;
+        if (!lightingCheckRunning)
+            return;
+
+        LightingListener listener = lightingListener;
+        if (listener != null && lighting != ExposureEstimator.Lighting.UNKNOWN) {
+            listener.onLighting(lighting == ExposureEstimator.Lighting.OK);
         }
 
-        return count == 0 ? -1 : (int) (sum / count);
+        if (lighting == ExposureEstimator.Lighting.TOO_DARK && !wasDarkBefore) {
+            wasDarkBefore = true;
+            sayTooDarkWarning();
+        } else if (lighting == ExposureEstimator.Lighting.OK && wasDarkBefore) {
+            wasDarkBefore = false;
+            sayLightIsGood();
+        }
     }
 
-    private void sleep(long ms) {
-        try {
-            Thread.sleep(ms);
-        } catch (InterruptedException ignored) {
+    /**
+     * Entry point for frames from the {@link AnalysisStream}, called on the analysis thread.
+     */
+    public void onAnalysisFrame(AnalysisFrame frame) {
+        if (lightingCheckRunning && !exposureLightingActive) {
+            checkLighting(frame);
         }
     }
 
-    public void stopReactiveLightingCheck() {
-        lightingCheckRunning = false;
-        lightCheckHandler.removeCallbacksAndMessages(null);
-    }
+    private void checkLighting(AnalysisFrame frame) {
+        long now = SystemClock.elapsedRealtime();
+        if (now - lastLightingCheckMs < LIGHTING_CHECK_INTERVAL_MS)
+            return;
+        lastLightingCheckMs = now;
+
+        try {
+            int brightness = measureBrightness(frame);
+            if (LIGHTING_LOG.shouldLog()) {
+                LIGHTING_LOG.emit("🔁 Lighting check - Brightness: " + brightness + " | wasDarkBefore: " + wasDarkBefore);
+            }
+
+            if (brightness < 0) {
+                return;
+            }
+
+            LightingListener listener = lightingListener;
+            if (listener != null) {
+                listener.onLighting(brightness >= 60);
+            }
 
-    private int calculateAverageBrightness(TextureView textureView) {
-        if (textureView == null || !textureView.isAvailable())
-            return -1;
-
-        Bitmap bitmap = textureView.getBitmap(100, 100);
-        if (bitmap == null)
-            return -1;
-
-        long sum = 0;
-        int count = 0;
-
-        for (int x = 0; x < bitmap.getWidth(); x++) {
-            for (int y = 0; y < bitmap.getHeight(); y++) {
-                int pixel = bitmap.getPixel(x, y);
-                int r = (pixel >> 16) & 0xFF;
-                int g = (pixel >> 8) & 0xFF;
-                int b = pixel & 0xFF;
-                sum += (r + g + b) / 3;
-                count++;
+            if (brightness < 60 && !wasDarkBefore) {
+                wasDarkBefore = true;
+                sayTooDarkWarning();
+            } else if (brightness >= 60 && wasDarkBefore) {
+                wasDarkBefore = false;
+                sayLightIsGood();
             }
+
+        } catch (Exception e) {
+            TpaLog.e(TAG, "Error in lighting check", e);
+        }
+    }
+
+    // Mean luma of the frame, read from the Y plane or from one bulk getPixels() copy
+    private int measureBrightness(AnalysisFrame frame) {
+        if (frame.hasLumaPlane()) {
+            int width = frame.getLumaWidth();
+            int height = frame.getLumaHeight();
+            luminanceMeter.setStride(LuminanceMeter.strideFor(width, height, LIGHTING_SAMPLES_PER_AXIS));
+            return luminanceMeter.measureLuma(frame.getLumaBuffer(), width, height,
+                    frame.getLumaRowStride(), frame.getLumaPixelStride());
         }
 
-        bitmap.recycle();
-        return (int) (sum / count);
+        Bitmap bitmap = frame.getBitmap();
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int[] pixels = luminanceMeter.argbBuffer(width * height);
+        bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+        luminanceMeter.setStride(LuminanceMeter.strideFor(width, height, LIGHTING_SAMPLES_PER_AXIS));
+        return luminanceMeter.measureArgb(pixels, width, height);
     }
 
-    public void detectPoseFromPreview(TextureView textureView) {
-        Log.d(TAG, "started -  pose check -------------------------------------------");
+    public void stopReactiveLightingCheck() {
+        lightingCheckRunning = false;
+    }
 
-        if (textureView == null || !textureView.isAvailable()) {
-            Log.w(TAG, "TextureView not available for pose detection");
-            return;
-        }
+    /**
+     * Requests the pose from the next analysis frame.
+     */
+    public void detectPoseFromPreview() {
+        TpaLog.d(TAG, "started -  pose check -------------------------------------------");
+        poseService.requestNext(poseSubscriber);
+    }
 
-        // ✅ Use safe background thread
-        inferenceExecutor.execute(() -> {
-            Bitmap bitmap = textureView.getBitmap();
-            if (bitmap == null) {
-                Log.w(TAG, "Failed to get bitmap from TextureView");
-                return;
-            }
+    private void onPose(PoseService.Result<PoseFrame> result) {
+        PoseFrame pose = result.pose;
+        TpaLog.d(TAG, "📍 Pose with " + pose.getLandmarkCount() + " landmarks");
 
-            try {
-                InputImage image = InputImage.fromBitmap(bitmap, 0);
-
-                poseDetector.process(image)
-                        .addOnSuccessListener(pose -> {
-                            // ✅ Log all landmarks
-                            for (PoseLandmark landmark : pose.getAllPoseLandmarks()) {
-                                float x = landmark.getPosition().x;
-                                float y = landmark.getPosition().y;
-                                int type = landmark.getLandmarkType();
-                                Log.d(TAG, "📍 Landmark type " + type + " at x=" + x + ", y=" + y);
-                            }
-
-                            updateLatestPose(pose); // ✅ Save for future use
-
-                            // ✅ Analyze on main thread
-                            new Handler(Looper.getMainLooper()).post(() -> {
-                                int width = textureView.getWidth();
-                                int height = textureView.getHeight();
-                                analyzePoseAndSpeak(pose, width, height);
-                            });
-                        })
-                        .addOnFailureListener(e -> Log.e(TAG, "❌ Pose detection failed: " + e.getMessage()));
-            } catch (Exception e) {
-                Log.e(TAG, "❌ Pose detection error: " + e.getMessage(), e);
-            } finally {
-                bitmap.recycle(); // ✅ Always recycle
-            }
-        });
+        // ✅ Analyze on main thread
+        mainHandler.post(() -> analyzePoseAndSpeak(pose));
     }
 
-    private void analyzePoseAndSpeak(Pose pose, int previewWidth, int previewHeight) {
-        if (pose == null || pose.getAllPoseLandmarks().isEmpty()) {
+    private void analyzePoseAndSpeak(PoseFrame pose) {
+        if (pose == null || !PoseGeometry.boundingBox(pose, 0f, bbox)) {
             sayPoseNotDetected();
             return;
         }
+        int previewWidth = pose.getFrameWidth();
+        int previewHeight = pose.getFrameHeight();
 
-        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE;
-        float maxX = Float.MIN_VALUE, maxY = Float.MIN_VALUE;
-
-        for (PoseLandmark landmark : pose.getAllPoseLandmarks()) {
-            float x = landmark.getPosition().x;
-            float y = landmark.getPosition().y;
-            minX = Math.min(minX, x);
-            minY = Math.min(minY, y);
-            maxX = Math.max(maxX, x);
-            maxY = Math.max(maxY, y);
-        }
-
-        float centerX = (minX + maxX) / 2f;
-        float centerY = (minY + maxY) / 2f;
+        float centerX = (bbox[PoseGeometry.MIN_X] + bbox[PoseGeometry.MAX_X]) / 2f;
+        float centerY = (bbox[PoseGeometry.MIN_Y] + bbox[PoseGeometry.MAX_Y]) / 2f;
 
-        int boundaryLeft = previewWidth / 3 + 50;
-        int boundaryTop = previewHeight / 3 + 50;
-        int boundaryRight = 2 * previewWidth / 3 - 50;
-        int boundaryBottom = 2 * previewHeight / 3 - 50;
+        // The middle third, inset by a fraction of the frame: analysis frames are only a few hundred pixels wide
+        float boundaryLeft = previewWidth * (1 / 3f + CENTER_INSET);
+        float boundaryTop = previewHeight * (1 / 3f + CENTER_INSET);
+        float boundaryRight = previewWidth * (2 / 3f - CENTER_INSET);
+        float boundaryBottom = previewHeight * (2 / 3f - CENTER_INSET);
 
         boolean isCentered = centerX > boundaryLeft && centerX < boundaryRight &&
                 centerY > boundaryTop && centerY < boundaryBottom;
 
-        float bboxWidth = maxX - minX;
+        float bboxWidth = bbox[PoseGeometry.MAX_X] - bbox[PoseGeometry.MIN_X];
         boolean isTooClose = bboxWidth > previewWidth * 0.6;
 
-        Log.d(TAG, "Centered: " + isCentered + ", Too Close: " + isTooClose);
+        TpaLog.d(TAG, "Centered: " + isCentered + ", Too Close: " + isTooClose);
 
         if (!isCentered) {
             sayCenterYourselfWarning();
@@ -271,38 +247,45 @@ public class onnxPreChecking {
     }
 
     private void sayCenterYourselfWarning() {
-        feedbackHelper.speakWithBeeps(phrases.OFF_CENTER, 2, 500, () -> Log.d("TTS", "Next"));
+        say("pose", phrases.OFF_CENTER, FeedbackArbiter.Priority.PROMPT, 2, 500, () -> TpaLog.d("TTS", "Next"));
     }
 
     private void sayMoveBackWarning() {
-        feedbackHelper.speakWithBeeps(phrases.TOO_CLOSE, 2, 1500, () -> Log.d("TTS", "Next"));
+        say("pose", phrases.TOO_CLOSE, FeedbackArbiter.Priority.PROMPT, 2, 1500, () -> TpaLog.d("TTS", "Next"));
     }
 
     private void sayFaceOK() {
-        feedbackHelper.speakWithBeeps(phrases.FACE_OK, 1, 1500, () -> Log.d("TTS", "Next"));
+        say("pose", phrases.FACE_OK, FeedbackArbiter.Priority.INFO, 1, 1500, () -> TpaLog.d("TTS", "Next"));
     }
 
     private void sayPoseNotDetected() {
-        feedbackHelper.speakWithBeeps("Player not detected... Please make sure your full body is visible in the frame.",
-                2, 1500, () -> Log.d("TTS", "Next"));
+        say("pose", phrases.NOT_DETECTED, FeedbackArbiter.Priority.PROMPT, 2, 1500, () -> TpaLog.d("TTS", "Next"));
     }
 
     public void speakPoseNotValid(Runnable callback) {
         if (feedbackHelper != null) {
-            feedbackHelper.speakWithBeeps("Pose is not valid. Please stand in the center", 2, 500, callback);
+            say("pose", phrases.POSE_NOT_VALID, FeedbackArbiter.Priority.PROMPT, 2, 500, callback);
         } else {
-            Log.w(TAG, "FeedbackHelper not ready, skipping invalid pose feedback.");
+            TpaLog.w(TAG, "FeedbackHelper not ready, skipping invalid pose feedback.");
             if (callback != null)
                 callback.run();
         }
     }
 
-    public void updateLatestPose(Pose pose) {
-        this.latestPose = pose;
+    // Messages with the same key describe one state, so a newer one replaces a queued one
+    private void say(String key, String text, FeedbackArbiter.Priority priority, int beeps, long pauseAfterMs,
+            Runnable then) {
+        FeedbackArbiter.Message message = new FeedbackArbiter.Message(key, text, priority);
+        message.beeps = beeps;
+        message.pauseAfterMs = pauseAfterMs;
+        message.then = then;
+        feedbackHelper.say(message);
     }
 
-    public Pose getLatestPose() {
-        return latestPose;
+    /** The most recent pose; it carries the size of the analysis frame it was detected in. */
+    public PoseFrame getLatestPose() {
+        PoseService.Result<PoseFrame> latest = poseService.getLatest();
+        return latest != null ? latest.pose : null;
     }
 
 }
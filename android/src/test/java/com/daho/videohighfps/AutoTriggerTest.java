@@ -0,0 +1,177 @@
+package com.daho.videohighfps;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+public class AutoTriggerTest {
+
+    private static final long MS = 1_000_000L;
+
+    private long now = 0;
+    private final List<String> actions = new ArrayList<>();
+    private final AutoTrigger trigger = new AutoTrigger(() -> now, new AutoTrigger.Actions() {
+        @Override
+        public void onCountdown(int remaining) {
+            actions.add("count" + remaining);
+        }
+
+        @Override
+        public void onCountdownCancelled() {
+            actions.add("cancel");
+        }
+
+        @Override
+        public void onStart() {
+            actions.add("start");
+        }
+
+        @Override
+        public void onStop(AutoTrigger.StopReason reason) {
+            actions.add("stop:" + reason.key);
+        }
+    });
+
+    private static AutoTrigger.Config auto(int countdown) {
+        AutoTrigger.Config config = new AutoTrigger.Config();
+        config.autoStart = true;
+        config.dwellMs = 1000;
+        config.countdown = countdown;
+        config.absentStopMs = 0;
+        return config;
+    }
+
+    // Advances time in analysis-rate ticks, reporting the subject as present or not
+    private void run(long ms, boolean present) {
+        for (long end = now + ms * MS; now < end;) {
+            now += 50 * MS;
+            trigger.onSubject(present);
+            trigger.tick();
+        }
+    }
+
+    @Test
+    public void startsAfterDwellWithoutCountdown() {
+        trigger.arm(auto(0));
+        trigger.onReady(true);
+        run(900, true);
+        assertTrue(actions.isEmpty());
+
+        run(200, true);
+        assertEquals(Arrays.asList("start"), actions);
+        assertEquals(AutoTrigger.Phase.RECORDING, trigger.getPhase());
+    }
+
+    @Test
+    public void countsDownOncePerStep() {
+        trigger.arm(auto(3));
+        trigger.onReady(true);
+        run(4000, true);
+        assertEquals(Arrays.asList("count3", "count2", "count1", "start"), actions);
+    }
+
+    @Test
+    public void losingReadinessRestartsTheDwell() {
+        trigger.arm(auto(0));
+        trigger.onReady(true);
+        run(800, true);
+        trigger.onReady(false);
+        trigger.onReady(true);
+        run(800, true);
+        assertTrue(actions.isEmpty());
+        run(300, true);
+        assertEquals(Arrays.asList("start"), actions);
+    }
+
+    @Test
+    public void losingReadinessCancelsTheCountdown() {
+        trigger.arm(auto(3));
+        trigger.onReady(true);
+        run(1500, true);
+        trigger.onReady(false);
+        run(5000, true);
+        assertEquals(Arrays.asList("count3", "cancel"), actions);
+        assertEquals(AutoTrigger.Phase.WAITING, trigger.getPhase());
+    }
+
+    @Test
+    public void manualModeNeverStarts() {
+        AutoTrigger.Config config = auto(0);
+        config.autoStart = false;
+        trigger.arm(config);
+        trigger.onReady(true);
+        run(5000, true);
+        assertTrue(actions.isEmpty());
+    }
+
+    @Test
+    public void stopsWhenSubjectLeaves() {
+        AutoTrigger.Config config = auto(0);
+        config.absentStopMs = 2000;
+        trigger.arm(config);
+        trigger.onRecordingStarted();
+        run(5000, true);
+        run(1900, false);
+        assertTrue(actions.isEmpty());
+
+        run(200, false);
+        assertEquals(Arrays.asList("stop:subjectLeft"), actions);
+        run(3000, false);
+        assertEquals(1, actions.size()); // stops once
+    }
+
+    @Test
+    public void briefAbsenceDoesNotStop() {
+        AutoTrigger.Config config = auto(0);
+        config.absentStopMs = 2000;
+        trigger.arm(config);
+        trigger.onRecordingStarted();
+        for (int i = 0; i < 5; i++) {
+            run(1500, false);
+            run(100, true);
+        }
+        assertTrue(actions.isEmpty());
+    }
+
+    @Test
+    public void maxDurationExcludesPauses() {
+        AutoTrigger.Config config = auto(0);
+        config.maxDurationMs = 3000;
+        trigger.arm(config);
+        trigger.onRecordingStarted();
+        run(2000, true);
+        trigger.onPaused(true);
+        run(5000, false); // neither the pause nor leaving during it counts
+        trigger.onPaused(false);
+        run(900, true);
+        assertTrue(actions.isEmpty());
+
+        run(200, true);
+        assertEquals(Arrays.asList("stop:maxDuration"), actions);
+    }
+
+    @Test
+    public void waitsForTheNextTakeAfterStopping() {
+        trigger.arm(auto(0));
+        trigger.onReady(true);
+        run(1100, true);
+        trigger.onRecordingStopped();
+        assertEquals(AutoTrigger.Phase.WAITING, trigger.getPhase());
+
+        trigger.onReady(true);
+        run(1100, true);
+        assertEquals(Arrays.asList("start", "start"), actions);
+    }
+
+    @Test
+    public void disarmedTriggerIgnoresEverything() {
+        trigger.onReady(true);
+        trigger.onRecordingStarted();
+        run(10_000, false);
+        assertEquals(AutoTrigger.Phase.IDLE, trigger.getPhase());
+        assertTrue(actions.isEmpty());
+    }
+}
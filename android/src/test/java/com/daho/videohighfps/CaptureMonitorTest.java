@@ -0,0 +1,107 @@
+package com.daho.videohighfps;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class CaptureMonitorTest {
+
+    private static final long FRAME_240_NS = 1_000_000_000L / 240;
+    private static final long FRAME_120_NS = 1_000_000_000L / 120;
+
+    private final List<String> events = new ArrayList<>();
+    private long timestampNs = 1_000_000_000L;
+
+    private CaptureMonitor monitor() {
+        return new CaptureMonitor(240, new CaptureMonitor.Listener() {
+            @Override
+            public void onGap(long gapNs, int missedFrames) {
+                events.add("gap " + missedFrames);
+            }
+
+            @Override
+            public void onRateChanged(boolean collapsed, double effectiveFps) {
+                events.add((collapsed ? "collapsed " : "recovered ") + Math.round(effectiveFps));
+            }
+        });
+    }
+
+    /** Feeds {@code frames} captures spaced {@code intervalNs} apart, with a little jitter. */
+    private void feed(CaptureMonitor monitor, int frames, long intervalNs) {
+        for (int i = 0; i < frames; i++) {
+            timestampNs += intervalNs + (i % 3 - 1) * 50_000L; // +-50 us
+            monitor.onFrame(timestampNs);
+        }
+    }
+
+    @Test
+    public void steadyStreamHasNoGaps() {
+        CaptureMonitor monitor = monitor();
+        feed(monitor, 240 * 3, FRAME_240_NS);
+
+        assertTrue(events.isEmpty());
+        assertEquals(0, monitor.getMissedFrames());
+        assertEquals(240, monitor.getEffectiveFps(), 1);
+        assertEquals(240, monitor.getAverageFps(), 1);
+        assertFalse(monitor.isCollapsed());
+    }
+
+    @Test
+    public void gapsCountTheFramesThatShouldHaveFilledThem() {
+        CaptureMonitor monitor = monitor();
+        feed(monitor, 10, FRAME_240_NS);
+        timestampNs += 3 * FRAME_240_NS; // two frames lost
+        monitor.onFrame(timestampNs);
+        feed(monitor, 10, FRAME_240_NS);
+        timestampNs += 50_000_000L; // a 50 ms stall: 11 frames lost
+        monitor.onFrame(timestampNs);
+
+        assertEquals(2, monitor.getGapCount());
+        assertEquals(13, monitor.getMissedFrames());
+        assertEquals(50_000_000L, monitor.getLongestGapNs());
+        assertEquals("[gap 2, gap 11]", events.toString());
+    }
+
+    @Test
+    public void repeatedAndBackwardTimestampsAreIgnored() {
+        CaptureMonitor monitor = monitor();
+        feed(monitor, 5, FRAME_240_NS);
+        monitor.onFrame(timestampNs);
+        monitor.onFrame(timestampNs - FRAME_240_NS);
+
+        assertEquals(5, monitor.getFrameCount());
+        assertEquals(0, monitor.getGapCount());
+    }
+
+    @Test
+    public void throttlingToHalfRateCollapsesAndRecovers() {
+        CaptureMonitor monitor = monitor();
+        feed(monitor, 240, FRAME_240_NS);
+        feed(monitor, 120 * 2, FRAME_120_NS); // two seconds throttled
+
+        assertTrue(monitor.isCollapsed());
+        assertEquals(120, monitor.getEffectiveFps(), 1);
+        assertTrue(events.contains("collapsed 120"));
+        assertEquals(1, events.stream().filter(e -> e.startsWith("collapsed")).count());
+        // Every throttled frame skipped one of the requested ones
+        assertEquals(240, monitor.getMissedFrames(), 2);
+
+        events.clear();
+        feed(monitor, 360, FRAME_240_NS); // two full windows back at rate
+        assertFalse(monitor.isCollapsed());
+        assertEquals("[recovered 240]", events.toString());
+    }
+
+    @Test
+    public void aSingleSlowWindowIsNotACollapse() {
+        CaptureMonitor monitor = monitor();
+        feed(monitor, 240, FRAME_240_NS);
+        feed(monitor, 60, FRAME_120_NS); // half a second throttled
+        feed(monitor, 240, FRAME_240_NS);
+
+        assertFalse(monitor.isCollapsed());
+        assertTrue(events.stream().noneMatch(e -> e.startsWith("collapsed")));
+    }
+}
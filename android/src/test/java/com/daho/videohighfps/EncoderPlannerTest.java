@@ -0,0 +1,110 @@
+package com.daho.videohighfps;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class EncoderPlannerTest {
+
+    private static final long MB = 1_000_000L;
+
+    private final EncoderPlanner planner = new EncoderPlanner();
+
+    // 1080p240: H.264 target is ~34.8 Mbps, HEVC ~20.9 Mbps
+    private static EncoderPlanner.Request request() {
+        EncoderPlanner.Request request = new EncoderPlanner.Request();
+        request.width = 1920;
+        request.height = 1080;
+        request.fps = 240;
+        request.hevcAvailable = true;
+        return request;
+    }
+
+    @Test
+    public void fastStorageKeepsH264AtFullTarget() {
+        EncoderPlanner.Request request = request();
+        request.writeBytesPerSec = 200 * MB;
+
+        EncoderPlanner.Plan plan = planner.plan(request);
+        assertEquals(RecordingConfig.Codec.H264, plan.codec);
+        assertEquals(EncoderPlanner.targetBitrate(1920, 1080, 240, RecordingConfig.Codec.H264), plan.bitrate);
+        assertEquals(800 * MB, plan.storageBudget);
+    }
+
+    @Test
+    public void targetIsNotCappedAt50Mbps() {
+        EncoderPlanner.Request request = request();
+        request.width = 3840;
+        request.height = 2160;
+        request.fps = 120;
+        request.writeBytesPerSec = 200 * MB;
+
+        EncoderPlanner.Plan plan = planner.plan(request);
+        assertTrue(plan.bitrate > 50 * MB);
+    }
+
+    @Test
+    public void slowStoragePicksHevcWhenAvailable() {
+        EncoderPlanner.Request request = request();
+        request.writeBytesPerSec = 6 * MB; // 24 Mbps budget
+
+        EncoderPlanner.Plan plan = planner.plan(request);
+        assertEquals(RecordingConfig.Codec.HEVC, plan.codec);
+        assertEquals(EncoderPlanner.targetBitrate(1920, 1080, 240, RecordingConfig.Codec.HEVC), plan.bitrate);
+        assertTrue(plan.bitrate <= plan.storageBudget);
+    }
+
+    @Test
+    public void slowStorageWithoutHevcReducesH264() {
+        EncoderPlanner.Request request = request();
+        request.hevcAvailable = false;
+        request.writeBytesPerSec = 4 * MB; // 16 Mbps budget
+
+        EncoderPlanner.Plan plan = planner.plan(request);
+        assertEquals(RecordingConfig.Codec.H264, plan.codec);
+        assertEquals(16 * MB, plan.bitrate);
+        assertTrue(plan.reasons.toString().contains("storage"));
+    }
+
+    @Test
+    public void sizeLimitLeavesRoomForMinimumDuration() {
+        EncoderPlanner.Request request = request();
+        request.codec = RecordingConfig.Codec.H264;
+        request.writeBytesPerSec = 200 * MB;
+        request.sizeLimitBytes = 25 * MB; // 20 Mbps for 10 s
+
+        EncoderPlanner.Plan plan = planner.plan(request);
+        assertEquals(20 * MB, plan.sizeBudget);
+        assertEquals(20 * MB, plan.bitrate);
+        assertTrue(plan.reasons.toString().contains("sizeLimit"));
+    }
+
+    @Test
+    public void requestedHevcFallsBackWithoutEncoder() {
+        EncoderPlanner.Request request = request();
+        request.codec = RecordingConfig.Codec.HEVC;
+        request.hevcAvailable = false;
+
+        EncoderPlanner.Plan plan = planner.plan(request);
+        assertEquals(RecordingConfig.Codec.H264, plan.codec);
+    }
+
+    @Test
+    public void encoderMaximumAndFloorApply() {
+        EncoderPlanner.Request request = request();
+        request.codec = RecordingConfig.Codec.H264;
+        request.h264MaxBitrate = 30_000_000;
+        assertEquals(30_000_000, planner.plan(request).bitrate);
+
+        request.h264MaxBitrate = 0;
+        request.writeBytesPerSec = 100_000; // 0.4 Mbps budget
+        assertEquals(EncoderPlanner.MIN_BITRATE, planner.plan(request).bitrate);
+    }
+
+    @Test
+    public void unknownStorageDoesNotLimit() {
+        EncoderPlanner.Plan plan = planner.plan(request());
+        assertEquals(0, plan.storageBudget);
+        assertEquals(RecordingConfig.Codec.H264, plan.codec);
+    }
+}
@@ -0,0 +1,109 @@
+package com.daho.videohighfps;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class ExposureEstimatorTest {
+
+    private static final long FRAME_NS = 1_000_000_000L / 240;
+    private static final int CONVERGED = ExposureEstimator.AE_STATE_CONVERGED;
+    private static final int SEARCHING = ExposureEstimator.AE_STATE_SEARCHING;
+
+    private final List<ExposureEstimator.Lighting> changes = new ArrayList<>();
+    private long timestampNs;
+
+    private ExposureEstimator estimator() {
+        return new ExposureEstimator((lighting, ev) -> changes.add(lighting));
+    }
+
+    /** Replays {exposureTimeNs, iso, aeState} rows at 240 fps. */
+    private void replay(ExposureEstimator estimator, long[][] rows, int repeat) {
+        for (int r = 0; r < repeat; r++) {
+            for (long[] row : rows) {
+                estimator.onCaptureResult(timestampNs, row[0], (int) row[1], 1.8f, (int) row[2]);
+                timestampNs += FRAME_NS;
+            }
+        }
+    }
+
+    @Test
+    public void ev100MatchesExposureTriangle() {
+        // f/1.8, 1/240 s, ISO 100 -> log2(3.24 * 240) = 9.6
+        assertEquals(9.6, ExposureEstimator.ev100(FRAME_NS, 100, 1.8f), 0.05);
+        // Four stops more gain is four stops less light
+        assertEquals(5.6, ExposureEstimator.ev100(FRAME_NS, 1600, 1.8f), 0.05);
+    }
+
+    @Test
+    public void brightOfficeIsReportedOkOnce() {
+        ExposureEstimator estimator = estimator();
+
+        replay(estimator, new long[][] { { FRAME_NS, 200, CONVERGED } }, 240);
+
+        assertEquals(1, changes.size());
+        assertEquals(ExposureEstimator.Lighting.OK, changes.get(0));
+        assertTrue(estimator.hasData());
+    }
+
+    @Test
+    public void dimRoomAtHighSpeedIsTooDark() {
+        ExposureEstimator estimator = estimator();
+
+        // AE capped at 1/240 s and maxed out at ISO 6400
+        replay(estimator, new long[][] { { FRAME_NS, 6400, CONVERGED } }, 240);
+
+        assertEquals(ExposureEstimator.Lighting.TOO_DARK, estimator.getLighting());
+    }
+
+    @Test
+    public void searchingFramesAreIgnored() {
+        ExposureEstimator estimator = estimator();
+
+        replay(estimator, new long[][] { { FRAME_NS, 6400, SEARCHING } }, 240);
+
+        assertFalse(estimator.hasData());
+        assertEquals(ExposureEstimator.Lighting.UNKNOWN, estimator.getLighting());
+        assertTrue(changes.isEmpty());
+    }
+
+    @Test
+    public void flashRequiredMeansTooDark() {
+        ExposureEstimator estimator = estimator();
+
+        replay(estimator, new long[][] { { FRAME_NS, 200, ExposureEstimator.AE_STATE_FLASH_REQUIRED } }, 10);
+
+        assertEquals(ExposureEstimator.Lighting.TOO_DARK, estimator.getLighting());
+    }
+
+    @Test
+    public void singleDarkFlickerDoesNotFlipVerdict() {
+        ExposureEstimator estimator = estimator();
+        replay(estimator, new long[][] { { FRAME_NS, 200, CONVERGED } }, 240);
+
+        // Someone walks past the lens for 100 ms
+        replay(estimator, new long[][] { { FRAME_NS, 12800, CONVERGED } }, 24);
+        replay(estimator, new long[][] { { FRAME_NS, 200, CONVERGED } }, 240);
+
+        assertEquals(1, changes.size());
+        assertEquals(ExposureEstimator.Lighting.OK, estimator.getLighting());
+    }
+
+    @Test
+    public void hysteresisKeepsDarkUntilClearlyBrighter() {
+        ExposureEstimator estimator = estimator();
+        replay(estimator, new long[][] { { FRAME_NS, 6400, CONVERGED } }, 240);
+        assertEquals(ExposureEstimator.Lighting.TOO_DARK, estimator.getLighting());
+
+        // EV ~5.6: above the 5.0 threshold but inside the 1 EV band
+        replay(estimator, new long[][] { { FRAME_NS, 1600, CONVERGED } }, 480);
+        assertEquals(ExposureEstimator.Lighting.TOO_DARK, estimator.getLighting());
+
+        // Lights on: EV ~8.6 for over the dwell time
+        replay(estimator, new long[][] { { FRAME_NS, 200, CONVERGED } }, 240);
+        assertEquals(ExposureEstimator.Lighting.OK, estimator.getLighting());
+        assertEquals(2, changes.size());
+    }
+}
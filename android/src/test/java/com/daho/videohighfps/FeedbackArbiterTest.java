@@ -0,0 +1,283 @@
+package com.daho.videohighfps;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import org.junit.Test;
+
+public class FeedbackArbiterTest {
+
+    private static final long MS = 1_000_000L;
+
+    private long now = 0;
+    private final List<String> played = new ArrayList<>();
+    private final List<Runnable> pendingBeeps = new ArrayList<>();
+    private String speaking; // utterance id, until the test reports it done
+    private boolean speechAvailable = true;
+
+    // Fake Handler: tasks run when the test advances time
+    private final List<long[]> dueAt = new ArrayList<>();
+    private final List<Runnable> tasks = new ArrayList<>();
+
+    private final FeedbackArbiter arbiter = new FeedbackArbiter(new FeedbackArbiter.Output() {
+        @Override
+        public void beep(int count, Runnable done) {
+            played.add("beep" + count);
+            pendingBeeps.add(done);
+        }
+
+        @Override
+        public boolean speak(String text, String utteranceId) {
+            if (!speechAvailable) {
+                return false;
+            }
+            played.add(text);
+            speaking = utteranceId;
+            return true;
+        }
+
+        @Override
+        public void stopSpeaking() {
+            played.add("stop");
+            speaking = null;
+        }
+    }, new FeedbackArbiter.Scheduler() {
+        @Override
+        public void postDelayed(Runnable task, long delayMs) {
+            dueAt.add(new long[] { now + delayMs * MS });
+            tasks.add(task);
+        }
+
+        @Override
+        public void cancel(Runnable task) {
+            for (int i = tasks.size() - 1; i >= 0; i--) {
+                if (tasks.get(i) == task) {
+                    tasks.remove(i);
+                    dueAt.remove(i);
+                }
+            }
+        }
+    }, () -> now);
+
+    private void advance(long ms) {
+        long end = now + ms * MS;
+        while (true) {
+            int first = -1;
+            for (int i = 0; i < tasks.size(); i++) {
+                if (dueAt.get(i)[0] <= end && (first < 0 || dueAt.get(i)[0] < dueAt.get(first)[0])) {
+                    first = i;
+                }
+            }
+            if (first < 0) {
+                break;
+            }
+            now = Math.max(now, dueAt.get(first)[0]);
+            dueAt.remove(first);
+            tasks.remove(first).run();
+        }
+        now = end;
+    }
+
+    private void beepsDone() {
+        for (Iterator<Runnable> it = pendingBeeps.iterator(); it.hasNext();) {
+            Runnable done = it.next();
+            it.remove();
+            done.run();
+        }
+    }
+
+    private void speechDone() {
+        String id = speaking;
+        speaking = null;
+        arbiter.onUtteranceDone(id);
+    }
+
+    private static FeedbackArbiter.Message message(String key, String text, FeedbackArbiter.Priority priority) {
+        return new FeedbackArbiter.Message(key, text, priority);
+    }
+
+    @Test
+    public void queuesInsteadOfDropping() {
+        arbiter.submit(message("pose", "Step back", FeedbackArbiter.Priority.PROMPT));
+        arbiter.submit(message("ready", "Ready?", FeedbackArbiter.Priority.PROMPT));
+        assertEquals(Arrays.asList("Step back"), played);
+
+        speechDone();
+        advance(0);
+        assertEquals(Arrays.asList("Step back", "Ready?"), played);
+    }
+
+    @Test
+    public void higherPriorityGoesFirst() {
+        arbiter.submit(message("pose", "Step back", FeedbackArbiter.Priority.PROMPT));
+        arbiter.submit(message("info", "Great position", FeedbackArbiter.Priority.INFO));
+        arbiter.submit(message("ready", "Ready?", FeedbackArbiter.Priority.PROMPT));
+        speechDone();
+        advance(0);
+        speechDone();
+        advance(0);
+        assertEquals(Arrays.asList("Step back", "Ready?", "Great position"), played);
+    }
+
+    @Test
+    public void warningCutsOffLowerPriority() {
+        FeedbackArbiter.Message info = message("pose", "Great position", FeedbackArbiter.Priority.INFO);
+        List<String> ran = new ArrayList<>();
+        info.then = () -> ran.add("info");
+        arbiter.submit(info);
+        arbiter.submit(message("lighting", "Too dark", FeedbackArbiter.Priority.WARNING));
+
+        assertEquals(Arrays.asList("Great position", "stop", "Too dark"), played);
+        speechDone();
+        advance(0);
+        assertTrue(ran.isEmpty()); // the cut-off message does not continue its flow
+        assertFalse(arbiter.isBusy());
+    }
+
+    @Test
+    public void warningWaitsForAnotherWarning() {
+        arbiter.submit(message("lighting", "Too dark", FeedbackArbiter.Priority.WARNING));
+        arbiter.submit(message("pose", "Not detected", FeedbackArbiter.Priority.WARNING));
+        assertEquals(Arrays.asList("Too dark"), played);
+        speechDone();
+        advance(0);
+        assertEquals(Arrays.asList("Too dark", "Not detected"), played);
+    }
+
+    @Test
+    public void repeatWithinCooldownIsSuppressed() {
+        assertTrue(arbiter.submit(message("lighting", "Too dark", FeedbackArbiter.Priority.WARNING)));
+        assertFalse(arbiter.submit(message("lighting", "Too dark", FeedbackArbiter.Priority.WARNING))); // playing
+        speechDone();
+        advance(1000);
+        assertFalse(arbiter.submit(message("lighting", "Too dark", FeedbackArbiter.Priority.WARNING)));
+
+        advance(FeedbackArbiter.DEFAULT_COOLDOWN_MS);
+        assertTrue(arbiter.submit(message("lighting", "Too dark", FeedbackArbiter.Priority.WARNING)));
+        assertEquals(Arrays.asList("Too dark", "Too dark"), played);
+    }
+
+    @Test
+    public void newerStateReplacesQueuedOne() {
+        arbiter.submit(message("ready", "Ready?", FeedbackArbiter.Priority.PROMPT));
+        arbiter.submit(message("pose", "Move left", FeedbackArbiter.Priority.PROMPT));
+        arbiter.submit(message("pose", "Step back", FeedbackArbiter.Priority.PROMPT));
+        assertEquals(1, arbiter.getQueuedCount());
+
+        speechDone();
+        advance(0);
+        assertEquals(Arrays.asList("Ready?", "Step back"), played);
+    }
+
+    @Test
+    public void flickerBackCancelsThePendingState() {
+        arbiter.submit(message("lighting", "Too dark", FeedbackArbiter.Priority.WARNING));
+        speechDone();
+        arbiter.submit(message("ready", "Ready?", FeedbackArbiter.Priority.PROMPT));
+        arbiter.submit(message("lighting", "Light is good", FeedbackArbiter.Priority.INFO));
+        arbiter.submit(message("lighting", "Too dark", FeedbackArbiter.Priority.WARNING)); // back within cooldown
+        speechDone();
+        advance(10_000);
+        assertEquals(Arrays.asList("Too dark", "Ready?"), played);
+    }
+
+    @Test
+    public void completionFollowsOnDoneAndPause() {
+        FeedbackArbiter.Message ask = message("ready", "Can I start recording now?", FeedbackArbiter.Priority.PROMPT);
+        ask.beeps = 1;
+        ask.pauseAfterMs = 3000;
+        List<String> ran = new ArrayList<>();
+        ask.then = () -> ran.add("then");
+        arbiter.submit(ask);
+
+        assertEquals(Arrays.asList("beep1"), played);
+        beepsDone();
+        advance(FeedbackArbiter.SPEECH_AFTER_BEEPS_MS);
+        assertEquals(Arrays.asList("beep1", "Can I start recording now?"), played);
+
+        advance(10_000); // a long utterance: nothing happens until the engine says it is done
+        assertTrue(ran.isEmpty());
+        assertTrue(arbiter.isBusy());
+
+        speechDone();
+        advance(2900);
+        assertTrue(ran.isEmpty());
+        advance(100);
+        assertEquals(Arrays.asList("then"), ran);
+        assertFalse(arbiter.isBusy());
+    }
+
+    @Test
+    public void busySpansBackToBackMessages() {
+        List<Boolean> busy = new ArrayList<>();
+        arbiter.setBusyListener(busy::add);
+        arbiter.submit(message("pose", "Step back", FeedbackArbiter.Priority.PROMPT));
+        arbiter.submit(message("ready", "Ready?", FeedbackArbiter.Priority.PROMPT));
+        assertEquals(Arrays.asList(true), busy);
+
+        speechDone();
+        advance(0);
+        assertEquals(Arrays.asList(true), busy); // the next one followed without a gap
+        speechDone();
+        advance(0);
+        assertEquals(Arrays.asList(true, false), busy);
+
+        arbiter.submit(message("lighting", "Too dark", FeedbackArbiter.Priority.WARNING));
+        arbiter.clear();
+        assertEquals(Arrays.asList(true, false, true, false), busy);
+    }
+
+    @Test
+    public void staleMessagesAreDropped() {
+        arbiter.submit(message("ready", "Ready?", FeedbackArbiter.Priority.PROMPT));
+        arbiter.submit(message("pose", "Step back", FeedbackArbiter.Priority.PROMPT));
+        advance(FeedbackArbiter.DEFAULT_MAX_WAIT_MS + 1000);
+        speechDone();
+        advance(0);
+        assertEquals(Arrays.asList("Ready?"), played);
+        assertFalse(arbiter.isBusy());
+    }
+
+    @Test
+    public void unavailableSpeechStillContinuesTheFlow() {
+        speechAvailable = false;
+        List<String> ran = new ArrayList<>();
+        FeedbackArbiter.Message ask = message("ready", "Ready?", FeedbackArbiter.Priority.PROMPT);
+        ask.then = () -> ran.add("then");
+        arbiter.submit(ask);
+        assertEquals(Arrays.asList("then"), ran);
+        assertFalse(arbiter.isBusy());
+    }
+
+    @Test
+    public void lostOnDoneTimesOut() {
+        List<String> ran = new ArrayList<>();
+        FeedbackArbiter.Message ask = message("ready", "Ready?", FeedbackArbiter.Priority.PROMPT);
+        ask.then = () -> ran.add("then");
+        arbiter.submit(ask);
+        advance(FeedbackArbiter.UTTERANCE_TIMEOUT_MS);
+        assertEquals(Arrays.asList("then"), ran);
+        assertFalse(arbiter.isBusy());
+
+        speechDone(); // far too late, ignored
+        assertEquals(Arrays.asList("then"), ran);
+    }
+
+    @Test
+    public void queueKeepsTheMostImportant() {
+        arbiter.submit(message("a", "Playing", FeedbackArbiter.Priority.PROMPT));
+        for (int i = 0; i < FeedbackArbiter.MAX_QUEUED; i++) {
+            assertTrue(arbiter.submit(message("info" + i, "Info " + i, FeedbackArbiter.Priority.INFO)));
+        }
+        assertTrue(arbiter.submit(message("b", "Prompt", FeedbackArbiter.Priority.PROMPT)));
+        assertFalse(arbiter.submit(message("c", "More info", FeedbackArbiter.Priority.INFO)));
+        assertEquals(FeedbackArbiter.MAX_QUEUED, arbiter.getQueuedCount());
+
+        arbiter.clear();
+        assertFalse(arbiter.isBusy());
+        assertEquals(0, arbiter.getQueuedCount());
+    }
+}
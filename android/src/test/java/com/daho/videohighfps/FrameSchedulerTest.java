@@ -0,0 +1,148 @@
+package com.daho.videohighfps;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FrameSchedulerTest {
+
+    private static final long MS = 1_000_000L;
+
+    private final List<Integer> processing = new ArrayList<>();
+    private final List<Runnable> completions = new ArrayList<>();
+    private final List<Integer> released = new ArrayList<>();
+    private long now;
+
+    private FrameScheduler<Integer> scheduler(int maxInFlight, double targetFps) {
+        return new FrameScheduler<>(
+            (frame, onComplete) -> {
+                processing.add(frame);
+                completions.add(onComplete);
+            },
+            released::add,
+            () -> now,
+            maxInFlight,
+            targetFps
+        );
+    }
+
+    @Before
+    public void setUp() {
+        now = 0;
+    }
+
+    @Test
+    public void keepsOneInferenceInFlightByDefault() {
+        FrameScheduler<Integer> scheduler = scheduler(1, 0);
+
+        scheduler.submit(1);
+        scheduler.submit(2);
+        scheduler.submit(3);
+
+        assertEquals(1, processing.size());
+        assertEquals(Integer.valueOf(1), processing.get(0));
+        assertEquals(1, scheduler.getInFlight());
+    }
+
+    @Test
+    public void processesNewestFrameAndDropsOlderPending() {
+        FrameScheduler<Integer> scheduler = scheduler(1, 0);
+
+        scheduler.submit(1);
+        scheduler.submit(2);
+        scheduler.submit(3);
+        completions.get(0).run();
+
+        assertEquals(2, processing.size());
+        assertEquals(Integer.valueOf(3), processing.get(1));
+        assertEquals(1, scheduler.getDroppedCount());
+        // Frame 2 was superseded, frame 1 was released after processing
+        assertTrue(released.contains(2));
+        assertTrue(released.contains(1));
+    }
+
+    @Test
+    public void respectsTargetRateIndependentOfCaptureRate() {
+        FrameScheduler<Integer> scheduler = scheduler(1, 10); // 100 ms slots
+
+        // 240 fps capture for 250 ms, detector completes instantly
+        for (int i = 0; i < 60; i++) {
+            now = (long) (i * (1000.0 / 240) * MS);
+            scheduler.submit(i);
+            while (!completions.isEmpty()) {
+                completions.remove(0).run();
+            }
+        }
+
+        assertEquals(3, processing.size()); // t = 0, 100, 200 ms
+        assertEquals(60, scheduler.getSubmittedCount());
+        assertEquals(3, scheduler.getProcessedCount());
+    }
+
+    @Test
+    public void drainDispatchesThrottledFrameWhenSlotOpens() {
+        FrameScheduler<Integer> scheduler = scheduler(1, 10);
+
+        scheduler.submit(1);
+        completions.get(0).run();
+        now = 20 * MS;
+        scheduler.submit(2);
+        assertEquals(1, processing.size());
+
+        now = 100 * MS;
+        scheduler.drain();
+        assertEquals(2, processing.size());
+        assertEquals(Integer.valueOf(2), processing.get(1));
+    }
+
+    @Test
+    public void allowsConfiguredConcurrency() {
+        FrameScheduler<Integer> scheduler = scheduler(2, 0);
+
+        scheduler.submit(1);
+        scheduler.submit(2);
+        scheduler.submit(3);
+
+        assertEquals(2, processing.size());
+        assertEquals(2, scheduler.getInFlight());
+    }
+
+    @Test
+    public void completionIsIdempotentAndMeasuresLatency() {
+        FrameScheduler<Integer> scheduler = scheduler(1, 0);
+        LatencyHistogram latency = new LatencyHistogram();
+        scheduler.setLatencyHistogram(latency);
+
+        scheduler.submit(1);
+        now = 35 * MS;
+        completions.get(0).run();
+        completions.get(0).run();
+
+        assertEquals(1, scheduler.getProcessedCount());
+        assertEquals(0, scheduler.getInFlight());
+        assertEquals(35 * MS, scheduler.getLastLatencyNs());
+        assertEquals(1, latency.getCount());
+        assertEquals(35_000, latency.getMax());
+        assertEquals(1, released.size());
+    }
+
+    @Test
+    public void closeReleasesPendingAndRejectsNewFrames() {
+        FrameScheduler<Integer> scheduler = scheduler(1, 0);
+
+        scheduler.submit(1);
+        scheduler.submit(2);
+        scheduler.close();
+        scheduler.submit(3);
+        completions.get(0).run();
+
+        assertEquals(1, processing.size());
+        assertTrue(released.contains(2));
+        assertTrue(released.contains(3));
+        assertTrue(released.contains(1));
+        assertEquals(2, scheduler.getDroppedCount());
+    }
+}
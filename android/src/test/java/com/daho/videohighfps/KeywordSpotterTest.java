@@ -0,0 +1,145 @@
+package com.daho.videohighfps;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+
+public class KeywordSpotterTest {
+
+    // Formant tracks (F1 start, F1 end, F2 start, F2 end in Hz) standing in for recorded words
+    private static final float[] YES = { 300, 550, 2300, 1800 };
+    private static final float[] START = { 750, 700, 1100, 1750 };
+    private static final float[] STOP = { 450, 650, 850, 1050 };
+    private static final float[] PAUSE = { 800, 350, 1200, 2200 };
+    private static final float[] OTHER = { 300, 300, 700, 2600 };
+
+    private final List<String> heard = new ArrayList<>();
+    private final List<Float> distances = new ArrayList<>();
+
+    /**
+     * Voiced sound with two gliding formants: harmonics of {@code f0} shaped by
+     * resonances, between stretches of low background noise.
+     */
+    static short[] word(float[] track, int sampleRate, float f0, float seconds, float amplitude, long seed) {
+        Random random = new Random(seed);
+        int lead = sampleRate / 2, body = (int) (seconds * sampleRate);
+        short[] pcm = new short[lead + body + sampleRate / 2];
+        double phase = 0;
+        for (int i = 0; i < pcm.length; i++) {
+            double noise = random.nextGaussian() * 20;
+            double voice = 0;
+            if (i >= lead && i < lead + body) {
+                double t = (i - lead) / (double) body;
+                double f1 = track[0] + (track[1] - track[0]) * t;
+                double f2 = track[2] + (track[3] - track[2]) * t;
+                phase += 2 * Math.PI * f0 / sampleRate;
+                double envelope = Math.min(1, Math.min(t, 1 - t) * 10);
+                for (int h = 1; h * f0 < 4000; h++) {
+                    double f = h * f0;
+                    double gain = 1 / (1 + Math.pow((f - f1) / 80, 2)) + 0.7 / (1 + Math.pow((f - f2) / 120, 2));
+                    voice += gain * Math.sin(h * phase);
+                }
+                voice *= amplitude * envelope;
+            }
+            pcm[i] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, voice + noise));
+        }
+        return pcm;
+    }
+
+    private KeywordSpotter spotter(int sampleRate) {
+        KeywordSpotter spotter = new KeywordSpotter(sampleRate, (keyword, distance) -> {
+            heard.add(keyword);
+            distances.add(distance);
+        });
+        assertTrue(spotter.addTemplate("yes", word(YES, 16000, 120, 0.35f, 3000, 1), 16000));
+        assertTrue(spotter.addTemplate("start", word(START, 16000, 120, 0.5f, 3000, 2), 16000));
+        assertTrue(spotter.addTemplate("stop", word(STOP, 16000, 120, 0.45f, 3000, 3), 16000));
+        assertTrue(spotter.addTemplate("pause", word(PAUSE, 16000, 120, 0.55f, 3000, 4), 16000));
+        return spotter;
+    }
+
+    // Streams in 20 ms chunks, like an AudioRecord read loop
+    private static void stream(KeywordSpotter spotter, short[] pcm, int chunk) {
+        for (int offset = 0; offset < pcm.length; offset += chunk) {
+            spotter.accept(pcm, offset, Math.min(chunk, pcm.length - offset));
+        }
+    }
+
+    @Before
+    public void setUp() {
+        heard.clear();
+        distances.clear();
+    }
+
+    @Test
+    public void recognizesEachKeywordSpokenDifferently() {
+        KeywordSpotter spotter = spotter(16000);
+        // Other pitch, speed, loudness and noise than the templates
+        stream(spotter, word(YES, 16000, 150, 0.42f, 2000, 11), 320);
+        stream(spotter, word(START, 16000, 100, 0.42f, 5000, 12), 320);
+        stream(spotter, word(STOP, 16000, 140, 0.55f, 2500, 13), 320);
+        stream(spotter, word(PAUSE, 16000, 110, 0.45f, 4000, 14), 320);
+
+        assertEquals(java.util.Arrays.asList("yes", "start", "stop", "pause"), heard);
+    }
+
+    @Test
+    public void ignoresOtherWords() {
+        KeywordSpotter spotter = spotter(16000);
+        stream(spotter, word(OTHER, 16000, 120, 0.45f, 3000, 21), 320);
+        assertTrue("heard " + heard + " at " + distances, heard.isEmpty());
+    }
+
+    @Test
+    public void ignoresNoiseAndClicks() {
+        KeywordSpotter spotter = spotter(16000);
+        Random random = new Random(5);
+        short[] pcm = new short[16000 * 3];
+        for (int i = 0; i < pcm.length; i++) {
+            pcm[i] = (short) (random.nextGaussian() * 20);
+        }
+        for (int click = 8000; click < pcm.length; click += 12000) {
+            for (int i = 0; i < 400; i++) {
+                pcm[click + i] = (short) (random.nextGaussian() * 8000); // 25 ms burst, too short
+            }
+        }
+        stream(spotter, pcm, 320);
+        assertTrue(heard.isEmpty());
+    }
+
+    @Test
+    public void resamplesCaptureRateInput() {
+        KeywordSpotter spotter = spotter(44100);
+        stream(spotter, word(STOP, 44100, 130, 0.5f, 3000, 31), 1024);
+        stream(spotter, word(YES, 44100, 130, 0.38f, 3000, 32), 1024);
+        assertEquals(java.util.Arrays.asList("stop", "yes"), heard);
+    }
+
+    @Test
+    public void flushEndsUtteranceWithoutTrailingSilence() {
+        KeywordSpotter spotter = spotter(16000);
+        short[] pcm = word(PAUSE, 16000, 120, 0.5f, 3000, 41);
+        stream(spotter, pcm, 320);
+        assertEquals(1, heard.size());
+
+        heard.clear();
+        short[] cut = java.util.Arrays.copyOf(pcm, 8000 + 7000); // stops mid-word, at the end of the tap
+        stream(spotter, cut, 320);
+        assertTrue(heard.isEmpty());
+        spotter.flush();
+        assertEquals(java.util.Arrays.asList("pause"), heard);
+    }
+
+    @Test
+    public void nothingIsReportedWithoutTemplates() {
+        KeywordSpotter spotter = new KeywordSpotter(16000, (keyword, distance) -> heard.add(keyword));
+        stream(spotter, word(YES, 16000, 120, 0.4f, 3000, 51), 320);
+        assertTrue(heard.isEmpty());
+        assertFalse(spotter.addTemplate("yes", new short[16000], 16000)); // silence holds no word
+        assertEquals(0, spotter.getTemplateCount());
+    }
+}
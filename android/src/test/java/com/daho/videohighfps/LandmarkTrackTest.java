@@ -0,0 +1,132 @@
+package com.daho.videohighfps;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LandmarkTrackTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("track", ".landmarks.bin");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    private static PoseFrame pose(long timestampNs, float shift) {
+        PoseFrame pose = new PoseFrame();
+        pose.reset(timestampNs, 1920, 1080);
+        for (int i = 0; i < PoseFrame.LANDMARK_COUNT; i++) {
+            if (i != PoseFrame.LEFT_ANKLE) {
+                pose.set(i, 900 + shift + i * 3.5f, 300 + i * 12, 0.9f);
+            }
+        }
+        return pose;
+    }
+
+    @Test
+    public void roundTripsPosesAtTheirVideoTimes() throws IOException {
+        try (LandmarkTrack.Writer writer = new LandmarkTrack.Writer(file)) {
+            for (int f = 0; f < 3000; f++) { // spans several mapped chunks
+                assertTrue(writer.append(f * 33_333L, f == 10 ? null : pose(0, f % 200)));
+            }
+        }
+        assertEquals(LandmarkTrack.HEADER_BYTES + 3000L * LandmarkTrack.RECORD_BYTES, file.length());
+
+        try (LandmarkTrack.Reader reader = new LandmarkTrack.Reader(file)) {
+            assertEquals(3000, reader.getFrameCount());
+            assertEquals(1920, reader.getFrameWidth());
+            assertEquals(1080, reader.getFrameHeight());
+
+            PoseFrame out = new PoseFrame();
+            reader.read(2500, out);
+            PoseFrame expected = pose(0, 2500 % 200);
+            assertEquals(2500 * 33_333_000L, out.getTimestampNs());
+            assertEquals(PoseFrame.LANDMARK_COUNT - 1, out.getLandmarkCount());
+            assertFalse(out.has(PoseFrame.LEFT_ANKLE, 0f));
+            for (int i = 0; i < PoseFrame.LANDMARK_COUNT; i++) {
+                if (i != PoseFrame.LEFT_ANKLE) {
+                    assertEquals(expected.x(i), out.x(i), 0.1f);
+                    assertEquals(expected.y(i), out.y(i), 0.1f);
+                    assertEquals(0.9f, out.likelihood(i), 0.005f);
+                }
+            }
+
+            reader.read(10, out);
+            assertTrue(out.isEmpty());
+        }
+    }
+
+    @Test
+    public void findsRangesByTime() throws IOException {
+        try (LandmarkTrack.Writer writer = new LandmarkTrack.Writer(file)) {
+            for (int f = 0; f < 100; f++) {
+                writer.append(f * 100_000L, pose(0, 0));
+            }
+            assertFalse(writer.append(9_900_000L, pose(0, 0))); // not after the last record
+            assertEquals(100, writer.getFrameCount());
+        }
+        try (LandmarkTrack.Reader reader = new LandmarkTrack.Reader(file)) {
+            assertEquals(0, reader.indexAtOrAfter(-5));
+            assertEquals(15, reader.indexAtOrAfter(1_500_000L));
+            assertEquals(16, reader.indexAtOrAfter(1_500_001L));
+            assertEquals(100, reader.indexAtOrAfter(20_000_000L));
+        }
+    }
+
+    @Test
+    public void normalizedRecordsAreFractionsOfTheFrame() throws IOException {
+        PoseFrame pose = new PoseFrame();
+        pose.reset(0, 1000, 500);
+        pose.set(PoseFrame.NOSE, 250, 500, 1f);
+        pose.set(PoseFrame.LEFT_WRIST, -100, 20, 0f); // outside the image, barely detected
+        try (LandmarkTrack.Writer writer = new LandmarkTrack.Writer(file)) {
+            writer.append(0, pose);
+        }
+        float[] values = new float[PoseFrame.LANDMARK_COUNT * 3];
+        try (LandmarkTrack.Reader reader = new LandmarkTrack.Reader(file)) {
+            reader.readNormalized(0, values);
+        }
+        assertEquals(0.25f, values[0], 0.0001f);
+        assertEquals(1f, values[1], 0.0001f);
+        assertEquals(1f, values[2], 0f);
+        int wrist = PoseFrame.LEFT_WRIST * 3;
+        assertEquals(-0.1f, values[wrist], 0.0001f);
+        assertTrue(values[wrist + 2] > 0); // still recorded as present
+        assertTrue(Float.isNaN(values[3]));
+        assertEquals(0f, values[5], 0f);
+    }
+
+    @Test
+    public void readsATrackThatWasNeverClosed() throws IOException {
+        LandmarkTrack.Writer writer = new LandmarkTrack.Writer(file);
+        for (int f = 0; f < 5; f++) {
+            writer.append(f * 1000L, pose(0, f));
+        }
+        // No close(): the file still has the whole mapped chunk behind the records
+        assertTrue(file.length() > LandmarkTrack.HEADER_BYTES + 5L * LandmarkTrack.RECORD_BYTES);
+        try (LandmarkTrack.Reader reader = new LandmarkTrack.Reader(file)) {
+            assertEquals(5, reader.getFrameCount());
+            assertEquals(4000, reader.getTimeUs(4));
+        }
+        writer.close();
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherFiles() throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.write(new byte[64]);
+        }
+        new LandmarkTrack.Reader(file).close();
+    }
+}
@@ -0,0 +1,67 @@
+package com.daho.videohighfps;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketsCoverEveryValueWithinTheirPrecision() {
+        int previous = -1;
+        for (long v = 0; v < 1 << 16; v++) {
+            int bucket = LatencyHistogram.bucketOf(v);
+            assertTrue(bucket == previous || bucket == previous + 1); // contiguous
+            previous = bucket;
+            long high = LatencyHistogram.highestInBucket(bucket);
+            assertTrue(v + " in bucket up to " + high, v <= high && high - v <= v / 16);
+        }
+        long huge = 1L << LatencyHistogram.MAX_MAGNITUDE;
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.bucketOf(huge));
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 2, LatencyHistogram.bucketOf(huge - 1));
+        assertEquals(huge - 1, LatencyHistogram.highestInBucket(LatencyHistogram.BUCKET_COUNT - 2));
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.bucketOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void percentilesOfAUniformSpread() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int v = 1; v <= 10_000; v++) {
+            histogram.record(v);
+        }
+        assertEquals(10_000, histogram.getCount());
+        assertEquals(1, histogram.getMin());
+        assertEquals(10_000, histogram.getMax());
+        assertEquals(5000.5, histogram.getMean(), 0.001);
+        assertEquals(5000, histogram.getPercentile(50), 5000 / 16);
+        assertEquals(9900, histogram.getPercentile(99), 9900 / 16);
+        assertEquals(10_000, histogram.getPercentile(100));
+        assertEquals(1, histogram.getPercentile(0));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(50));
+        assertEquals(0, histogram.getMax());
+    }
+
+    @Test
+    public void concurrentRecordsAreAllCounted() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int offset = t;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 50_000; i++) {
+                    histogram.record(i % 1000 + offset);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(200_000, histogram.getCount());
+        assertEquals(0, histogram.getMin());
+        assertEquals(1002, histogram.getMax());
+    }
+}
@@ -0,0 +1,112 @@
+package com.daho.videohighfps;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * JMH-style microbenchmark of the lighting check: the old column-major
+ * getPixel() loop with a divide per pixel against {@link LuminanceMeter}.
+ *
+ * Not a unit test; run it on a JVM with
+ * {@code java -cp <test classes>:<main classes> com.daho.videohighfps.LuminanceMeterBenchmark}.
+ * On a device the legacy loop is considerably slower still, since every
+ * Bitmap.getPixel() is a JNI call rather than the array read used here.
+ */
+public class LuminanceMeterBenchmark {
+
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int MEASURE_ITERATIONS = 10;
+    private static final int OPS_PER_ITERATION = 2_000;
+
+    /** Consumes results so the JIT cannot drop the measured work. */
+    private static long blackhole;
+
+    public static void main(String[] args) {
+        Random random = new Random(42);
+
+        // The old check read a 100x100 bitmap
+        int[] argb100 = new int[100 * 100];
+        for (int i = 0; i < argb100.length; i++) {
+            argb100[i] = 0xFF000000 | random.nextInt(0xFFFFFF);
+        }
+
+        // A 640x480 analysis frame Y plane with row padding
+        int width = 640, height = 480, rowStride = 704;
+        byte[] luma = new byte[rowStride * height];
+        random.nextBytes(luma);
+        ByteBuffer lumaBuffer = ByteBuffer.allocateDirect(luma.length);
+        lumaBuffer.put(luma).rewind();
+
+        LuminanceMeter meter = new LuminanceMeter(1);
+        LuminanceMeter sampledMeter = new LuminanceMeter(LuminanceMeter.strideFor(width, height, 100));
+
+        run("legacy getPixel loop, 100x100", () -> legacyBrightness(argb100, 100, 100));
+        run("LuminanceMeter ARGB, 100x100", () -> meter.measureArgb(argb100, 100, 100));
+        run("LuminanceMeter Y plane, 640x480 stride 1", () -> meter.measureLuma(lumaBuffer, width, height, rowStride, 1));
+        run("LuminanceMeter Y plane, 640x480 ~100 samples/axis",
+                () -> sampledMeter.measureLuma(lumaBuffer, width, height, rowStride, 1));
+    }
+
+    private interface Op {
+        int run();
+    }
+
+    private static void run(String name, Op op) {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean allocations = threads instanceof com.sun.management.ThreadMXBean
+                ? (com.sun.management.ThreadMXBean) threads
+                : null;
+
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            iteration(op);
+        }
+
+        long bytesBefore = allocations != null ? allocations.getThreadAllocatedBytes(Thread.currentThread().getId()) : -1;
+        double best = Double.MAX_VALUE;
+        double total = 0;
+        for (int i = 0; i < MEASURE_ITERATIONS; i++) {
+            double nsPerOp = iteration(op);
+            best = Math.min(best, nsPerOp);
+            total += nsPerOp;
+        }
+        long bytesAfter = allocations != null ? allocations.getThreadAllocatedBytes(Thread.currentThread().getId()) : -1;
+        long bytesPerOp = bytesBefore < 0 ? -1 : (bytesAfter - bytesBefore) / ((long) MEASURE_ITERATIONS * OPS_PER_ITERATION);
+
+        System.out.println(String.format(Locale.US, "%-52s avg %10.1f ns/op  best %10.1f ns/op  %d B/op",
+                name, total / MEASURE_ITERATIONS, best, bytesPerOp));
+    }
+
+    private static double iteration(Op op) {
+        long start = System.nanoTime();
+        for (int i = 0; i < OPS_PER_ITERATION; i++) {
+            blackhole += op.run();
+        }
+        return (System.nanoTime() - start) / (double) OPS_PER_ITERATION;
+    }
+
+    // The loop onnxPreChecking used before LuminanceMeter, with getPixel(x, y) as an accessor
+    private static int legacyBrightness(int[] pixels, int width, int height) {
+        long sum = 0;
+        int count = 0;
+
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                int pixel = getPixel(pixels, width, x, y);
+                int r = (pixel >> 16) & 0xFF;
+                int g = (pixel >> 8) & 0xFF;
+                int b = pixel & 0xFF;
+                sum += (r + g + b) / 3;
+                count++;
+            }
+        }
+
+        return count == 0 ? -1 : (int) (sum / count);
+    }
+
+    private static int getPixel(int[] pixels, int width, int x, int y) {
+        return pixels[y * width + x];
+    }
+}
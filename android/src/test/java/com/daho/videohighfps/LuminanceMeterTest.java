@@ -0,0 +1,82 @@
+package com.daho.videohighfps;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import org.junit.Test;
+
+public class LuminanceMeterTest {
+
+    @Test
+    public void measuresLumaPlaneWithRowPadding() {
+        // 4x2 plane, row stride 6 (2 padding bytes that must be ignored)
+        ByteBuffer plane = ByteBuffer.wrap(new byte[] { 10, 20, 30, 40, (byte) 255, (byte) 255, 50, 60, 70, 80, (byte) 255, (byte) 255 });
+        LuminanceMeter meter = new LuminanceMeter(1);
+
+        assertEquals(45, meter.measureLuma(plane, 4, 2, 6, 1));
+        assertEquals(8, meter.getSampleCount());
+        assertEquals(0, meter.getHistogram()[255]);
+    }
+
+    @Test
+    public void honoursPixelStrideAndSamplingStride() {
+        // Interleaved plane (pixel stride 2), only even bytes are luma
+        byte[] data = new byte[16];
+        for (int i = 0; i < data.length; i += 2) {
+            data[i] = 100;
+            data[i + 1] = (byte) 200;
+        }
+        LuminanceMeter meter = new LuminanceMeter(2);
+
+        assertEquals(100, meter.measureLuma(ByteBuffer.wrap(data), 4, 2, 8, 2));
+        assertEquals(2, meter.getSampleCount()); // (0,0) and (2,0)
+    }
+
+    @Test
+    public void convertsArgbWithIntegerLumaWeights() {
+        int[] pixels = { 0xFFFFFFFF, 0xFF000000, 0xFFFF0000, 0xFF00FF00 };
+        LuminanceMeter meter = new LuminanceMeter(1);
+
+        meter.measureArgb(pixels, 2, 2);
+
+        int[] histogram = meter.getHistogram();
+        assertEquals(1, histogram[255]);
+        assertEquals(1, histogram[0]);
+        assertEquals(1, histogram[76]); // red
+        assertEquals(1, histogram[149]); // green
+    }
+
+    @Test
+    public void percentilesComeFromHistogram() {
+        int[] pixels = new int[100];
+        for (int i = 0; i < pixels.length; i++) {
+            int v = i;
+            pixels[i] = 0xFF000000 | (v << 16) | (v << 8) | v;
+        }
+        LuminanceMeter meter = new LuminanceMeter(1);
+
+        meter.measureArgb(pixels, 10, 10);
+
+        assertEquals(0, meter.getPercentile(0));
+        assertEquals(49, meter.getPercentile(50));
+        assertEquals(89, meter.getPercentile(90));
+        assertEquals(99, meter.getPercentile(100));
+    }
+
+    @Test
+    public void emptyMeasurementReportsNoData() {
+        LuminanceMeter meter = new LuminanceMeter(1);
+
+        assertEquals(-1, meter.measureArgb(new int[0], 0, 0));
+        assertEquals(-1, meter.getPercentile(50));
+    }
+
+    @Test
+    public void reusesArgbBuffer() {
+        LuminanceMeter meter = new LuminanceMeter(1);
+
+        int[] first = meter.argbBuffer(100);
+        assertSame(first, meter.argbBuffer(50));
+        assertNotSame(first, meter.argbBuffer(200));
+    }
+}
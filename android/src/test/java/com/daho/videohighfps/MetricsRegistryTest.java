@@ -0,0 +1,38 @@
+package com.daho.videohighfps;
+
+import static org.junit.Assert.*;
+
+import java.util.Map;
+import org.junit.Test;
+
+public class MetricsRegistryTest {
+
+    @Test
+    public void registrySnapshotsAndResetsInPlace() {
+        MetricsRegistry metrics = new MetricsRegistry();
+        MetricsRegistry.Counter frames = metrics.counter("capture.framesDelivered");
+        frames.add(240);
+        metrics.gauge("startup.timeToPreviewMs").set(412.5);
+        metrics.gauge("recording.gcCount"); // never set
+        metrics.histogram("analysis.latencyUs").record(30_000);
+        metrics.histogram("tts.queueDelayUs"); // empty
+        assertSame(frames, metrics.counter("capture.framesDelivered"));
+
+        Map<String, Object> snapshot = metrics.snapshot();
+        assertEquals(240L, snapshot.get("capture.framesDelivered"));
+        assertEquals(412.5, (Double) snapshot.get("startup.timeToPreviewMs"), 0);
+        assertFalse(snapshot.containsKey("recording.gcCount"));
+        assertFalse(snapshot.containsKey("tts.queueDelayUs"));
+        @SuppressWarnings("unchecked")
+        Map<String, Object> latency = (Map<String, Object>) snapshot.get("analysis.latencyUs");
+        assertEquals(1L, latency.get("count"));
+        assertEquals(30_000L, latency.get("p99"));
+
+        metrics.reset();
+        frames.increment();
+        snapshot = metrics.snapshot();
+        assertEquals(1L, snapshot.get("capture.framesDelivered"));
+        assertFalse(snapshot.containsKey("startup.timeToPreviewMs"));
+        assertFalse(snapshot.containsKey("analysis.latencyUs"));
+    }
+}
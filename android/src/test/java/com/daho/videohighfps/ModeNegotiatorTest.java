@@ -0,0 +1,162 @@
+package com.daho.videohighfps;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+public class ModeNegotiatorTest {
+
+    private final ModeNegotiator negotiator = new ModeNegotiator();
+
+    // ---- Device profiles -------------------------------------------------
+
+    /** Flagship: 1080p and 720p at 120/240 high-speed, 60 fps regular sessions. */
+    private static CameraCapabilities flagship() {
+        return new CameraCapabilities("0", "flagship/1", Arrays.asList(
+            hs(1920, 1080, 30, 120), hs(1920, 1080, 120, 120), hs(1920, 1080, 30, 240), hs(1920, 1080, 240, 240),
+            hs(1280, 720, 30, 240), hs(1280, 720, 240, 240)
+        ), sizes(3840, 2160, 1920, 1080, 1280, 720, 640, 480), ae(15, 30, 30, 30, 60, 60));
+    }
+
+    /** Mid-range: 240 fps only at 720p and 720x480, 1080p tops out at 120. */
+    private static CameraCapabilities midRange() {
+        return new CameraCapabilities("0", "mid/1", Arrays.asList(
+            hs(1920, 1080, 120, 120), hs(1280, 720, 120, 120), hs(1280, 720, 240, 240), hs(720, 480, 240, 240)
+        ), sizes(1920, 1080, 1280, 720, 720, 480), ae(15, 30, 30, 30));
+    }
+
+    /** Budget phone: no high-speed at all, 30 fps only. */
+    private static CameraCapabilities budget() {
+        return new CameraCapabilities("0", "budget/1", new ArrayList<>(), sizes(1920, 1080, 1280, 720, 640, 480), ae(15, 30, 30, 30));
+    }
+
+    private static CameraCapabilities.HighSpeedRange hs(int w, int h, int min, int max) {
+        return new CameraCapabilities.HighSpeedRange(w, h, min, max);
+    }
+
+    private static List<CameraCapabilities.VideoSize> sizes(int... wh) {
+        List<CameraCapabilities.VideoSize> list = new ArrayList<>();
+        for (int i = 0; i < wh.length; i += 2) {
+            list.add(new CameraCapabilities.VideoSize(wh[i], wh[i + 1]));
+        }
+        return list;
+    }
+
+    private static List<int[]> ae(int... ranges) {
+        List<int[]> list = new ArrayList<>();
+        for (int i = 0; i < ranges.length; i += 2) {
+            list.add(new int[] { ranges[i], ranges[i + 1] });
+        }
+        return list;
+    }
+
+    private static ModeNegotiator.Constraints request(int fps, int width, int height) {
+        ModeNegotiator.Constraints constraints = new ModeNegotiator.Constraints();
+        constraints.requestedFps = fps;
+        constraints.preferredWidth = width;
+        constraints.preferredHeight = height;
+        return constraints;
+    }
+
+    private CaptureMode first(ModeNegotiator.Constraints constraints, CameraCapabilities capabilities) {
+        List<ModeNegotiator.Candidate> candidates = negotiator.negotiate(constraints, capabilities);
+        assertFalse("no candidates", candidates.isEmpty());
+        return candidates.get(0).mode;
+    }
+
+    // ---- Tests -----------------------------------------------------------
+
+    @Test
+    public void flagshipGets1080p240FirstTry() {
+        assertEquals(new CaptureMode(1920, 1080, 240, true), first(request(240, 1920, 1080), flagship()));
+    }
+
+    @Test
+    public void midRangePrefersFrameRateOverResolution() {
+        // 720p240 beats 1080p120: slow motion is what was asked for
+        assertEquals(new CaptureMode(1280, 720, 240, true), first(request(240, 1920, 1080), midRange()));
+    }
+
+    @Test
+    public void budgetPhoneFallsBackToStandard30() {
+        assertEquals(new CaptureMode(1920, 1080, 30, false), first(request(240, 1920, 1080), budget()));
+    }
+
+    @Test
+    public void neverExceedsRequestedFpsOrResolution() {
+        // 720p only has a 240 fps high-speed range here, so a regular 60 fps session wins
+        assertEquals(new CaptureMode(1280, 720, 60, false), first(request(120, 1280, 720), flagship()));
+
+        for (ModeNegotiator.Candidate candidate : negotiator.negotiate(request(120, 1280, 720), flagship())) {
+            assertTrue(candidate.mode.fps <= 120);
+            assertTrue(candidate.mode.height <= 720);
+        }
+    }
+
+    @Test
+    public void listIsRankedAndScored() {
+        List<ModeNegotiator.Candidate> candidates = negotiator.negotiate(request(240, 1920, 1080), midRange());
+
+        for (int i = 1; i < candidates.size(); i++) {
+            assertTrue(candidates.get(i - 1).score >= candidates.get(i).score);
+        }
+        assertEquals(new CaptureMode(720, 480, 240, true), candidates.get(1).mode);
+        assertEquals(new CaptureMode(1920, 1080, 120, true), candidates.get(2).mode);
+    }
+
+    @Test
+    public void minFpsRemovesSlowModes() {
+        ModeNegotiator.Constraints constraints = request(240, 1920, 1080);
+        constraints.minFps = 120;
+
+        assertTrue(negotiator.negotiate(constraints, budget()).isEmpty());
+        for (ModeNegotiator.Candidate candidate : negotiator.negotiate(constraints, flagship())) {
+            assertTrue(candidate.mode.fps >= 120);
+        }
+    }
+
+    @Test
+    public void knownFailuresAreSkippedAndKnownGoodPreferred() {
+        CameraCapabilities capabilities = flagship();
+        capabilities.recordOutcome(new CaptureMode(1920, 1080, 240, true), false);
+        capabilities.recordOutcome(new CaptureMode(1280, 720, 240, true), true);
+        // One rejection may have been bad luck: the mode is still tried
+        boolean stillTried = false;
+        for (ModeNegotiator.Candidate candidate : negotiator.negotiate(request(240, 1920, 1080), capabilities)) {
+            stillTried |= candidate.mode.equals(new CaptureMode(1920, 1080, 240, true));
+        }
+        assertTrue(stillTried);
+        capabilities.recordOutcome(new CaptureMode(1920, 1080, 240, true), false);
+
+        // 720p240 (known good) now outranks 1080p120 and the failed 1080p240 is gone
+        List<ModeNegotiator.Candidate> candidates = negotiator.negotiate(request(240, 1920, 1080), capabilities);
+        assertEquals(new CaptureMode(1280, 720, 240, true), candidates.get(0).mode);
+        for (ModeNegotiator.Candidate candidate : candidates) {
+            assertNotEquals(new CaptureMode(1920, 1080, 240, true), candidate.mode);
+        }
+    }
+
+    @Test
+    public void bitrateAndPowerBudgetCapThroughput() {
+        ModeNegotiator.Constraints constraints = request(240, 1920, 1080);
+        constraints.maxBitrate = 20_000_000;
+        assertEquals(new CaptureMode(1280, 720, 240, true), first(constraints, flagship()));
+
+        constraints = request(240, 1920, 1080);
+        constraints.budget = ModeNegotiator.PowerBudget.MINIMAL;
+        assertEquals(new CaptureMode(1280, 720, 60, false), first(constraints, flagship()));
+    }
+
+    @Test
+    public void everyModeAppearsOnce() {
+        List<ModeNegotiator.Candidate> candidates = negotiator.negotiate(request(240, 1920, 1080), flagship());
+        List<CaptureMode> seen = new ArrayList<>();
+        for (ModeNegotiator.Candidate candidate : candidates) {
+            assertFalse(candidate.mode + " listed twice", seen.contains(candidate.mode));
+            seen.add(candidate.mode);
+        }
+    }
+}
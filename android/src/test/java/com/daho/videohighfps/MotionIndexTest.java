@@ -0,0 +1,117 @@
+package com.daho.videohighfps;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import org.junit.Test;
+
+public class MotionIndexTest {
+
+    private static final long ORIGIN_NS = 5_000_000_000L;
+    private static final long FRAME_NS = 62_500_000L; // 16 fps, so every phase is whole frames
+
+    private final VideoClock clock = new VideoClock(ORIGIN_NS);
+    private final MotionIndex index = new MotionIndex(clock);
+    private final PoseFrame pose = new PoseFrame();
+    private float offsetX = 0;
+    private long clockNs = ORIGIN_NS;
+
+    // A 400 px tall body in a 1920x1080 frame, shifted sideways by `offsetX`
+    private PoseFrame body(long timestampNs) {
+        pose.reset(timestampNs, 1920, 1080);
+        for (int i = 0; i < PoseFrame.LANDMARK_COUNT; i++) {
+            pose.set(i, 900 + offsetX + (i % 5) * 10, 300 + i * 12, 0.9f);
+        }
+        return pose;
+    }
+
+    // Frames for `ms`, moving at `speed` body heights per second
+    private void play(long ms, float speed) {
+        long endNs = clockNs + ms * 1_000_000L;
+        for (; clockNs < endNs; clockNs += FRAME_NS) {
+            offsetX += speed * 384 * FRAME_NS / 1e9f; // bounding box height is 32 * 12 px
+            index.add(clockNs, body(clockNs));
+        }
+    }
+
+    @Test
+    public void findsTheBurstOfMotion() {
+        play(2000, 0f);
+        play(1000, 2f);
+        play(2000, 0f);
+        index.finish();
+
+        List<MotionIndex.Interval> intervals = index.getIntervals();
+        assertEquals(1, intervals.size());
+        MotionIndex.Interval burst = intervals.get(0);
+        assertEquals(2000, burst.startMs, 100);
+        assertEquals(3000, burst.endMs, 100);
+        assertEquals(2f, burst.peakMotion, 0.2f);
+        assertTrue(burst.peakMs >= burst.startMs && burst.peakMs <= burst.endMs);
+        assertEquals(5, index.getSecondCount());
+    }
+
+    @Test
+    public void briefTwitchesAreIgnoredAndCloseBurstsMerge() {
+        play(1000, 0f);
+        play(60, 3f); // one frame
+        play(1000, 0f);
+        play(600, 2f);
+        play(130, 0f); // shorter than the merge gap
+        play(600, 2f);
+        play(1000, 0f);
+        index.finish();
+
+        List<MotionIndex.Interval> intervals = index.getIntervals();
+        assertEquals(1, intervals.size());
+        assertEquals(2070, intervals.get(0).startMs, 100);
+        assertEquals(3400, intervals.get(0).endMs, 100);
+        assertEquals(2f, intervals.get(0).peakMotion, 0.2f);
+    }
+
+    @Test
+    public void pausedTimeIsCutFromTheIndex() {
+        play(1000, 0f);
+        clock.pause(clockNs);
+        play(3000, 2f); // not recorded
+        clock.resume(clockNs);
+        play(1000, 2f);
+        play(1000, 0f);
+        index.finish();
+
+        List<MotionIndex.Interval> intervals = index.getIntervals();
+        assertEquals(1, intervals.size());
+        assertEquals(1000, intervals.get(0).startMs, 100); // 4 s of capture time, 1 s of video
+        assertEquals(2000, intervals.get(0).endMs, 100);
+        assertEquals(3000, index.getDurationMs(), 100);
+    }
+
+    @Test
+    public void lostPoseClosesTheInterval() {
+        play(1000, 0f);
+        play(500, 2f);
+        index.add(clockNs, null);
+        clockNs += FRAME_NS;
+        play(1000, 0f);
+        index.finish();
+
+        assertEquals(1, index.getIntervals().size());
+        assertEquals(1500, index.getIntervals().get(0).endMs, 100);
+    }
+
+    @Test
+    public void writesTheSidecarDocument() {
+        play(1000, 0f);
+        play(1000, 2f);
+        index.add(clockNs, null);
+        index.finish();
+
+        String json = index.toJson("VID_\"1\".mp4");
+        assertTrue(json, json.startsWith("{\"version\":1,\"video\":\"VID_\\\"1\\\".mp4\""));
+        assertTrue(json, json.contains("\"intervals\":[{\"startMs\":"));
+        assertTrue(json, json.contains("\"landmarks\":[\"nose\",\"leftShoulder\""));
+        assertTrue(json, json.contains("{\"t\":2,\"frames\":1,\"poses\":0,\"meanMotion\":0.000"));
+        assertTrue(json, json.contains("null,null"));
+        assertTrue(json, json.endsWith("]}]}"));
+    }
+}
@@ -0,0 +1,203 @@
+package com.daho.videohighfps;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class MuxerTimelineTest {
+
+    private static final int KEY = MuxerTimeline.FLAG_KEY_FRAME;
+    private static final long FRAME_US = 1_000_000L / 240;
+
+    /** Records what a MediaMuxer would have been asked to do. */
+    private static final class FakeSink implements MuxerTimeline.Sink<String> {
+        final List<String> tracks = new ArrayList<>();
+        final List<long[]> samples = new ArrayList<>(); // {track, ptsUs, size, flags}
+        boolean started;
+        boolean stopped;
+
+        @Override
+        public int addTrack(String format) {
+            assertFalse("track added after start", started);
+            tracks.add(format);
+            return tracks.size() - 1;
+        }
+
+        @Override
+        public void start() {
+            started = true;
+        }
+
+        @Override
+        public void writeSample(int trackIndex, ByteBuffer data, long presentationTimeUs, int flags) {
+            assertTrue("sample written before start", started);
+            samples.add(new long[] { trackIndex, presentationTimeUs, data.remaining(), flags });
+        }
+
+        @Override
+        public void stop() {
+            stopped = true;
+        }
+
+        List<Long> pts(int track) {
+            List<Long> out = new ArrayList<>();
+            for (long[] s : samples) {
+                if (s[0] == track) {
+                    out.add(s[1]);
+                }
+            }
+            return out;
+        }
+    }
+
+    private static ByteBuffer buffer(int size) {
+        return ByteBuffer.allocate(size);
+    }
+
+    private static void video(MuxerTimeline<String> timeline, long ptsUs, int flags) {
+        timeline.writeSample(MuxerTimeline.Track.VIDEO, buffer(1000), ptsUs, flags);
+    }
+
+    private static void audio(MuxerTimeline<String> timeline, long ptsUs) {
+        timeline.writeSample(MuxerTimeline.Track.AUDIO, buffer(200), ptsUs, 0);
+    }
+
+    @Test
+    public void waitsForAllFormatsAndOpensOnKeyframe() {
+        FakeSink sink = new FakeSink();
+        MuxerTimeline<String> timeline = new MuxerTimeline<>(sink, true, 240);
+
+        timeline.setFormat(MuxerTimeline.Track.VIDEO, "avc");
+        video(timeline, 5_000, 0); // not a keyframe: discarded
+        video(timeline, 10_000, KEY);
+        video(timeline, 10_000 + FRAME_US, 0);
+        assertFalse(sink.started);
+
+        timeline.setFormat(MuxerTimeline.Track.AUDIO, "aac");
+        assertTrue(sink.started);
+        assertEquals(2, sink.samples.size());
+        assertEquals(Long.valueOf(0), sink.pts(0).get(0));
+        assertEquals(1, timeline.getDiscardedSamples());
+    }
+
+    @Test
+    public void audioBeforeFirstVideoKeyframeIsDropped() {
+        FakeSink sink = new FakeSink();
+        MuxerTimeline<String> timeline = new MuxerTimeline<>(sink, true, 240);
+        timeline.setFormat(MuxerTimeline.Track.AUDIO, "aac");
+        timeline.setFormat(MuxerTimeline.Track.VIDEO, "avc");
+
+        audio(timeline, 1_000);
+        audio(timeline, 22_000);
+        audio(timeline, 43_000);
+        video(timeline, 30_000, KEY);
+
+        // Audio (track 0) from before the video start is gone, later audio is rebased to it
+        assertEquals(List.of(13_000L), sink.pts(0));
+        assertEquals(List.of(0L), sink.pts(1));
+        assertEquals(2, timeline.getDiscardedSamples());
+    }
+
+    @Test
+    public void codecConfigAndEmptyBuffersAreNotWritten() {
+        FakeSink sink = new FakeSink();
+        MuxerTimeline<String> timeline = new MuxerTimeline<>(sink, false, 240);
+        timeline.setFormat(MuxerTimeline.Track.VIDEO, "avc");
+
+        video(timeline, 0, MuxerTimeline.FLAG_CODEC_CONFIG);
+        timeline.writeSample(MuxerTimeline.Track.VIDEO, buffer(0), 0, MuxerTimeline.FLAG_END_OF_STREAM);
+        assertTrue(sink.samples.isEmpty());
+    }
+
+    @Test
+    public void countsDroppedFramesFromTimestampGaps() {
+        FakeSink sink = new FakeSink();
+        MuxerTimeline<String> timeline = new MuxerTimeline<>(sink, false, 240);
+        timeline.setFormat(MuxerTimeline.Track.VIDEO, "avc");
+
+        long pts = 0;
+        video(timeline, pts, KEY);
+        for (int i = 0; i < 9; i++) {
+            pts += FRAME_US;
+            video(timeline, pts, 0);
+        }
+        pts += 4 * FRAME_US; // three frames missing
+        video(timeline, pts, 0);
+
+        assertEquals(11, timeline.getVideoFrames());
+        assertEquals(3, timeline.getDroppedFrames());
+        assertEquals(1, timeline.getKeyFrames());
+    }
+
+    @Test
+    public void pausedSpanIsCutFromTimeline() {
+        FakeSink sink = new FakeSink();
+        MuxerTimeline<String> timeline = new MuxerTimeline<>(sink, false, 100);
+        timeline.setFormat(MuxerTimeline.Track.VIDEO, "avc");
+
+        video(timeline, 0, KEY);
+        video(timeline, 10_000, 0);
+        timeline.pause(15_000);
+        video(timeline, 20_000, 0); // while paused: cut
+        timeline.resume(1_015_000);
+        video(timeline, 12_000, 0); // late frame from before the pause keeps its time
+        video(timeline, 1_020_000, 0);
+
+        assertEquals(List.of(0L, 10_000L, 12_000L, 20_000L), sink.pts(0));
+        assertEquals(0, timeline.getDroppedFrames());
+    }
+
+    @Test
+    public void audioTimestampsStayStrictlyIncreasing() {
+        FakeSink sink = new FakeSink();
+        MuxerTimeline<String> timeline = new MuxerTimeline<>(sink, true, 240);
+        timeline.setFormat(MuxerTimeline.Track.VIDEO, "avc");
+        timeline.setFormat(MuxerTimeline.Track.AUDIO, "aac");
+        video(timeline, 0, KEY);
+
+        audio(timeline, 1_000);
+        audio(timeline, 1_000);
+        audio(timeline, 900);
+
+        assertEquals(List.of(1_000L, 1_001L, 1_002L), sink.pts(1));
+    }
+
+    @Test
+    public void sizeLimitStopsAcceptingSamples() {
+        FakeSink sink = new FakeSink();
+        MuxerTimeline<String> timeline = new MuxerTimeline<>(sink, false, 240);
+        timeline.setFormat(MuxerTimeline.Track.VIDEO, "avc");
+        timeline.setMaxBytes(2_500);
+
+        video(timeline, 0, KEY);
+        video(timeline, FRAME_US, 0);
+        video(timeline, 2 * FRAME_US, 0);
+        assertTrue(timeline.isFull());
+        video(timeline, 3 * FRAME_US, 0);
+
+        assertEquals(3, sink.samples.size());
+        assertEquals(3_000, timeline.getBytesWritten());
+    }
+
+    @Test
+    public void finishStopsSinkOnlyIfStarted() {
+        FakeSink idle = new FakeSink();
+        MuxerTimeline<String> unused = new MuxerTimeline<>(idle, true, 240);
+        unused.setFormat(MuxerTimeline.Track.VIDEO, "avc");
+        assertFalse(unused.finish());
+        assertFalse(idle.stopped);
+
+        FakeSink sink = new FakeSink();
+        MuxerTimeline<String> timeline = new MuxerTimeline<>(sink, false, 240);
+        timeline.setFormat(MuxerTimeline.Track.VIDEO, "avc");
+        video(timeline, 0, KEY);
+        assertTrue(timeline.finish());
+        assertTrue(sink.stopped);
+
+        video(timeline, FRAME_US, 0);
+        assertEquals(1, sink.samples.size());
+    }
+}
@@ -0,0 +1,91 @@
+package com.daho.videohighfps;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+
+public class PcmClipTest {
+
+    // RIFF header, fmt chunk, optional extra chunk, then the data chunk
+    private static byte[] wav(int sampleRate, int channels, short[] interleaved, int dataSize, boolean extraChunk) {
+        int extra = extraChunk ? 8 + 5 + 1 : 0; // odd-sized chunk plus its pad byte
+        ByteBuffer out = ByteBuffer.allocate(12 + 24 + extra + 8 + interleaved.length * 2)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        out.put("RIFF".getBytes(StandardCharsets.US_ASCII)).putInt(out.capacity() - 8);
+        out.put("WAVE".getBytes(StandardCharsets.US_ASCII));
+        out.put("fmt ".getBytes(StandardCharsets.US_ASCII)).putInt(16);
+        out.putShort((short) 1).putShort((short) channels).putInt(sampleRate)
+                .putInt(sampleRate * channels * 2).putShort((short) (channels * 2)).putShort((short) 16);
+        if (extraChunk) {
+            out.put("LIST".getBytes(StandardCharsets.US_ASCII)).putInt(5).put(new byte[6]);
+        }
+        out.put("data".getBytes(StandardCharsets.US_ASCII)).putInt(dataSize);
+        for (short s : interleaved) {
+            out.putShort(s);
+        }
+        return out.array();
+    }
+
+    @Test
+    public void decodesMonoPcm() throws IOException {
+        short[] samples = { 0, 1000, -1000, Short.MAX_VALUE, Short.MIN_VALUE };
+        PcmClip clip = PcmClip.decodeWav(wav(22050, 1, samples, samples.length * 2, false));
+        assertEquals(22050, clip.sampleRate);
+        assertArrayEquals(samples, clip.samples);
+    }
+
+    @Test
+    public void mixesStereoDown() throws IOException {
+        short[] stereo = { 100, 300, -200, -400, 1000, -1000 };
+        PcmClip clip = PcmClip.decodeWav(wav(24000, 2, stereo, stereo.length * 2, false));
+        assertArrayEquals(new short[] { 200, -300, 0 }, clip.samples);
+    }
+
+    @Test
+    public void skipsUnknownChunksWithPadding() throws IOException {
+        short[] samples = { 1, 2, 3 };
+        PcmClip clip = PcmClip.decodeWav(wav(16000, 1, samples, samples.length * 2, true));
+        assertArrayEquals(samples, clip.samples);
+    }
+
+    @Test
+    public void streamedFileWithoutDataSizeRunsToTheEnd() throws IOException {
+        short[] samples = new short[24000];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (short) (i % 100);
+        }
+        for (int unknownSize : new int[] { 0, -1 }) {
+            PcmClip clip = PcmClip.decodeWav(wav(24000, 1, samples, unknownSize, false));
+            assertEquals(samples.length, clip.samples.length);
+            assertEquals(1000, clip.getDurationMs());
+        }
+    }
+
+    @Test
+    public void rejectsOtherFiles() {
+        byte[] notWav = "RIFF....AVI LIST".getBytes(StandardCharsets.US_ASCII);
+        try {
+            PcmClip.decodeWav(notWav);
+            fail();
+        } catch (IOException expected) {
+        }
+        byte[] eightBit = wav(8000, 1, new short[4], 8, false);
+        eightBit[12 + 8 + 14] = 8;
+        try {
+            PcmClip.decodeWav(eightBit);
+            fail();
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void fileNamesAreStablePerPhrase() {
+        assertEquals(PcmClip.fileNameFor("Too dark"), PcmClip.fileNameFor("Too dark"));
+        assertNotEquals(PcmClip.fileNameFor("Too dark"), PcmClip.fileNameFor("Too dark."));
+        assertTrue(PcmClip.fileNameFor("You're good to go").matches("[0-9a-f-]+\\.wav"));
+    }
+}
@@ -0,0 +1,165 @@
+package com.daho.videohighfps;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import org.junit.Test;
+
+public class PoseGeometryTest {
+
+    private static final float EPS = 1e-4f;
+
+    private static PoseFrame frame() {
+        PoseFrame pose = new PoseFrame();
+        pose.reset(1_000L, 640, 480);
+        return pose;
+    }
+
+    @Test
+    public void newFrameHasNoLandmarks() {
+        PoseFrame pose = frame();
+        assertTrue(pose.isEmpty());
+        assertFalse(pose.has(PoseFrame.NOSE, 0f));
+        assertTrue(Float.isNaN(pose.x(PoseFrame.NOSE)));
+        assertFalse(PoseGeometry.boundingBox(pose, 0f, new float[4]));
+    }
+
+    @Test
+    public void boundingBoxHandlesCoordinatesBelowMinValue() {
+        // Float.MIN_VALUE as the initial max would make a pose at x,y <= 0 report a positive max
+        PoseFrame pose = frame();
+        pose.set(PoseFrame.LEFT_SHOULDER, -20f, -10f, 0.9f);
+        pose.set(PoseFrame.RIGHT_SHOULDER, -5f, 0f, 0.9f);
+
+        float[] box = new float[4];
+        assertTrue(PoseGeometry.boundingBox(pose, 0f, box));
+        assertEquals(-20f, box[PoseGeometry.MIN_X], EPS);
+        assertEquals(-10f, box[PoseGeometry.MIN_Y], EPS);
+        assertEquals(-5f, box[PoseGeometry.MAX_X], EPS);
+        assertEquals(0f, box[PoseGeometry.MAX_Y], EPS);
+    }
+
+    @Test
+    public void lowLikelihoodLandmarksAreIgnored() {
+        PoseFrame pose = frame();
+        pose.set(PoseFrame.NOSE, 100f, 100f, 0.9f);
+        pose.set(PoseFrame.LEFT_ANKLE, 600f, 470f, 0.1f);
+
+        float[] box = new float[4];
+        assertTrue(PoseGeometry.boundingBox(pose, 0.5f, box));
+        assertEquals(100f, box[PoseGeometry.MAX_X], EPS);
+
+        float[] centroid = new float[2];
+        assertTrue(PoseGeometry.centroid(pose, 0f, centroid));
+        assertEquals(350f, centroid[0], EPS);
+        assertEquals(285f, centroid[1], EPS);
+    }
+
+    @Test
+    public void distanceAndRightAngle() {
+        PoseFrame pose = frame();
+        pose.set(PoseFrame.LEFT_SHOULDER, 0f, 0f, 1f);
+        pose.set(PoseFrame.LEFT_ELBOW, 30f, 0f, 1f);
+        pose.set(PoseFrame.LEFT_WRIST, 30f, 40f, 1f);
+
+        assertEquals(30f, PoseGeometry.distance(pose, PoseFrame.LEFT_SHOULDER, PoseFrame.LEFT_ELBOW, 0f), EPS);
+        assertEquals(50f, PoseGeometry.distance(pose, PoseFrame.LEFT_SHOULDER, PoseFrame.LEFT_WRIST, 0f), EPS);
+        assertEquals(90f, PoseGeometry.angle(pose, PoseFrame.LEFT_SHOULDER, PoseFrame.LEFT_ELBOW,
+                PoseFrame.LEFT_WRIST, 0f), EPS);
+    }
+
+    @Test
+    public void straightLimbIs180Degrees() {
+        PoseFrame pose = frame();
+        pose.set(PoseFrame.RIGHT_HIP, 0f, 0f, 1f);
+        pose.set(PoseFrame.RIGHT_KNEE, 0f, 50f, 1f);
+        pose.set(PoseFrame.RIGHT_ANKLE, 0f, 100f, 1f);
+
+        assertEquals(180f, PoseGeometry.angle(pose, PoseFrame.RIGHT_HIP, PoseFrame.RIGHT_KNEE,
+                PoseFrame.RIGHT_ANKLE, 0f), EPS);
+    }
+
+    @Test
+    public void missingLandmarksGiveNaN() {
+        PoseFrame pose = frame();
+        pose.set(PoseFrame.LEFT_SHOULDER, 0f, 0f, 1f);
+
+        float[] limbs = new float[PoseGeometry.LIMBS.length];
+        PoseGeometry.limbLengths(pose, 0f, limbs);
+        for (float limb : limbs) {
+            assertTrue(Float.isNaN(limb));
+        }
+
+        float[] joints = new float[PoseGeometry.JOINTS.length];
+        PoseGeometry.jointAngles(pose, 0f, joints);
+        assertTrue(Float.isNaN(joints[0]));
+    }
+
+    @Test
+    public void poolReusesSlotsInRingOrder() {
+        PoseFrame.Pool pool = new PoseFrame.Pool(2);
+        PoseFrame a = pool.acquire(1, 640, 480);
+        a.set(PoseFrame.NOSE, 1f, 2f, 1f);
+        PoseFrame b = pool.acquire(2, 640, 480);
+        PoseFrame c = pool.acquire(3, 320, 240);
+
+        assertNotSame(a, b);
+        assertSame(a, c);
+        assertTrue(c.isEmpty()); // acquire clears the old landmarks
+        assertEquals(3, c.getTimestampNs());
+        assertEquals(320, c.getFrameWidth());
+    }
+
+    @Test
+    public void copyFromKeepsPosePastItsSlot() {
+        PoseFrame.Pool pool = new PoseFrame.Pool(1);
+        PoseFrame pooled = pool.acquire(5, 640, 480);
+        pooled.set(PoseFrame.NOSE, 10f, 20f, 0.8f);
+
+        PoseFrame kept = new PoseFrame();
+        kept.copyFrom(pooled);
+        pool.acquire(6, 640, 480);
+
+        assertEquals(1, kept.getLandmarkCount());
+        assertEquals(10f, kept.x(PoseFrame.NOSE), EPS);
+        assertEquals(0.8f, kept.likelihood(PoseFrame.NOSE), EPS);
+        assertEquals(5, kept.getTimestampNs());
+    }
+
+    @Test
+    public void kernelDoesNotAllocate() {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+            return; // no allocation counter on this VM
+        }
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+
+        PoseFrame.Pool pool = new PoseFrame.Pool(4);
+        float[] box = new float[4];
+        float[] limbs = new float[PoseGeometry.LIMBS.length];
+        float[] joints = new float[PoseGeometry.JOINTS.length];
+        Runnable frame = () -> {
+            PoseFrame pose = pool.acquire(0, 640, 480);
+            for (int i = 0; i < PoseFrame.LANDMARK_COUNT; i++) {
+                pose.set(i, i * 10f, i * 5f, 0.9f);
+            }
+            PoseGeometry.boundingBox(pose, 0.5f, box);
+            PoseGeometry.centroid(pose, 0.5f, box);
+            PoseGeometry.limbLengths(pose, 0.5f, limbs);
+            PoseGeometry.jointAngles(pose, 0.5f, joints);
+        };
+
+        for (int i = 0; i < 10_000; i++) {
+            frame.run(); // warm up
+        }
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < 10_000; i++) {
+            frame.run();
+        }
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+        // A single boxed value per frame would already be ~160 KB here
+        assertTrue("allocated " + allocated + " bytes", allocated < 16 * 1024);
+    }
+}
@@ -0,0 +1,195 @@
+package com.daho.videohighfps;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PoseServiceTest {
+
+    /** Completes inference only when the test says so; the "pose" is the frame number times 10. */
+    private static final class FakeDetector implements PoseService.Detector<Integer, Integer> {
+        final List<Integer> frames = new ArrayList<>();
+        final List<PoseService.Callback<Integer>> callbacks = new ArrayList<>();
+        boolean closed;
+
+        @Override
+        public void detect(Integer frame, PoseService.Callback<Integer> callback) {
+            frames.add(frame);
+            callbacks.add(callback);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        void completeLast() {
+            callbacks.get(callbacks.size() - 1).onPose(frames.get(frames.size() - 1) * 10);
+        }
+    }
+
+    private FakeDetector detector;
+    private List<Integer> released;
+    private long now;
+
+    private PoseService<Integer, Integer> service(double targetFps) {
+        return new PoseService<>(detector, released::add, () -> now, targetFps);
+    }
+
+    private static void submit(PoseService<Integer, Integer> service, int frame) {
+        service.submit(frame, 320, 240, frame * 1_000_000L);
+    }
+
+    @Before
+    public void setUp() {
+        detector = new FakeDetector();
+        released = new ArrayList<>();
+        now = 0;
+    }
+
+    @Test
+    public void noSubscribersMeansNoInference() {
+        PoseService<Integer, Integer> service = service(0);
+        submit(service, 1);
+        submit(service, 2);
+
+        assertTrue(detector.frames.isEmpty());
+        assertEquals(List.of(1, 2), released);
+        assertEquals(2, service.getSkippedCount());
+    }
+
+    @Test
+    public void oneInferenceFansOutToEverySubscriber() {
+        PoseService<Integer, Integer> service = service(0);
+        List<Integer> validation = new ArrayList<>();
+        List<Integer> overlay = new ArrayList<>();
+        List<Integer> metrics = new ArrayList<>();
+        service.subscribe(r -> validation.add(r.pose));
+        service.subscribe(r -> overlay.add(r.pose));
+        service.subscribe(r -> metrics.add(r.pose));
+
+        submit(service, 1);
+        detector.completeLast();
+
+        assertEquals(1, detector.frames.size());
+        assertEquals(List.of(10), validation);
+        assertEquals(List.of(10), overlay);
+        assertEquals(List.of(10), metrics);
+        assertEquals(List.of(1), released);
+    }
+
+    @Test
+    public void oneShotRequestGetsOnlyTheNextResult() {
+        PoseService<Integer, Integer> service = service(0);
+        List<Integer> received = new ArrayList<>();
+        PoseService.Subscriber<Integer> once = r -> received.add(r.pose);
+
+        service.requestNext(once);
+        service.requestNext(once); // asking twice is still one result
+        submit(service, 1);
+        detector.completeLast();
+        assertFalse(service.hasSubscribers());
+
+        submit(service, 2);
+        assertEquals(List.of(10), received);
+        assertEquals(1, detector.frames.size());
+    }
+
+    @Test
+    public void busyDetectorKeepsOnlyNewestFrame() {
+        PoseService<Integer, Integer> service = service(0);
+        service.subscribe(r -> { });
+
+        submit(service, 1);
+        submit(service, 2);
+        submit(service, 3);
+        assertEquals(List.of(1), detector.frames);
+        assertEquals(List.of(2), released);
+
+        detector.completeLast();
+        assertEquals(List.of(1, 3), detector.frames);
+        assertEquals(1, service.getDroppedCount());
+    }
+
+    @Test
+    public void resultCarriesFrameGeometryAndSequence() {
+        PoseService<Integer, Integer> service = service(0);
+        service.subscribe(r -> { });
+
+        submit(service, 4);
+        detector.completeLast();
+        submit(service, 5);
+        detector.completeLast();
+
+        PoseService.Result<Integer> latest = service.getLatest();
+        assertEquals(Integer.valueOf(50), latest.pose);
+        assertEquals(320, latest.frameWidth);
+        assertEquals(240, latest.frameHeight);
+        assertEquals(5_000_000L, latest.timestampNs);
+        assertEquals(2, latest.sequence);
+    }
+
+    @Test
+    public void failingSubscriberDoesNotStopOthers() {
+        PoseService<Integer, Integer> service = service(0);
+        List<Integer> received = new ArrayList<>();
+        service.subscribe(r -> {
+            throw new IllegalStateException("boom");
+        });
+        service.subscribe(r -> received.add(r.pose));
+
+        submit(service, 1);
+        detector.completeLast();
+
+        assertEquals(List.of(10), received);
+        assertEquals(1, service.getSubscriberErrorCount());
+        assertEquals(List.of(1), released);
+    }
+
+    @Test
+    public void detectorFailureReleasesFrameAndPublishesNothing() {
+        PoseService<Integer, Integer> service = service(0);
+        List<Integer> received = new ArrayList<>();
+        service.subscribe(r -> received.add(r.pose));
+
+        submit(service, 1);
+        detector.callbacks.get(0).onFailure(new RuntimeException("model error"));
+
+        assertTrue(received.isEmpty());
+        assertNull(service.getLatest());
+        assertEquals(1, service.getFailureCount());
+        assertEquals(List.of(1), released);
+    }
+
+    @Test
+    public void targetFpsThrottlesInference() {
+        PoseService<Integer, Integer> service = service(10);
+        service.subscribe(r -> { });
+
+        submit(service, 1);
+        detector.completeLast();
+        now = 50_000_000L;
+        submit(service, 2); // 50 ms after the last dispatch: waits
+        assertEquals(1, detector.frames.size());
+    }
+
+    @Test
+    public void closeClosesDetectorAndReleasesLateFrames() {
+        PoseService<Integer, Integer> service = service(0);
+        List<Integer> received = new ArrayList<>();
+        service.subscribe(r -> received.add(r.pose));
+
+        submit(service, 1);
+        service.close();
+        assertTrue(detector.closed);
+        assertFalse(service.hasSubscribers());
+
+        detector.completeLast(); // in-flight result after close
+        submit(service, 2);
+        assertTrue(received.isEmpty());
+        assertEquals(List.of(1, 2), released);
+    }
+}
@@ -0,0 +1,161 @@
+package com.daho.videohighfps;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class PoseStabilizerTest {
+
+    private static final long FRAME_NS = 66_666_667L; // 15 fps analysis
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+
+    private final List<PoseStabilizer.State> transitions = new ArrayList<>();
+    private final PoseStabilizer stabilizer = new PoseStabilizer(8, 500, (state, s) -> transitions.add(state));
+    private final Random random = new Random(42);
+    private final PoseFrame pose = new PoseFrame();
+    private long t = 0;
+
+    // A 300 px tall standing figure shifted by dx, with +-jitter px of detector noise
+    private PoseFrame person(float dx, float jitter) {
+        t += FRAME_NS;
+        pose.reset(t, WIDTH, HEIGHT);
+        for (int i = 0; i < PoseFrame.LANDMARK_COUNT; i++) {
+            float x = 280 + (i % 5) * 20 + dx + (random.nextFloat() * 2 - 1) * jitter;
+            float y = 90 + i * 300f / (PoseFrame.LANDMARK_COUNT - 1) + (random.nextFloat() * 2 - 1) * jitter;
+            pose.set(i, x, y, 0.9f);
+        }
+        return pose;
+    }
+
+    private PoseFrame nobody() {
+        t += FRAME_NS;
+        pose.reset(t, WIDTH, HEIGHT);
+        return pose;
+    }
+
+    private void still(int frames) {
+        for (int i = 0; i < frames; i++) {
+            stabilizer.update(person(0, 2f));
+        }
+    }
+
+    @Test
+    public void stillAthleteBecomesStableAfterHold() {
+        still(5);
+        assertNotEquals(PoseStabilizer.State.STABLE, stabilizer.getState());
+
+        still(20);
+        assertEquals(PoseStabilizer.State.STABLE, stabilizer.getState());
+        assertTrue(stabilizer.getStableForMs() >= 500);
+        assertTrue(stabilizer.getMotion() < PoseStabilizer.STILL_THRESHOLD);
+        assertTrue(transitions.contains(PoseStabilizer.State.SETTLING));
+    }
+
+    @Test
+    public void stableTimeGrowsWhileStill() {
+        still(20);
+        long before = stabilizer.getStableForMs();
+        still(15);
+        assertEquals(before + 1000, stabilizer.getStableForMs(), 1);
+    }
+
+    @Test
+    public void singleJitteryFrameDoesNotBreakStability() {
+        still(25);
+        assertEquals(PoseStabilizer.State.STABLE, stabilizer.getState());
+
+        stabilizer.update(person(0, 15f)); // one noisy detection
+        still(1);
+        assertEquals(PoseStabilizer.State.STABLE, stabilizer.getState());
+    }
+
+    @Test
+    public void walkingAthleteIsMoving() {
+        still(25);
+        float dx = 0;
+        for (int i = 0; i < 10; i++) {
+            dx += 20; // ~1 body height per second
+            stabilizer.update(person(dx, 2f));
+        }
+        assertEquals(PoseStabilizer.State.MOVING, stabilizer.getState());
+        assertEquals(0, stabilizer.getStableForMs());
+        assertTrue(stabilizer.getMotion() > PoseStabilizer.MOVING_THRESHOLD);
+    }
+
+    @Test
+    public void stoppingAgainRestartsTheHold() {
+        still(25);
+        float dx = 0;
+        for (int i = 0; i < 10; i++) {
+            dx += 20;
+            stabilizer.update(person(dx, 2f));
+        }
+        transitions.clear();
+        for (int i = 0; i < 30; i++) {
+            stabilizer.update(person(dx, 2f));
+        }
+        assertEquals(PoseStabilizer.State.SETTLING, transitions.get(0));
+        assertEquals(PoseStabilizer.State.STABLE, stabilizer.getState());
+    }
+
+    @Test
+    public void smoothingReducesJitter() {
+        still(30);
+        float rawSpread = 0, smoothSpread = 0;
+        float lastRaw = Float.NaN, lastSmooth = Float.NaN;
+        for (int i = 0; i < 30; i++) {
+            PoseFrame raw = person(0, 4f);
+            float rawX = raw.x(PoseFrame.NOSE);
+            stabilizer.update(raw);
+            float smoothX = stabilizer.getSmoothed().x(PoseFrame.NOSE);
+            if (i > 0) {
+                rawSpread += Math.abs(rawX - lastRaw);
+                smoothSpread += Math.abs(smoothX - lastSmooth);
+            }
+            lastRaw = rawX;
+            lastSmooth = smoothX;
+        }
+        assertTrue("smoothed " + smoothSpread + " vs raw " + rawSpread, smoothSpread < rawSpread / 2);
+    }
+
+    @Test
+    public void losingThePoseResetsStability() {
+        still(25);
+        stabilizer.update(nobody());
+        assertEquals(PoseStabilizer.State.NO_POSE, stabilizer.getState());
+        assertEquals(0, stabilizer.getStableForMs());
+        assertNull(stabilizer.getSmoothed());
+
+        still(3);
+        assertNotEquals(PoseStabilizer.State.STABLE, stabilizer.getState());
+    }
+
+    @Test
+    public void smoothedRingKeepsRecentFrames() {
+        still(12);
+        assertNotNull(stabilizer.getSmoothed(7));
+        assertNull(stabilizer.getSmoothed(8));
+        assertEquals(t, stabilizer.getSmoothed(0).getTimestampNs());
+        assertEquals(t - 7 * FRAME_NS, stabilizer.getSmoothed(7).getTimestampNs());
+    }
+
+    @Test
+    public void duplicateTimestampsAreIgnored() {
+        still(25);
+        long stableFor = stabilizer.getStableForMs();
+        t -= FRAME_NS; // same timestamp again
+        stabilizer.update(person(100, 0f));
+        assertEquals(PoseStabilizer.State.STABLE, stabilizer.getState());
+        assertEquals(stableFor, stabilizer.getStableForMs());
+    }
+
+    @Test
+    public void listenerSeesEachChangeOnce() {
+        still(40);
+        assertEquals(transitions.size(), transitions.stream().distinct().count());
+    }
+}
@@ -0,0 +1,180 @@
+package com.daho.videohighfps;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class PreRollRingTest {
+
+    private static final int KEY = MuxerTimeline.FLAG_KEY_FRAME;
+    private static final long FRAME_US = 1_000_000L / 240;
+    private static final long AUDIO_US = 1024 * 1_000_000L / 44100;
+
+    private static final class Drained {
+        final List<MuxerTimeline.Track> tracks = new ArrayList<>();
+        final List<Long> pts = new ArrayList<>();
+        final List<Integer> flags = new ArrayList<>();
+        final List<byte[]> data = new ArrayList<>();
+    }
+
+    // Sample bytes identify the sample, so corruption after wrapping shows up
+    private static ByteBuffer sample(long id, int size) {
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        for (int i = 0; i < size; i++) {
+            buffer.put((byte) (id * 31 + i));
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static Drained drain(PreRollRing ring) {
+        Drained out = new Drained();
+        ring.drainTo((track, data, ptsUs, flags) -> {
+            byte[] copy = new byte[data.remaining()];
+            data.get(copy);
+            out.tracks.add(track);
+            out.pts.add(ptsUs);
+            out.flags.add(flags);
+            out.data.add(copy);
+        });
+        return out;
+    }
+
+    // 240 fps video with a keyframe every `gop` frames and AAC audio interleaved
+    private static void feed(PreRollRing ring, int frames, int gop, int frameBytes) {
+        long nextAudioUs = 0;
+        for (int f = 0; f < frames; f++) {
+            long ptsUs = f * FRAME_US;
+            while (nextAudioUs <= ptsUs) {
+                assertTrue(ring.add(MuxerTimeline.Track.AUDIO, sample(-nextAudioUs, 300), nextAudioUs, 0));
+                nextAudioUs += AUDIO_US;
+            }
+            int size = f % gop == 0 ? frameBytes * 4 : frameBytes;
+            assertTrue(ring.add(MuxerTimeline.Track.VIDEO, sample(f, size), ptsUs, f % gop == 0 ? KEY : 0));
+        }
+    }
+
+    @Test
+    public void keepsAtLeastTheWindowAndOpensOnAKeyframe() {
+        PreRollRing ring = new PreRollRing(16 << 20, 2_000_000L, PreRollRing.samplesFor(4, 240));
+        feed(ring, 240 * 10, 240, 2000);
+
+        PreRollRing.Stats stats = ring.snapshot();
+        assertTrue("span " + stats.spanUs, stats.spanUs >= 2_000_000L - FRAME_US);
+        assertTrue("span " + stats.spanUs, stats.spanUs < 3_000_000L);
+
+        Drained out = drain(ring);
+        int firstVideo = out.tracks.indexOf(MuxerTimeline.Track.VIDEO);
+        assertEquals(KEY, (int) out.flags.get(firstVideo));
+        assertEquals(7 * 1_000_000L, out.pts.get(firstVideo) / FRAME_US * FRAME_US, FRAME_US);
+        assertEquals(0, ring.getSampleCount());
+        assertEquals(0, ring.getUsedBytes());
+    }
+
+    @Test
+    public void samplesSurviveWrappingIntact() {
+        PreRollRing ring = new PreRollRing(300_000, 0, 4096);
+        feed(ring, 240 * 5, 60, 1500);
+
+        Drained out = drain(ring);
+        long previous = -1;
+        for (int i = 0; i < out.tracks.size(); i++) {
+            if (out.tracks.get(i) != MuxerTimeline.Track.VIDEO) {
+                continue;
+            }
+            long frame = out.pts.get(i) / FRAME_US;
+            assertTrue(frame > previous);
+            previous = frame;
+            assertArrayEquals(sample(frame, out.data.get(i).length).array(), out.data.get(i));
+        }
+        assertEquals(240 * 5 - 1, previous); // the newest frame is always kept
+    }
+
+    @Test
+    public void byteLimitEvictsWholeGops() {
+        PreRollRing ring = new PreRollRing(200_000, 0, 4096);
+        feed(ring, 240 * 3, 48, 1000);
+        assertTrue(ring.getUsedBytes() <= ring.getCapacityBytes());
+
+        Drained out = drain(ring);
+        int firstVideo = out.tracks.indexOf(MuxerTimeline.Track.VIDEO);
+        assertEquals(KEY, (int) out.flags.get(firstVideo));
+        assertEquals(0, out.pts.get(firstVideo) / FRAME_US % 48);
+        assertEquals(0, firstVideo); // audio from before the keyframe left with its GOP
+    }
+
+    @Test
+    public void slotLimitEvictsToo() {
+        PreRollRing ring = new PreRollRing(1 << 20, 0, 200);
+        feed(ring, 240 * 2, 24, 100);
+        assertTrue(ring.getSampleCount() <= 200);
+        Drained out = drain(ring);
+        int firstVideo = out.tracks.indexOf(MuxerTimeline.Track.VIDEO);
+        assertEquals(KEY, (int) out.flags.get(firstVideo));
+    }
+
+    @Test
+    public void drainReportsWhatWasHeld() {
+        PreRollRing ring = new PreRollRing(1 << 20, 1_000_000L, 2000);
+        feed(ring, 240 * 3, 120, 500);
+        long used = ring.getUsedBytes();
+        int count = ring.getSampleCount();
+
+        PreRollRing.Stats stats = ring.drainTo((track, data, ptsUs, flags) -> {
+        });
+        assertEquals(1 << 20, stats.capacityBytes);
+        assertEquals(used, stats.bytes);
+        assertEquals(count, stats.samples);
+        assertTrue(stats.evictedSamples > 0);
+        assertTrue(stats.spanUs >= 1_000_000L - FRAME_US);
+    }
+
+    @Test
+    public void oversizedSampleIsRejected() {
+        PreRollRing ring = new PreRollRing(1000, 0, 16);
+        assertFalse(ring.add(MuxerTimeline.Track.VIDEO, sample(0, 1001), 0, KEY));
+        assertTrue(ring.add(MuxerTimeline.Track.VIDEO, sample(1, 1000), FRAME_US, KEY));
+        assertTrue(ring.add(MuxerTimeline.Track.VIDEO, sample(2, 600), 2 * FRAME_US, KEY));
+        assertEquals(1, ring.getSampleCount());
+        assertEquals(600, ring.getUsedBytes());
+    }
+
+    @Test
+    public void drainedRingFeedsTheTimelineFromPreRollStart() {
+        List<Long> written = new ArrayList<>();
+        MuxerTimeline<String> timeline = new MuxerTimeline<>(new MuxerTimeline.Sink<String>() {
+            @Override
+            public int addTrack(String format) {
+                return 0;
+            }
+
+            @Override
+            public void start() {
+            }
+
+            @Override
+            public void writeSample(int trackIndex, ByteBuffer data, long presentationTimeUs, int flags) {
+                written.add(presentationTimeUs);
+            }
+
+            @Override
+            public void stop() {
+            }
+        }, false, 240);
+        timeline.setFormat(MuxerTimeline.Track.VIDEO, "video");
+
+        PreRollRing ring = new PreRollRing(1 << 20, 500_000L, 1000);
+        for (int f = 0; f < 480; f++) {
+            ring.add(MuxerTimeline.Track.VIDEO, sample(f, 200), 10_000_000L + f * FRAME_US, f % 60 == 0 ? KEY : 0);
+        }
+        ring.drainTo((track, data, ptsUs, flags) -> timeline.writeSample(track, data, ptsUs, flags));
+        timeline.writeSample(MuxerTimeline.Track.VIDEO, sample(480, 200), 10_000_000L + 480 * FRAME_US, 0);
+
+        assertEquals(0L, (long) written.get(0));
+        assertEquals(0, timeline.getDroppedFrames());
+        assertTrue(written.size() > 120); // at least half a second from before the start
+    }
+}
@@ -0,0 +1,144 @@
+package com.daho.videohighfps;
+
+import static org.junit.Assert.*;
+
+import com.daho.videohighfps.ReadinessMachine.State;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+public class ReadinessMachineTest {
+
+    private static final long MS = 1_000_000L;
+
+    private long now = 0;
+    private final List<State> states = new ArrayList<>();
+    private final List<String> log = new ArrayList<>();
+    private final ReadinessMachine machine = new ReadinessMachine(() -> now, (previous, state, reason, previousMs) -> {
+        states.add(state);
+        log.add(previous + ">" + state + ":" + reason.key + ":" + previousMs);
+    });
+
+    // Scripted pose stream: "." no pose, "f" framed but moving, "s" framed and still
+    private void poses(String script) {
+        for (char c : script.toCharArray()) {
+            now += 66 * MS;
+            machine.onPose(c != '.', c == 's');
+        }
+    }
+
+    @Test
+    public void walksThroughEveryCheckInOrder() {
+        machine.start();
+        machine.onLighting(true);
+        poses("..ffss");
+
+        assertEquals(Arrays.asList(State.LIGHTING, State.FRAMING, State.STABLE, State.READY), states);
+        assertTrue(machine.isReady());
+    }
+
+    @Test
+    public void posesWaitForLighting() {
+        machine.start();
+        poses("sss");
+        assertEquals(State.LIGHTING, machine.getState());
+
+        machine.onLighting(false);
+        assertEquals(State.LIGHTING, machine.getState());
+
+        machine.onLighting(true);
+        assertEquals(State.READY, machine.getState()); // already framed and still
+        assertEquals(Arrays.asList(State.LIGHTING, State.READY), states);
+    }
+
+    @Test
+    public void losingAFactFallsBackToThatCheck() {
+        machine.start();
+        machine.onLighting(true);
+        poses("s");
+        assertEquals(State.READY, machine.getState());
+
+        poses("f");
+        assertEquals(State.STABLE, machine.getState());
+        poses(".");
+        assertEquals(State.FRAMING, machine.getState());
+        poses("s");
+        machine.onLighting(false);
+        assertEquals(State.LIGHTING, machine.getState());
+    }
+
+    @Test
+    public void stillWithoutFramingIsNotReady() {
+        machine.start();
+        machine.onLighting(true);
+        machine.onPose(false, true);
+        assertEquals(State.FRAMING, machine.getState());
+    }
+
+    @Test
+    public void recordingIgnoresPoseAndLighting() {
+        machine.start();
+        machine.onLighting(true);
+        poses("s");
+        machine.onRecordingStarted();
+
+        poses("..f");
+        machine.onLighting(false);
+        assertEquals(State.RECORDING, machine.getState());
+    }
+
+    @Test
+    public void nextTakeKeepsLightingButRechecksPose() {
+        machine.start();
+        machine.onLighting(true);
+        poses("s");
+        machine.onRecordingStarted();
+        machine.onRecordingStopped();
+        assertEquals(State.FRAMING, machine.getState());
+
+        poses("fs");
+        assertEquals(State.READY, machine.getState());
+    }
+
+    @Test
+    public void startClearsOldFacts() {
+        machine.start();
+        machine.onLighting(true);
+        poses("s");
+        machine.reset();
+        assertEquals(State.IDLE, machine.getState());
+
+        machine.start();
+        assertEquals(State.LIGHTING, machine.getState());
+    }
+
+    @Test
+    public void eventsBeforeStartAreIgnored() {
+        machine.onLighting(true);
+        poses("s");
+        machine.onRecordingStopped();
+        assertEquals(State.IDLE, machine.getState());
+        assertTrue(states.isEmpty());
+    }
+
+    @Test
+    public void repeatedFactsDoNotRepeatTransitions() {
+        machine.start();
+        machine.onLighting(true);
+        machine.onLighting(true);
+        poses("ffffssss");
+        assertEquals(Arrays.asList(State.LIGHTING, State.FRAMING, State.STABLE, State.READY), states);
+    }
+
+    @Test
+    public void reportsReasonAndTimeSpentInPreviousState() {
+        machine.start();
+        now += 250 * MS;
+        machine.onLighting(true);
+        poses("f");
+
+        assertEquals(Arrays.asList("IDLE>LIGHTING:start:0", "LIGHTING>FRAMING:lighting:250",
+                "FRAMING>STABLE:pose:66"), log);
+    }
+}
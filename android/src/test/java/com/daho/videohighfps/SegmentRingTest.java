@@ -0,0 +1,107 @@
+package com.daho.videohighfps;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class SegmentRingTest {
+
+    private static final long S = 1_000_000L;
+
+    private final SegmentRing ring = new SegmentRing(6 * S);
+    private SegmentRing.Segment open;
+    private long nextStartUs = 100 * S;
+
+    // Two-second segments from t = 100 s, like the backend rotating at keyframes
+    private SegmentRing.Segment recordUntil(long endUs) {
+        for (; nextStartUs < endUs; nextStartUs += 2 * S) {
+            if (open != null) {
+                ring.close(open, nextStartUs);
+            }
+            open = ring.open("seg_" + (nextStartUs / S) + ".mp4", nextStartUs);
+        }
+        return open;
+    }
+
+    private static List<String> paths(List<SegmentRing.Segment> segments) {
+        List<String> paths = new ArrayList<>();
+        for (SegmentRing.Segment segment : segments) {
+            paths.add(segment.path);
+        }
+        return paths;
+    }
+
+    @Test
+    public void clipWaitsForItsEndToBeOnDisk() {
+        recordUntil(110 * S); // closed up to 108 s, 108-110 s still open
+        SegmentRing.Clip clip = ring.request(107 * S, 3 * S, 2 * S, "jump");
+        assertTrue(ring.takeReady().isEmpty());
+
+        assertNotNull(recordUntil(112 * S));
+        List<SegmentRing.Clip> ready = ring.takeReady();
+        assertEquals(1, ready.size());
+        assertSame(clip, ready.get(0));
+        assertEquals("jump", clip.tag);
+        assertEquals(104 * S, clip.fromUs);
+        assertEquals(109 * S, clip.getToUs());
+        assertTrue(ring.takeReady().isEmpty()); // handed out once
+    }
+
+    @Test
+    public void selectsOnlyOverlappingClosedSegments() {
+        recordUntil(120 * S);
+        SegmentRing.Clip clip = ring.request(107 * S, 3 * S, 2 * S, null);
+        assertEquals(List.of("seg_104.mp4", "seg_106.mp4", "seg_108.mp4"), paths(ring.segmentsFor(clip)));
+    }
+
+    @Test
+    public void evictsOldSegmentsUnlessAClipNeedsThem() {
+        recordUntil(110 * S);
+        SegmentRing.Clip clip = ring.request(103 * S, 2 * S, 1 * S, null); // needs 100-104 s
+        recordUntil(130 * S);
+
+        List<SegmentRing.Segment> evicted = ring.evict(130 * S);
+        assertTrue(evicted.isEmpty()); // the oldest segment is pinned by the clip
+
+        assertEquals(1, ring.takeReady().size());
+        assertTrue(ring.evict(130 * S).isEmpty()); // still being cut
+        ring.done(clip);
+
+        evicted = ring.evict(130 * S);
+        assertEquals("seg_100.mp4", evicted.get(0).path);
+        assertEquals("seg_122.mp4", evicted.get(evicted.size() - 1).path); // ends 124 s, the edge of the 6 s kept
+    }
+
+    @Test
+    public void openSegmentIsNeverEvicted() {
+        SegmentRing.Segment only = ring.open("seg.mp4", 100 * S);
+        assertTrue(ring.evict(200 * S).isEmpty());
+        ring.close(only, 102 * S);
+        assertEquals(1, ring.evict(200 * S).size());
+        assertEquals(0, ring.getSegmentCount());
+    }
+
+    @Test
+    public void stoppingCutsPendingClipsShort() {
+        SegmentRing.Segment last = recordUntil(110 * S);
+        ring.request(107 * S, 2 * S, 5 * S, null);
+        ring.close(last, 109 * S + S / 2);
+
+        List<SegmentRing.Clip> all = ring.takeAll();
+        assertEquals(1, all.size());
+        assertEquals(109 * S + S / 2, all.get(0).getToUs());
+        assertEquals(1, ring.getPendingClipCount()); // until done()
+        ring.done(all.get(0));
+        assertEquals(0, ring.getPendingClipCount());
+    }
+
+    @Test
+    public void clipBeforeRecordingStartsUsesWhatExists() {
+        recordUntil(106 * S);
+        SegmentRing.Clip clip = ring.request(101 * S, 10 * S, 1 * S, null);
+        assertEquals(1, ring.takeReady().size());
+        assertEquals(List.of("seg_100.mp4"), paths(ring.segmentsFor(clip)));
+    }
+}
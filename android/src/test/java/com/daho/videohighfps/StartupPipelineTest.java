@@ -0,0 +1,108 @@
+package com.daho.videohighfps;
+
+import static org.junit.Assert.*;
+
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StartupPipelineTest {
+
+    private static final long MS = 1_000_000L;
+
+    private long now;
+    private int sessionStarts;
+
+    private StartupPipeline pipeline() {
+        return new StartupPipeline(() -> now, () -> sessionStarts++);
+    }
+
+    @Before
+    public void setUp() {
+        now = 0;
+        sessionStarts = 0;
+    }
+
+    @Test
+    public void sessionStartsWhenLastInputArrivesInAnyOrder() {
+        StartupPipeline pipeline = pipeline();
+        pipeline.begin(StartupPipeline.Stage.CAMERA_OPEN);
+        pipeline.begin(StartupPipeline.Stage.RECORDER_PREPARE);
+        pipeline.begin(StartupPipeline.Stage.PREVIEW_SURFACE);
+
+        pipeline.end(StartupPipeline.Stage.PREVIEW_SURFACE);
+        pipeline.end(StartupPipeline.Stage.RECORDER_PREPARE);
+        assertEquals(0, sessionStarts);
+
+        pipeline.end(StartupPipeline.Stage.CAMERA_OPEN);
+        assertEquals(1, sessionStarts);
+    }
+
+    @Test
+    public void firesOnlyOnce() {
+        StartupPipeline pipeline = pipeline();
+        pipeline.end(StartupPipeline.Stage.CAMERA_OPEN);
+        pipeline.end(StartupPipeline.Stage.RECORDER_PREPARE);
+        pipeline.end(StartupPipeline.Stage.PREVIEW_SURFACE);
+        pipeline.end(StartupPipeline.Stage.PREVIEW_SURFACE);
+        pipeline.end(StartupPipeline.Stage.CAMERA_OPEN);
+
+        assertEquals(1, sessionStarts);
+    }
+
+    @Test
+    public void cancelledPipelineNeverStartsSession() {
+        StartupPipeline pipeline = pipeline();
+        pipeline.end(StartupPipeline.Stage.CAMERA_OPEN);
+        pipeline.cancel();
+        pipeline.end(StartupPipeline.Stage.RECORDER_PREPARE);
+        pipeline.end(StartupPipeline.Stage.PREVIEW_SURFACE);
+
+        assertEquals(0, sessionStarts);
+    }
+
+    @Test
+    public void reportsOverlappingStageTimings() {
+        StartupPipeline pipeline = pipeline();
+
+        pipeline.begin(StartupPipeline.Stage.CAMERA_OPEN);
+        pipeline.begin(StartupPipeline.Stage.RECORDER_PREPARE);
+        now = 40 * MS;
+        pipeline.end(StartupPipeline.Stage.RECORDER_PREPARE);
+        now = 90 * MS;
+        pipeline.end(StartupPipeline.Stage.CAMERA_OPEN);
+
+        assertEquals(40.0, pipeline.getStageMs(StartupPipeline.Stage.RECORDER_PREPARE), 1e-9);
+        assertEquals(90.0, pipeline.getStageMs(StartupPipeline.Stage.CAMERA_OPEN), 1e-9);
+        assertEquals(-1.0, pipeline.getStageMs(StartupPipeline.Stage.SESSION_CONFIGURE), 1e-9);
+        assertEquals(-1.0, pipeline.getTimeToFirstFrameMs(), 1e-9);
+    }
+
+    @Test
+    public void stageNeverBegunCountsAsZero() {
+        StartupPipeline pipeline = pipeline();
+        now = 25 * MS;
+        pipeline.end(StartupPipeline.Stage.CAMERA_OPEN);
+
+        assertEquals(0.0, pipeline.getStageMs(StartupPipeline.Stage.CAMERA_OPEN), 1e-9);
+    }
+
+    @Test
+    public void snapshotIsOrderedAndIncludesTotal() {
+        StartupPipeline pipeline = pipeline();
+        pipeline.begin(StartupPipeline.Stage.SESSION_CONFIGURE);
+        now = 10 * MS;
+        pipeline.end(StartupPipeline.Stage.SESSION_CONFIGURE);
+        pipeline.begin(StartupPipeline.Stage.FIRST_FRAME);
+        now = 35 * MS;
+        pipeline.end(StartupPipeline.Stage.FIRST_FRAME);
+        pipeline.end(StartupPipeline.Stage.CAPABILITIES);
+
+        Map<String, Double> snapshot = pipeline.snapshot();
+        assertArrayEquals(new Object[] { "capabilitiesMs", "sessionConfigureMs", "firstFrameMs", "totalMs" },
+            snapshot.keySet().toArray());
+        assertEquals(10.0, snapshot.get("sessionConfigureMs"), 1e-9);
+        assertEquals(25.0, snapshot.get("firstFrameMs"), 1e-9);
+        assertEquals(35.0, snapshot.get("totalMs"), 1e-9);
+    }
+}
@@ -0,0 +1,129 @@
+package com.daho.videohighfps;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TpaLogTest {
+
+    private static final TpaLog.Message EXPENSIVE = () -> {
+        throw new AssertionError("message built for a disabled call site");
+    };
+
+    private final List<String> written = new ArrayList<>();
+    private long nowNanos = 0;
+
+    @Before
+    public void setUp() {
+        TpaLog.setSink((level, tag, message, error) -> written.add(TpaLog.levelName(level) + "/" + tag + ": " + message));
+        TpaLog.setClock(() -> nowNanos);
+        TpaLog.setLevel(TpaLog.DEBUG);
+        TpaLog.clearRing();
+    }
+
+    @After
+    public void tearDown() {
+        TpaLog.setSink(null);
+        TpaLog.setClock(null);
+        TpaLog.setLevel(TpaLog.DEBUG);
+    }
+
+    @Test
+    public void levelsGateStatementsAndLazyMessages() {
+        TpaLog.setLevel(TpaLog.WARN);
+        TpaLog.d("Test", "hidden");
+        TpaLog.d("Test", EXPENSIVE);
+        TpaLog.w("Test", "shown");
+        TpaLog.e("Test", "failed", new IllegalStateException("boom"));
+
+        assertEquals(2, written.size());
+        assertEquals("W/Test: shown", written.get(0));
+        List<TpaLog.Event> events = TpaLog.recent(TpaLog.DEBUG);
+        assertEquals(2, events.size());
+        assertEquals("IllegalStateException: boom", events.get(1).error);
+    }
+
+    @Test
+    public void callSitesAreRateLimited() {
+        TpaLog.Site site = TpaLog.site("Frame", TpaLog.DEBUG, 1000);
+        for (int frame = 0; frame < 240; frame++) { // one second at 240 fps
+            nowNanos = frame * 4_166_667L;
+            if (site.shouldLog()) {
+                site.emit("frame " + frame);
+            }
+        }
+        nowNanos = 1_000_000_000L;
+        site.log(() -> "a second later");
+
+        assertEquals(2, written.size());
+        assertEquals("D/Frame: frame 0", written.get(0));
+        assertEquals("D/Frame: a second later (+239 suppressed)", written.get(1));
+    }
+
+    @Test
+    public void ringKeepsTheLatestEventsInOrder() {
+        for (int i = 0; i < TpaLog.RING_CAPACITY + 10; i++) {
+            TpaLog.d("Ring", "event " + i);
+        }
+        TpaLog.w("Ring", "warning");
+
+        List<TpaLog.Event> events = TpaLog.recent(TpaLog.DEBUG);
+        assertEquals(TpaLog.RING_CAPACITY, events.size());
+        assertEquals("event 11", events.get(0).message);
+        assertEquals("warning", events.get(events.size() - 1).message);
+        for (int i = 1; i < events.size(); i++) {
+            assertEquals(events.get(i - 1).sequence + 1, events.get(i).sequence);
+        }
+        assertEquals(1, TpaLog.recent(TpaLog.WARN).size());
+    }
+
+    @Test
+    public void aFailingSinkDoesNotReachTheCaller() {
+        TpaLog.setSink((level, tag, message, error) -> {
+            throw new RuntimeException("logcat is gone");
+        });
+        TpaLog.e("Test", "still recorded");
+        assertEquals("still recorded", TpaLog.recent(TpaLog.ERROR).get(0).message);
+    }
+
+    @Test
+    public void disabledCallSitesDoNotAllocate() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return; // no allocation counter on this VM
+        }
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        long thread = Thread.currentThread().getId();
+
+        TpaLog.setLevel(TpaLog.INFO);
+        TpaLog.Site disabled = TpaLog.site("Frame", TpaLog.DEBUG, 0);
+        TpaLog.Site limited = TpaLog.site("Frame", TpaLog.WARN, 60_000);
+        limited.shouldLog(); // takes this interval's slot
+        nowNanos = 1;
+
+        int iterations = 100_000;
+        int logged = 0;
+        long fewest = Long.MAX_VALUE;
+        for (int round = 0; round < 5; round++) { // the first rounds warm up the JIT
+            long before = allocations.getThreadAllocatedBytes(thread);
+            for (int i = 0; i < iterations; i++) {
+                disabled.log(EXPENSIVE);
+                TpaLog.d("Frame", EXPENSIVE);
+                if (disabled.shouldLog() | limited.shouldLog()) {
+                    logged++;
+                }
+            }
+            fewest = Math.min(fewest, allocations.getThreadAllocatedBytes(thread) - before);
+        }
+        // JIT and TLAB bookkeeping show up as a few hundred bytes; one allocation per call would be megabytes
+        assertTrue("allocated " + fewest + " bytes", fewest < iterations / 10);
+        assertEquals(0, logged);
+        assertTrue(written.isEmpty());
+    }
+}
@@ -0,0 +1,73 @@
+package com.daho.videohighfps;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class TransientDetectorTest {
+
+    private static final int RATE = 44100;
+
+    private final List<Float> fired = new ArrayList<>();
+    private final TransientDetector detector = new TransientDetector(fired::add);
+    private final Random random = new Random(7);
+
+    // Background noise at `rms`, with optional 20 ms bursts at the given times (ms)
+    private void play(int ms, double rms, double burstRms, int... burstsAtMs) {
+        int n = RATE * ms / 1000;
+        ByteBuffer pcm = ByteBuffer.allocateDirect(2048).order(ByteOrder.nativeOrder());
+        int filled = 0;
+        for (int i = 0; i < n; i++) {
+            double level = rms;
+            for (int at : burstsAtMs) {
+                int start = RATE * at / 1000;
+                if (i >= start && i < start + RATE / 50) {
+                    level = burstRms;
+                }
+            }
+            pcm.putShort(filled, (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE,
+                    random.nextGaussian() * level)));
+            filled += 2;
+            if (filled == pcm.capacity() || i == n - 1) {
+                detector.onAudio(pcm, 0, filled, RATE); // chunks like the audio encoder's reads
+                filled = 0;
+            }
+        }
+    }
+
+    @Test
+    public void firesOnALoudBurst() {
+        play(2000, 300, 0);
+        assertTrue(fired.isEmpty());
+        play(500, 300, 12000, 200);
+        assertEquals(1, fired.size());
+        assertTrue(fired.get(0) > TransientDetector.DEFAULT_RATIO);
+    }
+
+    @Test
+    public void steadyLoudnessIsNotATransient() {
+        play(1000, 300, 0);
+        play(6000, 300, 0);
+        play(500, 800, 0); // someone starts talking: louder, but not by much
+        assertTrue(fired.isEmpty());
+    }
+
+    @Test
+    public void quietClicksStayUnderTheFloor() {
+        play(2000, 20, 0);
+        play(1000, 20, 600, 300); // 30x a silent room, but still faint
+        assertTrue(fired.isEmpty());
+    }
+
+    @Test
+    public void refractoryMergesRepeatsButLaterEventsFire() {
+        play(2000, 300, 0);
+        play(3000, 300, 12000, 100, 400, 800, 2500);
+        assertEquals(2, fired.size()); // 100 ms (400 and 800 fall inside), then 2500 ms
+    }
+}
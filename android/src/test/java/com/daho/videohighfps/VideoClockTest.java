@@ -0,0 +1,108 @@
+package com.daho.videohighfps;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class VideoClockTest {
+
+    private static final long MS = 1_000_000L;
+
+    @Test
+    public void countsFromTheOrigin() {
+        VideoClock clock = new VideoClock(1000 * MS);
+        assertEquals(-1, clock.toVideoUs(999 * MS));
+        assertEquals(0, clock.toVideoUs(1000 * MS));
+        assertEquals(250_000, clock.toVideoUs(1250 * MS));
+
+        clock.setOrigin(1010 * MS); // the first keyframe came a little later
+        assertEquals(240_000, clock.toVideoUs(1250 * MS));
+    }
+
+    @Test
+    public void readbackFramesStayOnTheCameraClock() {
+        // A device whose sensor runs on the monotonic clock, after three hours of deep sleep
+        long monotonicNs = 5_000 * MS;
+        long realtimeNs = monotonicNs + 3 * 3600_000 * MS;
+        java.util.function.LongSupplier cameraClock = () -> monotonicNs;
+
+        VideoClock clock = new VideoClock(cameraClock.getAsLong());
+        clock.setOrigin(monotonicNs + 20 * MS); // the encoder's first sensor PTS
+
+        // Stamped by the SurfaceTexture, or by the camera clock before its first frame
+        assertEquals(480_000, clock.toVideoUs(VideoClock.captureTimestampNs(monotonicNs + 500 * MS, cameraClock)));
+        assertEquals(-1, clock.toVideoUs(VideoClock.captureTimestampNs(0, cameraClock)));
+        assertEquals(0, clock.toVideoUs(VideoClock.captureTimestampNs(0, () -> monotonicNs + 20 * MS)));
+
+        // elapsedRealtime on the same device lands hours into a file that is not there
+        assertEquals(3 * 3600_000_000L + 480_000, clock.toVideoUs(realtimeNs + 500 * MS));
+    }
+
+    @Test
+    public void pausedSpansAreCutOut() {
+        VideoClock clock = new VideoClock(0);
+        clock.pause(2000 * MS);
+        assertEquals(-1, clock.toVideoUs(2500 * MS));
+        assertEquals(1_900_000, clock.toVideoUs(1900 * MS)); // late, but from before the pause
+        clock.resume(5000 * MS);
+
+        assertEquals(-1, clock.toVideoUs(4000 * MS));
+        assertEquals(1_950_000, clock.toVideoUs(1950 * MS));
+        assertEquals(2_000_000, clock.toVideoUs(5000 * MS));
+        assertEquals(2_500_000, clock.toVideoUs(5500 * MS));
+    }
+
+    @Test
+    public void matchesTheMuxerTimeline() {
+        // The same pause on both sides must give the same presentation times
+        java.util.List<Long> written = new java.util.ArrayList<>();
+        MuxerTimeline<String> timeline = new MuxerTimeline<>(new MuxerTimeline.Sink<String>() {
+            @Override
+            public int addTrack(String format) {
+                return 0;
+            }
+
+            @Override
+            public void start() {
+            }
+
+            @Override
+            public void writeSample(int trackIndex, java.nio.ByteBuffer data, long presentationTimeUs, int flags) {
+                written.add(presentationTimeUs);
+            }
+
+            @Override
+            public void stop() {
+            }
+        }, false, 30);
+        timeline.setFormat(MuxerTimeline.Track.VIDEO, "video");
+
+        long frameUs = 33_333;
+        long startUs = 7_000_000;
+        for (int f = 0; f < 60; f++) {
+            long ptsUs = startUs + f * frameUs;
+            if (f == 20) {
+                timeline.pause(ptsUs);
+            }
+            if (f == 40) {
+                timeline.resume(ptsUs);
+            }
+            timeline.writeSample(MuxerTimeline.Track.VIDEO, java.nio.ByteBuffer.wrap(new byte[] { 1 }), ptsUs,
+                    f == 0 ? MuxerTimeline.FLAG_KEY_FRAME : 0);
+        }
+
+        VideoClock clock = new VideoClock(timeline.getBaseUs() * 1000);
+        clock.pause((startUs + 20 * frameUs) * 1000);
+        clock.resume((startUs + 40 * frameUs) * 1000);
+        int i = 0;
+        for (int f = 0; f < 60; f++) {
+            long videoUs = clock.toVideoUs((startUs + f * frameUs) * 1000);
+            if (f >= 20 && f < 40) {
+                assertEquals(-1, videoUs);
+            } else {
+                assertEquals((long) written.get(i++), videoUs);
+            }
+        }
+        assertEquals(written.size(), i);
+    }
+}
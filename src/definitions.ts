@@ -1,17 +1,387 @@
+import type { PluginListenerHandle } from '@capacitor/core';
+
 export interface TpaCameraPlugin {
+  /**
+   * Opens the camera ahead of `startRecording()` so the preview comes up faster.
+   * Resolves once the camera device is open.
+   */
+  prepare(options: videoOptions): Promise<StartupTimings>;
   startRecording(options: videoOptions): Promise<VideoRecordingResult>;
+  /**
+   * Sentinel mode: cuts a clip from `preMs` before now to `postMs` after out of
+   * the running recording. Resolves once the post-roll has been recorded.
+   */
+  triggerClip(options?: ClipOptions): Promise<VideoRecordingResult>;
+  /**
+   * Reads a range of a take's landmark track (`landmarkTrackPath`). Long ranges
+   * come in pages: call again from `nextMs` until it is missing.
+   */
+  getLandmarks(options: LandmarksOptions): Promise<LandmarksResult>;
+  /**
+   * The plugin's most recent log events, oldest first, e.g. to report why a
+   * recording failed. Debug events are only kept in debug builds.
+   */
+  getRecentLogs(options?: RecentLogsOptions): Promise<RecentLogsResult>;
+  /**
+   * Telemetry of the current camera session. Every recording result carries
+   * the same `metrics`.
+   */
+  getMetrics(): Promise<MetricsResult>;
+  /**
+   * Fired once per `startRecording()` when the first preview frame arrives.
+   */
+  addListener(
+    eventName: 'startupTimings',
+    listenerFunc: (timings: StartupTimings) => void,
+  ): Promise<PluginListenerHandle>;
+  /**
+   * Multi-take mode: fired when a take has been written to its file. In
+   * sentinel mode, fired for every clip.
+   */
+  addListener(
+    eventName: 'takeRecorded',
+    listenerFunc: (take: VideoRecordingResult) => void,
+  ): Promise<PluginListenerHandle>;
+  /**
+   * Multi-take mode: fired when the recorder is armed for the next take.
+   */
+  addListener(eventName: 'takeReady', listenerFunc: (event: TakeReadyEvent) => void): Promise<PluginListenerHandle>;
+  /**
+   * Fired on every pre-record readiness transition, as lighting and pose events arrive.
+   */
+  addListener(
+    eventName: 'readinessChanged',
+    listenerFunc: (event: ReadinessEvent) => void,
+  ): Promise<PluginListenerHandle>;
+  /**
+   * Fired when the camera delivers well under the requested fps for about a
+   * second, and again once it catches up. Measured from sensor timestamps.
+   */
+  addListener(
+    eventName: 'captureRateChanged',
+    listenerFunc: (event: CaptureRateEvent) => void,
+  ): Promise<PluginListenerHandle>;
 }
 
 export interface videoOptions {
   resolution: '720p' | '1080p' | '4k';
   fps: number;
   sizeLimit: number;
+  /**
+   * Index each take by the athlete's motion: high-motion intervals and
+   * per-second landmark summaries go to a JSON file next to the video, at
+   * `motionIndexPath`.
+   */
   slowMotion?: boolean;
+  /**
+   * Record every analyzed pose of each take, all 33 landmarks, to a binary file
+   * next to the video at `landmarkTrackPath`, timed to the video. Read it with
+   * `getLandmarks()`.
+   */
+  landmarkTrack?: boolean;
   saveToLibrary?: boolean;
   title?: string;
+  /**
+   * Target rate for pose and lighting analysis, independent of the capture fps.
+   * Defaults to 15.
+   */
+  analysisFps?: number;
+  /**
+   * Lowest capture fps worth recording at. Modes below it are never tried and
+   * the call rejects if none remain. Defaults to 30.
+   */
+  minFps?: number;
+  /**
+   * Upper bound on the estimated video bitrate in bits/s. Unset means no limit.
+   */
+  maxBitrate?: number;
+  /**
+   * When the camera cannot sustain the requested fps before the first take,
+   * rebuild the preview in the next slower negotiated mode instead of only
+   * firing `captureRateChanged`.
+   */
+  downgradeOnThrottle?: boolean;
+  /**
+   * Keep the camera session running between takes and only rotate the output
+   * file. `startRecording()` then resolves when the user leaves, with every
+   * take in `takes`.
+   */
+  multiTake?: boolean;
+  /**
+   * Encoding backend. `mediacodec` drives the encoder and muxer directly and
+   * reports `encoderStats`. Defaults to `mediarecorder`.
+   */
+  recorder?: 'mediarecorder' | 'mediacodec';
+  /**
+   * Video codec. When unset, H.264 is used unless it would not fit the measured
+   * storage speed or `sizeLimit` and the device has an HEVC encoder.
+   */
+  codec?: 'h264' | 'hevc';
+  /**
+   * Encoder rate control (`mediacodec` only; falls back to `vbr` where the
+   * encoder does not support it). Defaults to `vbr`.
+   */
+  bitrateMode?: 'vbr' | 'cbr' | 'cq';
+  /**
+   * Start recording without a tap once the athlete is ready (lit, framed and
+   * still) for `autoStartDwellMs`, after a beep countdown.
+   */
+  autoStart?: boolean;
+  /** How long readiness must hold before an automatic start. Defaults to 1000. */
+  autoStartDwellMs?: number;
+  /** Countdown beeps, one per second, before an automatic start; 0 for none. Defaults to 3. */
+  countdown?: number;
+  /**
+   * Stop a take once nobody has been in frame for this many milliseconds; 0
+   * disables it. Defaults to 2000 with `autoStart`, 0 otherwise.
+   */
+  autoStopAbsentMs?: number;
+  /** Stop a take after this much recorded time, pauses excluded. Unset means no limit. */
+  maxDurationMs?: number;
+  /**
+   * Offline voice commands: "yes"/"start" records or resumes, "stop" and
+   * "pause" act like their buttons. Needs keyword recordings in the app's
+   * `voice/` assets; ignored without them. Before Android 10, takes with the
+   * `mediarecorder` backend cannot share the microphone and have no voice
+   * commands until they stop.
+   */
+  voiceCommands?: boolean;
+  /**
+   * Keep this many milliseconds of encoded video from before the tap and put
+   * them at the start of the file. `mediacodec` recorder only.
+   */
+  preRollMs?: number;
+  /**
+   * Memory cap for the pre-roll buffer, in bytes. On its own it enables
+   * pre-roll with as much as fits; by default the buffer is sized from
+   * `preRollMs` and the bitrate.
+   */
+  preRollMaxBytes?: number;
+  /**
+   * Record continuously into short segment files and keep only clips cut
+   * around triggers: `triggerClip()`, `clipOnMotion` or `clipOnSound`.
+   * `startRecording()` resolves on stop with every clip in `takes`. Implies the
+   * `mediacodec` recorder; `multiTake` and pause are not available.
+   */
+  sentinel?: boolean;
+  /** Sentinel segment length; clips are ready up to this long after their end. Defaults to 2000. */
+  segmentMs?: number;
+  /** Video kept before a trigger. Defaults to 3000. */
+  clipPreMs?: number;
+  /** Video kept after a trigger. Defaults to 2000. */
+  clipPostMs?: number;
+  /** Sentinel: cut a clip when the athlete moves fast, e.g. a jump or a swing. */
+  clipOnMotion?: boolean;
+  /** Sentinel: cut a clip on a sudden loud sound, e.g. a bat hitting a ball. */
+  clipOnSound?: boolean;
+}
+
+export interface ClipOptions {
+  /** Defaults to `clipPreMs`. */
+  preMs?: number;
+  /** Defaults to `clipPostMs`. */
+  postMs?: number;
+}
+
+export interface LandmarksOptions {
+  /** A `landmarkTrackPath`; only files in the recordings directory can be read. */
+  path: string;
+  /** Video time to start at. Defaults to 0. */
+  fromMs?: number;
+  /** Video time to stop before. Defaults to the end of the take. */
+  toMs?: number;
+  /** Most frames returned per call. Defaults to 1000. */
+  maxFrames?: number;
+}
+
+export interface LandmarksResult {
+  /** Size of the analyzed frames, in pixels. */
+  frameWidth: number;
+  frameHeight: number;
+  /** Frames in the whole track. */
+  frameCount: number;
+  frames: LandmarkFrame[];
+  /** Set when the range has more frames: pass it as `fromMs` to continue. */
+  nextMs?: number;
+}
+
+/**
+ * One analyzed frame. `landmarks` holds x, y, likelihood for each of the 33
+ * pose landmarks; x and y are fractions of the frame and null where the landmark
+ * was not detected. A frame with nobody detected has every landmark null.
+ */
+export interface LandmarkFrame {
+  /** Presentation time in the video. */
+  timeMs: number;
+  landmarks: (number | null)[];
+}
+
+export interface RecentLogsOptions {
+  /** Lowest level returned. Defaults to `debug`. */
+  level?: LogLevel;
+}
+
+export interface RecentLogsResult {
+  events: LogEvent[];
+}
+
+export interface LogEvent {
+  /** Wall-clock time, in milliseconds since the epoch. */
+  timeMs: number;
+  level: LogLevel;
+  tag: string;
+  message: string;
+  thread: string;
+  /** The exception logged with the event, if any. */
+  error?: string;
+}
+
+export type LogLevel = 'debug' | 'info' | 'warn' | 'error';
+
+export interface MetricsResult {
+  metrics: Metrics;
+}
+
+/**
+ * Session telemetry by name, e.g. `startup.timeToPreviewMs`,
+ * `session.step0.failed`, `capture.framesDelivered` against
+ * `capture.framesExpected`, `analysis.dropped` or `recording.gcCount`.
+ * Names ending in `Us` are latency histograms, in microseconds.
+ */
+export type Metrics = { [name: string]: number | HistogramSummary };
+
+export interface HistogramSummary {
+  count: number;
+  min: number;
+  mean: number;
+  p50: number;
+  p90: number;
+  p99: number;
+  max: number;
 }
 
 export interface VideoRecordingResult {
   videoPath: string;
   duration?: number;
+  /** Multi-take mode: every take recorded in this session, oldest first. */
+  takes?: VideoRecordingResult[];
+  backend?: 'mediarecorder' | 'mediacodec';
+  codec?: 'h264' | 'hevc';
+  bitrateMode?: 'vbr' | 'cbr' | 'cq';
+  /** Video bitrate the take was encoded with, in bits/s. */
+  bitrate?: number;
+  encoderPlan?: EncoderPlan;
+  /** Only with the `mediacodec` backend. */
+  encoderStats?: EncoderStats;
+  /** Why the take ended: a tap, or one of the automatic stop rules. */
+  stopReason?: 'user' | 'subjectLeft' | 'maxDuration';
+  /** Only with pre-roll; `duration` includes it. */
+  preRoll?: PreRollStats;
+  /** Sentinel clips: what cut the clip. */
+  trigger?: 'manual' | 'motion' | 'sound';
+  /** With `slowMotion`: the motion index written next to the video. */
+  motionIndexPath?: string;
+  /** With `landmarkTrack`: the landmark track written next to the video. */
+  landmarkTrackPath?: string;
+  /** The session's telemetry when the result was produced. */
+  metrics?: Metrics;
+}
+
+/**
+ * How the codec and bitrate were chosen. Budgets are in bits/s, 0 means no limit.
+ */
+export interface EncoderPlan {
+  /** What the quality heuristic asked for with the chosen codec. */
+  targetBitrate: number;
+  /** Half the measured write speed of the video directory. */
+  storageBudget: number;
+  /** Bitrate at which `sizeLimit` still holds 10 seconds. */
+  sizeBudget: number;
+  /** Each decision, in order. */
+  reasons: string[];
+}
+
+/**
+ * What the encoder did during one take. Dropped frames are estimated from gaps
+ * in the encoded timestamps.
+ */
+export interface EncoderStats {
+  capturedFrames: number;
+  encodedFrames: number;
+  droppedFrames: number;
+  keyFrames: number;
+  /** Most frames captured but not yet encoded at any one time. */
+  maxQueueDepth: number;
+  /** Bits per second actually written. */
+  averageBitrate: number;
+}
+
+/**
+ * The pre-roll at the start of a take and the memory held for it.
+ */
+export interface PreRollStats {
+  /** Video recorded before the tap. */
+  durationMs: number;
+  /** Encoded bytes that came from the buffer. */
+  bytes: number;
+  /** Memory reserved for the buffer. */
+  bufferBytes: number;
+  /** Requested pre-roll, 0 when only `preRollMaxBytes` limits it. */
+  windowMs: number;
+}
+
+export interface TakeReadyEvent {
+  /** Milliseconds from pressing stop until the next take can start. */
+  readyMs: number;
+  takeCount: number;
+}
+
+/**
+ * Each pre-record state names the check that is still failing: `lighting`,
+ * `framing` (centered and far enough away), then `stable` (holding still).
+ */
+export interface ReadinessEvent {
+  state: ReadinessState;
+  previous: ReadinessState;
+  /** What caused the transition. */
+  reason: 'start' | 'lighting' | 'pose' | 'recording' | 'reset';
+  /** Milliseconds spent in the previous state. */
+  previousMs: number;
+}
+
+export type ReadinessState = 'idle' | 'lighting' | 'framing' | 'stable' | 'ready' | 'recording';
+
+/**
+ * The capture rate collapsed or recovered. `effectiveFps` is measured over the
+ * last half second of sensor timestamps.
+ */
+export interface CaptureRateEvent {
+  collapsed: boolean;
+  expectedFps: number;
+  effectiveFps: number;
+  /** Whether a take was recording; a collapse mid-take is only reported. */
+  recording: boolean;
+  /** With `downgradeOnThrottle`: the preview is being rebuilt in a slower mode. */
+  downgraded: boolean;
+}
+
+/**
+ * Startup stage durations in milliseconds. Stages overlap, so they do not add up
+ * to `totalMs`. Stages that have not finished yet are omitted.
+ */
+export interface StartupTimings {
+  cameraId: string;
+  /** Capture mode key, e.g. `1920x1080@240hs` (`hs` = high-speed session). */
+  mode?: string;
+  /** True if the camera was already opened by `prepare()`. */
+  warm: boolean;
+  capabilitiesMs?: number;
+  negotiateMs?: number;
+  cameraOpenMs?: number;
+  recorderPrepareMs?: number;
+  previewSurfaceMs?: number;
+  sessionConfigureMs?: number;
+  firstFrameMs?: number;
+  /** From the start of `startRecording()` (or `prepare()`) to the first frame. */
+  totalMs?: number;
 }
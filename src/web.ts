@@ -1,8 +1,39 @@
 import { WebPlugin } from '@capacitor/core';
-import type { TpaCameraPlugin, videoOptions, VideoRecordingResult } from './definitions';
+import type {
+  ClipOptions,
+  LandmarksOptions,
+  LandmarksResult,
+  MetricsResult,
+  RecentLogsOptions,
+  RecentLogsResult,
+  StartupTimings,
+  TpaCameraPlugin,
+  videoOptions,
+  VideoRecordingResult,
+} from './definitions';
 
 export class TpaCameraWeb extends WebPlugin implements TpaCameraPlugin {
+  async prepare(_options: videoOptions): Promise<StartupTimings> {
+    throw this.unimplemented('open Camera plugin is not available on web.');
+  }
+
   async startRecording(_options: videoOptions): Promise<VideoRecordingResult> {
     throw this.unimplemented('open Camera plugin is not available on web.');
   }
+
+  async triggerClip(_options?: ClipOptions): Promise<VideoRecordingResult> {
+    throw this.unimplemented('open Camera plugin is not available on web.');
+  }
+
+  async getLandmarks(_options: LandmarksOptions): Promise<LandmarksResult> {
+    throw this.unimplemented('open Camera plugin is not available on web.');
+  }
+
+  async getRecentLogs(_options?: RecentLogsOptions): Promise<RecentLogsResult> {
+    throw this.unimplemented('open Camera plugin is not available on web.');
+  }
+
+  async getMetrics(): Promise<MetricsResult> {
+    throw this.unimplemented('open Camera plugin is not available on web.');
+  }
 }